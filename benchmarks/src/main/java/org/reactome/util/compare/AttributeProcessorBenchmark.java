@@ -0,0 +1,127 @@
+package org.reactome.util.compare;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.gk.model.GKInstance;
+import org.gk.schema.GKSchemaAttribute;
+import org.gk.schema.GKSchemaClass;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.reactome.util.compare.AttributeProcessor.AttributeRelationshipType;
+
+/**
+ * Measures the throughput of AttributeProcessor.getAttributes when many comparison threads look up the attributes of
+ * the same few schema classes.  The "legacyNameKeyedCache" benchmark reproduces the previous cache (keyed by class
+ * name, with an empty list marking an absent value and the computed list put outside the atomic operation) as a
+ * baseline.  Classes without referrers are included, since the previous cache recomputed them on every call.
+ *
+ * Run at increasing thread counts to see contention, e.g.:
+<pre>
+	$ mvn -f benchmarks/pom.xml clean package
+	$ java -jar benchmarks/target/benchmarks.jar AttributeProcessorBenchmark -t 1
+	$ java -jar benchmarks/target/benchmarks.jar AttributeProcessorBenchmark -t 64
+</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AttributeProcessorBenchmark
+{
+	private static final int ATTRIBUTES_PER_CLASS = 30;
+
+	@Param({"16", "256"})
+	private int schemaClassCount;
+
+	private SchemaClass[] schemaClasses;
+	private Map<String, Map<AttributeRelationshipType, List<SchemaAttribute>>> legacyCache;
+
+	@Setup
+	public void createSchemaClasses()
+	{
+		this.schemaClasses = new SchemaClass[this.schemaClassCount];
+		for (int i = 0; i < this.schemaClassCount; i++)
+		{
+			GKSchemaClass schemaClass = new GKSchemaClass("BenchmarkClass" + i);
+			schemaClass.setName("BenchmarkClass" + i);
+			for (int j = 0; j < ATTRIBUTES_PER_CLASS; j++)
+			{
+				GKSchemaAttribute attribute = new GKSchemaAttribute("attribute" + j);
+				attribute.setName("attribute" + j);
+				attribute.setType(j % 2 == 0 ? String.class : GKInstance.class);
+				attribute.setOrigin(schemaClass);
+				schemaClass.addAttribute(attribute);
+			}
+			this.schemaClasses[i] = schemaClass;
+		}
+
+		this.legacyCache = new ConcurrentHashMap<>();
+	}
+
+	@Benchmark
+	public List<SchemaAttribute> identityKeyedCache()
+	{
+		return AttributeProcessor.getAttributes(randomSchemaClass(), randomRelationshipType());
+	}
+
+	@Benchmark
+	public List<SchemaAttribute> legacyNameKeyedCache()
+	{
+		return getAttributesFromLegacyCache(randomSchemaClass(), randomRelationshipType());
+	}
+
+	private SchemaClass randomSchemaClass()
+	{
+		return this.schemaClasses[ThreadLocalRandom.current().nextInt(this.schemaClasses.length)];
+	}
+
+	private static AttributeRelationshipType randomRelationshipType()
+	{
+		return ThreadLocalRandom.current().nextBoolean() ?
+			AttributeRelationshipType.REGULAR_ATTRIBUTE :
+			AttributeRelationshipType.REVERSE_ATTRIBUTE;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<SchemaAttribute> getAttributesFromLegacyCache(
+		SchemaClass schemaClass, AttributeRelationshipType attributeRelationshipType
+	)
+	{
+		List<SchemaAttribute> attributes = this.legacyCache
+			.computeIfAbsent(schemaClass.getName(), k -> new ConcurrentHashMap<>())
+			.computeIfAbsent(attributeRelationshipType, k -> new ArrayList<>());
+
+		if (attributes.isEmpty())
+		{
+			attributes = new ArrayList<>(
+				attributeRelationshipType.equals(AttributeRelationshipType.REGULAR_ATTRIBUTE) ?
+					schemaClass.getAttributes() :
+					schemaClass.getReferers()
+			);
+
+			this.legacyCache
+				.computeIfAbsent(schemaClass.getName(), k -> new ConcurrentHashMap<>())
+				.put(attributeRelationshipType, attributes);
+		}
+
+		return attributes;
+	}
+}
@@ -0,0 +1,126 @@
+package org.reactome.util.compare;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of DBObjectComparer.compareInstances on two copies of a synthetic instance graph (see
+ * {@link SyntheticInstanceGraph}) of varying depth and sharing, with and without fingerprints.  Alongside the
+ * throughput, each run reports as rates (which divided by the throughput give the values per operation):
+ *
+ * - "differences": the number of differences found (to check that optimizations do not change results)
+ * - "instancesRecursedInto": the number of instance values recursed into.  With fingerprinting, this against the
+ * number without it is the rate at which the fingerprint cache lets comparisons skip unchanged sub-graphs.
+ *
+ * Each thread has its own configuration (and so its own fingerprint cache, which is warm after the first
+ * operation).  Run at increasing thread counts for the scaling, with the gc profiler for the allocation rate, and
+ * keep the JSON results of each release to compare them, e.g.:
+<pre>
+	$ mvn -f benchmarks/pom.xml clean package
+	$ java -jar benchmarks/target/benchmarks.jar DBObjectComparerBenchmark -t 1 -prof gc -rf json -rff 1.2.2-t1.json
+	$ java -jar benchmarks/target/benchmarks.jar DBObjectComparerBenchmark -t 8 -prof gc -rf json -rff 1.2.2-t8.json
+</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DBObjectComparerBenchmark
+{
+	private static final long SEED = 42L;
+	private static final double CHANGED_FRACTION = 0.05;
+	// Measures the comparison rather than the writing of its report
+	private static final DiffReportSink DISCARDING_REPORT_SINK = reportText -> {};
+
+	@Param({"4"})
+	private int breadth;
+
+	@Param({"2", "4", "6"})
+	private int depth;
+
+	@Param({"0.0", "0.5"})
+	private double sharedFraction;
+
+	@Param({"false", "true"})
+	private boolean fingerprinting;
+
+	private SyntheticInstanceGraph graph;
+
+	@Setup
+	public void buildGraph()
+	{
+		this.graph = SyntheticInstanceGraph.build(
+			this.breadth, this.depth, this.sharedFraction, CHANGED_FRACTION, SEED
+		);
+	}
+
+	/**
+	 * Comparison settings of a benchmark thread
+	 */
+	@State(Scope.Thread)
+	public static class ThreadConfiguration
+	{
+		private final ComparisonConfiguration configuration = new ComparisonConfiguration();
+		// Only counts the instance values recursed into, as the budget is never used up
+		private final TraversalPolicy countingTraversalPolicy = new TraversalPolicy();
+
+		@Setup
+		public void configure(DBObjectComparerBenchmark benchmark)
+		{
+			this.configuration.setMaxRecursionDepth(benchmark.depth + 1);
+			this.configuration.setFingerprinting(benchmark.fingerprinting);
+			this.countingTraversalPolicy.setWorkBudget(TraversalPolicy.UNLIMITED_WORK_BUDGET - 1);
+			this.configuration.setTraversalPolicy(this.countingTraversalPolicy);
+		}
+	}
+
+	/**
+	 * Counters reported as rates alongside the throughput
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class ComparisonCounters
+	{
+		public long differences;
+		public long instancesRecursedInto;
+
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			this.differences = 0;
+			this.instancesRecursedInto = 0;
+		}
+	}
+
+	@Benchmark
+	public int compareInstances(ThreadConfiguration threadConfiguration, ComparisonCounters counters)
+	{
+		TraversalPolicy traversalPolicy = threadConfiguration.countingTraversalPolicy;
+		traversalPolicy.resetInstanceComparisonCount();
+
+		int differenceCount = DBObjectComparer.compareInstances(
+			this.graph.getRoot1(), this.graph.getRoot2(), DISCARDING_REPORT_SINK,
+			threadConfiguration.configuration
+		);
+
+		counters.differences += differenceCount;
+		counters.instancesRecursedInto += traversalPolicy.getInstanceComparisonCount();
+
+		return differenceCount;
+	}
+}
@@ -0,0 +1,186 @@
+package org.reactome.util.compare;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.gk.model.GKInstance;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.schema.GKSchemaAttribute;
+import org.gk.schema.GKSchemaClass;
+
+/**
+ * Builds two copies of an in-memory instance graph, as from two releases of a database, for benchmarking comparisons
+ * without MySQL.  Each graph is a tree of "complex" instances of the passed breadth and depth whose bottom level
+ * holds "entity" instances, except that a fraction of the children are shared with (i.e. re-use) an instance already
+ * created at the same level, as components are in Reactome.  A fraction of the entities have a different name in the
+ * second copy.  The instances are plain GKInstances (rather than mocks, as in the unit tests) so the measurements
+ * are of the comparison code only.
+ */
+class SyntheticInstanceGraph
+{
+	private static final String DISPLAY_NAME = "_displayName";
+	private static final String COMPLEX_CLASS_NAME = "BenchmarkComplex";
+	private static final String ENTITY_CLASS_NAME = "BenchmarkEntity";
+
+	private final GKSchemaClass complexClass = createSchemaClass(COMPLEX_CLASS_NAME);
+	private final GKSchemaClass entityClass = createSchemaClass(ENTITY_CLASS_NAME);
+	private final int breadth;
+	private final double sharedFraction;
+	private final double changedFraction;
+	private final Random random;
+
+	private final List<List<GKInstance[]>> instancePairsByLevel = new ArrayList<>();
+	private long nextDbId = 1L;
+	private int instanceCount;
+	private int changedInstanceCount;
+
+	private GKInstance root1;
+	private GKInstance root2;
+
+	/**
+	 * Builds the two copies of a graph with the passed shape
+	 * @param breadth Number of children of each complex
+	 * @param depth Number of levels of complexes above the entities (at least 1)
+	 * @param sharedFraction Fraction (0 to 1) of children which re-use an instance already created at their level
+	 * @param changedFraction Fraction (0 to 1) of entities which have a different name in the second copy
+	 * @param seed Seed of the random choices, so the same parameters always build the same graph
+	 * @return SyntheticInstanceGraph with the two root instances
+	 */
+	static SyntheticInstanceGraph build(int breadth, int depth, double sharedFraction, double changedFraction, long seed)
+	{
+		SyntheticInstanceGraph graph = new SyntheticInstanceGraph(breadth, sharedFraction, changedFraction, seed);
+		for (int level = 0; level <= depth; level++)
+		{
+			graph.instancePairsByLevel.add(new ArrayList<>());
+		}
+
+		GKInstance[] rootPair = graph.createInstancePair(0, depth);
+		graph.root1 = rootPair[0];
+		graph.root2 = rootPair[1];
+
+		return graph;
+	}
+
+	private SyntheticInstanceGraph(int breadth, double sharedFraction, double changedFraction, long seed)
+	{
+		this.breadth = breadth;
+		this.sharedFraction = sharedFraction;
+		this.changedFraction = changedFraction;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Returns the root instance of the first copy
+	 * @return Root of the first graph
+	 */
+	GKInstance getRoot1()
+	{
+		return this.root1;
+	}
+
+	/**
+	 * Returns the root instance of the second copy
+	 * @return Root of the second graph
+	 */
+	GKInstance getRoot2()
+	{
+		return this.root2;
+	}
+
+	/**
+	 * Returns the number of distinct instances in each copy
+	 * @return Number of instances per graph
+	 */
+	int getInstanceCount()
+	{
+		return this.instanceCount;
+	}
+
+	/**
+	 * Returns the number of entities with a different name in the second copy
+	 * @return Number of changed instances
+	 */
+	int getChangedInstanceCount()
+	{
+		return this.changedInstanceCount;
+	}
+
+	private GKInstance[] createInstancePair(int level, int depth)
+	{
+		List<GKInstance[]> levelInstancePairs = this.instancePairsByLevel.get(level);
+		if (!levelInstancePairs.isEmpty() && this.random.nextDouble() < this.sharedFraction)
+		{
+			return levelInstancePairs.get(this.random.nextInt(levelInstancePairs.size()));
+		}
+
+		long dbId = this.nextDbId++;
+		GKInstance[] instancePair;
+		if (level == depth)
+		{
+			String name = "Entity " + dbId;
+			boolean changed = this.random.nextDouble() < this.changedFraction;
+			instancePair = new GKInstance[] {
+				createInstance(this.entityClass, dbId, name),
+				createInstance(this.entityClass, dbId, changed ? name + " (changed)" : name)
+			};
+			if (changed)
+			{
+				this.changedInstanceCount++;
+			}
+		}
+		else
+		{
+			String name = "Complex " + dbId;
+			instancePair = new GKInstance[] {
+				createInstance(this.complexClass, dbId, name),
+				createInstance(this.complexClass, dbId, name)
+			};
+			for (int i = 0; i < this.breadth; i++)
+			{
+				GKInstance[] childPair = createInstancePair(level + 1, depth);
+				instancePair[0].addAttributeValueNoCheck(ReactomeJavaConstants.hasComponent, childPair[0]);
+				instancePair[1].addAttributeValueNoCheck(ReactomeJavaConstants.hasComponent, childPair[1]);
+			}
+		}
+
+		levelInstancePairs.add(instancePair);
+		this.instanceCount++;
+
+		return instancePair;
+	}
+
+	private static GKInstance createInstance(GKSchemaClass schemaClass, long dbId, String name)
+	{
+		GKInstance instance = new GKInstance(schemaClass, dbId, null);
+		instance.setIsInflated(true);
+		instance.setAttributeValueNoCheck(DISPLAY_NAME, name);
+		instance.addAttributeValueNoCheck(ReactomeJavaConstants.name, name);
+
+		return instance;
+	}
+
+	private static GKSchemaClass createSchemaClass(String schemaClassName)
+	{
+		GKSchemaClass schemaClass = new GKSchemaClass(schemaClassName);
+		schemaClass.setName(schemaClassName);
+		addAttribute(schemaClass, DISPLAY_NAME, String.class, false);
+		addAttribute(schemaClass, ReactomeJavaConstants.name, String.class, true);
+		addAttribute(schemaClass, ReactomeJavaConstants.hasComponent, GKInstance.class, true);
+
+		return schemaClass;
+	}
+
+	private static void addAttribute(
+		GKSchemaClass schemaClass, String attributeName, Class<?> attributeType, boolean multiple
+	)
+	{
+		GKSchemaAttribute attribute = new GKSchemaAttribute(attributeName);
+		attribute.setName(attributeName);
+		attribute.setType(attributeType);
+		attribute.setMultiple(multiple);
+		attribute.setOrigin(schemaClass);
+		attribute.addSchemaClass(schemaClass);
+		schemaClass.addAttribute(attribute);
+	}
+}
@@ -0,0 +1,306 @@
+package org.reactome.util.compare;
+
+import static org.reactome.util.compare.AttributeProcessor.isAttributeContainingInstances;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.GKInstance;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+import org.reactome.util.compare.AttributeProcessor.AttributeRelationshipType;
+
+/**
+ * Loads, ahead of a comparison by the DBObjectComparer class, the attribute (and optionally referrer) values the
+ * comparison will need.  Rather than letting each instance lazily load each of its attributes (one SQL query per
+ * instance per attribute), the instances at each level of recursion are grouped by database and schema class and
+ * their values are loaded with one batched query per attribute.  The instance values found at one level become the
+ * instances loaded at the next, so the number of queries depends on the recursion depth and schema rather than on the
+ * number of instances compared.
+ *
+ * Values are prefetched for all of the instances passed at once, so the instances of every pair to be compared
+ * should be passed together rather than pair by pair.  When a configuration prefetches attribute values,
+ * DBObjectComparer's batch comparison does this for its pairs:
+<pre>
+	configuration.setPrefetchAttributes(true);
+	DBObjectComparer.compareInstances(instancesFromDatabase1, instancesFromDatabase2, reportSink, configuration);
+</pre>
+ * or, with separate comparisons of each pair:
+<pre>
+	AttributePrefetcher.prefetch(instancesFromDatabase1, configuration);
+	AttributePrefetcher.prefetch(instancesFromDatabase2, configuration);
+	for (...)
+	{
+		DBObjectComparer.compareInstances(instance1, instance2, reportSink, configuration);
+	}
+</pre>
+ */
+public class AttributePrefetcher
+{
+	private static final Logger logger = LogManager.getLogger();
+
+	/**
+	 * Loads the values the DBObjectComparer class will need when comparing the passed instances with the passed
+	 * configuration (i.e. the filtered attributes, and referrers if checked, of the instances and of the instances they
+	 * refer to, down to the maximum recursion depth).  Instance values which the configuration's traversal policy
+	 * compares by identity only, or limits to a lower depth, are only followed as far as the comparison will recurse
+	 * into them (a work budget is not anticipated).  Instances not retrieved via a MySQLAdaptor are skipped, as are
+	 * values which are already loaded.  A failure to load is logged and the comparison will fall back to loading the
+	 * values lazily.
+	 * @param rootInstances Instances which will be compared
+	 * @param configuration Settings which will be used for the comparison
+	 */
+	public static void prefetch(Collection<GKInstance> rootInstances, ComparisonConfiguration configuration)
+	{
+		Set<GKInstance> visitedInstances = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<GKInstance> currentLevel = getUnvisitedInstances(rootInstances, visitedInstances);
+
+		for (int depth = 0; depth <= configuration.getMaxRecursionDepth() && !currentLevel.isEmpty(); depth++)
+		{
+			Map<MySQLAdaptor, Map<SchemaClass, List<GKInstance>>> instancesByDatabaseAndClass =
+				groupByDatabaseAndSchemaClass(currentLevel);
+
+			loadAttributeValues(
+				instancesByDatabaseAndClass, AttributeRelationshipType.REGULAR_ATTRIBUTE, configuration
+			);
+			if (configuration.isCheckReferrers())
+			{
+				loadAttributeValues(
+					instancesByDatabaseAndClass, AttributeRelationshipType.REVERSE_ATTRIBUTE, configuration
+				);
+			}
+
+			// The instances at the maximum depth are compared, but their instance values are not recursed into
+			if (depth < configuration.getMaxRecursionDepth())
+			{
+				currentLevel = getUnvisitedInstances(
+					getInstanceValues(instancesByDatabaseAndClass, configuration, depth), visitedInstances
+				);
+			}
+		}
+	}
+
+	/**
+	 * Loads, with one batched query per attribute, the values of the attributes of the passed relationship type for
+	 * each group of instances sharing a database and schema class.
+	 * @param instancesByDatabaseAndClass Instances grouped by database and schema class
+	 * @param attributeRelationshipType Type of attributes to load (i.e. 'regular' or referrer attributes)
+	 * @param configuration Settings which will be used for the comparison
+	 */
+	private static void loadAttributeValues(
+		Map<MySQLAdaptor, Map<SchemaClass, List<GKInstance>>> instancesByDatabaseAndClass,
+		AttributeRelationshipType attributeRelationshipType, ComparisonConfiguration configuration
+	)
+	{
+		instancesByDatabaseAndClass.forEach((database, instancesBySchemaClass) -> {
+			// Referrers of instances from a database with a referrer index are looked up without querying
+			if (attributeRelationshipType.equals(AttributeRelationshipType.REVERSE_ATTRIBUTE) &&
+				configuration.getReferrerIndex(database) != null)
+			{
+				return;
+			}
+
+			instancesBySchemaClass.forEach((schemaClass, instances) -> {
+				for (SchemaAttribute attribute : getAttributes(schemaClass, attributeRelationshipType, configuration))
+				{
+					List<GKInstance> instancesToLoad = instances
+						.stream()
+						.filter(instance -> !isLoaded(instance, attribute, attributeRelationshipType))
+						.collect(Collectors.toList());
+
+					if (!instancesToLoad.isEmpty())
+					{
+						loadAttributeValues(database, instancesToLoad, attribute, attributeRelationshipType);
+					}
+				}
+			});
+		});
+	}
+
+	private static void loadAttributeValues(
+		MySQLAdaptor database, List<GKInstance> instances, SchemaAttribute attribute,
+		AttributeRelationshipType attributeRelationshipType
+	)
+	{
+		try
+		{
+			if (attributeRelationshipType.equals(AttributeRelationshipType.REGULAR_ATTRIBUTE))
+			{
+				database.loadInstanceAttributeValues(instances, attribute);
+			}
+			else
+			{
+				database.loadInstanceReverseAttributeValues(instances, attribute);
+			}
+		}
+		catch (Exception e)
+		{
+			logger.warn("Unable to prefetch {} '{}' for {} instances from {}",
+				attributeRelationshipType, attribute.getName(), instances.size(), database.getDBName(), e
+			);
+		}
+	}
+
+	/**
+	 * Returns the instance values (and referrers, if checked) of the passed instances which the comparison will
+	 * recurse into.
+	 * @param instancesByDatabaseAndClass Instances, grouped by database and schema class, whose values have been loaded
+	 * @param configuration Settings which will be used for the comparison
+	 * @param depth Depth of recursion at which the passed instances are compared
+	 * @return List of instances referred to by (or referring to) the passed instances
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<GKInstance> getInstanceValues(
+		Map<MySQLAdaptor, Map<SchemaClass, List<GKInstance>>> instancesByDatabaseAndClass,
+		ComparisonConfiguration configuration, int depth
+	)
+	{
+		TraversalPolicy traversalPolicy = configuration.getTraversalPolicy();
+		List<GKInstance> instanceValues = new ArrayList<>();
+		for (Map<SchemaClass, List<GKInstance>> instancesBySchemaClass : instancesByDatabaseAndClass.values())
+		{
+			for (Map.Entry<SchemaClass, List<GKInstance>> entry : instancesBySchemaClass.entrySet())
+			{
+				for (AttributeRelationshipType attributeRelationshipType : getRelationshipTypes(configuration))
+				{
+					for (SchemaAttribute attribute :
+						getAttributes(entry.getKey(), attributeRelationshipType, configuration))
+					{
+						if (!isAttributeContainingInstances(attribute) ||
+							traversalPolicy != null && traversalPolicy.isIdentityOnlyAttribute(attribute.getName()))
+						{
+							continue;
+						}
+
+						for (GKInstance instance : entry.getValue())
+						{
+							try
+							{
+								Collection<GKInstance> values =
+									attributeRelationshipType.equals(AttributeRelationshipType.REGULAR_ATTRIBUTE) ?
+									(Collection<GKInstance>) instance.getAttributeValuesList(attribute.getName()) :
+									configuration.getReferrers(instance, attribute.getName());
+
+								if (values != null)
+								{
+									values
+										.stream()
+										.filter(value -> isRecursedInto(value, attribute, depth, configuration))
+										.forEach(instanceValues::add);
+								}
+							}
+							catch (Exception e)
+							{
+								logger.warn("Unable to get {} '{}' of {}",
+									attributeRelationshipType, attribute.getName(), instance, e
+								);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		return instanceValues;
+	}
+
+	/**
+	 * Returns <code>true</code> if the comparison will recurse into the passed value of the passed attribute of an
+	 * instance compared at the passed depth, i.e. the depth is below the limit the configuration's traversal policy
+	 * sets for the attribute and the value's schema class; <code>false</code> otherwise
+	 */
+	private static boolean isRecursedInto(
+		GKInstance value, SchemaAttribute attribute, int depth, ComparisonConfiguration configuration
+	)
+	{
+		TraversalPolicy traversalPolicy = configuration.getTraversalPolicy();
+		if (value == null)
+		{
+			return false;
+		}
+		if (traversalPolicy == null)
+		{
+			return true;
+		}
+
+		return depth < traversalPolicy.getMaxDepth(
+			attribute.getName(), value.getSchemClass(), configuration.getMaxRecursionDepth()
+		);
+	}
+
+	private static List<GKInstance> getUnvisitedInstances(
+		Collection<GKInstance> instances, Set<GKInstance> visitedInstances
+	)
+	{
+		return instances
+			.stream()
+			.filter(instance -> instance != null && !isInstanceEdit(instance))
+			.filter(visitedInstances::add)
+			.collect(Collectors.toList());
+	}
+
+	private static Map<MySQLAdaptor, Map<SchemaClass, List<GKInstance>>> groupByDatabaseAndSchemaClass(
+		List<GKInstance> instances
+	)
+	{
+		Map<MySQLAdaptor, Map<SchemaClass, List<GKInstance>>> instancesByDatabaseAndClass = new IdentityHashMap<>();
+		for (GKInstance instance : instances)
+		{
+			if (!(instance.getDbAdaptor() instanceof MySQLAdaptor))
+			{
+				continue;
+			}
+
+			instancesByDatabaseAndClass
+				.computeIfAbsent((MySQLAdaptor) instance.getDbAdaptor(), k -> new LinkedHashMap<>())
+				.computeIfAbsent(instance.getSchemClass(), k -> new ArrayList<>())
+				.add(instance);
+		}
+
+		return instancesByDatabaseAndClass;
+	}
+
+	private static List<SchemaAttribute> getAttributes(
+		SchemaClass schemaClass, AttributeRelationshipType attributeRelationshipType,
+		ComparisonConfiguration configuration
+	)
+	{
+		return AttributeProcessor.filterAttributes(
+			AttributeProcessor.getAttributes(schemaClass, attributeRelationshipType),
+			configuration.getAttributeNameFilter()
+		);
+	}
+
+	private static List<AttributeRelationshipType> getRelationshipTypes(ComparisonConfiguration configuration)
+	{
+		return configuration.isCheckReferrers() ?
+			Arrays.asList(AttributeRelationshipType.values()) :
+			Collections.singletonList(AttributeRelationshipType.REGULAR_ATTRIBUTE);
+	}
+
+	private static boolean isLoaded(
+		GKInstance instance, SchemaAttribute attribute, AttributeRelationshipType attributeRelationshipType
+	)
+	{
+		return attributeRelationshipType.equals(AttributeRelationshipType.REGULAR_ATTRIBUTE) ?
+			instance.isAttributeValueLoaded(attribute) :
+			instance.isRefererValueLoaded(attribute);
+	}
+
+	private static boolean isInstanceEdit(GKInstance instance)
+	{
+		return instance.getSchemClass().getName().equals(ReactomeJavaConstants.InstanceEdit);
+	}
+}
@@ -2,6 +2,7 @@ package org.reactome.util.compare;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -22,8 +23,20 @@ import org.gk.schema.SchemaClass;
  */
 class AttributeProcessor
 {
-	private static Map<String, Map<AttributeRelationshipType, List<SchemaAttribute>>>
-		schemaClassToAttributesMap = new ConcurrentHashMap<>();
+	// SchemaClass objects have identity equality, so each schema class (rather than each class name) is a key
+	private static Map<SchemaClass, SchemaClassAttributes> schemaClassToAttributes = new ConcurrentHashMap<>();
+
+	/*
+	 * Used for filtering out attributes that you don't want to compare because they will
+	 * probably create too much noise if you do.
+	 */
+	private static final Predicate<SchemaAttribute> DEFAULT_ATTRIBUTE_NAME_FILTER = attribute ->
+		!attribute.getName().equals(ReactomeJavaConstants.DB_ID) &&
+		!attribute.getName().equals(ReactomeJavaConstants.dateTime) &&
+		!attribute.getName().equals(ReactomeJavaConstants.modified) &&
+		!attribute.getName().equals(ReactomeJavaConstants.created);
+
+	private static final ComparisonPlans DEFAULT_COMPARISON_PLANS = new ComparisonPlans(DEFAULT_ATTRIBUTE_NAME_FILTER);
 
 	/**
 	 * Returns the attributes associated, via the passed attribute relationship type, with the passed schema class.
@@ -33,28 +46,31 @@ class AttributeProcessor
 	 * @return List of SchemaAttribute objects associated, via the passed attribute relationship type, with the passed
 	 * schema class
 	 */
-	@SuppressWarnings("unchecked")
 	static List<SchemaAttribute> getAttributes(
 		SchemaClass schemaClass, AttributeRelationshipType attributeRelationshipType
 	)
 	{
-		List<SchemaAttribute> attributes =
-			schemaClassToAttributesMap
-				.computeIfAbsent(schemaClass.getName(), k -> new ConcurrentHashMap<>())
-				.computeIfAbsent(attributeRelationshipType, k -> new ArrayList<>());
-
-		if (attributes.isEmpty())
+		// A plain get first, since computeIfAbsent locks even when the value is present (in Java 8)
+		SchemaClassAttributes attributes = schemaClassToAttributes.get(schemaClass);
+		if (attributes == null)
 		{
-			attributes = attributeRelationshipType.equals(AttributeRelationshipType.REGULAR_ATTRIBUTE) ?
-				getDistinctSchemaAttributes(schemaClass.getAttributes()) :
-				getDistinctSchemaAttributes(schemaClass.getReferers());
-
-			schemaClassToAttributesMap
-				.computeIfAbsent(schemaClass.getName(), k -> new ConcurrentHashMap<>())
-				.put(attributeRelationshipType, attributes);
+			attributes = schemaClassToAttributes.computeIfAbsent(schemaClass, SchemaClassAttributes::new);
 		}
 
-		return attributes;
+		return attributes.get(attributeRelationshipType);
+	}
+
+	/**
+	 * Returns a cache of the comparison plans for the passed filter.  The plans of the default filter are shared by all
+	 * callers; the plans of a custom filter are held by the returned cache, which should be kept by the owner of the
+	 * filter (e.g. the ComparisonConfiguration) and re-used for each comparison.
+	 * @param attributeNameFilter Predicate value used to determine which attributes are compared or <code>null</code>
+	 * to use the default filter
+	 * @return ComparisonPlans of the filter
+	 */
+	static ComparisonPlans getComparisonPlans(Predicate<? super SchemaAttribute> attributeNameFilter)
+	{
+		return attributeNameFilter != null ? new ComparisonPlans(attributeNameFilter) : DEFAULT_COMPARISON_PLANS;
 	}
 
 	/**
@@ -124,15 +140,79 @@ class AttributeProcessor
 	 */
 	private static Predicate<? super SchemaAttribute> getDefaultAttributeNameFilter()
 	{
-		/*
-		 * Used for filtering out attributes that you don't want to compare because they will
-		 * probably create too much noise if you do.
+		return DEFAULT_ATTRIBUTE_NAME_FILTER;
+	}
+
+	/**
+	 * Holds the distinct attributes and referrer attributes of a schema class.  Both are computed once, when the holder
+	 * is created (atomically, by the cache's computeIfAbsent), and never change afterwards, so a class with no
+	 * (referrer) attributes is cached like any other and concurrent callers never compute the same class twice.
+	 */
+	private static class SchemaClassAttributes
+	{
+		private final List<SchemaAttribute> attributes;
+		private final List<SchemaAttribute> referrerAttributes;
+
+		@SuppressWarnings("unchecked")
+		private SchemaClassAttributes(SchemaClass schemaClass)
+		{
+			this.attributes = Collections.unmodifiableList(
+				getDistinctSchemaAttributes(safeCollection(schemaClass.getAttributes()))
+			);
+			this.referrerAttributes = Collections.unmodifiableList(
+				getDistinctSchemaAttributes(safeCollection(schemaClass.getReferers()))
+			);
+		}
+
+		private List<SchemaAttribute> get(AttributeRelationshipType attributeRelationshipType)
+		{
+			return attributeRelationshipType.equals(AttributeRelationshipType.REGULAR_ATTRIBUTE) ?
+				this.attributes :
+				this.referrerAttributes;
+		}
+
+		private static Collection<SchemaAttribute> safeCollection(Collection<SchemaAttribute> schemaAttributes)
+		{
+			return schemaAttributes != null ? schemaAttributes : Collections.emptyList();
+		}
+	}
+
+	/**
+	 * Holds the comparison plans of one attribute filter: for each schema class and attribute relationship type, the
+	 * attributes associated with the class via that relationship type which pass the filter.  A plan is compiled once
+	 * and then shared; looking up a compiled plan takes no lock, so parallel comparisons do not contend for it.
+	 */
+	static class ComparisonPlans
+	{
+		private final Predicate<? super SchemaAttribute> attributeNameFilter;
+		private final Map<ComparisonPlan.Key, ComparisonPlan> keyToComparisonPlan = new ConcurrentHashMap<>();
+
+		private ComparisonPlans(Predicate<? super SchemaAttribute> attributeNameFilter)
+		{
+			this.attributeNameFilter = attributeNameFilter;
+		}
+
+		/**
+		 * Returns the comparison plan for instances of the passed schema class
+		 * @param schemaClass SchemaClass for which to retrieve the plan
+		 * @param attributeRelationshipType Type of attributes to compare (i.e. 'regular' or referrer attributes)
+		 * @return ComparisonPlan for the schema class
 		 */
-		return attribute ->
-			!attribute.getName().equals(ReactomeJavaConstants.DB_ID) &&
-			!attribute.getName().equals(ReactomeJavaConstants.dateTime) &&
-			!attribute.getName().equals(ReactomeJavaConstants.modified) &&
-			!attribute.getName().equals(ReactomeJavaConstants.created);
+		ComparisonPlan get(SchemaClass schemaClass, AttributeRelationshipType attributeRelationshipType)
+		{
+			ComparisonPlan.Key key = new ComparisonPlan.Key(schemaClass, attributeRelationshipType);
+			// A plain get first, since computeIfAbsent locks even when the value is present (in Java 8)
+			ComparisonPlan comparisonPlan = this.keyToComparisonPlan.get(key);
+			if (comparisonPlan == null)
+			{
+				comparisonPlan = this.keyToComparisonPlan.computeIfAbsent(key, k -> new ComparisonPlan(
+					filterAttributes(getAttributes(schemaClass, attributeRelationshipType), this.attributeNameFilter),
+					attributeRelationshipType
+				));
+			}
+
+			return comparisonPlan;
+		}
 	}
 
 	/**
@@ -0,0 +1,479 @@
+package org.reactome.util.compare;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.gk.model.GKInstance;
+import org.gk.model.PersistenceAdaptor;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+import org.reactome.util.compare.AttributeProcessor.AttributeRelationshipType;
+import org.reactome.util.compare.AttributeProcessor.ComparisonPlans;
+
+/**
+ * Holds the settings used by the DBObjectComparer class when comparing two instances (e.g. how deep to recurse,
+ * which attributes to compare, and when to stop comparing).  A single configuration object can be re-used for any
+ * number of comparisons.
+ */
+public class ComparisonConfiguration
+{
+	public static final int DEFAULT_MAX_RECURSION_DEPTH = 5;
+	public static final int UNLIMITED_DIFFERENCE_BUDGET = Integer.MAX_VALUE;
+
+	private int maxRecursionDepth = DEFAULT_MAX_RECURSION_DEPTH;
+	private Predicate<? super SchemaAttribute> attributeNameFilter;
+	private ComparisonPlans comparisonPlans = AttributeProcessor.getComparisonPlans(null);
+	private boolean checkReferrers = false;
+	private int differenceBudget = UNLIMITED_DIFFERENCE_BUDGET;
+	private boolean prefetchAttributes = false;
+	private InstanceFingerprinter fingerprinter;
+	private ValueMatching valueMatching = ValueMatching.POSITIONAL;
+	private StringNormalization stringNormalization = StringNormalization.NONE;
+	private TraversalPolicy traversalPolicy;
+	private final Map<PersistenceAdaptor, ReferrerIndex> databaseToReferrerIndex = new IdentityHashMap<>();
+
+	/**
+	 * Retrieves the maximum depth of recursion allowed when comparing instance values
+	 * @return Maximum depth of recursion (5 by default)
+	 */
+	public int getMaxRecursionDepth()
+	{
+		return this.maxRecursionDepth;
+	}
+
+	/**
+	 * Sets the maximum depth of recursion allowed when comparing instance values.  Normally a depth of 2 or 3 is
+	 * probably sufficient.
+	 * @param maxRecursionDepth Maximum depth of recursion
+	 */
+	public void setMaxRecursionDepth(int maxRecursionDepth)
+	{
+		this.maxRecursionDepth = maxRecursionDepth;
+	}
+
+	/**
+	 * Retrieves the custom Predicate used to filter the attributes compared
+	 * @return Custom attribute filter or <code>null</code> if the default filter (which ignores "DB_ID", "dateTime",
+	 * "modified", and "created") is used
+	 */
+	public Predicate<? super SchemaAttribute> getAttributeNameFilter()
+	{
+		return this.attributeNameFilter;
+	}
+
+	/**
+	 * Sets the custom Predicate used to filter the attributes compared
+	 * @param attributeNameFilter Custom attribute filter or <code>null</code> to use the default filter (which ignores
+	 * "DB_ID", "dateTime", "modified", and "created")
+	 */
+	public void setAttributeNameFilter(Predicate<? super SchemaAttribute> attributeNameFilter)
+	{
+		this.attributeNameFilter = attributeNameFilter;
+		this.comparisonPlans = AttributeProcessor.getComparisonPlans(attributeNameFilter);
+
+		// Fingerprints computed with the previous filter no longer match what is compared
+		if (isFingerprinting())
+		{
+			this.fingerprinter = new InstanceFingerprinter(this.comparisonPlans, this.stringNormalization);
+		}
+	}
+
+	/**
+	 * Retrieves if referring instances are also checked for differences
+	 * @return <code>true</code> if referrer attributes are compared; <code>false</code> otherwise
+	 */
+	public boolean isCheckReferrers()
+	{
+		return this.checkReferrers;
+	}
+
+	/**
+	 * Sets if referring instances should also be checked for differences.  They will be followed to the same recursion
+	 * depth as regular attributes. Using this with a high maximum recursion depth could lead to a very long execution
+	 * time. Be careful!!
+	 * @param checkReferrers <code>true</code> if referrer attributes should be compared; <code>false</code> otherwise
+	 */
+	public void setCheckReferrers(boolean checkReferrers)
+	{
+		this.checkReferrers = checkReferrers;
+	}
+
+	/**
+	 * Retrieves the number of differences after which a comparison stops
+	 * @return Number of differences after which a comparison stops ({@link #UNLIMITED_DIFFERENCE_BUDGET} by default)
+	 */
+	public int getDifferenceBudget()
+	{
+		return this.differenceBudget;
+	}
+
+	/**
+	 * Sets the number of differences after which a comparison stops.  Once the budget is reached, no further
+	 * attributes or values are compared, so the count returned will be the budget (i.e. "at least this many
+	 * differences").  A budget of 1 answers "are these instances identical?" as soon as the first difference is found.
+	 * @param differenceBudget Number of differences after which to stop (must be at least 1)
+	 * @throws IllegalArgumentException Thrown if the budget is less than 1
+	 */
+	public void setDifferenceBudget(int differenceBudget)
+	{
+		if (differenceBudget < 1)
+		{
+			throw new IllegalArgumentException("Difference budget must be at least 1, but was " + differenceBudget);
+		}
+
+		this.differenceBudget = differenceBudget;
+	}
+
+	/**
+	 * Retrieves if attribute values are loaded in batches before comparing many pairs of instances
+	 * @return <code>true</code> if values are prefetched; <code>false</code> otherwise
+	 */
+	public boolean isPrefetchAttributes()
+	{
+		return this.prefetchAttributes;
+	}
+
+	/**
+	 * Sets if the attribute values needed to compare many pairs of instances (with DBObjectComparer's
+	 * {@link DBObjectComparer#compareInstances(java.util.List, java.util.List, DiffReportSink,
+	 * ComparisonConfiguration) batch comparison}, as the {@link InstanceMatcher} and {@link IncrementalDiff} classes
+	 * use) should be loaded in batches (by the {@link AttributePrefetcher}) for all of the pairs before the first
+	 * comparison, rather than lazily one instance and attribute at a time.  Comparisons of a single pair do not
+	 * prefetch; to prefetch for them, call {@link AttributePrefetcher#prefetch(Collection, ComparisonConfiguration)}
+	 * with all of their instances first.
+	 * @param prefetchAttributes <code>true</code> if values should be prefetched; <code>false</code> otherwise
+	 */
+	public void setPrefetchAttributes(boolean prefetchAttributes)
+	{
+		this.prefetchAttributes = prefetchAttributes;
+	}
+
+	/**
+	 * Retrieves if instances with equal fingerprints are skipped rather than compared attribute by attribute
+	 * @return <code>true</code> if fingerprints are used; <code>false</code> otherwise
+	 */
+	public boolean isFingerprinting()
+	{
+		return this.fingerprinter != null;
+	}
+
+	/**
+	 * Sets if instances (at any level of recursion) whose fingerprints are equal should be skipped rather than compared
+	 * attribute by attribute.  Computing fingerprints visits each sub-graph once, so this pays off when most compared
+	 * instances are unchanged.  Fingerprints cover 'regular' attributes only, so they are not used when referrers are
+	 * checked.
+	 * @param fingerprinting <code>true</code> if fingerprints should be used; <code>false</code> otherwise
+	 */
+	public void setFingerprinting(boolean fingerprinting)
+	{
+		this.fingerprinter = fingerprinting ?
+			new InstanceFingerprinter(this.comparisonPlans, this.stringNormalization) :
+			null;
+	}
+
+	/**
+	 * Retrieves the fingerprinter used for comparisons with this configuration (e.g. to compute a FingerprintIndex
+	 * with the same attribute filter)
+	 * @return InstanceFingerprinter or <code>null</code> if fingerprints are not used
+	 */
+	public InstanceFingerprinter getFingerprinter()
+	{
+		return this.fingerprinter;
+	}
+
+	/**
+	 * Retrieves how the values of two instances' multi-valued attributes are paired for comparison
+	 * @return ValueMatching mode ({@link ValueMatching#POSITIONAL} by default)
+	 */
+	public ValueMatching getValueMatching()
+	{
+		return this.valueMatching;
+	}
+
+	/**
+	 * Sets how the values of two instances' multi-valued attributes are paired for comparison
+	 * @param valueMatching ValueMatching mode
+	 */
+	public void setValueMatching(ValueMatching valueMatching)
+	{
+		this.valueMatching = valueMatching;
+	}
+
+	/**
+	 * Retrieves how String values are normalized before they are compared
+	 * @return StringNormalization mode ({@link StringNormalization#NONE} by default)
+	 */
+	public StringNormalization getStringNormalization()
+	{
+		return this.stringNormalization;
+	}
+
+	/**
+	 * Sets how String values are normalized before they are compared (e.g. to ignore differences in whitespace or
+	 * case)
+	 * @param stringNormalization StringNormalization mode
+	 */
+	public void setStringNormalization(StringNormalization stringNormalization)
+	{
+		this.stringNormalization = stringNormalization;
+
+		// Fingerprints computed with the previous normalization no longer match what is compared
+		if (isFingerprinting())
+		{
+			this.fingerprinter = new InstanceFingerprinter(this.comparisonPlans, stringNormalization);
+		}
+	}
+
+	/**
+	 * Retrieves the policy tuning how far instance values are followed beyond the maximum recursion depth
+	 * @return TraversalPolicy or <code>null</code> if all instance values are followed to the maximum recursion depth
+	 */
+	public TraversalPolicy getTraversalPolicy()
+	{
+		return this.traversalPolicy;
+	}
+
+	/**
+	 * Sets the policy tuning how far instance values are followed (e.g. depth limits per attribute or schema class,
+	 * attributes compared by identity only, a work budget).  Since fingerprints do not cover DB_IDs, instances with
+	 * equal fingerprints are not skipped if the policy has identity-only attributes or a limited work budget (past
+	 * which values are compared by DB_ID).
+	 * @param traversalPolicy TraversalPolicy or <code>null</code> to follow all instance values to the maximum
+	 * recursion depth
+	 */
+	public void setTraversalPolicy(TraversalPolicy traversalPolicy)
+	{
+		this.traversalPolicy = traversalPolicy;
+	}
+
+	/**
+	 * Registers a referrer index to be used, instead of querying the database, for the referrers of instances from the
+	 * index's database when referrers are checked.  Any index previously registered for the same database is replaced.
+	 * @param referrerIndex ReferrerIndex built for one of the databases compared
+	 */
+	public void addReferrerIndex(ReferrerIndex referrerIndex)
+	{
+		this.databaseToReferrerIndex.put(referrerIndex.getDatabase(), referrerIndex);
+	}
+
+	/**
+	 * Retrieves the referrer index registered for the passed database
+	 * @param database Database for which to get the referrer index
+	 * @return ReferrerIndex of the database or <code>null</code> if none has been registered
+	 */
+	public ReferrerIndex getReferrerIndex(PersistenceAdaptor database)
+	{
+		return this.databaseToReferrerIndex.get(database);
+	}
+
+	/**
+	 * Returns the instances referring to the passed instance via the attribute with the passed name, from the referrer
+	 * index of the instance's database if one is registered or from the instance itself otherwise.
+	 * @param instance Instance for which to get the referrers
+	 * @param attributeName Name of the attribute through which the referrers refer to the instance
+	 * @return Collection of referring instances (may be <code>null</code> if retrieved from the instance)
+	 * @throws Exception Thrown if the referrers can not be retrieved
+	 */
+	Collection<GKInstance> getReferrers(GKInstance instance, String attributeName) throws Exception
+	{
+		ReferrerIndex referrerIndex = getReferrerIndex(instance.getDbAdaptor());
+		if (referrerIndex != null)
+		{
+			return referrerIndex.getReferrers(instance, attributeName);
+		}
+
+		@SuppressWarnings("unchecked")
+		Collection<GKInstance> referrers = instance.getReferers(attributeName);
+		return referrers;
+	}
+
+	/**
+	 * Returns the comparison plan of the attribute filter for instances of the passed schema class.  The plans are held
+	 * by this configuration, so each is compiled once for as long as the filter is set.
+	 */
+	ComparisonPlan getComparisonPlan(SchemaClass schemaClass, AttributeRelationshipType attributeRelationshipType)
+	{
+		return this.comparisonPlans.get(schemaClass, attributeRelationshipType);
+	}
+
+	/**
+	 * Returns <code>true</code> if the passed number of differences has used up the difference budget;
+	 * <code>false</code> otherwise
+	 * @param differenceCount Number of differences found so far
+	 * @return <code>true</code> if no further comparison is needed; <code>false</code> otherwise
+	 */
+	boolean isDifferenceBudgetReached(int differenceCount)
+	{
+		return differenceCount >= this.differenceBudget;
+	}
+
+	/**
+	 * Represents the ways values of an attribute can be paired between two instances for comparison:
+	 *
+	 * POSITIONAL - values are sorted and compared index by index; if the number of values differs, the attribute
+	 * counts as 1 difference and its values are not compared
+	 * MULTISET - values are paired regardless of order (instance values by equal fingerprint, if fingerprints are used,
+	 * then by DB_ID; other values by equality, then as changed values) and each value without a counterpart counts as
+	 * 1 difference (reported as added or removed), even if the number of values differs
+	 */
+	public enum ValueMatching
+	{
+		POSITIONAL,
+		MULTISET
+	}
+
+	/**
+	 * Represents the ways String values can be normalized before they are compared:
+	 *
+	 * NONE - Strings are compared exactly
+	 * WHITESPACE - leading and trailing whitespace is ignored and runs of whitespace are treated as a single space
+	 * CASE - differences in case are ignored
+	 * WHITESPACE_AND_CASE - both of the above
+	 */
+	public enum StringNormalization
+	{
+		NONE(false, false),
+		WHITESPACE(true, false),
+		CASE(false, true),
+		WHITESPACE_AND_CASE(true, true);
+
+		private final boolean ignoringWhitespace;
+		private final boolean ignoringCase;
+
+		StringNormalization(boolean ignoringWhitespace, boolean ignoringCase)
+		{
+			this.ignoringWhitespace = ignoringWhitespace;
+			this.ignoringCase = ignoringCase;
+		}
+
+		/**
+		 * Returns <code>true</code> if the passed Strings are equal after normalization; <code>false</code> otherwise.
+		 * The Strings are compared character by character without creating normalized copies.
+		 * @param string1 First String to compare
+		 * @param string2 Second String to compare
+		 * @return <code>true</code> if the Strings are equal after normalization; <code>false</code> otherwise
+		 */
+		boolean equal(String string1, String string2)
+		{
+			if (!this.ignoringWhitespace)
+			{
+				return this.ignoringCase ? equalIgnoringCase(string1, string2) : string1.equals(string2);
+			}
+
+			int index1 = skipWhitespace(string1, 0);
+			int index2 = skipWhitespace(string2, 0);
+			while (index1 < string1.length() && index2 < string2.length())
+			{
+				char char1 = string1.charAt(index1);
+				char char2 = string2.charAt(index2);
+				boolean whitespace1 = Character.isWhitespace(char1);
+				boolean whitespace2 = Character.isWhitespace(char2);
+
+				if (whitespace1 || whitespace2)
+				{
+					// A run of whitespace only matches a run of whitespace, unless it is trailing (checked below)
+					if (whitespace1 != whitespace2)
+					{
+						return false;
+					}
+					index1 = skipWhitespace(string1, index1);
+					index2 = skipWhitespace(string2, index2);
+				}
+				else if (!charactersEqual(char1, char2))
+				{
+					return false;
+				}
+				else
+				{
+					index1++;
+					index2++;
+				}
+			}
+
+			return skipWhitespace(string1, index1) == string1.length() &&
+				skipWhitespace(string2, index2) == string2.length();
+		}
+
+		/**
+		 * Returns the normalized form of the passed String, such that two Strings are {@link #equal} exactly when
+		 * their normalized forms are equal (e.g. for use as a hash key)
+		 * @param string String to normalize
+		 * @return Normalized String
+		 */
+		String normalize(String string)
+		{
+			if (this == NONE)
+			{
+				return string;
+			}
+
+			StringBuilder normalizedString = new StringBuilder(string.length());
+			boolean pendingWhitespace = false;
+			for (int i = 0; i < string.length(); i++)
+			{
+				char character = string.charAt(i);
+				if (this.ignoringWhitespace && Character.isWhitespace(character))
+				{
+					pendingWhitespace = true;
+					continue;
+				}
+
+				if (pendingWhitespace && normalizedString.length() > 0)
+				{
+					normalizedString.append(' ');
+				}
+				pendingWhitespace = false;
+				normalizedString.append(this.ignoringCase ? foldCase(character) : character);
+			}
+
+			return normalizedString.toString();
+		}
+
+		private boolean charactersEqual(char char1, char char2)
+		{
+			if (char1 == char2)
+			{
+				return true;
+			}
+
+			return this.ignoringCase && foldCase(char1) == foldCase(char2);
+		}
+
+		// Characters which equalsIgnoreCase considers equal fold to the same character
+		private static char foldCase(char character)
+		{
+			return Character.toLowerCase(Character.toUpperCase(character));
+		}
+
+		private static boolean equalIgnoringCase(String string1, String string2)
+		{
+			if (string1.length() != string2.length())
+			{
+				return false;
+			}
+
+			for (int i = 0; i < string1.length(); i++)
+			{
+				if (foldCase(string1.charAt(i)) != foldCase(string2.charAt(i)))
+				{
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		private static int skipWhitespace(String string, int index)
+		{
+			int nextIndex = index;
+			while (nextIndex < string.length() && Character.isWhitespace(string.charAt(nextIndex)))
+			{
+				nextIndex++;
+			}
+
+			return nextIndex;
+		}
+	}
+}
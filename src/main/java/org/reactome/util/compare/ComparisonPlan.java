@@ -0,0 +1,280 @@
+package org.reactome.util.compare;
+
+import java.util.List;
+import java.util.Objects;
+
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+import org.reactome.util.compare.AttributeProcessor.AttributeRelationshipType;
+import org.reactome.util.compare.ComparisonConfiguration.StringNormalization;
+
+/**
+ * An immutable, precompiled description of how instances of one schema class are compared for one attribute
+ * relationship type and attribute filter: the filtered attributes, in comparison order, each with what is known about
+ * its values ahead of time.  Plans are compiled once by {@link AttributeProcessor.ComparisonPlans} so that the
+ * DBObjectComparer class can walk an array of descriptors for each pair of instances rather than re-filtering the
+ * schema class's attributes and re-checking each attribute's type for every value.
+ */
+class ComparisonPlan
+{
+	private final AttributeDescriptor[] attributeDescriptors;
+
+	/**
+	 * Compiles a plan for the passed (already filtered) attributes
+	 * @param attributes Attributes to compare, in comparison order
+	 * @param attributeRelationshipType Relationship of the attributes to the schema class (i.e. 'regular' or referrer
+	 * attributes)
+	 */
+	ComparisonPlan(List<SchemaAttribute> attributes, AttributeRelationshipType attributeRelationshipType)
+	{
+		this.attributeDescriptors = new AttributeDescriptor[attributes.size()];
+		for (int i = 0; i < attributes.size(); i++)
+		{
+			this.attributeDescriptors[i] = new AttributeDescriptor(attributes.get(i), attributeRelationshipType);
+		}
+	}
+
+	/**
+	 * Returns the descriptors of the attributes to compare, in comparison order.  The array is shared and must not be
+	 * modified.
+	 * @return Array of AttributeDescriptor objects
+	 */
+	AttributeDescriptor[] getAttributeDescriptors()
+	{
+		return this.attributeDescriptors;
+	}
+
+	/**
+	 * Describes one attribute to compare: the attribute itself, its relationship to the instances compared, whether its
+	 * values are instances (which are compared recursively) and how its other values are compared.
+	 */
+	static class AttributeDescriptor
+	{
+		private final SchemaAttribute attribute;
+		private final AttributeRelationshipType attributeRelationshipType;
+		private final boolean containingInstances;
+		private final ValueType valueType;
+		private final String description;
+
+		private AttributeDescriptor(SchemaAttribute attribute, AttributeRelationshipType attributeRelationshipType)
+		{
+			this.attribute = attribute;
+			this.attributeRelationshipType = attributeRelationshipType;
+			this.containingInstances = AttributeProcessor.isAttributeContainingInstances(attribute);
+			this.valueType = ValueType.of(attribute.getType());
+			this.description = attribute.getName() + " " + attributeRelationshipType;
+		}
+
+		SchemaAttribute getAttribute()
+		{
+			return this.attribute;
+		}
+
+		String getName()
+		{
+			return this.attribute.getName();
+		}
+
+		AttributeRelationshipType getAttributeRelationshipType()
+		{
+			return this.attributeRelationshipType;
+		}
+
+		/**
+		 * Returns <code>true</code> if the attribute's values are instances; <code>false</code> otherwise
+		 * @return <code>true</code> if the attribute holds instances; <code>false</code> otherwise
+		 */
+		boolean isContainingInstances()
+		{
+			return this.containingInstances;
+		}
+
+		/**
+		 * Returns the attribute name and relationship type (e.g. "hasComponent attribute") used in reports
+		 * @return Description of the attribute
+		 */
+		String getDescription()
+		{
+			return this.description;
+		}
+
+		/**
+		 * Returns the declared type of the attribute's values
+		 * @return ValueType of the attribute
+		 */
+		ValueType getValueType()
+		{
+			return this.valueType;
+		}
+
+		/**
+		 * Returns <code>true</code> if the passed (non-instance) values of this attribute are equal;
+		 * <code>false</code> otherwise.  Values are compared according to the attribute's declared type, with String
+		 * values normalized as configured.
+		 * @param value1 Value of the first instance
+		 * @param value2 Value of the second instance
+		 * @param stringNormalization How String values are normalized before they are compared
+		 * @return <code>true</code> if the values are equal; <code>false</code> otherwise
+		 */
+		boolean valuesEqual(Object value1, Object value2, StringNormalization stringNormalization)
+		{
+			if (value1 == value2)
+			{
+				return true;
+			}
+			if (value1 == null || value2 == null)
+			{
+				return false;
+			}
+
+			return this.valueType.equal(value1, value2, stringNormalization);
+		}
+
+		/**
+		 * Returns a key for the passed (non-instance) value such that two values have equal keys exactly when
+		 * {@link #valuesEqual} considers them equal (e.g. for grouping values in a hash map)
+		 * @param value Value of the attribute
+		 * @param stringNormalization How String values are normalized before they are compared
+		 * @return Key for the value
+		 */
+		Object getComparisonKey(Object value, StringNormalization stringNormalization)
+		{
+			if (value instanceof String && this.valueType == ValueType.STRING)
+			{
+				return stringNormalization.normalize((String) value);
+			}
+
+			return value;
+		}
+	}
+
+	/**
+	 * Represents the declared types of attribute values.  Values of the declared type are compared directly; values of
+	 * any other type (which the schema does not expect but an instance may still hold) are compared with their equals
+	 * method.
+	 */
+	enum ValueType
+	{
+		STRING(String.class)
+		{
+			@Override
+			boolean equalValuesOfType(Object value1, Object value2, StringNormalization stringNormalization)
+			{
+				return stringNormalization.equal((String) value1, (String) value2);
+			}
+		},
+		INTEGER(Integer.class)
+		{
+			@Override
+			boolean equalValuesOfType(Object value1, Object value2, StringNormalization stringNormalization)
+			{
+				return ((Integer) value1).intValue() == ((Integer) value2).intValue();
+			}
+		},
+		LONG(Long.class)
+		{
+			@Override
+			boolean equalValuesOfType(Object value1, Object value2, StringNormalization stringNormalization)
+			{
+				return ((Long) value1).longValue() == ((Long) value2).longValue();
+			}
+		},
+		FLOAT(Float.class)
+		{
+			@Override
+			boolean equalValuesOfType(Object value1, Object value2, StringNormalization stringNormalization)
+			{
+				// Same semantics as Float.equals (NaN equals NaN, 0.0 does not equal -0.0)
+				return Float.floatToIntBits((Float) value1) == Float.floatToIntBits((Float) value2);
+			}
+		},
+		BOOLEAN(Boolean.class)
+		{
+			@Override
+			boolean equalValuesOfType(Object value1, Object value2, StringNormalization stringNormalization)
+			{
+				return ((Boolean) value1).booleanValue() == ((Boolean) value2).booleanValue();
+			}
+		},
+		OTHER(Object.class)
+		{
+			@Override
+			boolean equalValuesOfType(Object value1, Object value2, StringNormalization stringNormalization)
+			{
+				return value1.equals(value2);
+			}
+		};
+
+		private final Class<?> valueClass;
+
+		ValueType(Class<?> valueClass)
+		{
+			this.valueClass = valueClass;
+		}
+
+		/**
+		 * Returns the ValueType for the passed declared attribute type
+		 * @param attributeType Declared type of an attribute's values (may be <code>null</code>)
+		 * @return ValueType matching the declared type or {@link #OTHER} if there is no specialized comparison for it
+		 */
+		static ValueType of(Class<?> attributeType)
+		{
+			for (ValueType valueType : values())
+			{
+				if (valueType != OTHER && valueType.valueClass.equals(attributeType))
+				{
+					return valueType;
+				}
+			}
+
+			return OTHER;
+		}
+
+		private boolean equal(Object value1, Object value2, StringNormalization stringNormalization)
+		{
+			if (this.valueClass.isInstance(value1) && this.valueClass.isInstance(value2))
+			{
+				return equalValuesOfType(value1, value2, stringNormalization);
+			}
+
+			return Objects.equals(value1, value2);
+		}
+
+		abstract boolean equalValuesOfType(Object value1, Object value2, StringNormalization stringNormalization);
+	}
+
+	/**
+	 * Key under which a compiled plan is cached for an attribute filter: a schema class (by identity) and a
+	 * relationship type
+	 */
+	static class Key
+	{
+		private final SchemaClass schemaClass;
+		private final AttributeRelationshipType attributeRelationshipType;
+
+		Key(SchemaClass schemaClass, AttributeRelationshipType attributeRelationshipType)
+		{
+			this.schemaClass = schemaClass;
+			this.attributeRelationshipType = attributeRelationshipType;
+		}
+
+		@Override
+		public boolean equals(Object other)
+		{
+			if (!(other instanceof Key))
+			{
+				return false;
+			}
+
+			Key otherKey = (Key) other;
+			return this.schemaClass == otherKey.schemaClass &&
+				this.attributeRelationshipType == otherKey.attributeRelationshipType;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * System.identityHashCode(this.schemaClass) + this.attributeRelationshipType.hashCode();
+		}
+	}
+}
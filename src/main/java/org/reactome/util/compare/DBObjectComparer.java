@@ -1,14 +1,19 @@
 package org.reactome.util.compare;
 
-import static org.reactome.util.compare.AttributeProcessor.isAttributeContainingInstances;
 import static org.reactome.util.general.CollectionUtils.safeList;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 import org.gk.model.GKInstance;
@@ -17,10 +22,14 @@ import org.gk.model.ReactomeJavaConstants;
 import org.gk.persistence.MySQLAdaptor;
 import org.gk.schema.SchemaAttribute;
 import org.reactome.util.compare.AttributeProcessor.AttributeRelationshipType;
+import org.reactome.util.compare.ComparisonConfiguration.StringNormalization;
+import org.reactome.util.compare.ComparisonConfiguration.ValueMatching;
+import org.reactome.util.compare.ComparisonPlan.AttributeDescriptor;
 
 /**
  * This class can be used to perform comparisons on any two DatabaseObjects across two different databases.
- * (It assumes that they have the same DB_ID).
+ * The instances are usually paired by DB_ID, but need not be (see {@link InstanceMatcher} for pairing them by a
+ * natural key such as their stable identifier).
  * @author sshorser
  * @author jweiser
  */
@@ -29,9 +38,11 @@ public class DBObjectComparer
 	private static Map<GKInstance, Map<SchemaAttribute, Map<AttributeRelationshipType, List<Object>>>>
 		instanceAttributeToValuesMap = new ConcurrentHashMap<>();
 
-	private static final int DEFAULT_MAX_RECURSION_DEPTH = 5;
+	private static final int DEFAULT_MAX_RECURSION_DEPTH = ComparisonConfiguration.DEFAULT_MAX_RECURSION_DEPTH;
 	private static final int DEFAULT_INSTANCES_DIFFERENCES_COUNT = 0;
 	private static final int DEFAULT_RECURSION_DEPTH = 0;
+	// Used when only the number of differences is of interest
+	private static final DiffReportSink DISCARDING_REPORT_SINK = reportText -> {};
 
 	/**
 	 * Compares two GKInstances.
@@ -103,8 +114,7 @@ public class DBObjectComparer
 		final Predicate<? super SchemaAttribute> customAttributeNameFilter = null;
 
 		return compareInstances(
-			instance1, instance2, stringBuilder, DEFAULT_INSTANCES_DIFFERENCES_COUNT,
-			DEFAULT_RECURSION_DEPTH, maxRecursionDepth, customAttributeNameFilter, checkReferrers
+			instance1, instance2, stringBuilder, maxRecursionDepth, customAttributeNameFilter, checkReferrers
 		);
 	}
 
@@ -141,32 +151,259 @@ Predicate&lt;? super SchemaAttribute&gt; attributeNameFilter = a -&gt; {
 	)
 	{
 		return compareInstances(
-			instance1, instance2, stringBuilder, DEFAULT_INSTANCES_DIFFERENCES_COUNT,
-			DEFAULT_RECURSION_DEPTH, maxRecursionDepth, customAttributeNameFilter, checkReferrers
+			instance1, instance2, new StringBuilderDiffReportSink(stringBuilder), maxRecursionDepth,
+			customAttributeNameFilter, checkReferrers
 		);
 	}
 
 	/**
-	 * Recursively compares two GKInstances.
+	 * Compares two GKInstances, sending the detailed report of differences to the passed DiffReportSink (e.g. a
+	 * {@link StreamingDiffReportWriter} to write the report incrementally to a file rather than keep it in memory).
 	 * @param instance1 The first instance
 	 * @param instance2 The second instance
-	 * @param stringBuilder A StringBuilder that will contain a detailed report of differences
-	 * @param diffCount The number of differences so far. Should start at 0.
-	 * @param recursionDepth The depth of the recursion so far. Should start at 0.
-	 * @param customAttributeNameFilter A custom Predicate that will be used to filter attribute names.
-	 * The default predicate looks like this:<pre>
-Predicate&lt;? super SchemaAttribute&gt; attributeNameFilter = a -&gt; {
-						return !a.getName().equals("DB_ID")
-							&amp;&amp; !a.getName().equals("dateTime")
-							&amp;&amp; !a.getName().equals("modified")
-							&amp;&amp; !a.getName().equals("created");
-					};
-	 </pre>
+	 * @param reportSink A DiffReportSink that will receive a detailed report of differences
+	 * @return The number of differences between the two instances.
+	 * A single-valued attribute that differs will count as 1 diff.
+	 * If the instances have different schema classes, that will count as 1 diff.
+	 * If a multi-valued attribute has a different number of elements between the two instances,
+	 * that will count as 1 diff and the elements will NOT be compared.
+	 */
+	public static int compareInstances(GKInstance instance1, GKInstance instance2, DiffReportSink reportSink)
+	{
+		final boolean checkReferrers = false;
+		// Given named constant for context in using this value as an argument
+		final Predicate<? super SchemaAttribute> customAttributeNameFilter = null;
+
+		return compareInstances(
+			instance1, instance2, reportSink, DEFAULT_MAX_RECURSION_DEPTH, customAttributeNameFilter, checkReferrers
+		);
+	}
+
+	/**
+	 * Compares two GKInstances, sending the detailed report of differences to the passed DiffReportSink (e.g. a
+	 * {@link StreamingDiffReportWriter} to write the report incrementally to a file rather than keep it in memory).
+	 * @param instance1 The first instance
+	 * @param instance2 The second instance
+	 * @param reportSink A DiffReportSink that will receive a detailed report of differences
+	 * @param maxRecursionDepth The maximum depth of recursion that will be allowed. Normally a depth of 2 or 3 is
+	 * probably sufficient.
+	 * @param customAttributeNameFilter A custom Predicate that will be used to filter attribute names. The default
+	 * predicate filters out "DB_ID", "dateTime", "modified" and "created" (see
+	 * {@link #compareInstances(GKInstance, GKInstance, StringBuilder, int, Predicate, boolean)}).
 	 * @param checkReferrers Should referring instances also be checked? If <b>true</b>, then referring attributes
 	 * will <em>also</em> be checked for differences.  They will be followed to the same recursion depth as regular
 	 * attributes. Using this with a high maxRecursionDepth could lead to a very long execution time. Be careful!!
-	 * You might also want to use a custom predicate to filter out attributes that could lead to a cyclical difference
-	 * check.  See the customAttributeNameFilter parameter above for the default.
+	 * @return The number of differences between the two instances.
+	 * A single-valued attribute that differs will count as 1 diff.
+	 * If the instances have different schema classes, that will count as 1 diff.
+	 * If a multi-valued attribute has a different number of elements between the two instances,
+	 * that will count as 1 diff and the elements will NOT be compared.
+	 */
+	public static int compareInstances(
+		GKInstance instance1, GKInstance instance2, DiffReportSink reportSink, int maxRecursionDepth,
+		Predicate<? super SchemaAttribute> customAttributeNameFilter, boolean checkReferrers
+	)
+	{
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+		configuration.setMaxRecursionDepth(maxRecursionDepth);
+		configuration.setAttributeNameFilter(customAttributeNameFilter);
+		configuration.setCheckReferrers(checkReferrers);
+
+		return compareInstances(instance1, instance2, reportSink, configuration);
+	}
+
+	/**
+	 * Compares two GKInstances using the passed configuration, sending the detailed report of differences to the
+	 * passed DiffReportSink.  If the configuration has a difference budget, the comparison stops as soon as the budget
+	 * is reached and the budget is returned as the number of differences.
+	 * @param instance1 The first instance
+	 * @param instance2 The second instance
+	 * @param reportSink A DiffReportSink that will receive a detailed report of differences
+	 * @param configuration Settings for the comparison (recursion depth, attribute filter, checking of referrers,
+	 * difference budget)
+	 * @return The number of differences between the two instances (at most the configuration's difference budget).
+	 * A single-valued attribute that differs will count as 1 diff.
+	 * If the instances have different schema classes, that will count as 1 diff.
+	 * If a multi-valued attribute has a different number of elements between the two instances,
+	 * that will count as 1 diff and the elements will NOT be compared.
+	 * @throws IllegalArgumentException Thrown if the configuration checks referrers and either instance was read from
+	 * a {@link Snapshot}, which holds no referrers
+	 */
+	public static int compareInstances(
+		GKInstance instance1, GKInstance instance2, DiffReportSink reportSink, ComparisonConfiguration configuration
+	)
+	{
+		checkReferrersAvailable(instance1, configuration);
+		checkReferrersAvailable(instance2, configuration);
+
+		reportSink.beginInstanceComparison(instance1, instance2);
+
+		int differenceCount;
+		try
+		{
+			differenceCount = compareInstances(
+				instance1, instance2, reportSink, configuration, DEFAULT_INSTANCES_DIFFERENCES_COUNT,
+				DEFAULT_RECURSION_DEPTH
+			);
+		}
+		catch (RuntimeException | Error e)
+		{
+			// The comparison never ends, so the sink must not be left collecting report text for it
+			reportSink.abortInstanceComparison(instance1, instance2);
+			throw e;
+		}
+
+		reportSink.endInstanceComparison(instance1, instance2, differenceCount);
+
+		return differenceCount;
+	}
+
+	/**
+	 * Compares each instance of the first passed list with the instance at the same position of the second, using the
+	 * passed configuration and sending the detailed report of differences to the passed DiffReportSink.  If the
+	 * configuration prefetches attribute values, the values needed by all of the comparisons are loaded before the
+	 * first one (see {@link AttributePrefetcher}), so the number of queries depends on the recursion depth rather than
+	 * on the number of pairs compared.
+	 * @param instances1 The first instance of each pair
+	 * @param instances2 The second instance of each pair
+	 * @param reportSink A DiffReportSink that will receive a detailed report of differences
+	 * @param configuration Settings for the comparisons
+	 * @return The number of differences between the instances of each pair, in the order of the passed lists
+	 * @throws IllegalArgumentException Thrown if the lists have different sizes or if the configuration checks
+	 * referrers and any instance was read from a {@link Snapshot}
+	 */
+	public static int[] compareInstances(
+		List<GKInstance> instances1, List<GKInstance> instances2, DiffReportSink reportSink,
+		ComparisonConfiguration configuration
+	)
+	{
+		if (instances1.size() != instances2.size())
+		{
+			throw new IllegalArgumentException(
+				"Lists of instances to compare must have the same size, but had " + instances1.size() + " and " +
+				instances2.size() + " instances"
+			);
+		}
+		for (int i = 0; i < instances1.size(); i++)
+		{
+			checkReferrersAvailable(instances1.get(i), configuration);
+			checkReferrersAvailable(instances2.get(i), configuration);
+		}
+
+		if (configuration.isPrefetchAttributes())
+		{
+			AttributePrefetcher.prefetch(instances1, configuration);
+			AttributePrefetcher.prefetch(instances2, configuration);
+		}
+
+		int[] differenceCounts = new int[instances1.size()];
+		for (int i = 0; i < differenceCounts.length; i++)
+		{
+			differenceCounts[i] = compareInstances(instances1.get(i), instances2.get(i), reportSink, configuration);
+		}
+
+		return differenceCounts;
+	}
+
+	/**
+	 * Reports an instance which has no counterpart in the other database as a top-level comparison of the instance
+	 * with <code>null</code>, so DiffReportSinks count it like any other difference.  The missing instance counts as
+	 * 1 diff, recorded with a <code>null</code> attribute name.
+	 * @param instance1 The instance of the first database or <code>null</code> if the instance is only in the second
+	 * @param instance2 The instance of the second database or <code>null</code> if the instance is only in the first
+	 * @param message Report text describing why the instance has no counterpart (without a line separator)
+	 * @param reportSink A DiffReportSink that will receive the report
+	 */
+	static void reportUnpairedInstance(
+		GKInstance instance1, GKInstance instance2, String message, DiffReportSink reportSink
+	)
+	{
+		final int unpairedInstanceDifferenceCount = 1;
+
+		reportSink.beginInstanceComparison(instance1, instance2);
+		try
+		{
+			reportSink.append(message + System.lineSeparator());
+			reportSink.recordDifference(
+				instance1, instance2, null, false, DEFAULT_RECURSION_DEPTH, unpairedInstanceDifferenceCount
+			);
+		}
+		catch (RuntimeException | Error e)
+		{
+			reportSink.abortInstanceComparison(instance1, instance2);
+			throw e;
+		}
+		reportSink.endInstanceComparison(instance1, instance2, unpairedInstanceDifferenceCount);
+	}
+
+	/**
+	 * Throws an IllegalArgumentException if the passed configuration checks referrers but the passed instance has none
+	 * to look up.  A snapshot holds only the instances' own attribute values, and every instance reached from a
+	 * top-level instance of a snapshot is of the same snapshot, so checking the top-level instances is enough.
+	 */
+	private static void checkReferrersAvailable(GKInstance instance, ComparisonConfiguration configuration)
+	{
+		if (configuration.isCheckReferrers() && instance instanceof SnapshotInstance)
+		{
+			throw new IllegalArgumentException(
+				"Referrers can not be checked for " + instance + ": snapshot " +
+				((SnapshotInstance) instance).getSnapshot().getName() + " holds no referrers"
+			);
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if no differences are found between two GKInstances (using the default attribute
+	 * filter and recursion depth, without checking referrers).  The comparison stops at the first difference found.
+	 * @param instance1 The first instance
+	 * @param instance2 The second instance
+	 * @return <code>true</code> if the instances have no differences; <code>false</code> otherwise
+	 */
+	public static boolean isIdentical(GKInstance instance1, GKInstance instance2)
+	{
+		final int noDifferencesAllowed = 0;
+
+		return !exceedsDifferenceThreshold(instance1, instance2, noDifferencesAllowed);
+	}
+
+	/**
+	 * Returns <code>true</code> if there are more than the passed number of differences between two GKInstances (using
+	 * the default attribute filter and recursion depth, without checking referrers).  The comparison stops as soon as
+	 * the threshold is exceeded.
+	 * @param instance1 The first instance
+	 * @param instance2 The second instance
+	 * @param differenceThreshold Number of differences the instances may have without exceeding the threshold (a
+	 * negative threshold is always exceeded)
+	 * @return <code>true</code> if the instances have more differences than the threshold; <code>false</code> otherwise
+	 */
+	public static boolean exceedsDifferenceThreshold(
+		GKInstance instance1, GKInstance instance2, int differenceThreshold
+	)
+	{
+		if (differenceThreshold < 0)
+		{
+			return true;
+		}
+
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+		// A budget one past the largest threshold would overflow, so that threshold is checked without a budget
+		if (differenceThreshold < ComparisonConfiguration.UNLIMITED_DIFFERENCE_BUDGET)
+		{
+			configuration.setDifferenceBudget(differenceThreshold + 1);
+		}
+
+		return compareInstances(instance1, instance2, DISCARDING_REPORT_SINK, configuration) > differenceThreshold;
+	}
+
+	/**
+	 * Recursively compares two GKInstances.
+	 * @param instance1 The first instance
+	 * @param instance2 The second instance
+	 * @param reportSink A DiffReportSink that will receive a detailed report of differences
+	 * @param configuration Settings for the comparison (recursion depth, attribute filter, checking of referrers,
+	 * difference budget)
+	 * @param diffCount The number of differences so far. Should start at 0.
+	 * @param recursionDepth The depth of the recursion so far. Should start at 0.
 	 * @return The number of differences between the two instances.
 	 * A single-valued attribute that differs will count as 1 diff.
 	 * If the instances have different schema classes, that will count as 1 diff.
@@ -174,8 +411,8 @@ Predicate&lt;? super SchemaAttribute&gt; attributeNameFilter = a -&gt; {
 	 * that will count as 1 diff and the elements will NOT be compared.
 	 */
 	private static int compareInstances(
-		GKInstance instance1, GKInstance instance2, StringBuilder stringBuilder, int diffCount, int recursionDepth,
-		int maxRecursionDepth, Predicate<? super SchemaAttribute> customAttributeNameFilter, boolean checkReferrers
+		GKInstance instance1, GKInstance instance2, DiffReportSink reportSink, ComparisonConfiguration configuration,
+		int diffCount, int recursionDepth
 	)
 	{
 		if (instance1 == null || instance2 == null || isInstanceEdit(instance1) || isInstanceEdit(instance2))
@@ -185,22 +422,27 @@ Predicate&lt;? super SchemaAttribute&gt; attributeNameFilter = a -&gt; {
 
 		if (differentInstanceTypes(instance1, instance2))
 		{
-			stringBuilder
-			.append(getIndentString(recursionDepth))
-			.append(getInstanceTypeMismatchMessage(instance1, instance2));
+			reportSink.append(getIndentString(recursionDepth) + getInstanceTypeMismatchMessage(instance1, instance2));
+			reportSink.recordDifference(instance1, instance2, null, false, recursionDepth, 1);
 
-			return 1;
+			return diffCount + 1;
+		}
+
+		if (haveEqualFingerprints(instance1, instance2, configuration, recursionDepth))
+		{
+			return diffCount;
 		}
 
 		int count = compareValuesOfInstancesForAttributes(
-			AttributeRelationshipType.REGULAR_ATTRIBUTE, instance1, instance2, stringBuilder, diffCount,
-			recursionDepth, maxRecursionDepth, customAttributeNameFilter, checkReferrers
+			AttributeRelationshipType.REGULAR_ATTRIBUTE, instance1, instance2, reportSink, configuration, diffCount,
+			recursionDepth
 		);
 
-		if (checkReferrers) {
+		if (configuration.isCheckReferrers() && !configuration.isDifferenceBudgetReached(count))
+		{
 			count = compareValuesOfInstancesForAttributes(
-				AttributeRelationshipType.REVERSE_ATTRIBUTE, instance1, instance2, stringBuilder, count,
-				recursionDepth, maxRecursionDepth, customAttributeNameFilter, checkReferrers
+				AttributeRelationshipType.REVERSE_ATTRIBUTE, instance1, instance2, reportSink, configuration, count,
+				recursionDepth
 			);
 		}
 
@@ -213,25 +455,11 @@ Predicate&lt;? super SchemaAttribute&gt; attributeNameFilter = a -&gt; {
 	 * 'regular' or referrer attribute)
 	 * @param instance1 The first instance
 	 * @param instance2 The second instance
-	 * @param stringBuilder A StringBuilder that will contain a detailed report of differences
+	 * @param reportSink A DiffReportSink that will receive a detailed report of differences
+	 * @param configuration Settings for the comparison (recursion depth, attribute filter, checking of referrers,
+	 * difference budget)
 	 * @param diffCount The number of differences so far. Should start at 0.
 	 * @param recursionDepth The depth of the recursion so far. Should start at 0.
-	 * @param maxRecursionDepth The maximum depth of recursion that will be allowed. Normally a depth of 2 or 3 is
-	 * probably sufficient.
-	 * @param customAttributeNameFilter A custom Predicate that will be used to filter attribute names.
-	 * The default predicate looks like this:<pre>
-	Predicate&lt;? super SchemaAttribute&gt; attributeNameFilter = a -&gt; {
-	return !a.getName().equals("DB_ID")
-	&amp;&amp; !a.getName().equals("dateTime")
-	&amp;&amp; !a.getName().equals("modified")
-	&amp;&amp; !a.getName().equals("created");
-	};
-	</pre>
-	 * @param checkReferrers Should referring instances also be checked? If <b>true</b>, then referring attributes
-	 * will <em>also</em> be checked for differences.  They will be followed to the same recursion depth as regular
-	 * attributes. Using this with a high maxRecursionDepth could lead to a very long execution time. Be careful!!
-	 * You might also want to use a custom predicate to filter out attributes that could lead to a cyclical difference
-	 * check.
 	 * @return The number of differences between the two instances.
 	 * A single-valued attribute that differs will count as 1 diff.
 	 * If the instances have different schema classes, that will count as 1 diff.
@@ -240,40 +468,42 @@ Predicate&lt;? super SchemaAttribute&gt; attributeNameFilter = a -&gt; {
 	 */
 	private static int compareValuesOfInstancesForAttributes(
 		AttributeRelationshipType attributeRelationshipType, GKInstance instance1, GKInstance instance2,
-		StringBuilder stringBuilder, int diffCount, int recursionDepth, int maxRecursionDepth,
-		Predicate<? super SchemaAttribute> customAttributeNameFilter, boolean checkReferrers
+		DiffReportSink reportSink, ComparisonConfiguration configuration, int diffCount, int recursionDepth
 	)
 	{
-		List<SchemaAttribute> attributes = AttributeProcessor.filterAttributes(
-			AttributeProcessor.getAttributes(instance1.getSchemClass(), attributeRelationshipType),
-			customAttributeNameFilter
-		);
+		AttributeDescriptor[] attributeDescriptors = configuration.getComparisonPlan(
+			instance1.getSchemClass(), attributeRelationshipType
+		).getAttributeDescriptors();
 
 		int count = diffCount;
-		for (SchemaAttribute attribute : attributes)
+		for (int i = 0; i < attributeDescriptors.length && !configuration.isDifferenceBudgetReached(count); i++)
 		{
-			List<Object> instance1AttributeValues = getValues(
-				instance1, attribute, attributeRelationshipType
-			);
-			List<Object> instance2AttributeValues = getValues(
-				instance2, attribute, attributeRelationshipType
-			);
+			AttributeDescriptor attributeDescriptor = attributeDescriptors[i];
 
-			if (instance1AttributeValues.size() == instance2AttributeValues.size())
+			List<Object> instance1AttributeValues = getValues(instance1, attributeDescriptor, configuration);
+			List<Object> instance2AttributeValues = getValues(instance2, attributeDescriptor, configuration);
+
+			if (configuration.getValueMatching() == ValueMatching.MULTISET)
+			{
+				count = compareValuesOfAttributeAsMultisets(
+					attributeDescriptor, instance1, instance2, instance1AttributeValues,
+					instance2AttributeValues, reportSink, configuration, count, recursionDepth
+				);
+			}
+			else if (instance1AttributeValues.size() == instance2AttributeValues.size())
 			{
 				count = compareEachValueOfAttributeBetweenInstances(
-					attribute, attributeRelationshipType, instance1, instance2, instance1AttributeValues,
-					instance2AttributeValues, stringBuilder, count, recursionDepth, maxRecursionDepth,
-					customAttributeNameFilter, checkReferrers
+					attributeDescriptor, instance1, instance2, instance1AttributeValues,
+					instance2AttributeValues, reportSink, configuration, count, recursionDepth
 				);
 			}
 			else
 			{
-				stringBuilder.append(getIndentString(recursionDepth))
-					.append(getCountMismatchMessage(
-						attribute, attributeRelationshipType, instance1, instance2,
-						instance1AttributeValues.size(), instance2AttributeValues.size()
-					));
+				reportSink.append(getIndentString(recursionDepth) + getCountMismatchMessage(
+					attributeDescriptor.getAttribute(), attributeRelationshipType, instance1, instance2,
+					instance1AttributeValues.size(), instance2AttributeValues.size()
+				));
+				recordDifference(reportSink, attributeDescriptor, instance1, instance2, recursionDepth, 1);
 
 				count++;
 			}
@@ -284,35 +514,20 @@ Predicate&lt;? super SchemaAttribute&gt; attributeNameFilter = a -&gt; {
 
 	/**
 	 * Compares the values of the passed attribute between two instances and returns the number of differences.  For an
-	 * value which is a GKInstance, differences are checked for recursively (up to the passed maxRecursionDepth).
-	 * For the base case of "simple" value (i.e. Strings, numbers, etc..., arrays of Strings/numbers/etc...), a count
-	 * of 1 is returned for any difference found between the values compared.
-	 * @param attribute Attribute for which values are being compared
-	 * @param attributeRelationshipType Relationship between the passed attribute to the passed instances (i.e. a
-	 * 'regular' or referrer attribute)
+	 * value which is a GKInstance, differences are checked for recursively (up to the configuration's maximum
+	 * recursion depth).  For the base case of "simple" value (i.e. Strings, numbers, etc..., arrays of
+	 * Strings/numbers/etc...), a count of 1 is returned for any difference found between the values compared.
+	 * @param attributeDescriptor Attribute for which values are being compared, with its relationship to the passed
+	 * instances (i.e. a 'regular' or referrer attribute)
 	 * @param instance1 The first instance
 	 * @param instance2 The second instance
 	 * @param values1 Values retrieved for the passed attribute from the first instance
 	 * @param values2 Values retrieved for the passed attribute from the second instance
-	 * @param stringBuilder A StringBuilder that will contain a detailed report of differences
+	 * @param reportSink A DiffReportSink that will receive a detailed report of differences
+	 * @param configuration Settings for the comparison (recursion depth, attribute filter, checking of referrers,
+	 * difference budget)
 	 * @param diffCount The number of differences so far. Should start at 0.
 	 * @param recursionDepth The depth of the recursion so far. Should start at 0.
-	 * @param maxRecursionDepth The maximum depth of recursion that will be allowed. Normally a depth of 2 or 3 is
-	 * probably sufficient.
-	 * @param customAttributeNameFilter A custom Predicate that will be used to filter attribute names.
-	 * The default predicate looks like this:<pre>
-	Predicate&lt;? super SchemaAttribute&gt; attributeNameFilter = a -&gt; {
-	return !a.getName().equals("DB_ID")
-	&amp;&amp; !a.getName().equals("dateTime")
-	&amp;&amp; !a.getName().equals("modified")
-	&amp;&amp; !a.getName().equals("created");
-	};
-	</pre>
-	 * @param checkReferrers Should referring instances also be checked? If <b>true</b>, then referring attributes
-	 * will <em>also</em> be checked for differences.  They will be followed to the same recursion depth as regular
-	 * attributes. Using this with a high maxRecursionDepth could lead to a very long execution time. Be careful!!
-	 * You might also want to use a custom predicate to filter out attributes that could lead to a cyclical difference
-	 * check.
 	 * @return The number of differences between the two instances.
 	 * A single-valued attribute that differs will count as 1 diff.
 	 * If the instances have different schema classes, that will count as 1 diff.
@@ -320,42 +535,37 @@ Predicate&lt;? super SchemaAttribute&gt; attributeNameFilter = a -&gt; {
 	 * that will count as 1 diff and the elements will NOT be compared.
 	 */
 	private static int compareEachValueOfAttributeBetweenInstances(
-		SchemaAttribute attribute, AttributeRelationshipType attributeRelationshipType, GKInstance instance1,
-		GKInstance instance2, List<Object> values1, List<Object> values2, StringBuilder stringBuilder, int diffCount,
-		int recursionDepth, int maxRecursionDepth, Predicate<? super SchemaAttribute> customAttributeNameFilter,
-		boolean checkReferrers
+		AttributeDescriptor attributeDescriptor, GKInstance instance1, GKInstance instance2, List<Object> values1,
+		List<Object> values2, DiffReportSink reportSink, ComparisonConfiguration configuration, int diffCount,
+		int recursionDepth
 	)
 	{
+		SchemaAttribute attribute = attributeDescriptor.getAttribute();
+		AttributeRelationshipType attributeRelationshipType = attributeDescriptor.getAttributeRelationshipType();
 		int count = diffCount;
 
 		// compare each item in one list to the corresponding item in the other list -
 		// the MySQLAdaptor seems to preserve sequence of items in lists properly.
-		for (int i = 0; i < values1.size(); i++)
+		for (int i = 0; i < values1.size() && !configuration.isDifferenceBudgetReached(count); i++)
 		{
 			Object value1 = values1.get(i);
 			Object value2 = values2.get(i);
 
-			if (isAttributeContainingInstances(attribute))
+			if (attributeDescriptor.isContainingInstances())
 			{
-				String attributeDescription = attribute.getName() + " " + attributeRelationshipType;
-
 				count = compareIndividualValuesOfAttributeBetweenInstances(
-					attributeDescription, (GKInstance) value1, (GKInstance) value2, stringBuilder,
-					count, recursionDepth, maxRecursionDepth, customAttributeNameFilter, checkReferrers
+					attributeDescriptor, instance1, instance2, (GKInstance) value1, (GKInstance) value2, reportSink,
+					configuration, count, recursionDepth
 				);
 			}
 			// Deal with attributes that return "simple" things (Strings, numbers, etc..., arrays of
 			// Strings/numbers/etc...)
-			else if (!value1.equals(value2))
+			else if (!attributeDescriptor.valuesEqual(value1, value2, configuration.getStringNormalization()))
 			{
-				stringBuilder.append(
-					getIndentString(recursionDepth) + "Mismatch on " + attributeRelationshipType +
-						" '" + attribute.getName() + "'" + System.lineSeparator() +
-						getIndentString(recursionDepth) + "Instance 1 ('" + instance1 + "') has value:\t" +
-						value1 + System.lineSeparator() +
-						getIndentString(recursionDepth) + "Instance 2 ('" + instance2 + "') has value:\t" +
-						value2 + System.lineSeparator()
-				);
+				reportSink.append(getValueMismatchMessage(
+					attribute, attributeRelationshipType, instance1, instance2, value1, value2, recursionDepth
+				));
+				recordDifference(reportSink, attributeDescriptor, instance1, instance2, recursionDepth, 1);
 				count++;
 			}
 		}
@@ -363,52 +573,358 @@ Predicate&lt;? super SchemaAttribute&gt; attributeNameFilter = a -&gt; {
 		return count;
 	}
 
+	/**
+	 * Compares the values of the passed attribute between two instances, pairing them regardless of their order, and
+	 * returns the number of differences.  Instance values are paired first by equal fingerprint (if the configuration
+	 * uses fingerprints), which needs no further comparison, and then by DB_ID, in which case the pair is checked for
+	 * differences recursively (up to the configuration's maximum recursion depth).  Other values are paired by
+	 * equality, and the values left unpaired in both instances are then paired as changed values (1 difference each).
+	 * Each remaining value without a counterpart counts as 1 difference and is reported as added or removed.
+	 * @param attributeDescriptor Attribute for which values are being compared, with its relationship to the passed
+	 * instances (i.e. a 'regular' or referrer attribute)
+	 * @param instance1 The first instance
+	 * @param instance2 The second instance
+	 * @param values1 Values retrieved for the passed attribute from the first instance
+	 * @param values2 Values retrieved for the passed attribute from the second instance
+	 * @param reportSink A DiffReportSink that will receive a detailed report of differences
+	 * @param configuration Settings for the comparison (recursion depth, attribute filter, checking of referrers,
+	 * difference budget, fingerprints)
+	 * @param diffCount The number of differences so far. Should start at 0.
+	 * @param recursionDepth The depth of the recursion so far. Should start at 0.
+	 * @return The number of differences between the two instances.
+	 */
+	private static int compareValuesOfAttributeAsMultisets(
+		AttributeDescriptor attributeDescriptor, GKInstance instance1, GKInstance instance2, List<Object> values1,
+		List<Object> values2, DiffReportSink reportSink, ComparisonConfiguration configuration, int diffCount,
+		int recursionDepth
+	)
+	{
+		SchemaAttribute attribute = attributeDescriptor.getAttribute();
+		AttributeRelationshipType attributeRelationshipType = attributeDescriptor.getAttributeRelationshipType();
+		int count = diffCount;
+		List<Object> removedValues = new ArrayList<>();
+		List<Object> addedValues;
+
+		if (attributeDescriptor.isContainingInstances())
+		{
+			List<Object> unpairedValues1 = values1;
+			List<Object> unpairedValues2 = values2;
+
+			// Values with equal fingerprints have no differences, so pairing them needs no further comparison
+			if (canPairByFingerprint(configuration, recursionDepth))
+			{
+				InstanceFingerprinter fingerprinter = configuration.getFingerprinter();
+				int remainingDepth = configuration.getMaxRecursionDepth() - recursionDepth - 1;
+
+				Map<Object, Deque<Object>> fingerprintToUnpairedValues2 = groupByKey(
+					values2, value -> getFingerprint(fingerprinter, value, remainingDepth)
+				);
+				unpairedValues1 = new ArrayList<>();
+				for (Object value1 : values1)
+				{
+					Object fingerprint1 = getFingerprint(fingerprinter, value1, remainingDepth);
+					if (value1 != null && pollValue(fingerprintToUnpairedValues2, fingerprint1) == null)
+					{
+						unpairedValues1.add(value1);
+					}
+				}
+				unpairedValues2 = getRemainingValues(fingerprintToUnpairedValues2);
+			}
+
+			Map<Object, Deque<Object>> keyToUnpairedValues2 =
+				groupByKey(unpairedValues2, value -> ((GKInstance) value).getDBID());
+			for (Object value1 : unpairedValues1)
+			{
+				if (value1 == null)
+				{
+					continue;
+				}
+
+				Object value2 = pollValue(keyToUnpairedValues2, ((GKInstance) value1).getDBID());
+				if (value2 == null)
+				{
+					removedValues.add(value1);
+				}
+				else if (!configuration.isDifferenceBudgetReached(count))
+				{
+					count = compareIndividualValuesOfAttributeBetweenInstances(
+						attributeDescriptor, instance1, instance2, (GKInstance) value1, (GKInstance) value2,
+						reportSink, configuration, count, recursionDepth
+					);
+				}
+			}
+			addedValues = getRemainingValues(keyToUnpairedValues2);
+		}
+		else
+		{
+			StringNormalization stringNormalization = configuration.getStringNormalization();
+			Map<Object, Deque<Object>> valueToUnpairedValues2 = groupByKey(
+				values2, value -> attributeDescriptor.getComparisonKey(value, stringNormalization)
+			);
+			for (Object value1 : values1)
+			{
+				if (value1 != null && pollValue(
+					valueToUnpairedValues2, attributeDescriptor.getComparisonKey(value1, stringNormalization)
+				) == null)
+				{
+					removedValues.add(value1);
+				}
+			}
+			addedValues = getRemainingValues(valueToUnpairedValues2);
+
+			// Unpaired values on both sides are reported as changed values, as a changed single value would be
+			int changedValuesCount = Math.min(removedValues.size(), addedValues.size());
+			for (int i = 0; i < changedValuesCount && !configuration.isDifferenceBudgetReached(count); i++)
+			{
+				reportSink.append(getValueMismatchMessage(
+					attribute, attributeRelationshipType, instance1, instance2, removedValues.get(i),
+					addedValues.get(i), recursionDepth
+				));
+				recordDifference(reportSink, attributeDescriptor, instance1, instance2, recursionDepth, 1);
+				count++;
+			}
+			removedValues = removedValues.subList(changedValuesCount, removedValues.size());
+			addedValues = addedValues.subList(changedValuesCount, addedValues.size());
+		}
+
+		if (removedValues.isEmpty() && addedValues.isEmpty())
+		{
+			return count;
+		}
+
+		reportSink.append(getUnpairedValuesMessage(
+			attribute, attributeRelationshipType, instance1, instance2, removedValues, addedValues, recursionDepth
+		));
+
+		// Each unpaired value is a difference, but the count never goes beyond the difference budget
+		long unpairedValuesCount = (long) removedValues.size() + addedValues.size();
+		int newCount = (int) Math.min((long) count + unpairedValuesCount, configuration.getDifferenceBudget());
+		recordDifference(reportSink, attributeDescriptor, instance1, instance2, recursionDepth, newCount - count);
+
+		return newCount;
+	}
+
+	private static void recordDifference(
+		DiffReportSink reportSink, AttributeDescriptor attributeDescriptor, GKInstance instance1, GKInstance instance2,
+		int recursionDepth, int differenceCount
+	)
+	{
+		reportSink.recordDifference(
+			instance1, instance2, attributeDescriptor.getName(),
+			attributeDescriptor.getAttributeRelationshipType().equals(AttributeRelationshipType.REVERSE_ATTRIBUTE),
+			recursionDepth, differenceCount
+		);
+	}
+
+	private static boolean canPairByFingerprint(ComparisonConfiguration configuration, int recursionDepth)
+	{
+		return isFingerprintSkippingAllowed(configuration) && recursionDepth < configuration.getMaxRecursionDepth();
+	}
+
+	/**
+	 * Returns <code>true</code> if instances with equal fingerprints can be skipped, i.e. the configuration uses
+	 * fingerprints, referrers are not checked (fingerprints cover 'regular' attributes only) and no values can be
+	 * compared by identity, whether by an identity-only attribute or once a work budget is used up (fingerprints do
+	 * not cover DB_IDs); <code>false</code> otherwise
+	 */
+	private static boolean isFingerprintSkippingAllowed(ComparisonConfiguration configuration)
+	{
+		TraversalPolicy traversalPolicy = configuration.getTraversalPolicy();
+
+		return configuration.getFingerprinter() != null && !configuration.isCheckReferrers() &&
+			(traversalPolicy == null || !traversalPolicy.hasIdentityOnlyAttributes() &&
+			traversalPolicy.getWorkBudget() == TraversalPolicy.UNLIMITED_WORK_BUDGET);
+	}
+
+	/**
+	 * Returns the fingerprint of the passed instance value or the value itself (which will only ever pair with itself)
+	 * if the fingerprint can not be computed
+	 */
+	private static Object getFingerprint(InstanceFingerprinter fingerprinter, Object instanceValue, int depth)
+	{
+		try
+		{
+			return fingerprinter.getFingerprint((GKInstance) instanceValue, depth);
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			return instanceValue;
+		}
+	}
+
+	/**
+	 * Groups the passed values by key, keeping the order of the values.  Null values are skipped (as they are never
+	 * reported as differences).
+	 */
+	private static Map<Object, Deque<Object>> groupByKey(
+		List<Object> values, Function<Object, Object> keyFunction
+	)
+	{
+		Map<Object, Deque<Object>> keyToValues = new LinkedHashMap<>();
+		for (Object value : values)
+		{
+			if (value != null)
+			{
+				keyToValues.computeIfAbsent(keyFunction.apply(value), k -> new ArrayDeque<>()).add(value);
+			}
+		}
+
+		return keyToValues;
+	}
+
+	/**
+	 * Removes and returns a value with the passed key or returns <code>null</code> if no value with the key remains
+	 */
+	private static Object pollValue(Map<Object, Deque<Object>> keyToValues, Object key)
+	{
+		Deque<Object> values = keyToValues.get(key);
+
+		return values != null ? values.poll() : null;
+	}
+
+	private static List<Object> getRemainingValues(Map<Object, Deque<Object>> keyToValues)
+	{
+		List<Object> remainingValues = new ArrayList<>();
+		keyToValues.values().forEach(remainingValues::addAll);
+
+		return remainingValues;
+	}
+
 	/**
 	 * Compares a value, which is a GKInstance, of the passed attribute between two instances and returns the number
-	 * of differences.  Differences are checked for recursively (up to the passed maxRecursionDepth).
-	 * For the base case of a "simple" value (i.e. Strings, numbers, etc..., arrays of Strings/numbers/etc...), a count
-	 * of 1 is returned for any difference found between the values compared.
-	 * @param attributeDescription String describing the attribute and relationship of to the instances for which
-	 * values were obtained and are being compared
+	 * of differences.  Differences are checked for recursively (up to the configuration's maximum recursion depth or
+	 * the lower depth its traversal policy sets for the attribute or the values' schema class).  If the traversal
+	 * policy compares the attribute by identity only, or its work budget is used up, or either value is a placeholder
+	 * for an instance which was not exported to a snapshot, the values are not recursed into and a count of 1 is
+	 * returned if their DB_IDs differ.  For the base case of a "simple" value (i.e. Strings,
+	 * numbers, etc..., arrays of Strings/numbers/etc...), a count of 1 is returned for any difference found between
+	 * the values compared.
+	 * @param attributeDescriptor Attribute for which values are being compared, with its relationship to the passed
+	 * instances (i.e. a 'regular' or referrer attribute)
+	 * @param instance1 The first instance, from which value1 was obtained
+	 * @param instance2 The second instance, from which value2 was obtained
 	 * @param value1 First GKInstance value to compare
 	 * @param value2 Second GKInstance value to compare
-	 * @param stringBuilder a StringBuilder that will contain a detailed report of differences.
+	 * @param reportSink A DiffReportSink that will receive a detailed report of differences
+	 * @param configuration Settings for the comparison (recursion depth, attribute filter, checking of referrers,
+	 * difference budget, traversal policy)
 	 * @param diffCount The number of differences so far. Should start at 0.
 	 * @param recursionDepth The depth of the recursion so far. Should start at 0.
-	 * @param maxRecursionDepth The maximum depth of recursion that will be allowed. Normally a depth of 2 or 3 is
-	 * probably sufficient.
-	 * @param customAttributeNameFilter A custom Predicate that will be used to filter attribute names. The default
-	 * predicate looks like this:<pre>
-	Predicate&lt;? super SchemaAttribute&gt; attributeNameFilter = a -&gt; {
-	return !a.getName().equals("DB_ID")
-	&amp;&amp; !a.getName().equals("dateTime")
-	&amp;&amp; !a.getName().equals("modified")
-	&amp;&amp; !a.getName().equals("created");
-	};
-	</pre>
-	 * @param checkReferrers <code>true</code> if referrer attributes should be included; <code>false</code> otherwise
 	 * @return The total number of differences between the values compared (after recursion for GKInstance values)
 	 */
 	private static int compareIndividualValuesOfAttributeBetweenInstances(
-		String attributeDescription, GKInstance value1, GKInstance value2, StringBuilder stringBuilder, int diffCount,
-		int recursionDepth, int maxRecursionDepth, Predicate<? super SchemaAttribute> customAttributeNameFilter,
-		boolean checkReferrers
+		AttributeDescriptor attributeDescriptor, GKInstance instance1, GKInstance instance2, GKInstance value1,
+		GKInstance value2, DiffReportSink reportSink, ComparisonConfiguration configuration, int diffCount,
+		int recursionDepth
 	) {
-		if (recursionDepth >= maxRecursionDepth)
+		TraversalPolicy traversalPolicy = configuration.getTraversalPolicy();
+		if (recursionDepth >= getMaxRecursionDepth(attributeDescriptor, value1, configuration))
 		{
 			return diffCount;
 		}
 
-		stringBuilder
-			.append(getIndentString(recursionDepth))
-			.append("Recursing on " + attributeDescription + "..." +System.lineSeparator());
+		// Placeholders for instances missing from a snapshot have only their identity to compare
+		if (isSnapshotPlaceholder(value1) || isSnapshotPlaceholder(value2) ||
+			traversalPolicy != null && (traversalPolicy.isIdentityOnlyAttribute(attributeDescriptor.getName()) ||
+			!traversalPolicy.tryStartInstanceComparison()))
+		{
+			return compareIdentitiesOfValues(
+				attributeDescriptor, instance1, instance2, value1, value2, reportSink, diffCount, recursionDepth
+			);
+		}
+
+		reportSink.append(
+			getIndentString(recursionDepth) + "Recursing on " + attributeDescriptor.getDescription() + "..." +
+			System.lineSeparator()
+		);
 
-		return compareInstances(
-			value1, value2, stringBuilder, diffCount, recursionDepth + 1,
-			maxRecursionDepth, customAttributeNameFilter, checkReferrers
+		return compareInstances(value1, value2, reportSink, configuration, diffCount, recursionDepth + 1);
+	}
+
+	private static boolean isSnapshotPlaceholder(GKInstance value)
+	{
+		return value instanceof SnapshotInstance && ((SnapshotInstance) value).isPlaceholder();
+	}
+
+	/**
+	 * Returns the maximum depth of recursion for the passed instance value of the passed attribute, which is the
+	 * configuration's maximum recursion depth unless its traversal policy sets a lower depth
+	 */
+	private static int getMaxRecursionDepth(
+		AttributeDescriptor attributeDescriptor, GKInstance value, ComparisonConfiguration configuration
+	)
+	{
+		TraversalPolicy traversalPolicy = configuration.getTraversalPolicy();
+		if (traversalPolicy == null)
+		{
+			return configuration.getMaxRecursionDepth();
+		}
+
+		return traversalPolicy.getMaxDepth(
+			attributeDescriptor.getName(), value != null ? value.getSchemClass() : null,
+			configuration.getMaxRecursionDepth()
 		);
 	}
 
+	/**
+	 * Compares two GKInstance values of the passed attribute by DB_ID only (without recursing into them) and returns
+	 * the number of differences, which is one more than the passed number if the DB_IDs differ.  As for recursive
+	 * comparisons, missing values and InstanceEdits are not compared.
+	 */
+	private static int compareIdentitiesOfValues(
+		AttributeDescriptor attributeDescriptor, GKInstance instance1, GKInstance instance2, GKInstance value1,
+		GKInstance value2, DiffReportSink reportSink, int diffCount, int recursionDepth
+	)
+	{
+		if (value1 == null || value2 == null || isInstanceEdit(value1) || isInstanceEdit(value2) ||
+			Objects.equals(value1.getDBID(), value2.getDBID()))
+		{
+			return diffCount;
+		}
+
+		reportSink.append(getValueMismatchMessage(
+			attributeDescriptor.getAttribute(), attributeDescriptor.getAttributeRelationshipType(), instance1, instance2,
+			value1, value2, recursionDepth
+		));
+		recordDifference(reportSink, attributeDescriptor, instance1, instance2, recursionDepth, 1);
+
+		return diffCount + 1;
+	}
+
+	/**
+	 * Returns <code>true</code> if the configuration uses fingerprints and the passed instances have equal
+	 * fingerprints for the depth of recursion remaining (i.e. comparing them would find no differences);
+	 * <code>false</code> otherwise.  If a fingerprint can not be computed, the instances are compared in full.
+	 * @param instance1 First instance to check
+	 * @param instance2 Second instance to check
+	 * @param configuration Settings for the comparison (fingerprinter, checking of referrers, recursion depth)
+	 * @param recursionDepth The depth of the recursion so far
+	 * @return <code>true</code> if the instances can be skipped; <code>false</code> otherwise
+	 */
+	private static boolean haveEqualFingerprints(
+		GKInstance instance1, GKInstance instance2, ComparisonConfiguration configuration, int recursionDepth
+	)
+	{
+		if (!isFingerprintSkippingAllowed(configuration))
+		{
+			return false;
+		}
+
+		InstanceFingerprinter fingerprinter = configuration.getFingerprinter();
+		int remainingDepth = configuration.getMaxRecursionDepth() - recursionDepth;
+		try
+		{
+			return fingerprinter.getFingerprint(instance1, remainingDepth) ==
+				fingerprinter.getFingerprint(instance2, remainingDepth);
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+	}
+
 	/**
 	 * Checks passed GKInstance object to determine if it is an InstanceEdit instance or not.  Returns
 	 * <code>true</code> if the instance is an InstanceEdit; <code>false</code> otherwise
@@ -494,13 +1010,81 @@ Predicate&lt;? super SchemaAttribute&gt; attributeNameFilter = a -&gt; {
 	}
 
 	/**
-	 * Returns the name of the database from which the passed instance originates.
+	 * Returns a message detailing a mismatch between a value of an attribute of two instances.
+	 * @param attribute Attribute from which the values were obtained
+	 * @param attributeRelationship Relationship between the passed attribute to the passed instances (i.e. a
+	 * 'regular' or referrer attribute)
+	 * @param instance1 First instance in the mismatch
+	 * @param instance2 Second instance in the mismatch
+	 * @param value1 Value of the first instance
+	 * @param value2 Value of the second instance
+	 * @param recursionDepth The depth of the recursion so far
+	 * @return Message as String detailing the mismatch between the values
+	 */
+	private static String getValueMismatchMessage(
+		SchemaAttribute attribute, AttributeRelationshipType attributeRelationship, GKInstance instance1,
+		GKInstance instance2, Object value1, Object value2, int recursionDepth
+	)
+	{
+		return getIndentString(recursionDepth) + "Mismatch on " + attributeRelationship +
+			" '" + attribute.getName() + "'" + System.lineSeparator() +
+			getIndentString(recursionDepth) + "Instance 1 ('" + instance1 + "') has value:\t" +
+			value1 + System.lineSeparator() +
+			getIndentString(recursionDepth) + "Instance 2 ('" + instance2 + "') has value:\t" +
+			value2 + System.lineSeparator();
+	}
+
+	/**
+	 * Returns a message detailing the values of an attribute which have no counterpart in the other instance (i.e.
+	 * values only the first instance has as removed and values only the second instance has as added).
+	 * @param attribute Attribute from which values were obtained
+	 * @param attributeRelationship Relationship between the passed attribute to the passed instances (i.e. a
+	 * 'regular' or referrer attribute)
+	 * @param instance1 First instance compared
+	 * @param instance2 Second instance compared
+	 * @param removedValues Values only the first instance has
+	 * @param addedValues Values only the second instance has
+	 * @param recursionDepth The depth of the recursion so far
+	 * @return Message as String detailing the unpaired values for the passed attribute between the passed instances
+	 */
+	private static String getUnpairedValuesMessage(
+		SchemaAttribute attribute, AttributeRelationshipType attributeRelationship, GKInstance instance1,
+		GKInstance instance2, List<Object> removedValues, List<Object> addedValues, int recursionDepth
+	)
+	{
+		StringBuilder message = new StringBuilder(getIndentString(recursionDepth))
+			.append("Unpaired values for ").append(attributeRelationship)
+			.append(" '").append(attribute.getName()).append("'").append(System.lineSeparator());
+
+		for (Object removedValue : removedValues)
+		{
+			message.append(getIndentString(recursionDepth)).append(" Removed (only in Instance 1 ('")
+				.append(instance1).append("')):\t").append(removedValue).append(System.lineSeparator());
+		}
+		for (Object addedValue : addedValues)
+		{
+			message.append(getIndentString(recursionDepth)).append(" Added (only in Instance 2 ('")
+				.append(instance2).append("')):\t").append(addedValue).append(System.lineSeparator());
+		}
+
+		return message.toString();
+	}
+
+	/**
+	 * Returns the name of the database (or snapshot) from which the passed instance originates.
 	 * @param instance Instance for which to get the name of the database from which it originated
 	 * @return Name of the database of origin for the passed instance
 	 */
 	private static String getDBName(GKInstance instance)
 	{
-		return ((MySQLAdaptor) instance.getDbAdaptor()).getDBName();
+		if (instance instanceof SnapshotInstance)
+		{
+			return ((SnapshotInstance) instance).getSnapshot().getName();
+		}
+
+		return instance.getDbAdaptor() instanceof MySQLAdaptor ?
+			((MySQLAdaptor) instance.getDbAdaptor()).getDBName() :
+			String.valueOf(instance.getDbAdaptor());
 	}
 
 
@@ -550,17 +1134,37 @@ Predicate&lt;? super SchemaAttribute&gt; attributeNameFilter = a -&gt; {
 	 * relationship type (i.e. 'regular' or referrer attribute).
 	 * @param instance Instance for which to retrieve values connected via the passed attribute and attribute
 	 * relationship type
-	 * @param attribute Attribute for which to retrieve values connected to the passed instance
-	 * @param attributeRelationshipType Relationship between the passed attribute to the passed instance (i.e. a
-	 * 'regular' or referrer attribute)
+	 * @param attributeDescriptor Attribute for which to retrieve values connected to the passed instance, with its
+	 * relationship to the passed instance (i.e. a 'regular' or referrer attribute)
+	 * @param configuration Settings for the comparison (referrers are retrieved from its referrer index for the
+	 * instance's database, if one is registered)
 	 * @return List of values for the instance attribute and attribute relationship type passed or an empty list if
 	 * there is an issue retrieving the values
 	 */
 	@SuppressWarnings("unchecked")
 	private static List<Object> getValues(
-		GKInstance instance, SchemaAttribute attribute, AttributeRelationshipType attributeRelationshipType
+		GKInstance instance, AttributeDescriptor attributeDescriptor, ComparisonConfiguration configuration
 	)
 	{
+		SchemaAttribute attribute = attributeDescriptor.getAttribute();
+		AttributeRelationshipType attributeRelationshipType = attributeDescriptor.getAttributeRelationshipType();
+
+		// Values which are not instances need no sorting, so the instance's own list is read without copying or caching
+		if (attributeRelationshipType.equals(AttributeRelationshipType.REGULAR_ATTRIBUTE) &&
+			!attributeDescriptor.isContainingInstances())
+		{
+			try
+			{
+				List<Object> attributeValues = (List<Object>) instance.getAttributeValuesList(attribute.getName());
+				return attributeValues != null ? attributeValues : Collections.emptyList();
+			}
+			catch (Exception e)
+			{
+				e.printStackTrace();
+				return Collections.emptyList();
+			}
+		}
+
 		List<Object> values = getCachedValuesFromInstanceAttributeToValuesMap(
 			instance, attribute, attributeRelationshipType
 		);
@@ -571,7 +1175,9 @@ Predicate&lt;? super SchemaAttribute&gt; attributeNameFilter = a -&gt; {
 			{
 				values = attributeRelationshipType.equals(AttributeRelationshipType.REGULAR_ATTRIBUTE) ?
 					safeList((List<Object>) instance.getAttributeValuesList(attribute.getName())) :
-					safeList((Collection<Object>) instance.getReferers(attribute.getName()));
+					safeList((Collection<Object>) (Collection<?>) configuration.getReferrers(
+						instance, attribute.getName()
+					));
 			}
 			catch (Exception e)
 			{
@@ -581,7 +1187,7 @@ Predicate&lt;? super SchemaAttribute&gt; attributeNameFilter = a -&gt; {
 			// Make sure the lists are sorted so that you are always comparing objects in the same
 			// sequence: I don't think the database adaptor applies any explicit order to Instances
 			// that don't have a rank/order attribute.
-			if (isAttributeContainingInstances(attribute))
+			if (attributeDescriptor.isContainingInstances())
 			{
 				InstanceUtilities.sortInstances(values);
 			}
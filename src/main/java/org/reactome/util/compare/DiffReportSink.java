@@ -0,0 +1,130 @@
+package org.reactome.util.compare;
+
+import org.gk.model.GKInstance;
+
+/**
+ * Receives the detailed report of differences produced by the DBObjectComparer class.  Implementations decide where
+ * the report text goes (e.g. an in-memory StringBuilder or a file written incrementally).
+ */
+public interface DiffReportSink
+{
+	/**
+	 * Called by DBObjectComparer before a top-level comparison of two instances begins.  The report text appended
+	 * until the matching call to {@link #endInstanceComparison(GKInstance, GKInstance, int)} belongs to this pair of
+	 * instances.  An instance with no counterpart in the other database is reported as a comparison with
+	 * <code>null</code> in place of the missing instance.
+	 * @param instance1 The first instance being compared
+	 * @param instance2 The second instance being compared
+	 */
+	default void beginInstanceComparison(GKInstance instance1, GKInstance instance2)
+	{
+	}
+
+	/**
+	 * Appends report text describing a difference (or the recursion path leading to one) between two instances.
+	 * @param reportText Report text to append
+	 */
+	void append(String reportText);
+
+	/**
+	 * Called by DBObjectComparer after a top-level comparison of two instances has finished.
+	 * @param instance1 The first instance compared
+	 * @param instance2 The second instance compared
+	 * @param differenceCount The number of differences found between the two instances
+	 */
+	default void endInstanceComparison(GKInstance instance1, GKInstance instance2, int differenceCount)
+	{
+	}
+
+	/**
+	 * Called by DBObjectComparer instead of {@link #endInstanceComparison(GKInstance, GKInstance, int)} if a top-level
+	 * comparison of two instances fails with an exception, so any state kept for the comparison can be discarded.
+	 * @param instance1 The first instance being compared
+	 * @param instance2 The second instance being compared
+	 */
+	default void abortInstanceComparison(GKInstance instance1, GKInstance instance2)
+	{
+	}
+
+	/**
+	 * Called by DBObjectComparer for each difference it counts (alongside the report text describing it), so the
+	 * differences can be aggregated without parsing the report text.
+	 * @param instance1 The instance of the first database in which the difference was found (the top-level instance or
+	 * one reached from it)
+	 * @param instance2 The instance of the second database in which the difference was found
+	 * @param attributeName Name of the differing attribute or <code>null</code> if the instances have different schema
+	 * classes (or one of them is <code>null</code> because the other has no counterpart)
+	 * @param reverseAttribute <code>true</code> if the differing attribute is a referrer attribute;
+	 * <code>false</code> otherwise
+	 * @param recursionDepth Depth at which the difference was found (0 for the top-level instances)
+	 * @param differenceCount The number of differences counted
+	 */
+	default void recordDifference(
+		GKInstance instance1, GKInstance instance2, String attributeName, boolean reverseAttribute,
+		int recursionDepth, int differenceCount
+	)
+	{
+	}
+
+	/**
+	 * Returns a DiffReportSink which passes everything it receives on to each of the passed sinks, in order (e.g. to
+	 * write the report text to a file while aggregating statistics)
+	 * @param reportSinks DiffReportSinks to pass the report on to
+	 * @return DiffReportSink combining the passed sinks
+	 */
+	static DiffReportSink combine(DiffReportSink... reportSinks)
+	{
+		return new DiffReportSink()
+		{
+			@Override
+			public void beginInstanceComparison(GKInstance instance1, GKInstance instance2)
+			{
+				for (DiffReportSink reportSink : reportSinks)
+				{
+					reportSink.beginInstanceComparison(instance1, instance2);
+				}
+			}
+
+			@Override
+			public void append(String reportText)
+			{
+				for (DiffReportSink reportSink : reportSinks)
+				{
+					reportSink.append(reportText);
+				}
+			}
+
+			@Override
+			public void endInstanceComparison(GKInstance instance1, GKInstance instance2, int differenceCount)
+			{
+				for (DiffReportSink reportSink : reportSinks)
+				{
+					reportSink.endInstanceComparison(instance1, instance2, differenceCount);
+				}
+			}
+
+			@Override
+			public void abortInstanceComparison(GKInstance instance1, GKInstance instance2)
+			{
+				for (DiffReportSink reportSink : reportSinks)
+				{
+					reportSink.abortInstanceComparison(instance1, instance2);
+				}
+			}
+
+			@Override
+			public void recordDifference(
+				GKInstance instance1, GKInstance instance2, String attributeName, boolean reverseAttribute,
+				int recursionDepth, int differenceCount
+			)
+			{
+				for (DiffReportSink reportSink : reportSinks)
+				{
+					reportSink.recordDifference(
+						instance1, instance2, attributeName, reverseAttribute, recursionDepth, differenceCount
+					);
+				}
+			}
+		};
+	}
+}
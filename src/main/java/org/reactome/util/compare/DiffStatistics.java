@@ -0,0 +1,388 @@
+package org.reactome.util.compare;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.gk.model.GKInstance;
+
+/**
+ * A DiffReportSink which aggregates the differences found by the DBObjectComparer class instead of (or, combined with
+ * another sink via {@link DiffReportSink#combine}, as well as) reporting them as text: the number of differences by
+ * schema class, by attribute and by attribute relationship type, the top-level instances with the most differences
+ * and the distribution of the depths at which differences were found.  The statistics are updated as each comparison
+ * is made, so they can be inspected part way through a diff.
+ *
+ * A DiffStatistics object is not thread-safe.  When comparing in parallel, give each worker its own object and
+ * {@link #merge(DiffStatistics)} them when the workers finish; every statistic is a count, so merging gives the same
+ * result as aggregating all comparisons in one object.
+ *
+ * Example usage:
+<pre>
+	DiffStatistics diffStatistics = new DiffStatistics();
+	for (Long dbId : dbIdsToCompare)
+	{
+		DBObjectComparer.compareInstances(
+			database1.fetchInstance(dbId), database2.fetchInstance(dbId),
+			DiffReportSink.combine(reportWriter, diffStatistics), configuration
+		);
+	}
+	logger.info(diffStatistics.getSummary(20));
+</pre>
+ */
+public class DiffStatistics implements DiffReportSink
+{
+	public static final int DEFAULT_TOP_INSTANCE_COUNT = 100;
+
+	// Used as the "attribute" of differences in schema class between instances
+	private static final String SCHEMA_CLASS_KEY = "schema class";
+	// Used as the "attribute" of instances with no counterpart in the other database
+	private static final String UNPAIRED_INSTANCE_KEY = "unpaired instance";
+	private static final String ATTRIBUTE_KEY = "attribute";
+	private static final String REVERSE_ATTRIBUTE_KEY = "reverse attribute";
+
+	private static final Comparator<InstanceDifferenceCount> FEWEST_DIFFERENCES_FIRST =
+		Comparator.comparingInt(InstanceDifferenceCount::getDifferenceCount)
+			.thenComparing(InstanceDifferenceCount::getDbId, Comparator.reverseOrder());
+
+	private final int topInstanceCount;
+	private final Map<String, Long> schemaClassToDifferenceCount = new HashMap<>();
+	private final Map<String, Long> attributeToDifferenceCount = new HashMap<>();
+	private final Map<String, Long> relationshipTypeToDifferenceCount = new HashMap<>();
+	// Holds the top instances with the instance with the fewest differences at its head, to be replaced first
+	private final PriorityQueue<InstanceDifferenceCount> topInstances;
+
+	private long[] depthToDifferenceCount = new long[0];
+	private long comparedInstanceCount;
+	private long differingInstanceCount;
+	private long differenceCount;
+
+	/**
+	 * Constructs a new DiffStatistics object keeping the default number of top-level instances with the most
+	 * differences
+	 */
+	public DiffStatistics()
+	{
+		this(DEFAULT_TOP_INSTANCE_COUNT);
+	}
+
+	/**
+	 * Constructs a new DiffStatistics object keeping the passed number of top-level instances with the most
+	 * differences
+	 * @param topInstanceCount Number of top-level instances with the most differences to keep
+	 */
+	public DiffStatistics(int topInstanceCount)
+	{
+		this.topInstanceCount = topInstanceCount;
+		this.topInstances = new PriorityQueue<>(FEWEST_DIFFERENCES_FIRST);
+	}
+
+	@Override
+	public void append(String reportText)
+	{
+		// Only structured differences are aggregated
+	}
+
+	@Override
+	public void recordDifference(
+		GKInstance instance1, GKInstance instance2, String attributeName, boolean reverseAttribute,
+		int recursionDepth, int differenceCount
+	)
+	{
+		if (differenceCount <= 0)
+		{
+			return;
+		}
+
+		GKInstance instance = instance1 != null ? instance1 : instance2;
+		String instanceDifferenceKey =
+			instance1 != null && instance2 != null ? SCHEMA_CLASS_KEY : UNPAIRED_INSTANCE_KEY;
+		String relationshipType = attributeName == null ? instanceDifferenceKey :
+			reverseAttribute ? REVERSE_ATTRIBUTE_KEY : ATTRIBUTE_KEY;
+
+		this.schemaClassToDifferenceCount.merge(instance.getSchemClass().getName(), (long) differenceCount, Long::sum);
+		this.attributeToDifferenceCount.merge(
+			attributeName != null ? attributeName : instanceDifferenceKey, (long) differenceCount, Long::sum
+		);
+		this.relationshipTypeToDifferenceCount.merge(relationshipType, (long) differenceCount, Long::sum);
+		addDepthDifferenceCount(recursionDepth, differenceCount);
+	}
+
+	@Override
+	public void endInstanceComparison(GKInstance instance1, GKInstance instance2, int differenceCount)
+	{
+		this.comparedInstanceCount++;
+		if (differenceCount > 0)
+		{
+			this.differingInstanceCount++;
+			this.differenceCount += differenceCount;
+			GKInstance instance = instance1 != null ? instance1 : instance2;
+			offerTopInstance(new InstanceDifferenceCount(
+				instance.getDBID(), instance.getSchemClass().getName(), instance.getDisplayName(), differenceCount
+			));
+		}
+	}
+
+	/**
+	 * Adds the statistics of the passed object to this object's
+	 * @param other DiffStatistics to merge into this object
+	 */
+	public void merge(DiffStatistics other)
+	{
+		other.schemaClassToDifferenceCount.forEach(
+			(key, count) -> this.schemaClassToDifferenceCount.merge(key, count, Long::sum)
+		);
+		other.attributeToDifferenceCount.forEach(
+			(key, count) -> this.attributeToDifferenceCount.merge(key, count, Long::sum)
+		);
+		other.relationshipTypeToDifferenceCount.forEach(
+			(key, count) -> this.relationshipTypeToDifferenceCount.merge(key, count, Long::sum)
+		);
+		for (int depth = 0; depth < other.depthToDifferenceCount.length; depth++)
+		{
+			addDepthDifferenceCount(depth, other.depthToDifferenceCount[depth]);
+		}
+		other.topInstances.forEach(this::offerTopInstance);
+
+		this.comparedInstanceCount += other.comparedInstanceCount;
+		this.differingInstanceCount += other.differingInstanceCount;
+		this.differenceCount += other.differenceCount;
+	}
+
+	/**
+	 * Returns the number of top-level comparisons made
+	 * @return Number of compared pairs of instances
+	 */
+	public long getComparedInstanceCount()
+	{
+		return this.comparedInstanceCount;
+	}
+
+	/**
+	 * Returns the number of top-level comparisons which found differences
+	 * @return Number of pairs of instances with differences
+	 */
+	public long getDifferingInstanceCount()
+	{
+		return this.differingInstanceCount;
+	}
+
+	/**
+	 * Returns the total number of differences found by the top-level comparisons
+	 * @return Number of differences
+	 */
+	public long getDifferenceCount()
+	{
+		return this.differenceCount;
+	}
+
+	/**
+	 * Returns the number of differences found in instances of each schema class, most differences first
+	 * @return Map of schema class name to number of differences
+	 */
+	public Map<String, Long> getDifferenceCountsBySchemaClass()
+	{
+		return sortByCountDescending(this.schemaClassToDifferenceCount);
+	}
+
+	/**
+	 * Returns the number of differences found in each attribute, most differences first.  Differences in schema class
+	 * between instances are counted under "schema class" and instances with no counterpart in the other database
+	 * under "unpaired instance".
+	 * @return Map of attribute name to number of differences
+	 */
+	public Map<String, Long> getDifferenceCountsByAttribute()
+	{
+		return sortByCountDescending(this.attributeToDifferenceCount);
+	}
+
+	/**
+	 * Returns the number of differences found in each type of attribute relationship ("attribute" and "reverse
+	 * attribute"), in schema class ("schema class") and in instances with no counterpart ("unpaired instance"), most
+	 * differences first
+	 * @return Map of relationship type to number of differences
+	 */
+	public Map<String, Long> getDifferenceCountsByRelationshipType()
+	{
+		return sortByCountDescending(this.relationshipTypeToDifferenceCount);
+	}
+
+	/**
+	 * Returns the number of differences found at each recursion depth (0 for the top-level instances)
+	 * @return Array of difference counts indexed by recursion depth
+	 */
+	public long[] getDifferenceCountsByDepth()
+	{
+		return Arrays.copyOf(this.depthToDifferenceCount, this.depthToDifferenceCount.length);
+	}
+
+	/**
+	 * Returns the recursion depth at or below which the passed percentage of differences were found (i.e. the
+	 * nearest-rank percentile of the depths of all differences)
+	 * @param percentile Percentile to return (between 0 and 100)
+	 * @return Recursion depth at the percentile or -1 if no differences have been found
+	 */
+	public int getDepthPercentile(double percentile)
+	{
+		long totalCount = Arrays.stream(this.depthToDifferenceCount).sum();
+		if (totalCount == 0)
+		{
+			return -1;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+		long cumulativeCount = 0;
+		for (int depth = 0; depth < this.depthToDifferenceCount.length; depth++)
+		{
+			cumulativeCount += this.depthToDifferenceCount[depth];
+			if (cumulativeCount >= rank)
+			{
+				return depth;
+			}
+		}
+
+		return this.depthToDifferenceCount.length - 1;
+	}
+
+	/**
+	 * Returns the top-level instances with the most differences, most differences first
+	 * @return List of InstanceDifferenceCount objects (at most the number of top instances kept)
+	 */
+	public List<InstanceDifferenceCount> getTopInstances()
+	{
+		List<InstanceDifferenceCount> topInstances = new ArrayList<>(this.topInstances);
+		topInstances.sort(Collections.reverseOrder(FEWEST_DIFFERENCES_FIRST));
+
+		return topInstances;
+	}
+
+	/**
+	 * Returns a human-readable summary of the statistics
+	 * @param maxEntries Maximum number of entries listed for each histogram and for the top instances
+	 * @return Summary of the statistics
+	 */
+	public String getSummary(int maxEntries)
+	{
+		StringBuilder summary = new StringBuilder();
+		summary.append("Compared ").append(this.comparedInstanceCount).append(" instances: ")
+			.append(this.differingInstanceCount).append(" with differences, ")
+			.append(this.differenceCount).append(" differences in total\n");
+
+		appendHistogram(summary, "schema class", getDifferenceCountsBySchemaClass(), maxEntries);
+		appendHistogram(summary, "attribute", getDifferenceCountsByAttribute(), maxEntries);
+		appendHistogram(summary, "relationship type", getDifferenceCountsByRelationshipType(), maxEntries);
+
+		summary.append("Depth of differences: 50th percentile ").append(getDepthPercentile(50))
+			.append(", 90th percentile ").append(getDepthPercentile(90))
+			.append(", 99th percentile ").append(getDepthPercentile(99))
+			.append(", maximum ").append(getDepthPercentile(100)).append("\n");
+
+		summary.append("Instances with the most differences:\n");
+		getTopInstances().stream().limit(maxEntries).forEach(
+			instance -> summary.append("\t").append(instance).append("\n")
+		);
+
+		return summary.toString();
+	}
+
+	private void addDepthDifferenceCount(int depth, long count)
+	{
+		if (depth >= this.depthToDifferenceCount.length)
+		{
+			this.depthToDifferenceCount = Arrays.copyOf(this.depthToDifferenceCount, depth + 1);
+		}
+
+		this.depthToDifferenceCount[depth] += count;
+	}
+
+	private void offerTopInstance(InstanceDifferenceCount instanceDifferenceCount)
+	{
+		if (this.topInstanceCount <= 0)
+		{
+			return;
+		}
+
+		if (this.topInstances.size() < this.topInstanceCount)
+		{
+			this.topInstances.add(instanceDifferenceCount);
+		}
+		else if (FEWEST_DIFFERENCES_FIRST.compare(instanceDifferenceCount, this.topInstances.peek()) > 0)
+		{
+			this.topInstances.poll();
+			this.topInstances.add(instanceDifferenceCount);
+		}
+	}
+
+	private static Map<String, Long> sortByCountDescending(Map<String, Long> keyToCount)
+	{
+		Map<String, Long> sortedKeyToCount = new LinkedHashMap<>();
+		keyToCount.entrySet()
+			.stream()
+			.sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+			.forEach(entry -> sortedKeyToCount.put(entry.getKey(), entry.getValue()));
+
+		return sortedKeyToCount;
+	}
+
+	private static void appendHistogram(
+		StringBuilder summary, String histogramName, Map<String, Long> keyToCount, int maxEntries
+	)
+	{
+		summary.append("Differences by ").append(histogramName).append(":\n");
+		keyToCount.entrySet().stream().limit(maxEntries).forEach(
+			entry -> summary.append("\t").append(entry.getKey()).append(": ").append(entry.getValue()).append("\n")
+		);
+	}
+
+	/**
+	 * The number of differences found for a top-level instance, identified by its DB_ID, schema class and display name
+	 */
+	public static class InstanceDifferenceCount
+	{
+		private final long dbId;
+		private final String schemaClassName;
+		private final String displayName;
+		private final int differenceCount;
+
+		private InstanceDifferenceCount(long dbId, String schemaClassName, String displayName, int differenceCount)
+		{
+			this.dbId = dbId;
+			this.schemaClassName = schemaClassName;
+			this.displayName = displayName;
+			this.differenceCount = differenceCount;
+		}
+
+		public long getDbId()
+		{
+			return this.dbId;
+		}
+
+		public String getSchemaClassName()
+		{
+			return this.schemaClassName;
+		}
+
+		public String getDisplayName()
+		{
+			return this.displayName;
+		}
+
+		public int getDifferenceCount()
+		{
+			return this.differenceCount;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "[" + this.schemaClassName + ":" + this.dbId + "] " + this.displayName + ": " +
+				this.differenceCount + " differences";
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package org.reactome.util.compare;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.gk.model.GKInstance;
+
+/**
+ * The fingerprints (see {@link InstanceFingerprinter}) of a set of instances, keyed by DB_ID and computed at a single
+ * depth.  An index can be written to and read from a file, so fingerprints computed for a database in one run can be
+ * re-used by later runs: comparing the index of one release's database to that of the next gives the DB_IDs of the
+ * instances which may have changed, and only those need a full comparison by the DBObjectComparer class.
+ */
+public class FingerprintIndex
+{
+	private static final int FILE_MAGIC_NUMBER = 0x52465058; // "RFPX"
+	private static final int FILE_FORMAT_VERSION = 1;
+
+	private final int depth;
+	private final long[] dbIds;
+	private final long[] fingerprints;
+
+	private FingerprintIndex(int depth, long[] dbIds, long[] fingerprints)
+	{
+		this.depth = depth;
+		this.dbIds = dbIds;
+		this.fingerprints = fingerprints;
+	}
+
+	/**
+	 * Computes the fingerprints of the passed instances at the passed depth.
+	 * @param instances Instances to fingerprint
+	 * @param fingerprinter InstanceFingerprinter used to compute the fingerprints
+	 * @param depth Number of levels of instance values to include in each fingerprint
+	 * @return FingerprintIndex of the instances
+	 * @throws Exception Thrown if the attribute values of an instance can not be retrieved
+	 */
+	public static FingerprintIndex compute(
+		Collection<GKInstance> instances, InstanceFingerprinter fingerprinter, int depth
+	) throws Exception
+	{
+		Map<Long, Long> dbIdToFingerprint = new TreeMap<>();
+		for (GKInstance instance : instances)
+		{
+			dbIdToFingerprint.put(instance.getDBID(), fingerprinter.getFingerprint(instance, depth));
+		}
+
+		long[] dbIds = new long[dbIdToFingerprint.size()];
+		long[] fingerprints = new long[dbIdToFingerprint.size()];
+		int index = 0;
+		for (Map.Entry<Long, Long> entry : dbIdToFingerprint.entrySet())
+		{
+			dbIds[index] = entry.getKey();
+			fingerprints[index] = entry.getValue();
+			index++;
+		}
+
+		return new FingerprintIndex(depth, dbIds, fingerprints);
+	}
+
+	/**
+	 * Reads a fingerprint index previously written with {@link #write(Path)}.
+	 * @param indexFile Path of the index file
+	 * @return FingerprintIndex read from the file
+	 * @throws IOException Thrown if the file can not be read or is not a fingerprint index file
+	 */
+	public static FingerprintIndex read(Path indexFile) throws IOException
+	{
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile))))
+		{
+			if (input.readInt() != FILE_MAGIC_NUMBER)
+			{
+				throw new IOException(indexFile + " is not a fingerprint index file");
+			}
+
+			int formatVersion = input.readInt();
+			if (formatVersion != FILE_FORMAT_VERSION)
+			{
+				throw new IOException(
+					"Unsupported fingerprint index format version " + formatVersion + " in " + indexFile
+				);
+			}
+
+			int depth = input.readInt();
+			int size = input.readInt();
+			long[] dbIds = new long[size];
+			long[] fingerprints = new long[size];
+			for (int i = 0; i < size; i++)
+			{
+				dbIds[i] = input.readLong();
+				fingerprints[i] = input.readLong();
+			}
+
+			return new FingerprintIndex(depth, dbIds, fingerprints);
+		}
+	}
+
+	/**
+	 * Writes this index to the passed file (replacing it if it exists).
+	 * @param indexFile Path of the index file
+	 * @throws IOException Thrown if the file can not be written
+	 */
+	public void write(Path indexFile) throws IOException
+	{
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile))))
+		{
+			output.writeInt(FILE_MAGIC_NUMBER);
+			output.writeInt(FILE_FORMAT_VERSION);
+			output.writeInt(this.depth);
+			output.writeInt(this.dbIds.length);
+			for (int i = 0; i < this.dbIds.length; i++)
+			{
+				output.writeLong(this.dbIds[i]);
+				output.writeLong(this.fingerprints[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the depth at which the fingerprints of this index were computed
+	 * @return Number of levels of instance values included in each fingerprint
+	 */
+	public int getDepth()
+	{
+		return this.depth;
+	}
+
+	/**
+	 * Returns the number of instances in this index
+	 * @return Number of fingerprinted instances
+	 */
+	public int size()
+	{
+		return this.dbIds.length;
+	}
+
+	/**
+	 * Returns <code>true</code> if this index has a fingerprint for the instance with the passed DB_ID;
+	 * <code>false</code> otherwise
+	 * @param dbId DB_ID of the instance
+	 * @return <code>true</code> if the instance was fingerprinted; <code>false</code> otherwise
+	 */
+	public boolean contains(long dbId)
+	{
+		return Arrays.binarySearch(this.dbIds, dbId) >= 0;
+	}
+
+	/**
+	 * Returns the fingerprint of the instance with the passed DB_ID
+	 * @param dbId DB_ID of the instance
+	 * @return Fingerprint of the instance
+	 * @throws IllegalArgumentException Thrown if the instance is not in this index
+	 */
+	public long getFingerprint(long dbId)
+	{
+		int index = Arrays.binarySearch(this.dbIds, dbId);
+		if (index < 0)
+		{
+			throw new IllegalArgumentException("No fingerprint for DB_ID " + dbId);
+		}
+
+		return this.fingerprints[index];
+	}
+
+	/**
+	 * Returns the DB_IDs of the instances in both this and the passed index whose fingerprints differ (i.e. the
+	 * instances which need to be compared in full).
+	 * @param otherIndex Fingerprint index of the other database
+	 * @return List of DB_IDs, in ascending order, of instances with different fingerprints
+	 * @throws IllegalArgumentException Thrown if the indexes were computed at different depths
+	 */
+	public List<Long> getDbIdsWithDifferentFingerprints(FingerprintIndex otherIndex)
+	{
+		if (otherIndex.getDepth() != this.depth)
+		{
+			throw new IllegalArgumentException(
+				"Fingerprint indexes computed at different depths (" + this.depth + " and " +
+				otherIndex.getDepth() + ") can not be compared"
+			);
+		}
+
+		List<Long> differingDbIds = new ArrayList<>();
+		for (int i = 0; i < this.dbIds.length; i++)
+		{
+			int otherIndexPosition = Arrays.binarySearch(otherIndex.dbIds, this.dbIds[i]);
+			if (otherIndexPosition >= 0 && otherIndex.fingerprints[otherIndexPosition] != this.fingerprints[i])
+			{
+				differingDbIds.add(this.dbIds[i]);
+			}
+		}
+
+		return differingDbIds;
+	}
+}
@@ -0,0 +1,359 @@
+package org.reactome.util.compare;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.GKInstance;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.InvalidAttributeException;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+import org.reactome.util.compare.AttributeProcessor.AttributeRelationshipType;
+import org.reactome.util.compare.ComparisonPlan.AttributeDescriptor;
+
+/**
+ * Compares only the instances of two databases which may have changed since a cutoff date, rather than every
+ * instance.  The changed instances are those of the newer database whose "created" or "modified" InstanceEdits are
+ * dated at or after the cutoff.  As the DBObjectComparer class follows instance attributes, an unchanged instance
+ * can still differ through an instance it refers to, so the instances referring to a changed instance (and the
+ * instances referring to those, up to the configuration's maximum recursion depth) are compared as well.  The work
+ * done therefore scales with the size of the change rather than the size of the database.
+ *
+ * Instances are paired by DB_ID.  Instances deleted from the newer database (i.e. the instances of the older database
+ * whose DB_IDs are not in the newer one) are selected as well and reported, like the instances created in the newer
+ * database, as having no counterpart.
+ *
+ * Example usage:
+<pre>
+	IncrementalDiff incrementalDiff = new IncrementalDiff(previousDatabase, currentDatabase, configuration);
+	incrementalDiff.compareChangedSince(Timestamp.valueOf("2021-03-01 00:00:00"), reportWriter);
+</pre>
+ */
+public class IncrementalDiff
+{
+	private static final Logger logger = LogManager.getLogger();
+	// Rows are streamed from MySQL one at a time rather than read into memory all at once
+	private static final int MYSQL_STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+	// DB_IDs are read in order so those of both databases can be merged as they are streamed
+	private static final String ORDERED_DB_ID_QUERY = "SELECT DB_ID FROM " + ReactomeJavaConstants.DatabaseObject +
+		" ORDER BY DB_ID";
+	// Read past the last DB_ID of a database, so every DB_ID of the other database is less than it
+	private static final long NO_MORE_DB_IDS = Long.MAX_VALUE;
+
+	private final MySQLAdaptor olderDatabase;
+	private final MySQLAdaptor newerDatabase;
+	private final ComparisonConfiguration configuration;
+
+	/**
+	 * Constructs a new IncrementalDiff between the passed databases
+	 * @param olderDatabase The database before the changes (e.g. the previous release)
+	 * @param newerDatabase The database after the changes, from which the changed instances are selected
+	 * @param configuration Settings for the comparison.  Referrers are looked up through its referrer index for the
+	 * newer database, if one is registered.
+	 */
+	public IncrementalDiff(
+		MySQLAdaptor olderDatabase, MySQLAdaptor newerDatabase, ComparisonConfiguration configuration
+	)
+	{
+		this.olderDatabase = olderDatabase;
+		this.newerDatabase = newerDatabase;
+		this.configuration = configuration;
+	}
+
+	/**
+	 * Compares the instances changed since the passed cutoff, and the instances referring to them, between the two
+	 * databases.
+	 * @param cutoff Instances with "created" or "modified" InstanceEdits dated at or after this time are compared
+	 * @param reportSink A DiffReportSink that will receive a detailed report of differences
+	 * @return The number of compared instances which have differences (including instances only in either database)
+	 * @throws Exception Thrown if the changed instances can not be selected or an instance can not be fetched
+	 */
+	public int compareChangedSince(Timestamp cutoff, DiffReportSink reportSink) throws Exception
+	{
+		return compare(selectFrontier(cutoff), reportSink);
+	}
+
+	/**
+	 * Compares the instances changed since the passed InstanceEdit was made, and the instances referring to them,
+	 * between the two databases.
+	 * @param instanceEdit InstanceEdit whose dateTime is the cutoff
+	 * @param reportSink A DiffReportSink that will receive a detailed report of differences
+	 * @return The number of compared instances which have differences (including instances only in either database)
+	 * @throws Exception Thrown if the InstanceEdit has no dateTime, the changed instances can not be selected or an
+	 * instance can not be fetched
+	 */
+	public int compareChangedSince(GKInstance instanceEdit, DiffReportSink reportSink) throws Exception
+	{
+		Object dateTime = instanceEdit.getAttributeValue(ReactomeJavaConstants.dateTime);
+		if (dateTime == null)
+		{
+			throw new IllegalArgumentException(instanceEdit + " has no " + ReactomeJavaConstants.dateTime);
+		}
+
+		return compareChangedSince(Timestamp.valueOf(dateTime.toString()), reportSink);
+	}
+
+	/**
+	 * Returns the DB_IDs of the instances to compare for changes since the passed cutoff: the changed instances, the
+	 * instances referring to them, up to the configuration's maximum recursion depth, and the deleted instances.
+	 * @param cutoff Instances with "created" or "modified" InstanceEdits dated at or after this time have changed
+	 * @return Set of DB_IDs (changed instances first, deleted instances last)
+	 * @throws Exception Thrown if the changed or deleted instances can not be selected or an instance can not be
+	 * fetched
+	 */
+	public Set<Long> selectFrontier(Timestamp cutoff) throws Exception
+	{
+		Set<Long> changedDbIds = selectChangedDbIds(cutoff);
+		Set<Long> frontierDbIds = addReferrers(changedDbIds);
+		Set<Long> deletedDbIds = selectDeletedDbIds();
+		frontierDbIds.addAll(deletedDbIds);
+		logger.info("Selected {} instances of {} and {} to compare ({} changed since {}, {} deleted)",
+			frontierDbIds.size(), this.olderDatabase.getDBName(), this.newerDatabase.getDBName(), changedDbIds.size(),
+			cutoff, deletedDbIds.size()
+		);
+
+		return frontierDbIds;
+	}
+
+	/**
+	 * Returns the DB_IDs of the instances of the newer database whose "created" or "modified" InstanceEdits are dated
+	 * at or after the passed cutoff.
+	 * @param cutoff Cutoff date and time
+	 * @return Set of DB_IDs of the changed instances
+	 * @throws SQLException Thrown if the instances can not be selected
+	 */
+	public Set<Long> selectChangedDbIds(Timestamp cutoff) throws SQLException
+	{
+		Set<Long> changedDbIds = new LinkedHashSet<>();
+		for (String query : getChangedInstanceQueries())
+		{
+			try (PreparedStatement statement = this.newerDatabase.getConnection().prepareStatement(
+				query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY))
+			{
+				statement.setFetchSize(MYSQL_STREAMING_FETCH_SIZE);
+				statement.setTimestamp(1, cutoff);
+
+				try (ResultSet resultSet = statement.executeQuery())
+				{
+					while (resultSet.next())
+					{
+						changedDbIds.add(resultSet.getLong(1));
+					}
+				}
+			}
+		}
+
+		return changedDbIds;
+	}
+
+	/**
+	 * Returns the DB_IDs of the instances deleted from the newer database: those of the older database which are not
+	 * in the newer one.  The DB_IDs of both databases are streamed in order and merged, so neither database's DB_IDs
+	 * are held in memory.
+	 * @return Set of DB_IDs of the deleted instances, in ascending order
+	 * @throws SQLException Thrown if the DB_IDs can not be read from either database
+	 */
+	public Set<Long> selectDeletedDbIds() throws SQLException
+	{
+		Set<Long> deletedDbIds = new LinkedHashSet<>();
+		try (PreparedStatement olderStatement = prepareOrderedDbIdStatement(this.olderDatabase);
+			PreparedStatement newerStatement = prepareOrderedDbIdStatement(this.newerDatabase);
+			ResultSet olderResultSet = olderStatement.executeQuery();
+			ResultSet newerResultSet = newerStatement.executeQuery())
+		{
+			long newerDbId = nextDbId(newerResultSet);
+			for (long olderDbId = nextDbId(olderResultSet); olderDbId != NO_MORE_DB_IDS;
+				olderDbId = nextDbId(olderResultSet))
+			{
+				while (newerDbId < olderDbId)
+				{
+					newerDbId = nextDbId(newerResultSet);
+				}
+
+				if (newerDbId != olderDbId)
+				{
+					deletedDbIds.add(olderDbId);
+				}
+			}
+		}
+
+		return deletedDbIds;
+	}
+
+	/**
+	 * Compares the instances with the passed DB_IDs between the two databases.  Instances only in either database
+	 * are reported as having no counterpart (see
+	 * {@link DiffReportSink#beginInstanceComparison(GKInstance, GKInstance)}).  If the configuration prefetches
+	 * attribute values, they are loaded for all of the instances before the first comparison.
+	 * @param dbIds DB_IDs of the instances to compare
+	 * @param reportSink A DiffReportSink that will receive a detailed report of differences
+	 * @return The number of compared instances which have differences (including instances only in either database)
+	 * @throws Exception Thrown if an instance can not be fetched
+	 */
+	public int compare(Collection<Long> dbIds, DiffReportSink reportSink) throws Exception
+	{
+		int differingInstanceCount = 0;
+		List<GKInstance> olderInstances = new ArrayList<>();
+		List<GKInstance> newerInstances = new ArrayList<>();
+		for (Long dbId : dbIds)
+		{
+			GKInstance olderInstance = this.olderDatabase.fetchInstance(dbId);
+			GKInstance newerInstance = this.newerDatabase.fetchInstance(dbId);
+			if (olderInstance == null && newerInstance == null)
+			{
+				continue;
+			}
+
+			if (olderInstance == null)
+			{
+				DBObjectComparer.reportUnpairedInstance(
+					null, newerInstance, getOnlyInMessage(newerInstance, dbId, this.newerDatabase), reportSink
+				);
+				differingInstanceCount++;
+			}
+			else if (newerInstance == null)
+			{
+				DBObjectComparer.reportUnpairedInstance(
+					olderInstance, null, getOnlyInMessage(olderInstance, dbId, this.olderDatabase), reportSink
+				);
+				differingInstanceCount++;
+			}
+			else
+			{
+				olderInstances.add(olderInstance);
+				newerInstances.add(newerInstance);
+			}
+		}
+
+		for (int differenceCount :
+			DBObjectComparer.compareInstances(olderInstances, newerInstances, reportSink, this.configuration))
+		{
+			if (differenceCount > 0)
+			{
+				differingInstanceCount++;
+			}
+		}
+
+		return differingInstanceCount;
+	}
+
+	/**
+	 * Returns the passed DB_IDs together with the DB_IDs of the instances referring to them, level by level, up to
+	 * the configuration's maximum recursion depth.  Only the referrer attributes which pass the configuration's
+	 * attribute filter are followed, as only those lead the comparer to the changed instances.
+	 */
+	Set<Long> addReferrers(Set<Long> changedDbIds) throws Exception
+	{
+		Set<Long> frontierDbIds = new LinkedHashSet<>(changedDbIds);
+		List<Long> currentLevelDbIds = new ArrayList<>(changedDbIds);
+		for (int level = 0; level < this.configuration.getMaxRecursionDepth() && !currentLevelDbIds.isEmpty(); level++)
+		{
+			List<Long> nextLevelDbIds = new ArrayList<>();
+			for (Long dbId : currentLevelDbIds)
+			{
+				for (GKInstance referrer : getReferrers(dbId))
+				{
+					if (frontierDbIds.add(referrer.getDBID()))
+					{
+						nextLevelDbIds.add(referrer.getDBID());
+					}
+				}
+			}
+			currentLevelDbIds = nextLevelDbIds;
+		}
+
+		return frontierDbIds;
+	}
+
+	private static String getOnlyInMessage(GKInstance instance, Long dbId, MySQLAdaptor database)
+	{
+		return "Instance '" + instance + "' (DB_ID " + dbId + ") is only in " + database.getDBName();
+	}
+
+	private static PreparedStatement prepareOrderedDbIdStatement(MySQLAdaptor database) throws SQLException
+	{
+		PreparedStatement statement = database.getConnection().prepareStatement(
+			ORDERED_DB_ID_QUERY, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY
+		);
+		statement.setFetchSize(MYSQL_STREAMING_FETCH_SIZE);
+
+		return statement;
+	}
+
+	private static long nextDbId(ResultSet resultSet) throws SQLException
+	{
+		return resultSet.next() ? resultSet.getLong(1) : NO_MORE_DB_IDS;
+	}
+
+	private List<GKInstance> getReferrers(Long dbId) throws Exception
+	{
+		GKInstance instance = this.newerDatabase.fetchInstance(dbId);
+		if (instance == null)
+		{
+			return new ArrayList<>();
+		}
+
+		List<GKInstance> referrers = new ArrayList<>();
+		AttributeDescriptor[] attributeDescriptors = this.configuration.getComparisonPlan(
+			instance.getSchemClass(), AttributeRelationshipType.REVERSE_ATTRIBUTE
+		).getAttributeDescriptors();
+		for (AttributeDescriptor attributeDescriptor : attributeDescriptors)
+		{
+			Collection<GKInstance> attributeReferrers =
+				this.configuration.getReferrers(instance, attributeDescriptor.getName());
+			if (attributeReferrers != null)
+			{
+				referrers.addAll(attributeReferrers);
+			}
+		}
+
+		return referrers;
+	}
+
+	/**
+	 * Returns the queries selecting the DB_IDs of instances with a "created" or "modified" InstanceEdit dated at or
+	 * after a cutoff (the query's only parameter).  Each attribute is read from the table of the schema class in which
+	 * it is defined: multi-valued attributes from the "Origin_2_attribute" table, single-valued attributes from a
+	 * column of the origin class's table.
+	 */
+	private List<String> getChangedInstanceQueries()
+	{
+		SchemaClass databaseObjectClass = this.newerDatabase.getSchema()
+			.getClassByName(ReactomeJavaConstants.DatabaseObject);
+
+		List<String> queries = new ArrayList<>();
+		for (String attributeName : new String[] {ReactomeJavaConstants.created, ReactomeJavaConstants.modified})
+		{
+			SchemaAttribute attribute = getAttribute(databaseObjectClass, attributeName);
+			String originName = attribute.getOrigin().getName();
+			String tableName = attribute.isMultiple() ? originName + "_2_" + attributeName : originName;
+
+			queries.add("SELECT DISTINCT t.DB_ID FROM " + tableName + " t JOIN " + ReactomeJavaConstants.InstanceEdit +
+				" e ON e.DB_ID = t." + attributeName + " WHERE e." + ReactomeJavaConstants.dateTime + " >= ?");
+		}
+
+		return queries;
+	}
+
+	private static SchemaAttribute getAttribute(SchemaClass schemaClass, String attributeName)
+	{
+		try
+		{
+			return schemaClass.getAttribute(attributeName);
+		}
+		catch (InvalidAttributeException e)
+		{
+			throw new IllegalStateException(schemaClass.getName() + " has no " + attributeName + " attribute", e);
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package org.reactome.util.compare;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.gk.model.GKInstance;
+import org.gk.model.InstanceUtilities;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.schema.SchemaAttribute;
+import org.reactome.util.compare.AttributeProcessor.AttributeRelationshipType;
+import org.reactome.util.compare.AttributeProcessor.ComparisonPlans;
+import org.reactome.util.compare.ComparisonConfiguration.StringNormalization;
+import org.reactome.util.compare.ComparisonPlan.AttributeDescriptor;
+
+/**
+ * Computes content fingerprints of instances: a 64-bit hash of an instance's schema class and filtered attribute
+ * values in which each instance value is represented by its own fingerprint (i.e. a Merkle hash of the instance's
+ * sub-graph, down to a given depth).  The fingerprint mirrors what the DBObjectComparer class compares, so two
+ * instances with equal fingerprints at a depth will (barring a hash collision) have no differences when compared to
+ * that maximum recursion depth with the same attribute filter.  In particular, DB_IDs (unless the filter includes the
+ * DB_ID attribute) and InstanceEdits do not contribute, so fingerprints can be compared across databases.
+ *
+ * Fingerprints are memoized per instance and depth, so fingerprinting the instances of a database visits each
+ * sub-graph once.  Call {@link #clear()} to release the memoized values.
+ */
+public class InstanceFingerprinter
+{
+	private static final String HASH_ALGORITHM = "SHA-256";
+	// Stands in for instances which the DBObjectComparer class never reports differences for (null or InstanceEdit)
+	private static final long IGNORED_INSTANCE_FINGERPRINT = 0L;
+	private static final byte NULL_VALUE_MARKER = 0;
+	private static final byte NON_NULL_VALUE_MARKER = 1;
+
+	private final ComparisonPlans comparisonPlans;
+	private final StringNormalization stringNormalization;
+	private final Map<GKInstance, Map<Integer, Long>> instanceToFingerprintByDepth = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs a new InstanceFingerprinter using the default attribute filter (which ignores "DB_ID", "dateTime",
+	 * "modified", and "created")
+	 */
+	public InstanceFingerprinter()
+	{
+		this(null);
+	}
+
+	/**
+	 * Constructs a new InstanceFingerprinter using the passed attribute filter
+	 * @param attributeNameFilter Custom attribute filter or <code>null</code> to use the default filter (which ignores
+	 * "DB_ID", "dateTime", "modified", and "created")
+	 */
+	public InstanceFingerprinter(Predicate<? super SchemaAttribute> attributeNameFilter)
+	{
+		this(attributeNameFilter, StringNormalization.NONE);
+	}
+
+	/**
+	 * Constructs a new InstanceFingerprinter using the passed attribute filter and String normalization, so that
+	 * Strings the DBObjectComparer class considers equal (e.g. differing only in case) contribute equally
+	 * @param attributeNameFilter Custom attribute filter or <code>null</code> to use the default filter (which ignores
+	 * "DB_ID", "dateTime", "modified", and "created")
+	 * @param stringNormalization How String values are normalized before they are fingerprinted
+	 */
+	public InstanceFingerprinter(
+		Predicate<? super SchemaAttribute> attributeNameFilter, StringNormalization stringNormalization
+	)
+	{
+		this(AttributeProcessor.getComparisonPlans(attributeNameFilter), stringNormalization);
+	}
+
+	/**
+	 * Constructs a new InstanceFingerprinter using the passed comparison plans (e.g. those of a ComparisonConfiguration,
+	 * so the plans of its filter are shared) and String normalization
+	 */
+	InstanceFingerprinter(ComparisonPlans comparisonPlans, StringNormalization stringNormalization)
+	{
+		this.comparisonPlans = comparisonPlans;
+		this.stringNormalization = stringNormalization;
+	}
+
+	/**
+	 * Returns the fingerprint of the passed instance, including the fingerprints of its instance values down to the
+	 * passed depth.  At a depth of 0, instance values contribute only their number (as the DBObjectComparer class
+	 * does not recurse into them at its maximum recursion depth).
+	 * @param instance Instance to fingerprint
+	 * @param depth Number of levels of instance values to include (normally the maximum recursion depth of the
+	 * comparison)
+	 * @return 64-bit fingerprint of the instance
+	 * @throws Exception Thrown if the attribute values of the instance (or of its instance values) can not be retrieved
+	 */
+	public long getFingerprint(GKInstance instance, int depth) throws Exception
+	{
+		if (instance == null || isInstanceEdit(instance))
+		{
+			return IGNORED_INSTANCE_FINGERPRINT;
+		}
+
+		Map<Integer, Long> fingerprintByDepth =
+			this.instanceToFingerprintByDepth.computeIfAbsent(instance, k -> new ConcurrentHashMap<>());
+
+		// Not computed inside computeIfAbsent, since computing a fingerprint recursively fingerprints other instances
+		Long fingerprint = fingerprintByDepth.get(depth);
+		if (fingerprint == null)
+		{
+			fingerprint = computeFingerprint(instance, depth);
+			fingerprintByDepth.put(depth, fingerprint);
+		}
+
+		return fingerprint;
+	}
+
+	/**
+	 * Releases all memoized fingerprints
+	 */
+	public void clear()
+	{
+		this.instanceToFingerprintByDepth.clear();
+	}
+
+	private long computeFingerprint(GKInstance instance, int depth) throws Exception
+	{
+		MessageDigest digest = createDigest();
+		updateWithString(digest, instance.getSchemClass().getName());
+
+		if (instance instanceof SnapshotInstance && ((SnapshotInstance) instance).isPlaceholder())
+		{
+			// Placeholders for instances missing from a snapshot are compared by identity, so only their DB_ID counts
+			updateWithLong(digest, instance.getDBID());
+			return ByteBuffer.wrap(digest.digest()).getLong();
+		}
+
+		AttributeDescriptor[] attributeDescriptors = this.comparisonPlans.get(
+			instance.getSchemClass(), AttributeRelationshipType.REGULAR_ATTRIBUTE
+		).getAttributeDescriptors();
+		for (AttributeDescriptor attributeDescriptor : attributeDescriptors)
+		{
+			List<Object> values = getValues(instance, attributeDescriptor);
+
+			updateWithString(digest, attributeDescriptor.getName());
+			updateWithLong(digest, values.size());
+			if (attributeDescriptor.isContainingInstances())
+			{
+				if (depth > 0)
+				{
+					for (Object value : values)
+					{
+						updateWithLong(digest, getFingerprint((GKInstance) value, depth - 1));
+					}
+				}
+			}
+			else
+			{
+				for (Object value : values)
+				{
+					updateWithValue(digest, attributeDescriptor.getComparisonKey(value, this.stringNormalization));
+				}
+			}
+		}
+
+		return ByteBuffer.wrap(digest.digest()).getLong();
+	}
+
+	/**
+	 * Returns the values of the attribute, with instance values in the same order in which the DBObjectComparer class
+	 * compares them
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<Object> getValues(GKInstance instance, AttributeDescriptor attributeDescriptor)
+		throws Exception
+	{
+		List<Object> attributeValues = (List<Object>) instance.getAttributeValuesList(attributeDescriptor.getName());
+		if (attributeValues == null)
+		{
+			return new ArrayList<>();
+		}
+
+		List<Object> values = new ArrayList<>(attributeValues);
+		if (attributeDescriptor.isContainingInstances())
+		{
+			InstanceUtilities.sortInstances(values);
+		}
+
+		return values;
+	}
+
+	private static void updateWithValue(MessageDigest digest, Object value)
+	{
+		if (value == null)
+		{
+			digest.update(NULL_VALUE_MARKER);
+			return;
+		}
+
+		digest.update(NON_NULL_VALUE_MARKER);
+		updateWithString(digest, value.getClass().getName());
+		updateWithString(digest, value.toString());
+	}
+
+	private static void updateWithString(MessageDigest digest, String value)
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+		// The length prefix keeps adjacent strings from running together (e.g. "ab" + "c" and "a" + "bc")
+		updateWithLong(digest, bytes.length);
+		digest.update(bytes);
+	}
+
+	private static void updateWithLong(MessageDigest digest, long value)
+	{
+		digest.update(ByteBuffer.allocate(Long.BYTES).putLong(value).array());
+	}
+
+	private static MessageDigest createDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// Every Java platform implementation is required to support SHA-256
+			throw new IllegalStateException(HASH_ALGORITHM + " is not available", e);
+		}
+	}
+
+	private static boolean isInstanceEdit(GKInstance instance)
+	{
+		return instance.getSchemClass().getName().equals(ReactomeJavaConstants.InstanceEdit);
+	}
+}
@@ -0,0 +1,400 @@
+package org.reactome.util.compare;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.GKInstance;
+import org.gk.persistence.MySQLAdaptor;
+
+/**
+ * Pairs the instances of two databases which represent the same entity by a natural key (e.g. their stable
+ * identifier) rather than by DB_ID, so that instances with different DB_IDs in each database (e.g. gk_central and a
+ * release database, or after orthoinference) can be compared with the DBObjectComparer class.  The keys of each
+ * database are read into a hash index with a single streaming query, after which the indexes are joined in memory.
+ * Keys found in only one database are reported as unmatched and keys shared by several instances of one database are
+ * reported as ambiguous (and not paired).  Each unmatched instance, and each instance with an ambiguous key, is
+ * reported as a difference with no counterpart in the other database.
+ *
+ * Example usage:
+<pre>
+	InstanceMatcher instanceMatcher = InstanceMatcher.match(database1, database2, NaturalKey.STABLE_IDENTIFIER);
+	try (StreamingDiffReportWriter reportWriter =
+			StreamingDiffReportWriter.toFile(Paths.get("diff_report.txt.gz"), true, 100))
+	{
+		instanceMatcher.reportUnmatchedInstances(reportWriter);
+		instanceMatcher.compareMatchedInstances(reportWriter, new ComparisonConfiguration());
+	}
+</pre>
+ */
+public class InstanceMatcher
+{
+	private static final Logger logger = LogManager.getLogger();
+	// Rows are streamed from MySQL one at a time rather than read into memory all at once
+	private static final int MYSQL_STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+
+	private final MySQLAdaptor database1;
+	private final MySQLAdaptor database2;
+	private final NaturalKey naturalKey;
+	private final List<Match> matches = new ArrayList<>();
+	private final Map<String, Long> unmatchedKeyToDbId1 = new LinkedHashMap<>();
+	private final Map<String, Long> unmatchedKeyToDbId2 = new LinkedHashMap<>();
+	// DB_IDs of the instances of each database with a key which is ambiguous in either database
+	private final Map<String, List<Long>> ambiguousKeyToDbIds1 = new LinkedHashMap<>();
+	private final Map<String, List<Long>> ambiguousKeyToDbIds2 = new LinkedHashMap<>();
+	private final Set<String> ambiguousKeys;
+
+	/**
+	 * Pairs the instances of the two databases by their keys
+	 */
+	InstanceMatcher(
+		MySQLAdaptor database1, MySQLAdaptor database2, NaturalKey naturalKey, KeyIndex keyIndex1, KeyIndex keyIndex2
+	)
+	{
+		this.database1 = database1;
+		this.database2 = database2;
+		this.naturalKey = naturalKey;
+
+		Set<String> ambiguousKeys = new LinkedHashSet<>(keyIndex1.ambiguousKeyToDbIds.keySet());
+		ambiguousKeys.addAll(keyIndex2.ambiguousKeyToDbIds.keySet());
+		this.ambiguousKeys = Collections.unmodifiableSet(ambiguousKeys);
+		for (String ambiguousKey : ambiguousKeys)
+		{
+			this.ambiguousKeyToDbIds1.put(ambiguousKey, keyIndex1.getDbIds(ambiguousKey));
+			this.ambiguousKeyToDbIds2.put(ambiguousKey, keyIndex2.getDbIds(ambiguousKey));
+		}
+
+		for (Map.Entry<String, Long> keyAndDbId : keyIndex1.keyToDbId.entrySet())
+		{
+			String key = keyAndDbId.getKey();
+			Long dbId2 = keyIndex2.keyToDbId.get(key);
+			if (dbId2 != null)
+			{
+				this.matches.add(new Match(key, keyAndDbId.getValue(), dbId2));
+			}
+			else if (!ambiguousKeys.contains(key))
+			{
+				this.unmatchedKeyToDbId1.put(key, keyAndDbId.getValue());
+			}
+		}
+		for (Map.Entry<String, Long> keyAndDbId : keyIndex2.keyToDbId.entrySet())
+		{
+			String key = keyAndDbId.getKey();
+			if (!keyIndex1.keyToDbId.containsKey(key) && !ambiguousKeys.contains(key))
+			{
+				this.unmatchedKeyToDbId2.put(key, keyAndDbId.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Indexes the instances of both databases by the passed natural key and pairs them.
+	 * @param database1 The first database
+	 * @param database2 The second database
+	 * @param naturalKey Key identifying the same instance in both databases
+	 * @return InstanceMatcher holding the pairs of instances and the unmatched instances of each database
+	 * @throws SQLException Thrown if the keys can not be read from either database
+	 * @throws IllegalArgumentException Thrown if the natural key does not fit a database's schema
+	 */
+	public static InstanceMatcher match(MySQLAdaptor database1, MySQLAdaptor database2, NaturalKey naturalKey)
+		throws SQLException
+	{
+		InstanceMatcher instanceMatcher = new InstanceMatcher(
+			database1, database2, naturalKey,
+			KeyIndex.build(database1, naturalKey), KeyIndex.build(database2, naturalKey)
+		);
+		logger.info("Matched {} instances of {} and {} by {} ({} only in {}, {} only in {}, {} ambiguous keys)",
+			instanceMatcher.matches.size(), database1.getDBName(), database2.getDBName(), naturalKey,
+			instanceMatcher.unmatchedKeyToDbId1.size(), database1.getDBName(),
+			instanceMatcher.unmatchedKeyToDbId2.size(), database2.getDBName(),
+			instanceMatcher.ambiguousKeys.size()
+		);
+
+		return instanceMatcher;
+	}
+
+	/**
+	 * Returns the natural key by which the instances were matched
+	 * @return NaturalKey used for matching
+	 */
+	public NaturalKey getNaturalKey()
+	{
+		return this.naturalKey;
+	}
+
+	/**
+	 * Returns the pairs of instances with the same key in both databases, in the order they were read from the first
+	 * database
+	 * @return List of Match objects
+	 */
+	public List<Match> getMatches()
+	{
+		return Collections.unmodifiableList(this.matches);
+	}
+
+	/**
+	 * Returns the keys, and DB_IDs, of the instances which are only in the first database
+	 * @return Map of key to DB_ID for the unmatched instances of the first database
+	 */
+	public Map<String, Long> getUnmatchedInDatabase1()
+	{
+		return Collections.unmodifiableMap(this.unmatchedKeyToDbId1);
+	}
+
+	/**
+	 * Returns the keys, and DB_IDs, of the instances which are only in the second database
+	 * @return Map of key to DB_ID for the unmatched instances of the second database
+	 */
+	public Map<String, Long> getUnmatchedInDatabase2()
+	{
+		return Collections.unmodifiableMap(this.unmatchedKeyToDbId2);
+	}
+
+	/**
+	 * Returns the keys shared by more than one instance in either database.  Instances with these keys are not paired.
+	 * @return Set of ambiguous keys
+	 */
+	public Set<String> getAmbiguousKeys()
+	{
+		return this.ambiguousKeys;
+	}
+
+	/**
+	 * Compares each pair of matched instances with the DBObjectComparer class, sending the report of differences to
+	 * the passed DiffReportSink.  If the configuration prefetches attribute values, they are loaded for all of the
+	 * pairs before the first comparison.
+	 * @param reportSink A DiffReportSink that will receive a detailed report of differences
+	 * @param configuration Settings for the comparison
+	 * @return The number of matched pairs of instances which have differences
+	 * @throws Exception Thrown if an instance can not be fetched from its database
+	 */
+	public int compareMatchedInstances(DiffReportSink reportSink, ComparisonConfiguration configuration)
+		throws Exception
+	{
+		List<GKInstance> instances1 = new ArrayList<>(this.matches.size());
+		List<GKInstance> instances2 = new ArrayList<>(this.matches.size());
+		for (Match match : this.matches)
+		{
+			instances1.add(match.getInstance1());
+			instances2.add(match.getInstance2());
+		}
+
+		int differingMatchCount = 0;
+		for (int differenceCount : DBObjectComparer.compareInstances(instances1, instances2, reportSink, configuration))
+		{
+			if (differenceCount > 0)
+			{
+				differingMatchCount++;
+			}
+		}
+
+		return differingMatchCount;
+	}
+
+	/**
+	 * Sends a report of the unmatched instances of each database, and of the instances with ambiguous keys, to the
+	 * passed DiffReportSink.  Each instance is reported as a top-level comparison with no counterpart in the other
+	 * database (see {@link DiffReportSink#beginInstanceComparison(GKInstance, GKInstance)}), counting as 1 diff.
+	 * @param reportSink A DiffReportSink that will receive the report
+	 * @throws Exception Thrown if an instance can not be fetched from its database
+	 */
+	public void reportUnmatchedInstances(DiffReportSink reportSink) throws Exception
+	{
+		for (Map.Entry<String, Long> keyAndDbId : this.unmatchedKeyToDbId1.entrySet())
+		{
+			DBObjectComparer.reportUnpairedInstance(
+				this.database1.fetchInstance(keyAndDbId.getValue()), null,
+				getUnmatchedMessage(keyAndDbId.getKey(), keyAndDbId.getValue(), this.database1), reportSink
+			);
+		}
+		for (Map.Entry<String, Long> keyAndDbId : this.unmatchedKeyToDbId2.entrySet())
+		{
+			DBObjectComparer.reportUnpairedInstance(
+				null, this.database2.fetchInstance(keyAndDbId.getValue()),
+				getUnmatchedMessage(keyAndDbId.getKey(), keyAndDbId.getValue(), this.database2), reportSink
+			);
+		}
+		for (String ambiguousKey : this.ambiguousKeys)
+		{
+			for (Long dbId : this.ambiguousKeyToDbIds1.get(ambiguousKey))
+			{
+				DBObjectComparer.reportUnpairedInstance(
+					this.database1.fetchInstance(dbId), null,
+					getAmbiguousMessage(ambiguousKey, dbId, this.database1), reportSink
+				);
+			}
+			for (Long dbId : this.ambiguousKeyToDbIds2.get(ambiguousKey))
+			{
+				DBObjectComparer.reportUnpairedInstance(
+					null, this.database2.fetchInstance(dbId),
+					getAmbiguousMessage(ambiguousKey, dbId, this.database2), reportSink
+				);
+			}
+		}
+	}
+
+	private String getUnmatchedMessage(String key, long dbId, MySQLAdaptor database)
+	{
+		return "Instance with " + this.naturalKey + " key " + toDisplayKey(key) + " (DB_ID " + dbId + ") is only in " +
+			database.getDBName();
+	}
+
+	private String getAmbiguousMessage(String key, long dbId, MySQLAdaptor database)
+	{
+		return "Instance with " + this.naturalKey + " key " + toDisplayKey(key) + " (DB_ID " + dbId + ") in " +
+			database.getDBName() + " was not matched: the key is shared by more than one instance";
+	}
+
+	private static String toDisplayKey(String key)
+	{
+		return "'" + key.replace('\u0000', '|') + "'";
+	}
+
+	/**
+	 * A pair of instances, one from each database, with the same natural key
+	 */
+	public class Match
+	{
+		private final String key;
+		private final long dbId1;
+		private final long dbId2;
+
+		private Match(String key, long dbId1, long dbId2)
+		{
+			this.key = key;
+			this.dbId1 = dbId1;
+			this.dbId2 = dbId2;
+		}
+
+		public String getKey()
+		{
+			return this.key;
+		}
+
+		public long getDbId1()
+		{
+			return this.dbId1;
+		}
+
+		public long getDbId2()
+		{
+			return this.dbId2;
+		}
+
+		/**
+		 * Fetches the instance of the first database
+		 * @return GKInstance from the first database
+		 * @throws Exception Thrown if the instance can not be fetched
+		 */
+		public GKInstance getInstance1() throws Exception
+		{
+			return InstanceMatcher.this.database1.fetchInstance(this.dbId1);
+		}
+
+		/**
+		 * Fetches the instance of the second database
+		 * @return GKInstance from the second database
+		 * @throws Exception Thrown if the instance can not be fetched
+		 */
+		public GKInstance getInstance2() throws Exception
+		{
+			return InstanceMatcher.this.database2.fetchInstance(this.dbId2);
+		}
+	}
+
+	/**
+	 * Index of one database's instances by key.  Keys read for more than one instance are set aside as ambiguous.
+	 */
+	static class KeyIndex
+	{
+		private final Map<String, Long> keyToDbId = new LinkedHashMap<>();
+		private final Map<String, List<Long>> ambiguousKeyToDbIds = new LinkedHashMap<>();
+
+		/**
+		 * Streams the (DB_ID, key) rows of the passed database into a new index
+		 * @param database Database to index
+		 * @param naturalKey Key by which to index the database's instances
+		 * @return KeyIndex of the database
+		 * @throws SQLException Thrown if the keys can not be read from the database
+		 */
+		static KeyIndex build(MySQLAdaptor database, NaturalKey naturalKey) throws SQLException
+		{
+			KeyIndex keyIndex = new KeyIndex();
+			int keyPartCount = naturalKey.getAttributePaths().size();
+
+			try (Statement statement = database.getConnection().createStatement(
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY))
+			{
+				statement.setFetchSize(MYSQL_STREAMING_FETCH_SIZE);
+
+				try (ResultSet resultSet = statement.executeQuery(naturalKey.getQuery(database.getSchema())))
+				{
+					List<String> keyParts = new ArrayList<>(keyPartCount);
+					while (resultSet.next())
+					{
+						keyParts.clear();
+						for (int i = 0; i < keyPartCount; i++)
+						{
+							keyParts.add(resultSet.getString(i + 2));
+						}
+						keyIndex.add(NaturalKey.toKey(keyParts), resultSet.getLong(1));
+					}
+				}
+			}
+
+			return keyIndex;
+		}
+
+		/**
+		 * Adds an instance's key to the index
+		 * @param key Key of the instance
+		 * @param dbId DB_ID of the instance
+		 */
+		void add(String key, long dbId)
+		{
+			List<Long> ambiguousDbIds = this.ambiguousKeyToDbIds.get(key);
+			if (ambiguousDbIds != null)
+			{
+				if (!ambiguousDbIds.contains(dbId))
+				{
+					ambiguousDbIds.add(dbId);
+				}
+				return;
+			}
+
+			Long existingDbId = this.keyToDbId.putIfAbsent(key, dbId);
+			if (existingDbId != null && existingDbId != dbId)
+			{
+				this.keyToDbId.remove(key);
+				this.ambiguousKeyToDbIds.put(key, new ArrayList<>(Arrays.asList(existingDbId, dbId)));
+			}
+		}
+
+		/**
+		 * Returns the DB_IDs of the instances with the passed key
+		 * @param key Key of the instances
+		 * @return List of DB_IDs (empty if no instance has the key)
+		 */
+		List<Long> getDbIds(String key)
+		{
+			List<Long> ambiguousDbIds = this.ambiguousKeyToDbIds.get(key);
+			if (ambiguousDbIds != null)
+			{
+				return ambiguousDbIds;
+			}
+
+			Long dbId = this.keyToDbId.get(key);
+			return dbId != null ? Collections.singletonList(dbId) : Collections.emptyList();
+		}
+	}
+}
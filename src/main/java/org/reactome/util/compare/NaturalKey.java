@@ -0,0 +1,244 @@
+package org.reactome.util.compare;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.gk.model.GKInstance;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.schema.InvalidAttributeException;
+import org.gk.schema.Schema;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+
+/**
+ * A natural key identifying the "same" instance across databases in which it has different DB_IDs (e.g. between
+ * gk_central and a release database, or after orthoinference).  The key is made up of the values reached from an
+ * instance of a schema class by one or more attribute paths (e.g. "stableIdentifier.identifier" or
+ * "referenceDatabase.name" and "identifier").  Each path follows instance attributes, separated by '.', to a final
+ * attribute holding a simple value; where an attribute on the path is multi-valued, only its first value is used.
+ * Instances without a value for any of the paths have no key.
+ */
+public class NaturalKey
+{
+	/**
+	 * Keys instances by the identifier of their stable identifier (e.g. "R-HSA-123456")
+	 */
+	public static final NaturalKey STABLE_IDENTIFIER = new NaturalKey(
+		ReactomeJavaConstants.DatabaseObject,
+		ReactomeJavaConstants.stableIdentifier + "." + ReactomeJavaConstants.identifier
+	);
+
+	/**
+	 * Keys reference entities by the name of their reference database and their identifier (e.g. "UniProt" and
+	 * "P12345")
+	 */
+	public static final NaturalKey REFERENCE_DATABASE_IDENTIFIER = new NaturalKey(
+		ReactomeJavaConstants.ReferenceEntity,
+		ReactomeJavaConstants.referenceDatabase + "." + ReactomeJavaConstants.name,
+		ReactomeJavaConstants.identifier
+	);
+
+	private static final String PATH_SEPARATOR = ".";
+	// Separates the values of the key's paths in a key String; it does not occur in Reactome attribute values
+	private static final char KEY_PART_SEPARATOR = '\u0000';
+
+	private final String schemaClassName;
+	private final List<String> attributePaths;
+
+	/**
+	 * Constructs a new NaturalKey for instances of the passed schema class (and its sub-classes)
+	 * @param schemaClassName Name of the schema class whose instances are keyed
+	 * @param attributePaths Attribute paths, each a '.' separated list of attribute names, whose values make up the key
+	 * @throws IllegalArgumentException Thrown if no attribute paths are passed
+	 */
+	public NaturalKey(String schemaClassName, String... attributePaths)
+	{
+		if (attributePaths.length == 0)
+		{
+			throw new IllegalArgumentException("A natural key needs at least one attribute path");
+		}
+
+		this.schemaClassName = schemaClassName;
+		this.attributePaths = Collections.unmodifiableList(Arrays.asList(attributePaths));
+	}
+
+	/**
+	 * Returns the name of the schema class whose instances are keyed
+	 * @return Schema class name
+	 */
+	public String getSchemaClassName()
+	{
+		return this.schemaClassName;
+	}
+
+	/**
+	 * Returns the attribute paths whose values make up the key
+	 * @return List of '.' separated attribute paths
+	 */
+	public List<String> getAttributePaths()
+	{
+		return this.attributePaths;
+	}
+
+	/**
+	 * Returns the key of the passed instance, read through its attribute values (i.e. without a query to the database
+	 * when the values are already loaded).  The key is the same as the one read for the instance when its database is
+	 * indexed.
+	 * @param instance Instance for which to get the key
+	 * @return Key of the instance or <code>null</code> if the instance has no value for one of the attribute paths
+	 * @throws Exception Thrown if the attribute values of the instance (or of instances on the paths) can not be
+	 * retrieved
+	 */
+	public String getKey(GKInstance instance) throws Exception
+	{
+		List<String> keyParts = new ArrayList<>(this.attributePaths.size());
+		for (String attributePath : this.attributePaths)
+		{
+			Object value = instance;
+			for (String attributeName : splitPath(attributePath))
+			{
+				value = ((GKInstance) value).getAttributeValue(attributeName);
+				if (value == null)
+				{
+					return null;
+				}
+			}
+			keyParts.add(value.toString());
+		}
+
+		return toKey(keyParts);
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.schemaClassName + this.attributePaths;
+	}
+
+	/**
+	 * Joins the values of the key's paths into a key String
+	 * @param keyParts Values of the attribute paths, in path order
+	 * @return Key String
+	 */
+	static String toKey(List<String> keyParts)
+	{
+		return String.join(String.valueOf(KEY_PART_SEPARATOR), keyParts);
+	}
+
+	/**
+	 * Builds the query which reads the DB_ID and the values of the key's paths for every keyed instance of a database
+	 * with the passed schema.  Every attribute is read from the tables of the schema class in which it is defined
+	 * (i.e. its origin): multi-valued attributes from the "Origin_2_attribute" table (first value only), single-valued
+	 * attributes from a column of the origin class's table.
+	 * @param schema Schema of the database to query
+	 * @return SQL query returning one row of (DB_ID, path value...) per keyed instance
+	 * @throws IllegalArgumentException Thrown if the schema class or an attribute on a path does not exist, or a path
+	 * does not end in an attribute holding simple values
+	 */
+	String getQuery(Schema schema)
+	{
+		SchemaClass schemaClass = schema.getClassByName(this.schemaClassName);
+		if (schemaClass == null)
+		{
+			throw new IllegalArgumentException("Schema class " + this.schemaClassName + " does not exist");
+		}
+
+		List<String> columns = new ArrayList<>();
+		StringBuilder joins = new StringBuilder();
+		int tableCount = 1;
+		for (String attributePath : this.attributePaths)
+		{
+			String referenceColumn = "t0.DB_ID";
+			Collection<SchemaClass> currentClasses = Collections.singletonList(schemaClass);
+			List<String> attributeNames = splitPath(attributePath);
+			for (int i = 0; i < attributeNames.size(); i++)
+			{
+				SchemaAttribute attribute = getAttribute(currentClasses, attributeNames.get(i), attributePath);
+				boolean lastAttribute = i == attributeNames.size() - 1;
+				if (attribute.isInstanceTypeAttribute() == lastAttribute)
+				{
+					throw new IllegalArgumentException("Attribute path " + attributePath + " of " + this +
+						" must follow instance attributes to an attribute holding simple values");
+				}
+
+				String tableAlias;
+				String attributeName = attribute.getName();
+				String originName = attribute.getOrigin().getName();
+				if (i == 0 && !attribute.isMultiple() && originName.equals(schemaClass.getName()))
+				{
+					// A column of the keyed class's own table needs no join
+					tableAlias = "t0";
+				}
+				else if (attribute.isMultiple())
+				{
+					tableAlias = "t" + tableCount++;
+					joins.append(" JOIN ").append(originName).append("_2_").append(attributeName)
+						.append(" ").append(tableAlias).append(" ON ").append(tableAlias).append(".DB_ID = ")
+						.append(referenceColumn).append(" AND ").append(tableAlias).append(".")
+						.append(attributeName).append("_rank = 0");
+				}
+				else
+				{
+					tableAlias = "t" + tableCount++;
+					joins.append(" JOIN ").append(originName).append(" ").append(tableAlias)
+						.append(" ON ").append(tableAlias).append(".DB_ID = ").append(referenceColumn);
+				}
+
+				referenceColumn = tableAlias + "." + attributeName;
+				if (!lastAttribute)
+				{
+					currentClasses = getAllowedClasses(attribute);
+				}
+			}
+			columns.add(referenceColumn);
+		}
+
+		StringBuilder query = new StringBuilder("SELECT t0.DB_ID");
+		columns.forEach(column -> query.append(", ").append(column));
+		query.append(" FROM ").append(schemaClass.getName()).append(" t0").append(joins);
+		for (int i = 0; i < columns.size(); i++)
+		{
+			query.append(i == 0 ? " WHERE " : " AND ").append(columns.get(i)).append(" IS NOT NULL");
+		}
+
+		return query.toString();
+	}
+
+	private static List<String> splitPath(String attributePath)
+	{
+		return Arrays.asList(attributePath.split("\\" + PATH_SEPARATOR));
+	}
+
+	private SchemaAttribute getAttribute(
+		Collection<SchemaClass> schemaClasses, String attributeName, String attributePath
+	)
+	{
+		for (SchemaClass schemaClass : schemaClasses)
+		{
+			if (schemaClass.isValidAttribute(attributeName))
+			{
+				try
+				{
+					return schemaClass.getAttribute(attributeName);
+				}
+				catch (InvalidAttributeException e)
+				{
+					throw new IllegalArgumentException("Attribute path " + attributePath + " of " + this +
+						" is not valid", e);
+				}
+			}
+		}
+
+		throw new IllegalArgumentException("Attribute " + attributeName + " on path " + attributePath + " of " + this +
+			" does not exist");
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Collection<SchemaClass> getAllowedClasses(SchemaAttribute attribute)
+	{
+		return (Collection<SchemaClass>) attribute.getAllowedClasses();
+	}
+}
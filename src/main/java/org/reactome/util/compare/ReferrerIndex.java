@@ -0,0 +1,336 @@
+package org.reactome.util.compare;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.GKInstance;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+
+/**
+ * An in-memory reverse-reference index for a database: for each instance attribute, it maps the DB_ID of a referred
+ * to instance to the DB_IDs of the instances referring to it.  The index is built once per database with one
+ * streaming query per instance attribute in the schema, after which the referrers of any instance can be looked up
+ * without a query.  Referrer DB_IDs are held in primitive arrays (roughly 16 bytes per reference), so the index for a
+ * full release database fits comfortably in memory.
+ *
+ * Register an index with {@link ComparisonConfiguration#addReferrerIndex(ReferrerIndex)} to have the DBObjectComparer
+ * class use it, instead of <code>GKInstance.getReferers</code>, when checking referrers.
+ */
+public class ReferrerIndex
+{
+	private static final Logger logger = LogManager.getLogger();
+	// Rows are streamed from MySQL one at a time rather than read into memory all at once
+	private static final int MYSQL_STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+
+	private final MySQLAdaptor database;
+	private final Map<String, AttributeReferrers> attributeNameToReferrers;
+
+	private ReferrerIndex(MySQLAdaptor database, Map<String, AttributeReferrers> attributeNameToReferrers)
+	{
+		this.database = database;
+		this.attributeNameToReferrers = attributeNameToReferrers;
+	}
+
+	/**
+	 * Builds the referrer index for all instance attributes of the passed database's schema.
+	 * @param database Database for which to build the index
+	 * @return ReferrerIndex for the database
+	 * @throws SQLException Thrown if the attribute values can not be read from the database
+	 */
+	public static ReferrerIndex build(MySQLAdaptor database) throws SQLException
+	{
+		Builder builder = new Builder(database);
+
+		for (SchemaAttribute attribute : getInstanceAttributesByOrigin(database))
+		{
+			scanAttribute(database, attribute, builder);
+		}
+
+		ReferrerIndex referrerIndex = builder.build();
+		logger.info("Built referrer index for {} with {} references",
+			database.getDBName(), referrerIndex.getReferenceCount()
+		);
+
+		return referrerIndex;
+	}
+
+	/**
+	 * Returns the database for which this index was built
+	 * @return MySQLAdaptor of the indexed database
+	 */
+	public MySQLAdaptor getDatabase()
+	{
+		return this.database;
+	}
+
+	/**
+	 * Returns the instances which refer to the passed instance via the attribute with the passed name (i.e. the same
+	 * instances as <code>instance.getReferers(attributeName)</code>).
+	 * @param instance Instance for which to get the referrers
+	 * @param attributeName Name of the attribute through which the referrers refer to the instance
+	 * @return List of referring instances (empty if there are none)
+	 * @throws Exception Thrown if a referring instance can not be fetched from the database
+	 */
+	public List<GKInstance> getReferrers(GKInstance instance, String attributeName) throws Exception
+	{
+		long[] referrerDbIds = getReferrerDbIds(instance.getDBID(), attributeName);
+
+		List<GKInstance> referrers = new ArrayList<>(referrerDbIds.length);
+		for (long referrerDbId : referrerDbIds)
+		{
+			referrers.add(this.database.fetchInstance(referrerDbId));
+		}
+
+		return referrers;
+	}
+
+	/**
+	 * Returns the DB_IDs of the instances which refer to the instance with the passed DB_ID via the attribute with the
+	 * passed name.
+	 * @param dbId DB_ID of the referred to instance
+	 * @param attributeName Name of the attribute through which the referrers refer to the instance
+	 * @return Array of referrer DB_IDs (empty if there are none)
+	 */
+	public long[] getReferrerDbIds(long dbId, String attributeName)
+	{
+		AttributeReferrers attributeReferrers = this.attributeNameToReferrers.get(attributeName);
+		if (attributeReferrers == null)
+		{
+			return new long[0];
+		}
+
+		return attributeReferrers.getReferrerDbIds(dbId);
+	}
+
+	/**
+	 * Returns the total number of references held in this index
+	 * @return Number of (referrer, attribute, referred to instance) references
+	 */
+	public long getReferenceCount()
+	{
+		return this.attributeNameToReferrers
+			.values()
+			.stream()
+			.mapToLong(attributeReferrers -> attributeReferrers.referrerDbIds.length)
+			.sum();
+	}
+
+	/**
+	 * Returns the instance attributes of the database's schema, each included once for the schema class in which it
+	 * is defined (i.e. its origin), since that class's tables hold the values for all its sub-classes.
+	 * @param database Database for which to get the instance attributes
+	 * @return Collection of instance attributes, one per origin and attribute name
+	 */
+	@SuppressWarnings("unchecked")
+	private static Collection<SchemaAttribute> getInstanceAttributesByOrigin(MySQLAdaptor database)
+	{
+		Map<String, SchemaAttribute> originAndNameToAttribute = new HashMap<>();
+		for (SchemaClass schemaClass : (Collection<SchemaClass>) database.getSchema().getClasses())
+		{
+			for (SchemaAttribute attribute : (Collection<SchemaAttribute>) schemaClass.getAttributes())
+			{
+				if (attribute.isInstanceTypeAttribute())
+				{
+					originAndNameToAttribute.putIfAbsent(
+						attribute.getOrigin().getName() + "." + attribute.getName(), attribute
+					);
+				}
+			}
+		}
+
+		return originAndNameToAttribute.values();
+	}
+
+	/**
+	 * Streams the (DB_ID, value) rows of the passed attribute's table and adds each row as a reference to the builder.
+	 * Multi-valued attributes are stored in an "Origin_2_attribute" table; single-valued attributes in a column of the
+	 * origin class's table.
+	 */
+	private static void scanAttribute(MySQLAdaptor database, SchemaAttribute attribute, Builder builder)
+		throws SQLException
+	{
+		String attributeName = attribute.getName();
+		String originName = attribute.getOrigin().getName();
+		String tableName = attribute.isMultiple() ? originName + "_2_" + attributeName : originName;
+		String query = "SELECT DB_ID, " + attributeName + " FROM " + tableName +
+			" WHERE " + attributeName + " IS NOT NULL";
+
+		try (Statement statement = database.getConnection().createStatement(
+			ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY))
+		{
+			statement.setFetchSize(MYSQL_STREAMING_FETCH_SIZE);
+
+			try (ResultSet resultSet = statement.executeQuery(query))
+			{
+				while (resultSet.next())
+				{
+					builder.addReference(attributeName, resultSet.getLong(1), resultSet.getLong(2));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Accumulates references and compacts them into a ReferrerIndex
+	 */
+	static class Builder
+	{
+		private final MySQLAdaptor database;
+		private final Map<String, LongPairBuffer> attributeNameToReferences = new HashMap<>();
+
+		/**
+		 * Constructs a new Builder for an index of the passed database
+		 * @param database Database the references come from
+		 */
+		Builder(MySQLAdaptor database)
+		{
+			this.database = database;
+		}
+
+		/**
+		 * Adds a reference from one instance to another via the attribute with the passed name
+		 * @param attributeName Name of the attribute holding the reference
+		 * @param referrerDbId DB_ID of the referring instance
+		 * @param referencedDbId DB_ID of the referred to instance
+		 */
+		void addReference(String attributeName, long referrerDbId, long referencedDbId)
+		{
+			this.attributeNameToReferences
+				.computeIfAbsent(attributeName, k -> new LongPairBuffer())
+				.add(referencedDbId, referrerDbId);
+		}
+
+		/**
+		 * Compacts the accumulated references into a ReferrerIndex
+		 * @return ReferrerIndex holding all references added
+		 */
+		ReferrerIndex build()
+		{
+			Map<String, AttributeReferrers> attributeNameToReferrers = new HashMap<>();
+			this.attributeNameToReferences.forEach((attributeName, references) ->
+				attributeNameToReferrers.put(attributeName, AttributeReferrers.compact(references))
+			);
+			this.attributeNameToReferences.clear();
+
+			return new ReferrerIndex(this.database, attributeNameToReferrers);
+		}
+	}
+
+	/**
+	 * The referrers, via a single attribute name, of all referred to instances.  Referred to DB_IDs are held sorted
+	 * and unique; the referrers of the referred to DB_ID at position i are at positions startOffsets[i] (inclusive) to
+	 * startOffsets[i + 1] (exclusive) of referrerDbIds.
+	 */
+	private static class AttributeReferrers
+	{
+		private final long[] referencedDbIds;
+		private final int[] startOffsets;
+		private final long[] referrerDbIds;
+
+		private AttributeReferrers(long[] referencedDbIds, int[] startOffsets, long[] referrerDbIds)
+		{
+			this.referencedDbIds = referencedDbIds;
+			this.startOffsets = startOffsets;
+			this.referrerDbIds = referrerDbIds;
+		}
+
+		private static AttributeReferrers compact(LongPairBuffer references)
+		{
+			long[] sortedReferencedDbIds = Arrays.copyOf(references.firsts, references.size);
+			Arrays.sort(sortedReferencedDbIds);
+			long[] referencedDbIds = unique(sortedReferencedDbIds);
+
+			// Count the referrers of each referred to DB_ID, then turn the counts into start offsets
+			int[] startOffsets = new int[referencedDbIds.length + 1];
+			for (int i = 0; i < references.size; i++)
+			{
+				startOffsets[Arrays.binarySearch(referencedDbIds, references.firsts[i]) + 1]++;
+			}
+			for (int i = 1; i < startOffsets.length; i++)
+			{
+				startOffsets[i] += startOffsets[i - 1];
+			}
+
+			long[] referrerDbIds = new long[references.size];
+			int[] nextPositions = Arrays.copyOf(startOffsets, referencedDbIds.length);
+			for (int i = 0; i < references.size; i++)
+			{
+				int referencedIndex = Arrays.binarySearch(referencedDbIds, references.firsts[i]);
+				referrerDbIds[nextPositions[referencedIndex]++] = references.seconds[i];
+			}
+
+			return new AttributeReferrers(referencedDbIds, startOffsets, referrerDbIds);
+		}
+
+		private static long[] unique(long[] sortedValues)
+		{
+			int uniqueCount = 0;
+			for (int i = 0; i < sortedValues.length; i++)
+			{
+				if (i == 0 || sortedValues[i] != sortedValues[i - 1])
+				{
+					sortedValues[uniqueCount++] = sortedValues[i];
+				}
+			}
+
+			return Arrays.copyOf(sortedValues, uniqueCount);
+		}
+
+		private long[] getReferrerDbIds(long referencedDbId)
+		{
+			int referencedIndex = Arrays.binarySearch(this.referencedDbIds, referencedDbId);
+			if (referencedIndex < 0)
+			{
+				return new long[0];
+			}
+
+			// The same referrer may refer more than once (e.g. a multi-valued attribute); report it once
+			Set<Long> uniqueReferrerDbIds = new LinkedHashSet<>();
+			for (int i = this.startOffsets[referencedIndex]; i < this.startOffsets[referencedIndex + 1]; i++)
+			{
+				uniqueReferrerDbIds.add(this.referrerDbIds[i]);
+			}
+
+			return uniqueReferrerDbIds.stream().mapToLong(Long::longValue).toArray();
+		}
+	}
+
+	/**
+	 * A growable buffer of pairs of longs which avoids boxing
+	 */
+	private static class LongPairBuffer
+	{
+		private static final int INITIAL_CAPACITY = 1024;
+
+		private long[] firsts = new long[INITIAL_CAPACITY];
+		private long[] seconds = new long[INITIAL_CAPACITY];
+		private int size;
+
+		private void add(long first, long second)
+		{
+			if (this.size == this.firsts.length)
+			{
+				this.firsts = Arrays.copyOf(this.firsts, this.size * 2);
+				this.seconds = Arrays.copyOf(this.seconds, this.size * 2);
+			}
+
+			this.firsts[this.size] = first;
+			this.seconds[this.size] = second;
+			this.size++;
+		}
+	}
+
+}
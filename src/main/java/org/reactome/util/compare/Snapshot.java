@@ -0,0 +1,445 @@
+package org.reactome.util.compare;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.GKInstance;
+import org.gk.schema.GKSchemaAttribute;
+import org.gk.schema.GKSchemaClass;
+import org.gk.schema.SchemaAttribute;
+import org.reactome.util.compare.ComparisonPlan.AttributeDescriptor;
+
+/**
+ * A read-only, memory-mapped snapshot of instances written by the {@link SnapshotWriter} class.  Instances are looked
+ * up by DB_ID through the snapshot's offset index and returned as GKInstance objects whose attribute values are
+ * decoded from the mapped file on first access, so they can be compared with the DBObjectComparer class (against
+ * instances of a live database or of another snapshot) without the database the snapshot was exported from.
+ *
+ * Snapshot instances have the attributes which were written for their schema class (and "_displayName"), with
+ * instance values resolved to other instances of the same snapshot.  References to instances which are not in the
+ * snapshot are resolved to read-only placeholders with only the DB_ID, schema class and display name of the
+ * instance, which the DBObjectComparer class compares by identity (DB_ID) rather than by their attributes.  Snapshots
+ * hold no referrers, so the DBObjectComparer class rejects comparisons of snapshot instances which check referrers.
+ */
+public class Snapshot implements Closeable
+{
+	static final int MAGIC = 0x52534E50;
+	static final int VERSION = 2;
+
+	static final byte INSTANCE_VALUE = 0;
+	static final byte STRING_VALUE = 1;
+	static final byte INTEGER_VALUE = 2;
+	static final byte LONG_VALUE = 3;
+	static final byte FLOAT_VALUE = 4;
+	static final byte BOOLEAN_VALUE = 5;
+
+	private static final Logger logger = LogManager.getLogger();
+	private static final String DISPLAY_NAME = "_displayName";
+	// schema offset, index offset, instance count and magic number
+	private static final int FOOTER_SIZE = Long.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+	private final String name;
+	private final FileChannel fileChannel;
+	private final MappedByteBuffer buffer;
+	private final int instanceCount;
+	private final int dbIdIndexOffset;
+	private final int recordOffsetIndexOffset;
+	private final List<SnapshotSchemaClass> schemaClasses = new ArrayList<>();
+	private final Map<Long, SnapshotInstance> dbIdToInstance = new ConcurrentHashMap<>();
+	private final Map<Long, SnapshotInstance> dbIdToPlaceholder = new HashMap<>();
+
+	private Snapshot(Path snapshotFile) throws IOException
+	{
+		this.name = snapshotFile.getFileName().toString();
+		this.fileChannel = FileChannel.open(snapshotFile, StandardOpenOption.READ);
+
+		try
+		{
+			long fileSize = this.fileChannel.size();
+			if (fileSize > Integer.MAX_VALUE)
+			{
+				throw new IOException(snapshotFile + " exceeds the maximum snapshot size of 2 GB");
+			}
+			if (fileSize < Integer.BYTES * 2 + FOOTER_SIZE)
+			{
+				throw new IOException(snapshotFile + " is not a snapshot file");
+			}
+			this.buffer = this.fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+
+			int footerOffset = (int) fileSize - FOOTER_SIZE;
+			if (this.buffer.getInt(0) != MAGIC ||
+				this.buffer.getInt(footerOffset + FOOTER_SIZE - Integer.BYTES) != MAGIC)
+			{
+				throw new IOException(snapshotFile + " is not a snapshot file");
+			}
+			if (this.buffer.getInt(Integer.BYTES) != VERSION)
+			{
+				throw new IOException(snapshotFile + " has unsupported snapshot version " +
+					this.buffer.getInt(Integer.BYTES));
+			}
+
+			int schemaOffset = (int) this.buffer.getLong(footerOffset);
+			this.dbIdIndexOffset = (int) this.buffer.getLong(footerOffset + Long.BYTES);
+			this.instanceCount = this.buffer.getInt(footerOffset + Long.BYTES * 2);
+			this.recordOffsetIndexOffset = this.dbIdIndexOffset + this.instanceCount * Long.BYTES;
+
+			readSchema(schemaOffset);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			this.fileChannel.close();
+			throw e;
+		}
+
+		logger.info("Opened snapshot {} with {} instances of {} schema classes",
+			this.name, this.instanceCount, this.schemaClasses.size()
+		);
+	}
+
+	/**
+	 * Opens and memory-maps the passed snapshot file
+	 * @param snapshotFile Snapshot file written by the SnapshotWriter class
+	 * @return Snapshot of the file's instances
+	 * @throws IOException Thrown if the file can not be read or is not a snapshot file
+	 */
+	public static Snapshot open(Path snapshotFile) throws IOException
+	{
+		return new Snapshot(snapshotFile);
+	}
+
+	/**
+	 * Returns the name of the snapshot (its file name), used in place of a database name in reports
+	 * @return Name of the snapshot
+	 */
+	public String getName()
+	{
+		return this.name;
+	}
+
+	/**
+	 * Returns the number of instances in the snapshot
+	 * @return Number of instances
+	 */
+	public int size()
+	{
+		return this.instanceCount;
+	}
+
+	/**
+	 * Returns <code>true</code> if the snapshot has an instance with the passed DB_ID; <code>false</code> otherwise
+	 * @param dbId DB_ID of the instance
+	 * @return <code>true</code> if the instance is in the snapshot; <code>false</code> otherwise
+	 */
+	public boolean contains(long dbId)
+	{
+		return findIndex(dbId) >= 0;
+	}
+
+	/**
+	 * Returns the DB_IDs of all instances in the snapshot, in ascending order
+	 * @return Array of DB_IDs
+	 */
+	public long[] getDbIds()
+	{
+		long[] dbIds = new long[this.instanceCount];
+		for (int i = 0; i < this.instanceCount; i++)
+		{
+			dbIds[i] = getDbId(i);
+		}
+
+		return dbIds;
+	}
+
+	/**
+	 * Returns the instance with the passed DB_ID.  The same GKInstance object is returned for each call with a DB_ID.
+	 * @param dbId DB_ID of the instance
+	 * @return GKInstance backed by the snapshot or <code>null</code> if the snapshot has no instance with the DB_ID
+	 */
+	public GKInstance getInstance(long dbId)
+	{
+		SnapshotInstance instance = this.dbIdToInstance.get(dbId);
+		if (instance != null)
+		{
+			return instance;
+		}
+
+		int index = findIndex(dbId);
+		if (index < 0)
+		{
+			return null;
+		}
+
+		return this.dbIdToInstance.computeIfAbsent(dbId, k -> createInstance(dbId, getRecordOffset(index)));
+	}
+
+	/**
+	 * Closes the snapshot's file channel (the mapped buffer itself is released when it is garbage collected)
+	 * @throws IOException Thrown if the file channel can not be closed
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		this.fileChannel.close();
+	}
+
+	/**
+	 * Returns the code by which the value type of the passed attribute is written to a snapshot
+	 * @param attributeDescriptor Attribute for which to get the value type code
+	 * @return Value type code
+	 */
+	static byte getValueTypeCode(AttributeDescriptor attributeDescriptor)
+	{
+		if (attributeDescriptor.isContainingInstances())
+		{
+			return INSTANCE_VALUE;
+		}
+
+		switch (attributeDescriptor.getValueType())
+		{
+			case INTEGER:
+				return INTEGER_VALUE;
+			case LONG:
+				return LONG_VALUE;
+			case FLOAT:
+				return FLOAT_VALUE;
+			case BOOLEAN:
+				return BOOLEAN_VALUE;
+			default:
+				// Strings, and any other values as their String representation
+				return STRING_VALUE;
+		}
+	}
+
+	/**
+	 * Decodes the attribute values of the record at the passed offset
+	 * @param recordOffset Offset of the instance's record
+	 * @return Map of attribute name to (unmodifiable) list of values for each attribute written for the instance
+	 */
+	Map<String, List<Object>> readAttributeValues(int recordOffset)
+	{
+		ByteBuffer recordBuffer = this.buffer.duplicate();
+		recordBuffer.position(recordOffset + Long.BYTES);
+
+		SnapshotSchemaClass schemaClass = this.schemaClasses.get(recordBuffer.getInt());
+		readString(recordBuffer);
+
+		Map<String, List<Object>> attributeNameToValues = new HashMap<>();
+		for (int i = 0; i < schemaClass.attributeNames.length; i++)
+		{
+			int valueCount = recordBuffer.getInt();
+			List<Object> values = new ArrayList<>(valueCount);
+			for (int j = 0; j < valueCount; j++)
+			{
+				Object value = readValue(recordBuffer, schemaClass.valueTypeCodes[i]);
+				if (value != null)
+				{
+					values.add(value);
+				}
+			}
+			attributeNameToValues.put(schemaClass.attributeNames[i], Collections.unmodifiableList(values));
+		}
+
+		return attributeNameToValues;
+	}
+
+	private SnapshotInstance createInstance(long dbId, int recordOffset)
+	{
+		ByteBuffer recordBuffer = this.buffer.duplicate();
+		recordBuffer.position(recordOffset + Long.BYTES);
+
+		SnapshotSchemaClass schemaClass = this.schemaClasses.get(recordBuffer.getInt());
+		String displayName = readString(recordBuffer);
+
+		return new SnapshotInstance(this, schemaClass.schemaClass, dbId, displayName, recordOffset);
+	}
+
+	private Object readValue(ByteBuffer recordBuffer, byte valueTypeCode)
+	{
+		switch (valueTypeCode)
+		{
+			case INSTANCE_VALUE:
+				long dbId = recordBuffer.getLong();
+				GKInstance instance = getInstance(dbId);
+				// Instances which were not exported are compared by identity through their placeholders
+				return instance != null ? instance : this.dbIdToPlaceholder.get(dbId);
+			case INTEGER_VALUE:
+				return recordBuffer.getInt();
+			case LONG_VALUE:
+				return recordBuffer.getLong();
+			case FLOAT_VALUE:
+				return recordBuffer.getFloat();
+			case BOOLEAN_VALUE:
+				return recordBuffer.get() != 0;
+			default:
+				return readString(recordBuffer);
+		}
+	}
+
+	/**
+	 * Reads the schema section: each schema class's name and the name, value type and multiplicity of each of its
+	 * attributes.  The classes are re-created as GKSchemaClass objects (with a "_displayName" attribute, which
+	 * GKInstance uses for its display name) for the snapshot's instances.  The schema section is followed by the
+	 * instances which are referred to but were not exported, for which placeholders are created.
+	 */
+	private void readSchema(int schemaOffset)
+	{
+		ByteBuffer schemaBuffer = this.buffer.duplicate();
+		schemaBuffer.position(schemaOffset);
+
+		int schemaClassCount = schemaBuffer.getInt();
+		for (int i = 0; i < schemaClassCount; i++)
+		{
+			GKSchemaClass schemaClass = new GKSchemaClass(readString(schemaBuffer));
+			schemaClass.setName(schemaClass.getId());
+
+			int attributeCount = schemaBuffer.getInt();
+			String[] attributeNames = new String[attributeCount];
+			byte[] valueTypeCodes = new byte[attributeCount];
+			for (int j = 0; j < attributeCount; j++)
+			{
+				attributeNames[j] = readString(schemaBuffer);
+				valueTypeCodes[j] = schemaBuffer.get();
+				boolean multiple = schemaBuffer.get() != 0;
+
+				schemaClass.addAttribute(createAttribute(schemaClass, attributeNames[j], valueTypeCodes[j], multiple));
+			}
+			if (!schemaClass.isValidAttribute(DISPLAY_NAME))
+			{
+				schemaClass.addAttribute(createAttribute(schemaClass, DISPLAY_NAME, STRING_VALUE, false));
+			}
+
+			this.schemaClasses.add(new SnapshotSchemaClass(schemaClass, attributeNames, valueTypeCodes));
+		}
+
+		int placeholderCount = schemaBuffer.getInt();
+		for (int i = 0; i < placeholderCount; i++)
+		{
+			long dbId = schemaBuffer.getLong();
+			GKSchemaClass schemaClass = this.schemaClasses.get(schemaBuffer.getInt()).schemaClass;
+			String displayName = readString(schemaBuffer);
+
+			this.dbIdToPlaceholder.put(dbId, SnapshotInstance.createPlaceholder(this, schemaClass, dbId, displayName));
+		}
+	}
+
+	private static SchemaAttribute createAttribute(
+		GKSchemaClass schemaClass, String attributeName, byte valueTypeCode, boolean multiple
+	)
+	{
+		GKSchemaAttribute attribute = new GKSchemaAttribute(attributeName);
+		attribute.setName(attributeName);
+		attribute.setMultiple(multiple);
+		attribute.setOrigin(schemaClass);
+		attribute.addSchemaClass(schemaClass);
+
+		switch (valueTypeCode)
+		{
+			case INSTANCE_VALUE:
+				attribute.setType(GKInstance.class);
+				attribute.setTypeAsInt(SchemaAttribute.INSTANCE_TYPE);
+				break;
+			case INTEGER_VALUE:
+				attribute.setType(Integer.class);
+				attribute.setTypeAsInt(SchemaAttribute.INTEGER_TYPE);
+				break;
+			case LONG_VALUE:
+				attribute.setType(Long.class);
+				attribute.setTypeAsInt(SchemaAttribute.LONG_TYPE);
+				break;
+			case FLOAT_VALUE:
+				attribute.setType(Float.class);
+				attribute.setTypeAsInt(SchemaAttribute.FLOAT_TYPE);
+				break;
+			case BOOLEAN_VALUE:
+				attribute.setType(Boolean.class);
+				attribute.setTypeAsInt(SchemaAttribute.BOOLEAN_TYPE);
+				break;
+			default:
+				attribute.setType(String.class);
+				attribute.setTypeAsInt(SchemaAttribute.STRING_TYPE);
+				break;
+		}
+
+		return attribute;
+	}
+
+	private int findIndex(long dbId)
+	{
+		int low = 0;
+		int high = this.instanceCount - 1;
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			long middleDbId = getDbId(middle);
+			if (middleDbId < dbId)
+			{
+				low = middle + 1;
+			}
+			else if (middleDbId > dbId)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return middle;
+			}
+		}
+
+		return -1;
+	}
+
+	private long getDbId(int index)
+	{
+		return this.buffer.getLong(this.dbIdIndexOffset + index * Long.BYTES);
+	}
+
+	private int getRecordOffset(int index)
+	{
+		return this.buffer.getInt(this.recordOffsetIndexOffset + index * Integer.BYTES);
+	}
+
+	private static String readString(ByteBuffer byteBuffer)
+	{
+		int length = byteBuffer.getInt();
+		if (length < 0)
+		{
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		byteBuffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * A schema class re-created from the snapshot with the names and value type codes of its written attributes, in
+	 * record order
+	 */
+	private static class SnapshotSchemaClass
+	{
+		private final GKSchemaClass schemaClass;
+		private final String[] attributeNames;
+		private final byte[] valueTypeCodes;
+
+		private SnapshotSchemaClass(GKSchemaClass schemaClass, String[] attributeNames, byte[] valueTypeCodes)
+		{
+			this.schemaClass = schemaClass;
+			this.attributeNames = attributeNames;
+			this.valueTypeCodes = valueTypeCodes;
+		}
+	}
+}
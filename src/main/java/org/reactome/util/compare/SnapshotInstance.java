@@ -0,0 +1,140 @@
+package org.reactome.util.compare;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.gk.model.GKInstance;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+
+/**
+ * A GKInstance backed by a record of a {@link Snapshot}.  Its attribute values are decoded from the snapshot the first
+ * time any of them is requested and are read-only.  An instance which is referred to but was not exported is a
+ * placeholder, with no record and no attribute values.
+ */
+class SnapshotInstance extends GKInstance
+{
+	private final Snapshot snapshot;
+	private final String displayName;
+	private static final String DISPLAY_NAME = "_displayName";
+	private static final int NO_RECORD_OFFSET = -1;
+
+	private final int recordOffset;
+
+	private volatile Map<String, List<Object>> attributeNameToValues;
+
+	/**
+	 * Constructs a new SnapshotInstance for the record at the passed offset
+	 * @param snapshot Snapshot holding the instance's record
+	 * @param schemaClass Schema class of the instance, as re-created from the snapshot
+	 * @param dbId DB_ID of the instance
+	 * @param displayName Display name of the instance
+	 * @param recordOffset Offset of the instance's record in the snapshot
+	 */
+	SnapshotInstance(Snapshot snapshot, SchemaClass schemaClass, long dbId, String displayName, int recordOffset)
+	{
+		super(schemaClass, dbId, null);
+		this.snapshot = snapshot;
+		this.displayName = displayName;
+		this.recordOffset = recordOffset;
+	}
+
+	/**
+	 * Creates a placeholder for an instance which is referred to by instances of the passed snapshot but was not
+	 * exported to it
+	 * @param snapshot Snapshot holding the references to the instance
+	 * @param schemaClass Schema class of the instance, as re-created from the snapshot
+	 * @param dbId DB_ID of the instance
+	 * @param displayName Display name of the instance
+	 * @return SnapshotInstance with no attribute values
+	 */
+	static SnapshotInstance createPlaceholder(
+		Snapshot snapshot, SchemaClass schemaClass, long dbId, String displayName
+	)
+	{
+		return new SnapshotInstance(snapshot, schemaClass, dbId, displayName, NO_RECORD_OFFSET);
+	}
+
+	/**
+	 * Returns <code>true</code> if this instance is a placeholder for an instance which was not exported (and so has
+	 * only its DB_ID, schema class and display name); <code>false</code> otherwise
+	 * @return <code>true</code> if this instance is a placeholder; <code>false</code> otherwise
+	 */
+	boolean isPlaceholder()
+	{
+		return this.recordOffset == NO_RECORD_OFFSET;
+	}
+
+	/**
+	 * Returns the snapshot holding this instance
+	 * @return Snapshot of this instance
+	 */
+	Snapshot getSnapshot()
+	{
+		return this.snapshot;
+	}
+
+	@Override
+	public String getDisplayName()
+	{
+		return this.displayName;
+	}
+
+	@Override
+	public List getAttributeValuesList(String attributeName) throws Exception
+	{
+		getSchemClass().isValidAttributeOrThrow(attributeName);
+
+		List<Object> values = getAttributeNameToValues().get(attributeName);
+		if (values == null && isPlaceholder() && !attributeName.equals(DISPLAY_NAME))
+		{
+			return Collections.emptyList();
+		}
+		if (values == null)
+		{
+			// Only the display name is not written as an attribute (unless the attribute filter included it)
+			return this.displayName != null ? Collections.singletonList(this.displayName) : Collections.emptyList();
+		}
+
+		return values;
+	}
+
+	@Override
+	public List getAttributeValuesList(SchemaAttribute attribute) throws Exception
+	{
+		return getAttributeValuesList(attribute.getName());
+	}
+
+	@Override
+	public Object getAttributeValue(String attributeName) throws Exception
+	{
+		List<?> values = getAttributeValuesList(attributeName);
+
+		return values.isEmpty() ? null : values.get(0);
+	}
+
+	@Override
+	public Object getAttributeValue(SchemaAttribute attribute) throws Exception
+	{
+		return getAttributeValue(attribute.getName());
+	}
+
+	private Map<String, List<Object>> getAttributeNameToValues()
+	{
+		if (isPlaceholder())
+		{
+			return Collections.emptyMap();
+		}
+
+		Map<String, List<Object>> attributeNameToValues = this.attributeNameToValues;
+		if (attributeNameToValues == null)
+		{
+			// Decoding is idempotent, so concurrent first accesses at most decode the record twice
+			attributeNameToValues = this.snapshot.readAttributeValues(this.recordOffset);
+			this.attributeNameToValues = attributeNameToValues;
+		}
+
+		return attributeNameToValues;
+	}
+}
@@ -0,0 +1,450 @@
+package org.reactome.util.compare;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.GKInstance;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+import org.reactome.util.compare.AttributeProcessor.AttributeRelationshipType;
+import org.reactome.util.compare.AttributeProcessor.ComparisonPlans;
+import org.reactome.util.compare.ComparisonPlan.AttributeDescriptor;
+
+/**
+ * Writes instances to a compact binary snapshot file which can later be read, memory-mapped, by the {@link Snapshot}
+ * class and compared with the DBObjectComparer class without the original database.  Only the attributes which pass
+ * the attribute filter are written (along with each instance's display name, which the comparer uses for ordering
+ * and reports) and instance values are written as DB_IDs.  The schema class and display name of each instance
+ * referred to by an instance value are also recorded, so references to instances which are not written (e.g. of a
+ * schema class which was not exported) can still be compared by identity.
+ *
+ * Instances must be written in ascending DB_ID order, so the snapshot's offset index is written as-is when the writer
+ * is closed.  A snapshot file is limited to 2 GB (the size of a single memory-mapped buffer).
+ *
+ * Example usage:
+<pre>
+	SnapshotWriter.export(database, ReactomeJavaConstants.DatabaseObject, Paths.get("release_76.snapshot"), null);
+	try (Snapshot snapshot = Snapshot.open(Paths.get("release_76.snapshot")))
+	{
+		DBObjectComparer.compareInstances(snapshot.getInstance(dbId), database.fetchInstance(dbId), stringBuilder);
+	}
+</pre>
+ */
+public class SnapshotWriter implements Closeable
+{
+	private static final Logger logger = LogManager.getLogger();
+	// Rows are streamed from MySQL one at a time rather than read into memory all at once
+	private static final int MYSQL_STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+	private static final int EXPORT_BATCH_SIZE = 1000;
+	private static final int INITIAL_INDEX_CAPACITY = 1024;
+
+	private final DataOutputStream outputStream;
+	private final ComparisonPlans comparisonPlans;
+	private final Map<String, Integer> schemaClassNameToIndex = new HashMap<>();
+	private final List<AttributeDescriptor[]> schemaClassAttributeDescriptors = new ArrayList<>();
+	private final List<String> schemaClassNames = new ArrayList<>();
+	private final Map<Long, Reference> dbIdToReference = new HashMap<>();
+
+	private long[] dbIds = new long[INITIAL_INDEX_CAPACITY];
+	private int[] offsets = new int[INITIAL_INDEX_CAPACITY];
+	private int instanceCount;
+	private boolean closed;
+
+	/**
+	 * Constructs a new SnapshotWriter writing to the passed file
+	 * @param snapshotFile File to which the snapshot is written (replaced if it exists)
+	 * @param attributeNameFilter Predicate value used to determine which attributes are written or <code>null</code>
+	 * to use the default filter (which ignores "DB_ID", "dateTime", "modified", and "created")
+	 * @throws IOException Thrown if the file can not be created
+	 */
+	public SnapshotWriter(Path snapshotFile, Predicate<? super SchemaAttribute> attributeNameFilter)
+		throws IOException
+	{
+		this.outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(snapshotFile)));
+		this.comparisonPlans = AttributeProcessor.getComparisonPlans(attributeNameFilter);
+
+		this.outputStream.writeInt(Snapshot.MAGIC);
+		this.outputStream.writeInt(Snapshot.VERSION);
+	}
+
+	/**
+	 * Exports all instances of the passed schema class (and its sub-classes) in the database to a snapshot file.
+	 * Instances are fetched, and their attribute values loaded, in batches.  For large databases, the adaptor's
+	 * instance cache should be turned off (<code>database.setUseCache(false)</code>) so fetched instances do not
+	 * accumulate in memory.
+	 * @param database Database from which to export the instances
+	 * @param schemaClassName Name of the schema class whose instances are exported (e.g. "DatabaseObject" for all
+	 * instances)
+	 * @param snapshotFile File to which the snapshot is written (replaced if it exists)
+	 * @param attributeNameFilter Predicate value used to determine which attributes are written or <code>null</code>
+	 * to use the default filter (which ignores "DB_ID", "dateTime", "modified", and "created")
+	 * @throws Exception Thrown if the instances can not be read from the database or the snapshot can not be written
+	 */
+	@SuppressWarnings("unchecked")
+	public static void export(
+		MySQLAdaptor database, String schemaClassName, Path snapshotFile,
+		Predicate<? super SchemaAttribute> attributeNameFilter
+	) throws Exception
+	{
+		long[] dbIds = fetchDbIds(database, schemaClassName);
+
+		try (SnapshotWriter snapshotWriter = new SnapshotWriter(snapshotFile, attributeNameFilter))
+		{
+			for (int batchStart = 0; batchStart < dbIds.length; batchStart += EXPORT_BATCH_SIZE)
+			{
+				List<Long> batchDbIds = new ArrayList<>();
+				for (int i = batchStart; i < Math.min(batchStart + EXPORT_BATCH_SIZE, dbIds.length); i++)
+				{
+					batchDbIds.add(dbIds[i]);
+				}
+
+				Map<Long, GKInstance> dbIdToInstance = new HashMap<>();
+				for (GKInstance instance : (Collection<GKInstance>) database.fetchInstance(batchDbIds))
+				{
+					dbIdToInstance.put(instance.getDBID(), instance);
+				}
+				snapshotWriter.loadAttributeValues(database, dbIdToInstance.values());
+
+				for (Long dbId : batchDbIds)
+				{
+					GKInstance instance = dbIdToInstance.get(dbId);
+					if (instance != null)
+					{
+						snapshotWriter.write(instance);
+					}
+				}
+			}
+			logger.info("Exported {} instances of {} from {} to {}",
+				snapshotWriter.instanceCount, schemaClassName, database.getDBName(), snapshotFile
+			);
+		}
+	}
+
+	/**
+	 * Writes the passed instance to the snapshot
+	 * @param instance Instance to write
+	 * @throws IOException Thrown if the instance can not be written or the snapshot would exceed 2 GB
+	 * @throws IllegalArgumentException Thrown if the instance's DB_ID is not greater than that of the previously
+	 * written instance
+	 * @throws Exception Thrown if the attribute values of the instance can not be retrieved
+	 */
+	public void write(GKInstance instance) throws Exception
+	{
+		long dbId = instance.getDBID();
+		if (this.instanceCount > 0 && dbId <= this.dbIds[this.instanceCount - 1])
+		{
+			throw new IllegalArgumentException("Instances must be written in ascending DB_ID order: " + dbId +
+				" follows " + this.dbIds[this.instanceCount - 1]);
+		}
+		// DataOutputStream.size() stops at Integer.MAX_VALUE
+		if (this.outputStream.size() == Integer.MAX_VALUE)
+		{
+			throw new IOException("Snapshot exceeds the maximum size of 2 GB");
+		}
+
+		addToIndex(dbId, this.outputStream.size());
+
+		int schemaClassIndex = getSchemaClassIndex(instance.getSchemClass());
+		this.outputStream.writeLong(dbId);
+		this.outputStream.writeInt(schemaClassIndex);
+		writeString(instance.getDisplayName());
+
+		for (AttributeDescriptor attributeDescriptor : this.schemaClassAttributeDescriptors.get(schemaClassIndex))
+		{
+			writeValues(attributeDescriptor, instance.getAttributeValuesList(attributeDescriptor.getName()));
+		}
+	}
+
+	/**
+	 * Writes the schema section, offset index and footer and closes the file
+	 * @throws IOException Thrown if the file can not be written
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (this.closed)
+		{
+			return;
+		}
+		this.closed = true;
+
+		try
+		{
+			long schemaOffset = this.outputStream.size();
+			writeSchema();
+			writeUnwrittenReferences();
+
+			long indexOffset = this.outputStream.size();
+			for (int i = 0; i < this.instanceCount; i++)
+			{
+				this.outputStream.writeLong(this.dbIds[i]);
+			}
+			for (int i = 0; i < this.instanceCount; i++)
+			{
+				this.outputStream.writeInt(this.offsets[i]);
+			}
+
+			if (this.outputStream.size() == Integer.MAX_VALUE)
+			{
+				throw new IOException("Snapshot exceeds the maximum size of 2 GB");
+			}
+
+			this.outputStream.writeLong(schemaOffset);
+			this.outputStream.writeLong(indexOffset);
+			this.outputStream.writeInt(this.instanceCount);
+			this.outputStream.writeInt(Snapshot.MAGIC);
+		}
+		finally
+		{
+			this.outputStream.close();
+		}
+	}
+
+	private static long[] fetchDbIds(MySQLAdaptor database, String schemaClassName) throws SQLException
+	{
+		long[] dbIds = new long[INITIAL_INDEX_CAPACITY];
+		int dbIdCount = 0;
+
+		try (Statement statement = database.getConnection().createStatement(
+			ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY))
+		{
+			statement.setFetchSize(MYSQL_STREAMING_FETCH_SIZE);
+
+			try (ResultSet resultSet = statement.executeQuery(
+				"SELECT DB_ID FROM " + schemaClassName + " ORDER BY DB_ID"))
+			{
+				while (resultSet.next())
+				{
+					if (dbIdCount == dbIds.length)
+					{
+						dbIds = Arrays.copyOf(dbIds, dbIdCount * 2);
+					}
+					dbIds[dbIdCount++] = resultSet.getLong(1);
+				}
+			}
+		}
+
+		return Arrays.copyOf(dbIds, dbIdCount);
+	}
+
+	/**
+	 * Loads the values of the attributes written for each schema class with one query per class and attribute
+	 */
+	private void loadAttributeValues(MySQLAdaptor database, Collection<GKInstance> instances) throws Exception
+	{
+		Map<SchemaClass, List<GKInstance>> schemaClassToInstances = new LinkedHashMap<>();
+		for (GKInstance instance : instances)
+		{
+			schemaClassToInstances.computeIfAbsent(instance.getSchemClass(), k -> new ArrayList<>()).add(instance);
+		}
+
+		for (Map.Entry<SchemaClass, List<GKInstance>> schemaClassAndInstances : schemaClassToInstances.entrySet())
+		{
+			List<SchemaAttribute> attributes = new ArrayList<>();
+			for (AttributeDescriptor attributeDescriptor : getAttributeDescriptors(schemaClassAndInstances.getKey()))
+			{
+				attributes.add(attributeDescriptor.getAttribute());
+			}
+			database.loadInstanceAttributeValues(schemaClassAndInstances.getValue(), attributes);
+		}
+	}
+
+	private AttributeDescriptor[] getAttributeDescriptors(SchemaClass schemaClass)
+	{
+		return this.comparisonPlans.get(schemaClass, AttributeRelationshipType.REGULAR_ATTRIBUTE)
+			.getAttributeDescriptors();
+	}
+
+	private int getSchemaClassIndex(SchemaClass schemaClass)
+	{
+		Integer schemaClassIndex = this.schemaClassNameToIndex.get(schemaClass.getName());
+		if (schemaClassIndex == null)
+		{
+			schemaClassIndex = this.schemaClassNames.size();
+			this.schemaClassNameToIndex.put(schemaClass.getName(), schemaClassIndex);
+			this.schemaClassNames.add(schemaClass.getName());
+			this.schemaClassAttributeDescriptors.add(getAttributeDescriptors(schemaClass));
+		}
+
+		return schemaClassIndex;
+	}
+
+	private void addToIndex(long dbId, int offset)
+	{
+		if (this.instanceCount == this.dbIds.length)
+		{
+			this.dbIds = Arrays.copyOf(this.dbIds, this.instanceCount * 2);
+			this.offsets = Arrays.copyOf(this.offsets, this.instanceCount * 2);
+		}
+
+		this.dbIds[this.instanceCount] = dbId;
+		this.offsets[this.instanceCount] = offset;
+		this.instanceCount++;
+	}
+
+	/**
+	 * Writes, for each schema class in index order, its name and the name, value type and multiplicity of each of its
+	 * written attributes
+	 */
+	private void writeSchema() throws IOException
+	{
+		this.outputStream.writeInt(this.schemaClassNames.size());
+		for (int i = 0; i < this.schemaClassNames.size(); i++)
+		{
+			writeString(this.schemaClassNames.get(i));
+
+			AttributeDescriptor[] attributeDescriptors = this.schemaClassAttributeDescriptors.get(i);
+			this.outputStream.writeInt(attributeDescriptors.length);
+			for (AttributeDescriptor attributeDescriptor : attributeDescriptors)
+			{
+				writeString(attributeDescriptor.getName());
+				this.outputStream.writeByte(Snapshot.getValueTypeCode(attributeDescriptor));
+				this.outputStream.writeBoolean(attributeDescriptor.getAttribute().isMultiple());
+			}
+		}
+	}
+
+	/**
+	 * Records the schema class and display name of the passed instance value, unless it has already been written
+	 */
+	private void recordReference(GKInstance instanceValue)
+	{
+		long dbId = instanceValue.getDBID();
+		if (this.dbIdToReference.containsKey(dbId) || isWritten(dbId))
+		{
+			return;
+		}
+
+		this.dbIdToReference.put(dbId, new Reference(
+			getSchemaClassIndex(instanceValue.getSchemClass()), instanceValue.getDisplayName()
+		));
+	}
+
+	private boolean isWritten(long dbId)
+	{
+		return Arrays.binarySearch(this.dbIds, 0, this.instanceCount, dbId) >= 0;
+	}
+
+	/**
+	 * Writes, in ascending DB_ID order, the DB_ID, schema class index and display name of each instance referred to
+	 * by an instance value which was not itself written
+	 */
+	private void writeUnwrittenReferences() throws IOException
+	{
+		List<Long> unwrittenDbIds = new ArrayList<>();
+		for (Long dbId : this.dbIdToReference.keySet())
+		{
+			if (!isWritten(dbId))
+			{
+				unwrittenDbIds.add(dbId);
+			}
+		}
+		Collections.sort(unwrittenDbIds);
+
+		this.outputStream.writeInt(unwrittenDbIds.size());
+		for (Long dbId : unwrittenDbIds)
+		{
+			Reference reference = this.dbIdToReference.get(dbId);
+			this.outputStream.writeLong(dbId);
+			this.outputStream.writeInt(reference.schemaClassIndex);
+			writeString(reference.displayName);
+		}
+	}
+
+	private void writeValues(AttributeDescriptor attributeDescriptor, List<?> values) throws IOException
+	{
+		List<Object> nonNullValues = new ArrayList<>();
+		if (values != null)
+		{
+			for (Object value : values)
+			{
+				if (value != null)
+				{
+					nonNullValues.add(value);
+				}
+			}
+		}
+
+		byte valueTypeCode = Snapshot.getValueTypeCode(attributeDescriptor);
+		this.outputStream.writeInt(nonNullValues.size());
+		for (Object value : nonNullValues)
+		{
+			writeValue(valueTypeCode, value);
+		}
+	}
+
+	private void writeValue(byte valueTypeCode, Object value) throws IOException
+	{
+		switch (valueTypeCode)
+		{
+			case Snapshot.INSTANCE_VALUE:
+				GKInstance instanceValue = (GKInstance) value;
+				this.outputStream.writeLong(instanceValue.getDBID());
+				recordReference(instanceValue);
+				break;
+			case Snapshot.INTEGER_VALUE:
+				this.outputStream.writeInt(((Number) value).intValue());
+				break;
+			case Snapshot.LONG_VALUE:
+				this.outputStream.writeLong(((Number) value).longValue());
+				break;
+			case Snapshot.FLOAT_VALUE:
+				this.outputStream.writeFloat(((Number) value).floatValue());
+				break;
+			case Snapshot.BOOLEAN_VALUE:
+				this.outputStream.writeBoolean((Boolean) value);
+				break;
+			default:
+				writeString(value.toString());
+				break;
+		}
+	}
+
+	private void writeString(String value) throws IOException
+	{
+		if (value == null)
+		{
+			this.outputStream.writeInt(-1);
+			return;
+		}
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		this.outputStream.writeInt(bytes.length);
+		this.outputStream.write(bytes);
+	}
+
+	/**
+	 * Schema class and display name of an instance referred to by an instance value
+	 */
+	private static class Reference
+	{
+		private final int schemaClassIndex;
+		private final String displayName;
+
+		private Reference(int schemaClassIndex, String displayName)
+		{
+			this.schemaClassIndex = schemaClassIndex;
+			this.displayName = displayName;
+		}
+	}
+}
@@ -0,0 +1,394 @@
+package org.reactome.util.compare;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.GKInstance;
+
+/**
+ * A DiffReportSink which writes the report of differences incrementally to a Writer (e.g. an, optionally
+ * gzip-compressed, file) instead of accumulating it in memory.
+ *
+ * The report text for each top-level instance comparison is collected per thread and, only if differences were
+ * found, handed to a background thread which writes it out.  At most <code>maxDetailsPerInstance</code> differences
+ * (each with the report text leading up to it, such as the "Recursing on ..." lines) are recorded for a single
+ * comparison; differences beyond that are counted and summarised in a single line.
+ * Report blocks waiting to be written are held in a bounded queue: if the Writer can't keep up, the comparing threads
+ * block until there is room (i.e. back-pressure is applied).  Memory use therefore stays flat however many differences
+ * are found.
+ *
+ * Example usage:
+<pre>
+	try (StreamingDiffReportWriter reportWriter =
+			StreamingDiffReportWriter.toFile(Paths.get("diff_report.txt.gz"), true, 100))
+	{
+		for (Long dbId : dbIdsToCompare)
+		{
+			DBObjectComparer.compareInstances(
+				database1.fetchInstance(dbId), database2.fetchInstance(dbId), reportWriter
+			);
+		}
+	}
+</pre>
+ */
+public class StreamingDiffReportWriter implements DiffReportSink, Closeable
+{
+	public static final int DEFAULT_MAX_DETAILS_PER_INSTANCE = 1000;
+	public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+	private static final Logger logger = LogManager.getLogger();
+	// Placed on the queue to tell the background thread no more report blocks are coming
+	private static final String END_OF_REPORT = new String("END_OF_REPORT");
+
+	private final Writer writer;
+	private final int maxDetailsPerInstance;
+	private final BlockingQueue<String> reportBlockQueue;
+	private final ThreadLocal<InstanceReportBlock> currentReportBlock = new ThreadLocal<>();
+	private final Thread writerThread;
+
+	private volatile IOException writeException;
+	private volatile boolean closed;
+
+	/**
+	 * Constructs a new StreamingDiffReportWriter object writing to the passed Writer with the default maximum number
+	 * of details recorded per instance and the default queue capacity.
+	 * @param writer Writer to which the report is written.  It is closed when this object is closed.
+	 */
+	public StreamingDiffReportWriter(Writer writer)
+	{
+		this(writer, DEFAULT_MAX_DETAILS_PER_INSTANCE);
+	}
+
+	/**
+	 * Constructs a new StreamingDiffReportWriter object writing to the passed Writer with the default queue capacity.
+	 * @param writer Writer to which the report is written.  It is closed when this object is closed.
+	 * @param maxDetailsPerInstance Maximum number of differences recorded for a single top-level comparison
+	 */
+	public StreamingDiffReportWriter(Writer writer, int maxDetailsPerInstance)
+	{
+		this(writer, maxDetailsPerInstance, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Constructs a new StreamingDiffReportWriter object writing to the passed Writer.
+	 * @param writer Writer to which the report is written.  It is closed when this object is closed.
+	 * @param maxDetailsPerInstance Maximum number of differences recorded for a single top-level comparison
+	 * @param queueCapacity Maximum number of report blocks waiting to be written before comparing threads are blocked
+	 * @throws IllegalArgumentException Thrown if maxDetailsPerInstance or queueCapacity is less than 1
+	 */
+	public StreamingDiffReportWriter(Writer writer, int maxDetailsPerInstance, int queueCapacity)
+	{
+		if (maxDetailsPerInstance < 1 || queueCapacity < 1)
+		{
+			throw new IllegalArgumentException(
+				"Maximum details per instance and queue capacity must be positive, but were " +
+				maxDetailsPerInstance + " and " + queueCapacity
+			);
+		}
+
+		this.writer = writer;
+		this.maxDetailsPerInstance = maxDetailsPerInstance;
+		this.reportBlockQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+		this.writerThread = new Thread(this::writeReportBlocks, "diff-report-writer");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	/**
+	 * Creates a StreamingDiffReportWriter which writes the report, as UTF-8 text, to the file at the passed path.  An
+	 * existing file is overwritten.
+	 * @param reportFilePath Path of the file to which the report is written
+	 * @param gzipCompressed <code>true</code> if the file should be gzip-compressed; <code>false</code> otherwise
+	 * @param maxDetailsPerInstance Maximum number of differences recorded for a single top-level comparison
+	 * @return StreamingDiffReportWriter writing to the file at the passed path
+	 * @throws IOException Thrown if the file can not be created
+	 */
+	public static StreamingDiffReportWriter toFile(Path reportFilePath, boolean gzipCompressed, int maxDetailsPerInstance)
+		throws IOException
+	{
+		OutputStream outputStream = Files.newOutputStream(reportFilePath);
+		if (gzipCompressed)
+		{
+			outputStream = new GZIPOutputStream(outputStream);
+		}
+
+		return new StreamingDiffReportWriter(
+			new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)), maxDetailsPerInstance
+		);
+	}
+
+	/**
+	 * Starts collecting report text for a top-level comparison of two instances on the calling thread.
+	 * @param instance1 The first instance being compared
+	 * @param instance2 The second instance being compared
+	 */
+	@Override
+	public void beginInstanceComparison(GKInstance instance1, GKInstance instance2)
+	{
+		InstanceReportBlock reportBlock = this.currentReportBlock.get();
+		if (reportBlock != null)
+		{
+			// Nested comparison on the same thread - keep reporting into the outer block
+			reportBlock.nestingLevel++;
+			return;
+		}
+
+		this.currentReportBlock.set(new InstanceReportBlock());
+	}
+
+	/**
+	 * Records report text.  If called within a top-level comparison, the text is recorded for that comparison (until
+	 * the maximum number of details per instance is reached); otherwise it is queued to be written straight away.
+	 * @param reportText Report text to record
+	 * @throws UncheckedIOException Thrown if writing to the underlying Writer has failed
+	 * @throws IllegalStateException Thrown if this object has been closed
+	 */
+	@Override
+	public void append(String reportText)
+	{
+		checkWritable();
+
+		InstanceReportBlock reportBlock = this.currentReportBlock.get();
+		if (reportBlock == null)
+		{
+			enqueue(reportText);
+			return;
+		}
+
+		if (reportBlock.differenceCount < this.maxDetailsPerInstance)
+		{
+			reportBlock.pendingText.append(reportText);
+		}
+	}
+
+	/**
+	 * Counts a difference of the top-level comparison on the calling thread towards the maximum number of details per
+	 * instance.  The report text recorded since the previous difference is kept if the maximum has not been reached.
+	 */
+	@Override
+	public void recordDifference(
+		GKInstance instance1, GKInstance instance2, String attributeName, boolean reverseAttribute,
+		int recursionDepth, int differenceCount
+	)
+	{
+		InstanceReportBlock reportBlock = this.currentReportBlock.get();
+		if (reportBlock == null)
+		{
+			return;
+		}
+
+		if (reportBlock.differenceCount < this.maxDetailsPerInstance)
+		{
+			reportBlock.text.append(reportBlock.pendingText);
+		}
+		else
+		{
+			reportBlock.omittedDifferenceCount++;
+		}
+		reportBlock.pendingText.setLength(0);
+		reportBlock.differenceCount++;
+	}
+
+	/**
+	 * Finishes the top-level comparison on the calling thread.  The report text recorded for it is queued to be
+	 * written if any differences were found and discarded otherwise.  The calling thread blocks if the queue is full.
+	 * @param instance1 The first instance compared
+	 * @param instance2 The second instance compared
+	 * @param differenceCount The number of differences found between the two instances
+	 * @throws UncheckedIOException Thrown if writing to the underlying Writer has failed
+	 */
+	@Override
+	public void endInstanceComparison(GKInstance instance1, GKInstance instance2, int differenceCount)
+	{
+		InstanceReportBlock reportBlock = this.currentReportBlock.get();
+		if (reportBlock == null)
+		{
+			return;
+		}
+
+		if (reportBlock.nestingLevel > 0)
+		{
+			reportBlock.nestingLevel--;
+			return;
+		}
+
+		this.currentReportBlock.remove();
+		if (differenceCount > 0)
+		{
+			checkWritable();
+			enqueue(reportBlock.toReportText(instance1, instance2, differenceCount, this.maxDetailsPerInstance));
+		}
+	}
+
+	/**
+	 * Discards the report text recorded for the failed top-level comparison on the calling thread, so later
+	 * comparisons on the thread are reported.
+	 * @param instance1 The first instance being compared
+	 * @param instance2 The second instance being compared
+	 */
+	@Override
+	public void abortInstanceComparison(GKInstance instance1, GKInstance instance2)
+	{
+		InstanceReportBlock reportBlock = this.currentReportBlock.get();
+		if (reportBlock != null && reportBlock.nestingLevel > 0)
+		{
+			reportBlock.nestingLevel--;
+		}
+		else
+		{
+			this.currentReportBlock.remove();
+		}
+	}
+
+	/**
+	 * Waits for all queued report text to be written and closes the underlying Writer.
+	 * @throws IOException Thrown if writing to or closing the underlying Writer failed
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (this.closed)
+		{
+			return;
+		}
+		this.closed = true;
+
+		try
+		{
+			this.reportBlockQueue.put(END_OF_REPORT);
+			this.writerThread.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the diff report to be written", e);
+		}
+		finally
+		{
+			this.writer.close();
+		}
+
+		if (this.writeException != null)
+		{
+			throw this.writeException;
+		}
+	}
+
+	/**
+	 * Takes report blocks from the queue and writes them until the end of the report is reached.  After a write
+	 * failure, the queue continues to be drained (without writing) so comparing threads are never blocked indefinitely.
+	 */
+	private void writeReportBlocks()
+	{
+		try
+		{
+			String reportBlock;
+			while ((reportBlock = this.reportBlockQueue.take()) != END_OF_REPORT)
+			{
+				if (this.writeException != null)
+				{
+					continue;
+				}
+
+				try
+				{
+					this.writer.write(reportBlock);
+				}
+				catch (IOException e)
+				{
+					logger.error("Unable to write diff report", e);
+					this.writeException = e;
+				}
+			}
+			this.writer.flush();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException e)
+		{
+			logger.error("Unable to flush diff report", e);
+			this.writeException = e;
+		}
+	}
+
+	private void enqueue(String reportText)
+	{
+		try
+		{
+			this.reportBlockQueue.put(reportText);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting to queue diff report text", e);
+		}
+	}
+
+	private void checkWritable()
+	{
+		if (this.closed)
+		{
+			throw new IllegalStateException("Diff report writer has been closed");
+		}
+
+		if (this.writeException != null)
+		{
+			throw new UncheckedIOException(this.writeException);
+		}
+	}
+
+	/**
+	 * Report text recorded, on a single thread, for one top-level comparison of two instances
+	 */
+	private static class InstanceReportBlock
+	{
+		private final StringBuilder text = new StringBuilder();
+		// Report text since the last difference recorded, moved to the text once the difference it leads up to is
+		// recorded
+		private final StringBuilder pendingText = new StringBuilder();
+		private int differenceCount;
+		private int omittedDifferenceCount;
+		private int nestingLevel;
+
+		private String toReportText(
+			GKInstance instance1, GKInstance instance2, int differenceCount, int maxDetailsPerInstance
+		)
+		{
+			// Text not followed by a recorded difference (e.g. from callers which do not record differences)
+			if (this.differenceCount < maxDetailsPerInstance)
+			{
+				this.text.append(this.pendingText);
+			}
+
+			StringBuilder reportText = new StringBuilder()
+				.append("Comparing '").append(instance1).append("' and '").append(instance2).append("': ")
+				.append(differenceCount).append(" difference(s)").append(System.lineSeparator())
+				.append(this.text);
+
+			if (this.omittedDifferenceCount > 0)
+			{
+				reportText
+					.append("... ").append(this.omittedDifferenceCount).append(" further difference(s) omitted")
+					.append(System.lineSeparator());
+			}
+
+			return reportText.append(System.lineSeparator()).toString();
+		}
+	}
+}
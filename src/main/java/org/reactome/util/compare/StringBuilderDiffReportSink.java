@@ -0,0 +1,25 @@
+package org.reactome.util.compare;
+
+/**
+ * Adapts a StringBuilder to the DiffReportSink interface so the original StringBuilder based methods of the
+ * DBObjectComparer class keep their behaviour (i.e. the entire report is kept in memory).
+ */
+class StringBuilderDiffReportSink implements DiffReportSink
+{
+	private final StringBuilder stringBuilder;
+
+	/**
+	 * Constructs a new StringBuilderDiffReportSink object which appends all report text to the passed StringBuilder
+	 * @param stringBuilder StringBuilder to which report text is appended
+	 */
+	StringBuilderDiffReportSink(StringBuilder stringBuilder)
+	{
+		this.stringBuilder = stringBuilder;
+	}
+
+	@Override
+	public void append(String reportText)
+	{
+		this.stringBuilder.append(reportText);
+	}
+}
@@ -0,0 +1,205 @@
+package org.reactome.util.compare;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gk.schema.SchemaClass;
+
+/**
+ * Tunes how far the DBObjectComparer class follows instance values when comparing two instances, beyond the single
+ * maximum recursion depth of the ComparisonConfiguration:
+ *
+ * - depth limits for the values of particular attributes (e.g. recurse only 1 level through "hasEvent", but the full
+ * depth through "referenceEntity") or for instances of particular schema classes (including their sub-classes)
+ * - attributes whose instance values are compared by identity only (i.e. by DB_ID, without recursing into them)
+ * - a work budget on the number of instance values recursed into, after which instance values are compared by
+ * identity only
+ *
+ * The work budget is shared by all comparisons made with the policy (including concurrent ones) until it is reset.
+ * The depth limits and identity-only attributes should be set before the policy is used in any comparison.
+ */
+public class TraversalPolicy
+{
+	public static final long UNLIMITED_WORK_BUDGET = Long.MAX_VALUE;
+
+	private final Map<String, Integer> attributeNameToMaxDepth = new HashMap<>();
+	private final Map<String, Integer> schemaClassNameToMaxDepth = new HashMap<>();
+	private final Set<String> identityOnlyAttributeNames = new HashSet<>();
+	private final Map<SchemaClass, Integer> schemaClassToMaxDepth = new ConcurrentHashMap<>();
+	private final AtomicLong instanceComparisonCount = new AtomicLong();
+	private volatile long workBudget = UNLIMITED_WORK_BUDGET;
+
+	/**
+	 * Sets the depth of recursion up to which the instance values of the attribute with the passed name are recursed
+	 * into.  As for the maximum recursion depth of the configuration, a limit of 0 means the values are not compared
+	 * and a limit at or above the configuration's maximum has no effect.
+	 * @param attributeName Name of the attribute (regular or referrer)
+	 * @param maxDepth Maximum depth of recursion for the attribute's values
+	 * @throws IllegalArgumentException Thrown if the depth is negative
+	 */
+	public void setMaxDepth(String attributeName, int maxDepth)
+	{
+		this.attributeNameToMaxDepth.put(attributeName, checkMaxDepth(maxDepth));
+	}
+
+	/**
+	 * Sets the depth of recursion up to which instances of the schema class with the passed name, or any of its
+	 * sub-classes, are recursed into.  If an instance's schema class is a sub-class of more than one class with a
+	 * limit, the lowest limit applies.
+	 * @param schemaClassName Name of the schema class
+	 * @param maxDepth Maximum depth of recursion for instances of the schema class
+	 * @throws IllegalArgumentException Thrown if the depth is negative
+	 */
+	public void setMaxDepthForSchemaClass(String schemaClassName, int maxDepth)
+	{
+		this.schemaClassNameToMaxDepth.put(schemaClassName, checkMaxDepth(maxDepth));
+		this.schemaClassToMaxDepth.clear();
+	}
+
+	/**
+	 * Sets the instance values of the attribute with the passed name to be compared by identity only: values with
+	 * different DB_IDs count as 1 difference and values are never recursed into.
+	 * @param attributeName Name of the attribute (regular or referrer)
+	 */
+	public void addIdentityOnlyAttribute(String attributeName)
+	{
+		this.identityOnlyAttributeNames.add(attributeName);
+	}
+
+	/**
+	 * Retrieves if the instance values of the attribute with the passed name are compared by identity only
+	 * @param attributeName Name of the attribute
+	 * @return <code>true</code> if the attribute's values are not recursed into; <code>false</code> otherwise
+	 */
+	public boolean isIdentityOnlyAttribute(String attributeName)
+	{
+		return this.identityOnlyAttributeNames.contains(attributeName);
+	}
+
+	/**
+	 * Retrieves if any attribute's instance values are compared by identity only
+	 * @return <code>true</code> if there are identity-only attributes; <code>false</code> otherwise
+	 */
+	public boolean hasIdentityOnlyAttributes()
+	{
+		return !this.identityOnlyAttributeNames.isEmpty();
+	}
+
+	/**
+	 * Retrieves the number of instance values that may be recursed into before instance values are compared by
+	 * identity only
+	 * @return Work budget ({@link #UNLIMITED_WORK_BUDGET} by default)
+	 */
+	public long getWorkBudget()
+	{
+		return this.workBudget;
+	}
+
+	/**
+	 * Sets the number of instance values that may be recursed into (across all comparisons made with this policy)
+	 * before instance values are compared by identity only.  The top-level instances passed to a comparison do not
+	 * count towards the budget and are always compared attribute by attribute.
+	 * @param workBudget Work budget (must be at least 0)
+	 * @throws IllegalArgumentException Thrown if the budget is negative
+	 */
+	public void setWorkBudget(long workBudget)
+	{
+		if (workBudget < 0)
+		{
+			throw new IllegalArgumentException("Work budget must be at least 0, but was " + workBudget);
+		}
+
+		this.workBudget = workBudget;
+	}
+
+	/**
+	 * Retrieves the number of instance values recursed into since the policy was created or last reset
+	 * @return Number of instance values recursed into
+	 */
+	public long getInstanceComparisonCount()
+	{
+		return Math.min(this.instanceComparisonCount.get(), this.workBudget);
+	}
+
+	/**
+	 * Resets the number of instance values recursed into, making the full work budget available again
+	 */
+	public void resetInstanceComparisonCount()
+	{
+		this.instanceComparisonCount.set(0L);
+	}
+
+	/**
+	 * Returns the maximum depth of recursion for the values of the passed attribute which are instances of the passed
+	 * schema class
+	 * @param attributeName Name of the attribute holding the values
+	 * @param schemaClass Schema class of the values
+	 * @param defaultMaxDepth Maximum depth of recursion of the configuration
+	 * @return Lowest of the limits for the attribute, the schema class and the configuration
+	 */
+	int getMaxDepth(String attributeName, SchemaClass schemaClass, int defaultMaxDepth)
+	{
+		int maxDepth = defaultMaxDepth;
+
+		Integer attributeMaxDepth = this.attributeNameToMaxDepth.get(attributeName);
+		if (attributeMaxDepth != null)
+		{
+			maxDepth = Math.min(maxDepth, attributeMaxDepth);
+		}
+
+		if (!this.schemaClassNameToMaxDepth.isEmpty() && schemaClass != null)
+		{
+			maxDepth = Math.min(maxDepth, this.schemaClassToMaxDepth.computeIfAbsent(
+				schemaClass, this::getMaxDepthForSchemaClass
+			));
+		}
+
+		return maxDepth;
+	}
+
+	/**
+	 * Counts an instance value as recursed into and returns <code>true</code> if the work budget allowed it;
+	 * <code>false</code> if the budget has been used up
+	 * @return <code>true</code> if the instance value may be recursed into; <code>false</code> otherwise
+	 */
+	boolean tryStartInstanceComparison()
+	{
+		long workBudget = this.workBudget;
+		if (workBudget == UNLIMITED_WORK_BUDGET)
+		{
+			return true;
+		}
+
+		// Once used up, the count is no longer incremented so it can not overflow
+		return this.instanceComparisonCount.get() < workBudget &&
+			this.instanceComparisonCount.incrementAndGet() <= workBudget;
+	}
+
+	private int getMaxDepthForSchemaClass(SchemaClass schemaClass)
+	{
+		int maxDepth = Integer.MAX_VALUE;
+		for (Map.Entry<String, Integer> schemaClassNameAndMaxDepth : this.schemaClassNameToMaxDepth.entrySet())
+		{
+			if (schemaClass.isa(schemaClassNameAndMaxDepth.getKey()))
+			{
+				maxDepth = Math.min(maxDepth, schemaClassNameAndMaxDepth.getValue());
+			}
+		}
+
+		return maxDepth;
+	}
+
+	private static int checkMaxDepth(int maxDepth)
+	{
+		if (maxDepth < 0)
+		{
+			throw new IllegalArgumentException("Maximum depth must be at least 0, but was " + maxDepth);
+		}
+
+		return maxDepth;
+	}
+}
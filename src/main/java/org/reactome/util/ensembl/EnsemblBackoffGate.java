@@ -0,0 +1,128 @@
+package org.reactome.util.ensembl;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Pauses all requests to an EnsEMBL REST service when the service responds with "Retry-After", so workers wait and
+ * resume together rather than each sleeping (and retrying) on its own.  A "Retry-After" received while the gate is
+ * already paused only extends the pause.  Each pause which starts without a successful response since the previous
+ * one is multiplied by one more than the previous pause (up to
+ * {@link EnsemblServiceResponseProcessor#MAX_TIMES_TO_WAIT}), giving the service more time to recover; a successful
+ * response resets the multiplier.
+ */
+public class EnsemblBackoffGate
+{
+	private static final Logger logger = LogManager.getLogger();
+
+	private final LongSupplier nanoClock;
+
+	// All of the following are guarded by "this"
+	private long resumeNanos;
+	private boolean paused = false;
+	private int multiplier = 0;
+
+	/**
+	 * Constructs a new, open EnsemblBackoffGate
+	 */
+	public EnsemblBackoffGate()
+	{
+		this(System::nanoTime);
+	}
+
+	/**
+	 * Constructs a new, open EnsemblBackoffGate using the passed clock (for testing)
+	 * @param nanoClock Source of the current time in nanoseconds
+	 */
+	EnsemblBackoffGate(LongSupplier nanoClock)
+	{
+		this.nanoClock = nanoClock;
+		this.resumeNanos = nanoClock.getAsLong();
+	}
+
+	/**
+	 * Pauses all requests for the passed time (as given by a "Retry-After" header), multiplied by the number of pauses
+	 * since the last successful response
+	 * @param retryAfter Time the service asked to wait
+	 * @return Time until requests resume
+	 */
+	public synchronized Duration pause(Duration retryAfter)
+	{
+		long now = this.nanoClock.getAsLong();
+		if (!isPaused(now))
+		{
+			this.multiplier = Math.min(this.multiplier + 1, EnsemblServiceResponseProcessor.MAX_TIMES_TO_WAIT);
+			logger.warn("The server told us to wait, so all requests will wait for {} * {}", retryAfter,
+				this.multiplier
+			);
+		}
+
+		this.resumeNanos = Math.max(this.resumeNanos, now + retryAfter.multipliedBy(this.multiplier).toNanos());
+		this.paused = true;
+
+		return Duration.ofNanos(this.resumeNanos - now);
+	}
+
+	/**
+	 * Records a successful response, which resets the multiplier of the next pause
+	 */
+	public synchronized void recordSuccess()
+	{
+		this.multiplier = 0;
+	}
+
+	/**
+	 * Returns the time until requests resume
+	 * @return Remaining time of the current pause ({@link Duration#ZERO} if requests are not paused)
+	 */
+	public Duration getRemainingPause()
+	{
+		return Duration.ofNanos(getRemainingPauseNanos());
+	}
+
+	/**
+	 * Returns the factor by which the next pause will be multiplied, i.e. the number of pauses since the last
+	 * successful response
+	 * @return Number of pauses since the last successful response
+	 */
+	public synchronized int getMultiplier()
+	{
+		return this.multiplier;
+	}
+
+	/**
+	 * Waits until requests resume
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting
+	 */
+	public void awaitOpen() throws InterruptedException
+	{
+		long pauseNanos;
+		while ((pauseNanos = getRemainingPauseNanos()) > 0)
+		{
+			TimeUnit.NANOSECONDS.sleep(pauseNanos);
+		}
+	}
+
+	/**
+	 * Returns the nanoseconds until requests resume (0 if requests are not paused)
+	 */
+	synchronized long getRemainingPauseNanos()
+	{
+		long now = this.nanoClock.getAsLong();
+		return isPaused(now) ? this.resumeNanos - now : 0L;
+	}
+
+	private boolean isPaused(long now)
+	{
+		if (this.paused && now - this.resumeNanos >= 0)
+		{
+			this.paused = false;
+		}
+
+		return this.paused;
+	}
+}
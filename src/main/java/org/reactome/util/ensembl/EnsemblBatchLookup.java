@@ -0,0 +1,368 @@
+package org.reactome.util.ensembl;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonException;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+
+import org.apache.http.HttpStatus;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.reactome.util.ensembl.EnsemblServiceResponseProcessor.EnsemblServiceResult;
+
+/**
+ * Resolves EnsEMBL identifiers in batches through a POST endpoint which takes a list of identifiers as {"ids": [...]}
+ * and returns a JSON object keyed by the identifiers (e.g. "lookup/id" or "lookup/symbol/homo_sapiens"), rather than
+ * with a GET request per identifier.  Identifiers can be looked up all at once, or submitted one at a time (e.g. by
+ * the threads processing them) and coalesced into batches which are sent once full or when flushed.
+ *
+ * If a batch fails because of its content (the service rejects it with a 400, its response can not be parsed, or a
+ * large batch times out with a 504), it is split in half and each half is retried, so only the identifiers of the
+ * failing sub-batches are re-sent and a single bad identifier fails on its own.  Other failures (e.g. a 500 or 503,
+ * an I/O error or an open circuit breaker) are not caused by the identifiers, so the whole batch fails rather than
+ * multiplying the requests to a service which is already failing.
+ *
+ * If the client has a response cache (see {@link EnsemblRestClient#setResponseCache(EnsemblResponseCache)}), each
+ * record is cached on its own, keyed by endpoint and identifier, rather than the batch's whole response, so an
+ * identifier found in one batch is not sent again in any other batch; batches only send the identifiers which are
+ * not cached.
+ */
+public class EnsemblBatchLookup
+{
+	/** Maximum number of identifiers rest.ensembl.org accepts in a POST request */
+	public static final int MAX_BATCH_SIZE = 1000;
+	// Batches smaller than this are not split on a gateway timeout, as their size is unlikely to be the cause of it
+	private static final int MIN_TIMED_OUT_BATCH_SIZE_TO_SPLIT = 100;
+
+	private static final Logger logger = LogManager.getLogger();
+
+	private final EnsemblRestClient client;
+	private final String path;
+	private final Map<String, String> queryParameters;
+	private int batchSize = MAX_BATCH_SIZE;
+
+	// Guarded by "this"
+	private Map<String, CompletableFuture<JsonValue>> pendingIdToResult = new LinkedHashMap<>();
+
+	/**
+	 * Constructs a new EnsemblBatchLookup for the passed POST endpoint
+	 * @param client EnsemblRestClient sending the requests
+	 * @param path Path of the POST endpoint (e.g. "lookup/id")
+	 * @param queryParameters Query parameters of each request (e.g. "expand" to "1")
+	 */
+	public EnsemblBatchLookup(EnsemblRestClient client, String path, Map<String, String> queryParameters)
+	{
+		this.client = client;
+		this.path = path;
+		this.queryParameters = new HashMap<>(queryParameters);
+	}
+
+	/**
+	 * Retrieves the maximum number of identifiers sent in one request
+	 * @return Batch size ({@link #MAX_BATCH_SIZE} by default)
+	 */
+	public int getBatchSize()
+	{
+		return this.batchSize;
+	}
+
+	/**
+	 * Sets the maximum number of identifiers sent in one request.  Smaller batches keep responses with large records
+	 * (e.g. with "expand" set) within the service's timeout.
+	 * @param batchSize Batch size (from 1 to {@link #MAX_BATCH_SIZE})
+	 * @throws IllegalArgumentException Thrown if the batch size is out of range
+	 */
+	public void setBatchSize(int batchSize)
+	{
+		if (batchSize < 1 || batchSize > MAX_BATCH_SIZE)
+		{
+			throw new IllegalArgumentException(
+				"Batch size must be from 1 to " + MAX_BATCH_SIZE + ", but was " + batchSize
+			);
+		}
+
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Looks up the passed identifiers in as few requests as the batch size permits
+	 * @param ids Identifiers to look up
+	 * @return Map of each identifier to its JSON record ({@link JsonValue#NULL} if the service does not know the
+	 * identifier).  Identifiers whose lookup failed, even on their own, are absent.
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting to send or retry a request
+	 */
+	public Map<String, JsonValue> lookup(Collection<String> ids) throws InterruptedException
+	{
+		Map<String, JsonValue> idToFoundResult = new HashMap<>();
+		List<String> uncachedIds = new ArrayList<>();
+		Collection<String> distinctIds = new LinkedHashSet<>(ids);
+		for (String id : distinctIds)
+		{
+			JsonValue cachedRecord = getCachedRecord(id);
+			if (cachedRecord != null)
+			{
+				idToFoundResult.put(id, cachedRecord);
+			}
+			else
+			{
+				uncachedIds.add(id);
+			}
+		}
+
+		for (int start = 0; start < uncachedIds.size(); start += this.batchSize)
+		{
+			List<String> batchIds = uncachedIds.subList(start, Math.min(start + this.batchSize, uncachedIds.size()));
+			lookupBatch(batchIds, idToFoundResult);
+		}
+
+		Map<String, JsonValue> idToResult = new LinkedHashMap<>();
+		for (String id : distinctIds)
+		{
+			JsonValue result = idToFoundResult.get(id);
+			if (result != null)
+			{
+				idToResult.put(id, result);
+			}
+		}
+
+		return idToResult;
+	}
+
+	/**
+	 * Submits a single identifier to be looked up with others.  Once the batch size is reached, the batch is sent on
+	 * the calling thread; identifiers left in an incomplete batch are sent by {@link #flush()}.
+	 * @param id Identifier to look up
+	 * @return CompletableFuture of the identifier's JSON record ({@link JsonValue#NULL} if the service does not know
+	 * the identifier), which completes exceptionally if its lookup fails
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting to send or retry a request
+	 */
+	public CompletableFuture<JsonValue> submit(String id) throws InterruptedException
+	{
+		JsonValue cachedRecord = getCachedRecord(id);
+		if (cachedRecord != null)
+		{
+			return CompletableFuture.completedFuture(cachedRecord);
+		}
+
+		CompletableFuture<JsonValue> result;
+		Map<String, CompletableFuture<JsonValue>> fullBatch = null;
+		synchronized (this)
+		{
+			result = this.pendingIdToResult.computeIfAbsent(id, k -> new CompletableFuture<>());
+			if (this.pendingIdToResult.size() >= this.batchSize)
+			{
+				fullBatch = takePendingIds();
+			}
+		}
+
+		if (fullBatch != null)
+		{
+			send(fullBatch);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Sends the identifiers submitted since the last batch was sent
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting to send or retry a request
+	 */
+	public void flush() throws InterruptedException
+	{
+		Map<String, CompletableFuture<JsonValue>> batch;
+		synchronized (this)
+		{
+			batch = takePendingIds();
+		}
+
+		if (!batch.isEmpty())
+		{
+			send(batch);
+		}
+	}
+
+	private Map<String, CompletableFuture<JsonValue>> takePendingIds()
+	{
+		Map<String, CompletableFuture<JsonValue>> pendingIdToResult = this.pendingIdToResult;
+		this.pendingIdToResult = new LinkedHashMap<>();
+
+		return pendingIdToResult;
+	}
+
+	private void send(Map<String, CompletableFuture<JsonValue>> batch) throws InterruptedException
+	{
+		Map<String, JsonValue> idToResult = new HashMap<>();
+		lookupBatch(new ArrayList<>(batch.keySet()), idToResult);
+
+		batch.forEach((id, result) -> {
+			JsonValue value = idToResult.get(id);
+			if (value != null)
+			{
+				result.complete(value);
+			}
+			else
+			{
+				result.completeExceptionally(new IOException("Lookup of " + id + " at " + this.path + " failed"));
+			}
+		});
+	}
+
+	/**
+	 * Looks up the passed identifiers in one request, splitting them in half and retrying each half if the request
+	 * fails because of its content, and adds the results to the passed map
+	 */
+	private void lookupBatch(List<String> ids, Map<String, JsonValue> idToResult) throws InterruptedException
+	{
+		Map<String, JsonValue> idToRecord = new HashMap<>();
+		EnsemblServiceResult result;
+		try
+		{
+			result = postBatch(ids, idToRecord);
+		}
+		catch (IOException e)
+		{
+			logger.error("Batch of {} identifiers at {} failed", ids.size(), this.path, e);
+			return;
+		}
+
+		if (result.getStatus() == HttpStatus.SC_OK && result.isContentHandled())
+		{
+			for (String id : ids)
+			{
+				JsonValue record = idToRecord.getOrDefault(id, JsonValue.NULL);
+				idToResult.put(id, record);
+				cacheRecord(id, record);
+			}
+			return;
+		}
+
+		if (ids.size() == 1 || !isCausedByContent(result, ids.size()))
+		{
+			logger.error("Batch of {} identifiers at {} failed with status {}", ids.size(), this.path,
+				result.getStatus()
+			);
+			return;
+		}
+
+		logger.warn("Batch of {} identifiers at {} failed with status {}; retrying each half", ids.size(), this.path,
+			result.getStatus()
+		);
+		int middle = ids.size() / 2;
+		lookupBatch(ids.subList(0, middle), idToResult);
+		lookupBatch(ids.subList(middle, ids.size()), idToResult);
+	}
+
+	/**
+	 * Returns the record cached for the passed identifier by an earlier batch, or <code>null</code> if there is none.
+	 * The cache only saves requests, so a cache which can not be read is logged and treated as empty.
+	 */
+	private JsonValue getCachedRecord(String id)
+	{
+		EnsemblResponseCache responseCache = this.client.getResponseCache();
+		if (responseCache == null)
+		{
+			return null;
+		}
+
+		String cacheKey = createRecordCacheKey(id);
+		try
+		{
+			String cachedRecord = responseCache.get(cacheKey);
+			if (cachedRecord == null)
+			{
+				return null;
+			}
+
+			try (JsonReader reader = Json.createReader(new StringReader(cachedRecord)))
+			{
+				return reader.readValue();
+			}
+		}
+		catch (IOException | JsonException e)
+		{
+			logger.warn("Unable to read the cached record for {}", cacheKey, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Adds the passed record of the passed identifier to the client's response cache, if it has one
+	 */
+	private void cacheRecord(String id, JsonValue record)
+	{
+		EnsemblResponseCache responseCache = this.client.getResponseCache();
+		if (responseCache == null)
+		{
+			return;
+		}
+
+		String cacheKey = createRecordCacheKey(id);
+		try
+		{
+			responseCache.put(cacheKey, record.toString());
+		}
+		catch (IOException e)
+		{
+			logger.warn("Unable to cache the record for {}", cacheKey, e);
+		}
+	}
+
+	/**
+	 * Returns the cache key of the record of the passed identifier: the key of a request to this lookup's endpoint with
+	 * the identifier as its body, which no request of the client has, as its requests have JSON bodies
+	 */
+	private String createRecordCacheKey(String id)
+	{
+		return EnsemblResponseCache.createKey(this.path, this.queryParameters, id);
+	}
+
+	/**
+	 * Returns <code>true</code> if the passed failed result of a batch of the passed size may be caused by the
+	 * batch's identifiers or size, so that smaller batches may succeed
+	 */
+	private static boolean isCausedByContent(EnsemblServiceResult result, int batchSize)
+	{
+		switch (result.getStatus())
+		{
+			case HttpStatus.SC_BAD_REQUEST:
+				return true;
+			case HttpStatus.SC_OK:
+				return !result.isContentHandled();
+			case HttpStatus.SC_GATEWAY_TIMEOUT:
+				return batchSize >= MIN_TIMED_OUT_BATCH_SIZE_TO_SPLIT;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Sends the passed identifiers in one request and adds the records of the response, keyed by identifier, to the
+	 * passed map.  The records are read from the response as it arrives, rather than from a copy of its whole
+	 * content.
+	 * @throws IOException Thrown if the request can not be sent or its response can not be read, or the circuit
+	 * breaker of the client is open
+	 */
+	private EnsemblServiceResult postBatch(List<String> ids, Map<String, JsonValue> idToRecord)
+		throws IOException, InterruptedException
+	{
+		JsonArrayBuilder idsBuilder = Json.createArrayBuilder();
+		ids.forEach(idsBuilder::add);
+		String body = Json.createObjectBuilder().add("ids", idsBuilder).build().toString();
+
+		return this.client.post(this.path, this.queryParameters, body,
+			EnsemblContentHandler.forRecords(idToRecord::put)
+		);
+	}
+}
@@ -0,0 +1,326 @@
+package org.reactome.util.ensembl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import org.apache.http.HttpStatus;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.reactome.util.ensembl.EnsemblServiceResponseProcessor.EnsemblServiceResult;
+
+/**
+ * Stops requests to an endpoint of an EnsEMBL REST service (e.g. "lookup/id") while the endpoint is failing, so they
+ * fail fast rather than each waiting for (and retrying) its own server errors and timeouts.  Each endpoint has its own
+ * circuit:
+ *
+ * - CLOSED: requests are sent, and their outcomes kept in a rolling window of the most recent requests.  Once the
+ * window holds the minimum number of outcomes and the fraction of failures in it reaches the threshold, the circuit
+ * opens.
+ * - OPEN: requests are refused (see {@link CircuitOpenException}) until the circuit has been open for the open
+ * duration, when it becomes half-open.
+ * - HALF_OPEN: a single probe request is sent.  If it succeeds, the circuit closes with an empty window; if it fails,
+ * the circuit opens again.
+ *
+ * Failures are responses with a server error status (500, 502, 503 or 504) and requests which fail without a
+ * response.  Other responses (including 429, which the rate limiter handles, and 400 or 404 for unknown identifiers)
+ * show the endpoint is up and count as successes.
+ */
+public class EnsemblCircuitBreaker
+{
+	public static final int DEFAULT_WINDOW_SIZE = 20;
+	public static final int DEFAULT_MINIMUM_REQUESTS = 10;
+	public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+	public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+
+	private static final Logger logger = LogManager.getLogger();
+
+	/**
+	 * State of the circuit of an endpoint
+	 */
+	public enum State
+	{
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	/**
+	 * Thrown instead of sending a request to an endpoint whose circuit is open
+	 */
+	public static class CircuitOpenException extends IOException
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final String endpoint;
+
+		public CircuitOpenException(String endpoint)
+		{
+			super("Requests to the EnsEMBL endpoint " + endpoint + " are failing, so none are being sent");
+			this.endpoint = endpoint;
+		}
+
+		/**
+		 * Returns the endpoint whose circuit is open
+		 * @return Endpoint (e.g. "lookup/id")
+		 */
+		public String getEndpoint()
+		{
+			return this.endpoint;
+		}
+	}
+
+	private final int windowSize;
+	private final int minimumRequests;
+	private final double failureRateThreshold;
+	private final long openDurationNanos;
+	private final LongSupplier nanoClock;
+	private final Map<String, Circuit> endpointToCircuit = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs a new EnsemblCircuitBreaker with the default window, threshold and open duration
+	 */
+	public EnsemblCircuitBreaker()
+	{
+		this(DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_REQUESTS, DEFAULT_FAILURE_RATE_THRESHOLD, DEFAULT_OPEN_DURATION);
+	}
+
+	/**
+	 * Constructs a new EnsemblCircuitBreaker
+	 * @param windowSize Number of the most recent outcomes of an endpoint from which its failure rate is computed
+	 * @param minimumRequests Number of outcomes needed in the window before the circuit can open
+	 * @param failureRateThreshold Fraction of failures in the window (from 0 to 1) at which the circuit opens
+	 * @param openDuration Time the circuit stays open before a probe request is sent
+	 * @throws IllegalArgumentException Thrown if the window is not positive, the minimum is not from 1 to the window
+	 * size or the threshold is not from 0 (exclusive) to 1
+	 */
+	public EnsemblCircuitBreaker(
+		int windowSize, int minimumRequests, double failureRateThreshold, Duration openDuration
+	)
+	{
+		this(windowSize, minimumRequests, failureRateThreshold, openDuration, System::nanoTime);
+	}
+
+	/**
+	 * Constructs a new EnsemblCircuitBreaker using the passed clock (for testing)
+	 */
+	EnsemblCircuitBreaker(
+		int windowSize, int minimumRequests, double failureRateThreshold, Duration openDuration,
+		LongSupplier nanoClock
+	)
+	{
+		if (windowSize < 1 || minimumRequests < 1 || minimumRequests > windowSize)
+		{
+			throw new IllegalArgumentException(
+				"Minimum requests must be from 1 to the window size, but were " + minimumRequests + " and " +
+				windowSize
+			);
+		}
+		if (failureRateThreshold <= 0.0 || failureRateThreshold > 1.0)
+		{
+			throw new IllegalArgumentException(
+				"Failure rate threshold must be above 0 and at most 1, but was " + failureRateThreshold
+			);
+		}
+
+		this.windowSize = windowSize;
+		this.minimumRequests = minimumRequests;
+		this.failureRateThreshold = failureRateThreshold;
+		this.openDurationNanos = openDuration.toNanos();
+		this.nanoClock = nanoClock;
+	}
+
+	/**
+	 * Returns the endpoint of the passed path: its first two segments (e.g. "lookup/id" for
+	 * "lookup/id/ENSG00000157764"), which is where the service's endpoints differ
+	 * @param path Path of the request, relative to the base URI of the service
+	 * @return Endpoint of the path
+	 */
+	public static String getEndpoint(String path)
+	{
+		String[] segments = path.replaceFirst("^/+", "").split("/", 3);
+		return segments.length > 1 ? segments[0] + "/" + segments[1] : segments[0];
+	}
+
+	/**
+	 * Checks that a request may be sent to the passed endpoint.  While the circuit is half-open, only the first caller
+	 * is permitted (as the probe), until its outcome is recorded.
+	 * @param endpoint Endpoint of the request (see {@link #getEndpoint(String)})
+	 * @throws CircuitOpenException Thrown if the circuit of the endpoint is open
+	 */
+	public void checkRequestPermitted(String endpoint) throws CircuitOpenException
+	{
+		if (!getCircuit(endpoint).tryPermitRequest(this.nanoClock.getAsLong()))
+		{
+			throw new CircuitOpenException(endpoint);
+		}
+	}
+
+	/**
+	 * Records the outcome of a request to the passed endpoint from the result of its response
+	 * @param endpoint Endpoint of the request (see {@link #getEndpoint(String)})
+	 * @param result Result of the response
+	 */
+	public void recordResult(String endpoint, EnsemblServiceResult result)
+	{
+		getCircuit(endpoint).record(!isFailure(result.getStatus()), this.nanoClock.getAsLong());
+	}
+
+	/**
+	 * Records a request to the passed endpoint which failed without a response (e.g. a connection timeout)
+	 * @param endpoint Endpoint of the request (see {@link #getEndpoint(String)})
+	 */
+	public void recordFailure(String endpoint)
+	{
+		getCircuit(endpoint).record(false, this.nanoClock.getAsLong());
+	}
+
+	/**
+	 * Returns the state of the circuit of the passed endpoint
+	 * @param endpoint Endpoint (see {@link #getEndpoint(String)})
+	 * @return State of the endpoint's circuit
+	 */
+	public State getState(String endpoint)
+	{
+		return getCircuit(endpoint).getState(this.nanoClock.getAsLong());
+	}
+
+	private Circuit getCircuit(String endpoint)
+	{
+		return this.endpointToCircuit.computeIfAbsent(endpoint, Circuit::new);
+	}
+
+	private static boolean isFailure(int status)
+	{
+		return status == HttpStatus.SC_INTERNAL_SERVER_ERROR ||
+			status == HttpStatus.SC_BAD_GATEWAY ||
+			status == HttpStatus.SC_SERVICE_UNAVAILABLE ||
+			status == HttpStatus.SC_GATEWAY_TIMEOUT;
+	}
+
+	/**
+	 * Circuit of a single endpoint
+	 */
+	private class Circuit
+	{
+		private final String endpoint;
+
+		// All of the following are guarded by "this"
+		private final boolean[] outcomes = new boolean[EnsemblCircuitBreaker.this.windowSize];
+		private int outcomeCount = 0;
+		private int nextOutcomeIndex = 0;
+		private int failureCount = 0;
+		private State state = State.CLOSED;
+		private long openedNanos;
+		private long probeStartedNanos;
+		private boolean probeInProgress = false;
+
+		Circuit(String endpoint)
+		{
+			this.endpoint = endpoint;
+		}
+
+		synchronized boolean tryPermitRequest(long now)
+		{
+			switch (getState(now))
+			{
+				case CLOSED:
+					return true;
+				case HALF_OPEN:
+					// A probe whose outcome was never recorded (e.g. it was abandoned) is replaced after the open
+					// duration
+					if (!this.probeInProgress || now - this.probeStartedNanos >= openDurationNanos)
+					{
+						this.probeInProgress = true;
+						this.probeStartedNanos = now;
+						return true;
+					}
+					return false;
+				default:
+					return false;
+			}
+		}
+
+		synchronized void record(boolean success, long now)
+		{
+			switch (getState(now))
+			{
+				case HALF_OPEN:
+					this.probeInProgress = false;
+					if (success)
+					{
+						logger.info("Requests to EnsEMBL endpoint {} are succeeding again", this.endpoint);
+						this.state = State.CLOSED;
+						clearOutcomes();
+					}
+					else
+					{
+						open(now);
+					}
+					break;
+				case CLOSED:
+					addOutcome(success);
+					if (this.outcomeCount >= minimumRequests &&
+						this.failureCount >= failureRateThreshold * this.outcomeCount)
+					{
+						logger.error("{} of the last {} requests to EnsEMBL endpoint {} failed, so none will be sent " +
+							"for {}", this.failureCount, this.outcomeCount, this.endpoint,
+							Duration.ofNanos(openDurationNanos)
+						);
+						open(now);
+					}
+					break;
+				default:
+					// Responses to requests sent before the circuit opened do not change it
+					break;
+			}
+		}
+
+		synchronized State getState(long now)
+		{
+			if (this.state == State.OPEN && now - this.openedNanos >= openDurationNanos)
+			{
+				this.state = State.HALF_OPEN;
+				this.probeInProgress = false;
+			}
+
+			return this.state;
+		}
+
+		private void open(long now)
+		{
+			this.state = State.OPEN;
+			this.openedNanos = now;
+		}
+
+		private void addOutcome(boolean success)
+		{
+			if (this.outcomeCount == this.outcomes.length)
+			{
+				// The oldest outcome leaves the window
+				if (!this.outcomes[this.nextOutcomeIndex])
+				{
+					this.failureCount--;
+				}
+			}
+			else
+			{
+				this.outcomeCount++;
+			}
+
+			this.outcomes[this.nextOutcomeIndex] = success;
+			if (!success)
+			{
+				this.failureCount++;
+			}
+			this.nextOutcomeIndex = (this.nextOutcomeIndex + 1) % this.outcomes.length;
+		}
+
+		private void clearOutcomes()
+		{
+			this.outcomeCount = 0;
+			this.nextOutcomeIndex = 0;
+			this.failureCount = 0;
+		}
+	}
+}
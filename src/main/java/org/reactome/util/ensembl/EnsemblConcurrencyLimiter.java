@@ -0,0 +1,344 @@
+package org.reactome.util.ensembl;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongSupplier;
+
+import org.apache.http.HttpStatus;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.reactome.util.ensembl.EnsemblServiceResponseProcessor.EnsemblServiceResult;
+
+/**
+ * Limits the number of requests to an EnsEMBL REST service in progress at once, adjusting the limit to the service's
+ * responses (additive increase, multiplicative decrease) so that request workers need not be hand-tuned:
+ *
+ * - The limit is halved (down to the minimum) when the service signals congestion: a "Retry-After" response, a 429,
+ * 503 or 504 status, or a request which fails without a response.  Responses to requests sent before a decrease do not
+ * decrease it again.
+ * - The limit grows by about one per round trip while requests succeed, the limit has been in full use within the
+ * last round trip and their latency is within a tolerance of the lowest latency seen, up to the maximum.
+ * - The limit never grows beyond the requests needed to use the rate limiter's current rate (that rate multiplied by
+ * the average latency, plus one), as further requests would only wait on the rate limiter, and that rate falls as the
+ * quota remaining runs down.
+ *
+ * Each permit taken with {@link #acquire()} or {@link #acquireAsync()} must be returned with one of the release
+ * methods.
+ */
+public class EnsemblConcurrencyLimiter
+{
+	public static final int DEFAULT_INITIAL_LIMIT = 4;
+	public static final int DEFAULT_MIN_LIMIT = 1;
+	public static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final int STATUS_TOO_MANY_REQUESTS = 429;
+	private static final double DECREASE_FACTOR = 0.5;
+	private static final double LATENCY_SMOOTHING = 0.2;
+
+	private final EnsemblRateLimiter rateLimiter;
+	private final int minLimit;
+	private final int maxLimit;
+	private final LongSupplier nanoClock;
+	private volatile double latencyTolerance = DEFAULT_LATENCY_TOLERANCE;
+
+	// All of the following are guarded by "this"
+	private final Queue<CompletableFuture<Void>> waitingAcquirers = new ArrayDeque<>();
+	private double limit;
+	private int inFlight = 0;
+	private long lastDecreaseNanos;
+	private long limitReachedNanos;
+	private long minLatencyNanos = Long.MAX_VALUE;
+	private double averageLatencyNanos = 0.0;
+
+	/**
+	 * Constructs a new EnsemblConcurrencyLimiter, with the default initial and minimum limits, for requests scheduled
+	 * by the passed rate limiter
+	 * @param rateLimiter Rate limiter scheduling the requests
+	 * @param maxLimit Maximum number of requests in progress at once (e.g. the maximum connections of the client)
+	 */
+	public EnsemblConcurrencyLimiter(EnsemblRateLimiter rateLimiter, int maxLimit)
+	{
+		this(rateLimiter, Math.min(DEFAULT_INITIAL_LIMIT, maxLimit), DEFAULT_MIN_LIMIT, maxLimit);
+	}
+
+	/**
+	 * Constructs a new EnsemblConcurrencyLimiter for requests scheduled by the passed rate limiter
+	 * @param rateLimiter Rate limiter scheduling the requests
+	 * @param initialLimit Number of requests permitted in progress at once until the service has responded
+	 * @param minLimit Minimum number of requests in progress at once
+	 * @param maxLimit Maximum number of requests in progress at once (e.g. the maximum connections of the client)
+	 * @throws IllegalArgumentException Thrown if the limits are not positive or the initial limit is not between the
+	 * minimum and maximum
+	 */
+	public EnsemblConcurrencyLimiter(EnsemblRateLimiter rateLimiter, int initialLimit, int minLimit, int maxLimit)
+	{
+		this(rateLimiter, initialLimit, minLimit, maxLimit, System::nanoTime);
+	}
+
+	/**
+	 * Constructs a new EnsemblConcurrencyLimiter using the passed clock (for testing)
+	 */
+	EnsemblConcurrencyLimiter(
+		EnsemblRateLimiter rateLimiter, int initialLimit, int minLimit, int maxLimit, LongSupplier nanoClock
+	)
+	{
+		if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit)
+		{
+			throw new IllegalArgumentException(
+				"Limits must satisfy 1 <= minimum <= initial <= maximum, but were " + minLimit + ", " + initialLimit +
+				" and " + maxLimit
+			);
+		}
+
+		this.rateLimiter = rateLimiter;
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.nanoClock = nanoClock;
+		this.lastDecreaseNanos = nanoClock.getAsLong();
+		this.limitReachedNanos = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Sets how much slower than the lowest latency seen a response may be and still increase the limit
+	 * @param latencyTolerance Factor of the lowest latency (at least 1)
+	 * @throws IllegalArgumentException Thrown if the tolerance is less than 1
+	 */
+	public void setLatencyTolerance(double latencyTolerance)
+	{
+		if (latencyTolerance < 1.0)
+		{
+			throw new IllegalArgumentException("Latency tolerance must be at least 1, but was " + latencyTolerance);
+		}
+
+		this.latencyTolerance = latencyTolerance;
+	}
+
+	/**
+	 * Returns the number of requests currently permitted in progress at once
+	 * @return Current limit
+	 */
+	public synchronized int getLimit()
+	{
+		return (int) this.limit;
+	}
+
+	/**
+	 * Returns the number of requests currently in progress
+	 * @return Number of permits taken and not yet released
+	 */
+	public synchronized int getInFlight()
+	{
+		return this.inFlight;
+	}
+
+	/**
+	 * Waits, if needed, until a request may be sent and takes a permit for it
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting
+	 */
+	public void acquire() throws InterruptedException
+	{
+		CompletableFuture<Void> permit = acquireAsync();
+		try
+		{
+			permit.get();
+		}
+		catch (InterruptedException e)
+		{
+			// The permit may have been granted as the thread was interrupted
+			if (!permit.cancel(false))
+			{
+				releaseUnused();
+			}
+			throw e;
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("Permits are never completed exceptionally", e);
+		}
+	}
+
+	/**
+	 * Takes a permit for a request as soon as one is free, without holding a thread while waiting
+	 * @return CompletableFuture which completes once the permit is taken (cancelling it before then gives up the
+	 * permit)
+	 */
+	public CompletableFuture<Void> acquireAsync()
+	{
+		CompletableFuture<Void> permit = new CompletableFuture<>();
+		synchronized (this)
+		{
+			if (this.waitingAcquirers.isEmpty() && this.inFlight < getLimit())
+			{
+				takePermit();
+				permit.complete(null);
+			}
+			else
+			{
+				this.waitingAcquirers.add(permit);
+			}
+		}
+
+		return permit;
+	}
+
+	/**
+	 * Returns the permit of a request and adjusts the limit to its result
+	 * @param result Result of the request's last response
+	 * @param latency Time from sending the request to processing its response
+	 */
+	public void release(EnsemblServiceResult result, Duration latency)
+	{
+		if (isCongestionSignal(result))
+		{
+			releaseAndDecrease();
+		}
+		else
+		{
+			releaseAndIncrease(latency.toNanos());
+		}
+	}
+
+	/**
+	 * Returns the permit of a request which failed without a response (e.g. a connection timeout), which is taken as
+	 * a sign of congestion
+	 */
+	public void releaseAfterFailure()
+	{
+		releaseAndDecrease();
+	}
+
+	/**
+	 * Returns the permit of a request which was not sent, without adjusting the limit
+	 */
+	public void releaseUnused()
+	{
+		List<CompletableFuture<Void>> grantedPermits;
+		synchronized (this)
+		{
+			this.inFlight--;
+			grantedPermits = grantPermits();
+		}
+
+		complete(grantedPermits);
+	}
+
+	private void releaseAndDecrease()
+	{
+		List<CompletableFuture<Void>> grantedPermits;
+		synchronized (this)
+		{
+			this.inFlight--;
+
+			// Requests sent before the last decrease were sent at the old limit, so their responses say nothing new
+			long now = this.nanoClock.getAsLong();
+			if (now - this.lastDecreaseNanos >= (long) this.averageLatencyNanos)
+			{
+				this.limit = Math.max(this.minLimit, this.limit * DECREASE_FACTOR);
+				this.lastDecreaseNanos = now;
+				logger.debug("Decreased the EnsEMBL concurrency limit to {}", getLimit());
+			}
+
+			grantedPermits = grantPermits();
+		}
+
+		complete(grantedPermits);
+	}
+
+	private void releaseAndIncrease(long latencyNanos)
+	{
+		List<CompletableFuture<Void>> grantedPermits;
+		synchronized (this)
+		{
+			this.inFlight--;
+
+			this.minLatencyNanos = Math.min(this.minLatencyNanos, latencyNanos);
+			this.averageLatencyNanos = this.averageLatencyNanos == 0.0 ?
+				latencyNanos :
+				this.averageLatencyNanos + LATENCY_SMOOTHING * (latencyNanos - this.averageLatencyNanos);
+
+			// The limit is only known to be too low if it was in full use within the last round trip
+			long now = this.nanoClock.getAsLong();
+			boolean limitInUse = this.limitReachedNanos != Long.MIN_VALUE &&
+				now - this.limitReachedNanos <= (long) this.averageLatencyNanos;
+			if (limitInUse && latencyNanos <= this.latencyTolerance * this.minLatencyNanos)
+			{
+				// Grows by one once every request at the current limit has succeeded
+				this.limit = Math.min(this.limit + 1.0 / this.limit, getCeiling());
+			}
+
+			grantedPermits = grantPermits();
+		}
+
+		complete(grantedPermits);
+	}
+
+	/**
+	 * Returns the highest limit worth permitting: the maximum, or fewer if that is more requests than are needed to
+	 * send them at the rate limiter's current rate
+	 */
+	private double getCeiling()
+	{
+		double averageLatencySeconds = this.averageLatencyNanos / 1_000_000_000.0;
+		double requestsNeeded = this.rateLimiter.getRequestsPerSecond() * averageLatencySeconds + 1.0;
+
+		return Math.max(Math.max(this.limit, this.minLimit), Math.min(this.maxLimit, Math.ceil(requestsNeeded)));
+	}
+
+	private void takePermit()
+	{
+		this.inFlight++;
+		if (this.inFlight >= getLimit())
+		{
+			this.limitReachedNanos = this.nanoClock.getAsLong();
+		}
+	}
+
+	/**
+	 * Takes the permits of waiting acquirers while the limit permits, and returns them to be completed once the lock
+	 * is released
+	 */
+	private List<CompletableFuture<Void>> grantPermits()
+	{
+		List<CompletableFuture<Void>> grantedPermits = new ArrayList<>();
+		while (this.inFlight < getLimit() && !this.waitingAcquirers.isEmpty())
+		{
+			CompletableFuture<Void> permit = this.waitingAcquirers.poll();
+			if (!permit.isCancelled())
+			{
+				takePermit();
+				grantedPermits.add(permit);
+			}
+		}
+
+		return grantedPermits;
+	}
+
+	private void complete(List<CompletableFuture<Void>> grantedPermits)
+	{
+		for (CompletableFuture<Void> permit : grantedPermits)
+		{
+			// A permit cancelled since it was granted is given back
+			if (!permit.complete(null))
+			{
+				releaseUnused();
+			}
+		}
+	}
+
+	private static boolean isCongestionSignal(EnsemblServiceResult result)
+	{
+		int status = result.getStatus();
+		return status == STATUS_TOO_MANY_REQUESTS ||
+			status == HttpStatus.SC_SERVICE_UNAVAILABLE ||
+			status == HttpStatus.SC_GATEWAY_TIMEOUT ||
+			result.getRetryAfter().compareTo(Duration.ZERO) > 0;
+	}
+}
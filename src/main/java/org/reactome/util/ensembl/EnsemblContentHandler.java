@@ -0,0 +1,80 @@
+package org.reactome.util.ensembl;
+
+import java.io.IOException;
+
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParsingException;
+
+/**
+ * Handles the content of a successful response from an EnsEMBL REST service as it is read, rather than after it has
+ * been stored as a String (see {@link EnsemblServiceResponseProcessor#processStreamedResponse}).  Large responses
+ * (e.g. to batch lookups) are then processed in a single pass, with only the record being handled held in memory.
+ */
+@FunctionalInterface
+public interface EnsemblContentHandler
+{
+	/**
+	 * Handles the content of a response
+	 * @param parser JSON parser positioned before the content of the response (closed once this method returns)
+	 * @throws IOException Thrown if the content can not be read or does not have the expected structure
+	 */
+	void handleContent(JsonParser parser) throws IOException;
+
+	/**
+	 * Handles a record of the content of a response
+	 */
+	@FunctionalInterface
+	interface RecordHandler
+	{
+		/**
+		 * Handles a record of the content of a response
+		 * @param key Key of the record in the response's top-level object (e.g. the identifier looked up), or its
+		 * position (from 0) in the response's top-level array
+		 * @param record JSON value of the record
+		 */
+		void handleRecord(String key, JsonValue record);
+	}
+
+	/**
+	 * Returns a content handler which passes each member of the response's top-level object (e.g. the response to a
+	 * "lookup/id" POST request, keyed by identifier) or each element of its top-level array to the passed record
+	 * handler, as soon as the record has been read
+	 * @param recordHandler Handler of each record
+	 * @return EnsemblContentHandler of the records
+	 */
+	static EnsemblContentHandler forRecords(RecordHandler recordHandler)
+	{
+		return parser -> {
+			if (!parser.hasNext())
+			{
+				throw new IOException("Response has no content");
+			}
+
+			JsonParser.Event event = parser.next();
+			if (event == JsonParser.Event.START_OBJECT)
+			{
+				while ((event = parser.next()) != JsonParser.Event.END_OBJECT)
+				{
+					String key = parser.getString();
+					parser.next();
+					recordHandler.handleRecord(key, parser.getValue());
+				}
+			}
+			else if (event == JsonParser.Event.START_ARRAY)
+			{
+				int position = 0;
+				while (parser.next() != JsonParser.Event.END_ARRAY)
+				{
+					recordHandler.handleRecord(String.valueOf(position++), parser.getValue());
+				}
+			}
+			else
+			{
+				throw new JsonParsingException(
+					"Expected a JSON object or array, but found " + event, parser.getLocation()
+				);
+			}
+		};
+	}
+}
@@ -0,0 +1,32 @@
+package org.reactome.util.ensembl;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Receives an {@link EnsemblRequestEvent} for each attempt of an EnsemblRestClient to send a request, so the use of an
+ * EnsEMBL service's quota can be measured.  Implementations may aggregate the events (see
+ * {@link EnsemblMetricsRegistry}), write them out (see {@link EnsemblRequestTraceWriter}) or adapt them to another
+ * metrics library.  Events are published on the threads sending the requests, so implementations must be thread-safe
+ * and quick.
+ */
+@FunctionalInterface
+public interface EnsemblMetricsListener
+{
+	/**
+	 * Receives the record of an attempt to send a request
+	 * @param event Record of the attempt
+	 */
+	void requestCompleted(EnsemblRequestEvent event);
+
+	/**
+	 * Returns a listener which passes each event to each of the passed listeners, in order
+	 * @param listeners Listeners to receive the events
+	 * @return EnsemblMetricsListener of all the listeners
+	 */
+	static EnsemblMetricsListener allOf(EnsemblMetricsListener... listeners)
+	{
+		List<EnsemblMetricsListener> listenerList = Arrays.asList(listeners.clone());
+		return event -> listenerList.forEach(listener -> listener.requestCompleted(event));
+	}
+}
@@ -0,0 +1,216 @@
+package org.reactome.util.ensembl;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the {@link EnsemblRequestEvent}s of EnsemblRestClients in memory: for each endpoint and response status,
+ * the number of attempts, retries, bytes received, time waited before sending, time the service asked to wait
+ * ("Retry-After") and a histogram of latencies; and the service's quota remaining as last reported.  The metrics can
+ * be read at any time (e.g. to log them periodically or to publish them to a monitoring system).
+ */
+public class EnsemblMetricsRegistry implements EnsemblMetricsListener
+{
+	private final Map<String, RequestMetrics> keyToMetrics = new ConcurrentHashMap<>();
+	private final AtomicLong quotaRemaining = new AtomicLong(-1L);
+
+	@Override
+	public void requestCompleted(EnsemblRequestEvent event)
+	{
+		String key = event.getEndpoint() + " " + event.getStatus();
+		this.keyToMetrics.computeIfAbsent(key, k -> new RequestMetrics(event.getEndpoint(), event.getStatus()))
+			.record(event);
+
+		if (event.getQuotaRemaining() >= 0)
+		{
+			this.quotaRemaining.set(event.getQuotaRemaining());
+		}
+	}
+
+	/**
+	 * Returns the metrics of each endpoint and response status
+	 * @return Map of "endpoint status" (e.g. "lookup/id 200") to its metrics, ordered by key
+	 */
+	public Map<String, RequestMetrics> getMetrics()
+	{
+		return Collections.unmodifiableMap(new TreeMap<>(this.keyToMetrics));
+	}
+
+	/**
+	 * Returns the number of requests remaining in the service's quota, as last reported
+	 * @return Requests remaining (or -1 if no response has reported the quota)
+	 */
+	public long getQuotaRemaining()
+	{
+		return this.quotaRemaining.get();
+	}
+
+	/**
+	 * Metrics of the attempts to an endpoint which had the same response status
+	 */
+	public static class RequestMetrics
+	{
+		// Bucket i counts latencies below 2^i milliseconds; the last bucket counts all longer latencies
+		private static final int LATENCY_BUCKET_COUNT = 18;
+
+		private final String endpoint;
+		private final int status;
+		private final LongAdder count = new LongAdder();
+		private final LongAdder retryCount = new LongAdder();
+		private final LongAdder bytesReceived = new LongAdder();
+		private final LongAdder totalLatencyNanos = new LongAdder();
+		private final LongAdder totalWaitNanos = new LongAdder();
+		private final LongAdder totalRetryAfterNanos = new LongAdder();
+		private final LongAccumulator maxLatencyNanos = new LongAccumulator(Long::max, 0L);
+		private final AtomicLongArray latencyBucketCounts = new AtomicLongArray(LATENCY_BUCKET_COUNT);
+
+		RequestMetrics(String endpoint, int status)
+		{
+			this.endpoint = endpoint;
+			this.status = status;
+		}
+
+		void record(EnsemblRequestEvent event)
+		{
+			this.count.increment();
+			if (event.isRetrying())
+			{
+				this.retryCount.increment();
+			}
+			this.bytesReceived.add(event.getBytesReceived());
+			this.totalLatencyNanos.add(event.getLatency().toNanos());
+			this.maxLatencyNanos.accumulate(event.getLatency().toNanos());
+			this.totalWaitNanos.add(event.getWaitTime().toNanos());
+			this.totalRetryAfterNanos.add(event.getRetryAfter().toNanos());
+
+			long latencyMillis = event.getLatency().toMillis();
+			int bucket = latencyMillis <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(latencyMillis);
+			this.latencyBucketCounts.incrementAndGet(Math.min(bucket, LATENCY_BUCKET_COUNT - 1));
+		}
+
+		/**
+		 * Returns the endpoint of the attempts
+		 * @return Endpoint (e.g. "lookup/id")
+		 */
+		public String getEndpoint()
+		{
+			return this.endpoint;
+		}
+
+		/**
+		 * Returns the response status of the attempts
+		 * @return HTTP status code (or {@link EnsemblRequestEvent#NO_RESPONSE_STATUS})
+		 */
+		public int getStatus()
+		{
+			return this.status;
+		}
+
+		/**
+		 * Returns the number of attempts
+		 * @return Number of attempts
+		 */
+		public long getCount()
+		{
+			return this.count.sum();
+		}
+
+		/**
+		 * Returns the number of attempts which were followed by a retry
+		 * @return Number of retries
+		 */
+		public long getRetryCount()
+		{
+			return this.retryCount.sum();
+		}
+
+		/**
+		 * Returns the number of bytes of response content received
+		 * @return Bytes received
+		 */
+		public long getBytesReceived()
+		{
+			return this.bytesReceived.sum();
+		}
+
+		/**
+		 * Returns the total latency of the attempts
+		 * @return Sum of the latencies
+		 */
+		public Duration getTotalLatency()
+		{
+			return Duration.ofNanos(this.totalLatencyNanos.sum());
+		}
+
+		/**
+		 * Returns the total time the attempts waited before being sent
+		 * @return Sum of the wait times
+		 */
+		public Duration getTotalWaitTime()
+		{
+			return Duration.ofNanos(this.totalWaitNanos.sum());
+		}
+
+		/**
+		 * Returns the total time the service asked to wait with "Retry-After"
+		 * @return Sum of the "Retry-After" times
+		 */
+		public Duration getTotalRetryAfter()
+		{
+			return Duration.ofNanos(this.totalRetryAfterNanos.sum());
+		}
+
+		/**
+		 * Returns an upper bound of the passed percentile of the latencies, from the histogram (whose buckets double
+		 * in size)
+		 * @param percentile Percentile (from 0 to 100)
+		 * @return Upper bound of the latency bucket containing the percentile ({@link Duration#ZERO} if there have
+		 * been no attempts)
+		 */
+		public Duration getLatencyPercentile(double percentile)
+		{
+			long total = 0;
+			long[] bucketCounts = new long[LATENCY_BUCKET_COUNT];
+			for (int bucket = 0; bucket < LATENCY_BUCKET_COUNT; bucket++)
+			{
+				bucketCounts[bucket] = this.latencyBucketCounts.get(bucket);
+				total += bucketCounts[bucket];
+			}
+			if (total == 0)
+			{
+				return Duration.ZERO;
+			}
+
+			long rank = (long) Math.ceil(percentile / 100.0 * total);
+			long seen = 0;
+			for (int bucket = 0; bucket < LATENCY_BUCKET_COUNT - 1; bucket++)
+			{
+				seen += bucketCounts[bucket];
+				if (seen >= rank)
+				{
+					return Duration.ofMillis(1L << bucket);
+				}
+			}
+
+			// Beyond the histogram, only the longest latency is known
+			return Duration.ofNanos(this.maxLatencyNanos.get());
+		}
+
+		@Override
+		public String toString()
+		{
+			long count = getCount();
+			return this.endpoint + " " + this.status + ": " + count + " attempts, " + getRetryCount() + " retried, " +
+				getBytesReceived() + " bytes, mean latency " +
+				(count > 0 ? getTotalLatency().dividedBy(count) : Duration.ZERO) + ", p99 latency <= " +
+				getLatencyPercentile(99) + ", waited " + getTotalWaitTime() + ", Retry-After " + getTotalRetryAfter();
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package org.reactome.util.ensembl;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Tracks the request quota of a single EnsEMBL REST service (e.g. rest.ensembl.org, grch37.rest.ensembl.org or
+ * rest.ensemblgenomes.org), as reported by the "X-RateLimit-Limit", "X-RateLimit-Remaining", "X-RateLimit-Reset" and
+ * "X-RateLimit-Period" headers of its responses.  Services (and API keys of a service) have separate quotas, so each
+ * has its own tracker, obtained from the registry with {@link #forService(String)} or
+ * {@link #forService(String, String)}; the trackers of all services can be listed (e.g. to report them as metrics)
+ * with {@link #getTrackers()}.  Each tracker also holds the {@link EnsemblRateLimiter} of its service (see
+ * {@link #getRateLimiter()}), so all clients of a service pace their requests together against its one quota.
+ *
+ * The quota is updated atomically from each response, so concurrent responses never leave a mix of their values.
+ */
+public class EnsemblQuotaTracker
+{
+	private static final Logger logger = LogManager.getLogger();
+	private static final Map<String, EnsemblQuotaTracker> keyToTracker = new ConcurrentHashMap<>();
+
+	static final String LIMIT_HEADER = "X-RateLimit-Limit";
+	static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+	static final String RESET_HEADER = "X-RateLimit-Reset";
+	static final String PERIOD_HEADER = "X-RateLimit-Period";
+	private static final long REMAINING_LOG_INTERVAL = 1000L;
+
+	private final String key;
+	private final Clock clock;
+	private final EnsemblRateLimiter rateLimiter = new EnsemblRateLimiter();
+	private final AtomicReference<Quota> quota = new AtomicReference<>(new Quota(-1L, -1L, null, -1L));
+
+	/**
+	 * Constructs a new EnsemblQuotaTracker (outside of the registry, for testing)
+	 * @param key Key of the service
+	 * @param clock Source of the current time
+	 */
+	EnsemblQuotaTracker(String key, Clock clock)
+	{
+		this.key = key;
+		this.clock = clock;
+	}
+
+	/**
+	 * Returns the tracker of the quota of the passed service host
+	 * @param host Host of the EnsEMBL REST service (e.g. "rest.ensembl.org")
+	 * @return EnsemblQuotaTracker of the host
+	 */
+	public static EnsemblQuotaTracker forService(String host)
+	{
+		return forService(host, null);
+	}
+
+	/**
+	 * Returns the tracker of the quota of the passed API key at the passed service host
+	 * @param host Host of the EnsEMBL REST service (e.g. "rest.ensembl.org")
+	 * @param apiKey API key with which requests are sent (<code>null</code> for requests without one)
+	 * @return EnsemblQuotaTracker of the host and API key
+	 */
+	public static EnsemblQuotaTracker forService(String host, String apiKey)
+	{
+		String key = apiKey != null ? host.toLowerCase() + "#" + apiKey : host.toLowerCase();
+		return keyToTracker.computeIfAbsent(key, k -> new EnsemblQuotaTracker(k, Clock.systemUTC()));
+	}
+
+	/**
+	 * Returns the trackers of all services for which one has been obtained
+	 * @return Unmodifiable map of the key of each service ("host", or "host#apiKey") to its tracker
+	 */
+	public static Map<String, EnsemblQuotaTracker> getTrackers()
+	{
+		return Collections.unmodifiableMap(keyToTracker);
+	}
+
+	/**
+	 * Returns the key of the service of this tracker
+	 * @return "host", or "host#apiKey"
+	 */
+	public String getKey()
+	{
+		return this.key;
+	}
+
+	/**
+	 * Returns the rate limiter shared by the clients of the service of this tracker which are not given one of their
+	 * own, pacing requests at the maximum rate of rest.ensembl.org
+	 * @return EnsemblRateLimiter of the service
+	 */
+	public EnsemblRateLimiter getRateLimiter()
+	{
+		return this.rateLimiter;
+	}
+
+	/**
+	 * Returns the quota as last reported by the service
+	 * @return Quota of the service
+	 */
+	public Quota getQuota()
+	{
+		return this.quota.get();
+	}
+
+	/**
+	 * Returns the number of requests permitted per quota window
+	 * @return Limit of the service (or -1 if no response has reported it yet)
+	 */
+	public long getLimit()
+	{
+		return getQuota().getLimit();
+	}
+
+	/**
+	 * Returns the number of requests which may still be sent in the current quota window
+	 * @return Requests remaining (or -1 if no response has reported it yet)
+	 */
+	public long getRemaining()
+	{
+		return getQuota().getRemaining();
+	}
+
+	/**
+	 * Returns the time at which the current quota window ends
+	 * @return End of the quota window (or <code>null</code> if no response has reported it yet)
+	 */
+	public Instant getResetTime()
+	{
+		return getQuota().getResetTime();
+	}
+
+	/**
+	 * Updates the quota from the headers of the passed response.  Headers the response does not have leave their
+	 * values unchanged.
+	 * @param response Response from the service
+	 */
+	public void update(HttpResponse response)
+	{
+		Long limit = getLongHeaderValue(response, LIMIT_HEADER);
+		Long remaining = getLongHeaderValue(response, REMAINING_HEADER);
+		Long secondsToReset = getLongHeaderValue(response, RESET_HEADER);
+		Long period = getLongHeaderValue(response, PERIOD_HEADER);
+		if (limit == null && remaining == null && secondsToReset == null && period == null)
+		{
+			return;
+		}
+
+		Instant resetTime = secondsToReset != null ? this.clock.instant().plusSeconds(secondsToReset) : null;
+		Quota previousQuota = this.quota.getAndUpdate(currentQuota -> new Quota(
+			limit != null ? limit : currentQuota.getLimit(),
+			remaining != null ? remaining : currentQuota.getRemaining(),
+			resetTime != null ? resetTime : currentQuota.getResetTime(),
+			period != null ? period : currentQuota.getPeriodSeconds()
+		));
+
+		// Logged by the one update which crosses each thousand, however the responses interleave
+		if (remaining != null && previousQuota.getRemaining() >= 0 &&
+			previousQuota.getRemaining() / REMAINING_LOG_INTERVAL != remaining / REMAINING_LOG_INTERVAL)
+		{
+			logger.debug("{} requests remaining for {}", remaining, this.key);
+		}
+	}
+
+	/**
+	 * Returns the value of the first of the passed header of the passed response as a number, or <code>null</code> if
+	 * the response does not have the header or its value is not a number
+	 */
+	static Long getLongHeaderValue(HttpResponse response, String header)
+	{
+		Header firstHeader = response.getFirstHeader(header);
+		if (firstHeader == null)
+		{
+			return null;
+		}
+
+		try
+		{
+			return Long.parseLong(firstHeader.getValue().trim());
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Quota of a service at the time of a response
+	 */
+	public static class Quota
+	{
+		private final long limit;
+		private final long remaining;
+		private final Instant resetTime;
+		private final long periodSeconds;
+
+		Quota(long limit, long remaining, Instant resetTime, long periodSeconds)
+		{
+			this.limit = limit;
+			this.remaining = remaining;
+			this.resetTime = resetTime;
+			this.periodSeconds = periodSeconds;
+		}
+
+		/**
+		 * Returns the number of requests permitted per quota window
+		 * @return Limit of the service (or -1 if not reported)
+		 */
+		public long getLimit()
+		{
+			return this.limit;
+		}
+
+		/**
+		 * Returns the number of requests which may still be sent in the quota window
+		 * @return Requests remaining (or -1 if not reported)
+		 */
+		public long getRemaining()
+		{
+			return this.remaining;
+		}
+
+		/**
+		 * Returns the time at which the quota window ends
+		 * @return End of the quota window (or <code>null</code> if not reported)
+		 */
+		public Instant getResetTime()
+		{
+			return this.resetTime;
+		}
+
+		/**
+		 * Returns the length of a quota window
+		 * @return Length of the quota window in seconds (or -1 if not reported)
+		 */
+		public long getPeriodSeconds()
+		{
+			return this.periodSeconds;
+		}
+
+		@Override
+		public String toString()
+		{
+			return this.remaining + " of " + this.limit + " requests remaining until " + this.resetTime;
+		}
+	}
+}
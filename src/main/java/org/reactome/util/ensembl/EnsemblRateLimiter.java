@@ -0,0 +1,269 @@
+package org.reactome.util.ensembl;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.apache.http.HttpResponse;
+
+/**
+ * Token bucket which schedules requests to an EnsEMBL REST service so that its quota is used in full without the
+ * service ever having to refuse a request.  Tokens are added at the highest rate allowed by both the per-second limit
+ * and the requests remaining in the current quota window (i.e. "X-RateLimit-Remaining" spread over the
+ * "X-RateLimit-Reset" seconds left in the window), and the bucket holds at most a single token, so requests are
+ * spaced evenly rather than sent in bursts and no one-second window has more than the per-second limit.  Each
+ * response updates the quota from its headers.  Once the requests remaining are used up, none are permitted until
+ * the window ends and a new one, of "X-RateLimit-Period" seconds, starts with the full limit.  No requests are
+ * permitted either while its {@link EnsemblBackoffGate} is paused (after a "Retry-After" response).
+ *
+ * A single rate limiter should be shared by all threads and clients making requests to the same service (and API key):
+ * clients which are not given a rate limiter use the one of their service's {@link EnsemblQuotaTracker} (see
+ * {@link EnsemblQuotaTracker#getRateLimiter()}).
+ */
+public class EnsemblRateLimiter
+{
+	/** Maximum requests per second permitted by rest.ensembl.org */
+	public static final int DEFAULT_MAX_REQUESTS_PER_SECOND = 15;
+
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+	// A full bucket sends one request at once and the rest of a second's requests at the token rate, so a larger
+	// bucket would let the requests of a one-second window exceed the per-second limit
+	private static final double MAX_TOKENS = 1.0;
+
+	private final double maxRequestsPerSecond;
+	private final LongSupplier nanoClock;
+	private final EnsemblBackoffGate backoffGate;
+
+	// All of the following are guarded by "this"
+	private double tokens;
+	private long lastRefillNanos;
+	private double tokensPerSecond;
+	private boolean quotaKnown = false;
+	private long limit;
+	private long remaining;
+	private long windowResetNanos;
+	private long windowLengthNanos = TimeUnit.HOURS.toNanos(1);
+
+	/**
+	 * Constructs a new EnsemblRateLimiter for the maximum requests per second of rest.ensembl.org
+	 */
+	public EnsemblRateLimiter()
+	{
+		this(DEFAULT_MAX_REQUESTS_PER_SECOND);
+	}
+
+	/**
+	 * Constructs a new EnsemblRateLimiter for the passed maximum requests per second
+	 * @param maxRequestsPerSecond Maximum number of requests per second the service permits
+	 * @throws IllegalArgumentException Thrown if the maximum is not positive
+	 */
+	public EnsemblRateLimiter(double maxRequestsPerSecond)
+	{
+		this(maxRequestsPerSecond, System::nanoTime);
+	}
+
+	/**
+	 * Constructs a new EnsemblRateLimiter using the passed clock (for testing)
+	 * @param maxRequestsPerSecond Maximum number of requests per second the service permits
+	 * @param nanoClock Source of the current time in nanoseconds
+	 */
+	EnsemblRateLimiter(double maxRequestsPerSecond, LongSupplier nanoClock)
+	{
+		if (maxRequestsPerSecond <= 0)
+		{
+			throw new IllegalArgumentException(
+				"Maximum requests per second must be positive, but was " + maxRequestsPerSecond
+			);
+		}
+
+		this.maxRequestsPerSecond = maxRequestsPerSecond;
+		this.nanoClock = nanoClock;
+		this.tokens = MAX_TOKENS;
+		this.tokensPerSecond = maxRequestsPerSecond;
+		this.lastRefillNanos = nanoClock.getAsLong();
+		this.backoffGate = new EnsemblBackoffGate(nanoClock);
+	}
+
+	/**
+	 * Waits, if needed, until a request may be sent
+	 * @return Time waited
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting
+	 */
+	public Duration acquire() throws InterruptedException
+	{
+		long waitNanos = reserve();
+		if (waitNanos > 0)
+		{
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+
+		return Duration.ofNanos(waitNanos);
+	}
+
+	/**
+	 * Updates the quota from the "X-RateLimit-Limit", "X-RateLimit-Remaining", "X-RateLimit-Reset" and
+	 * "X-RateLimit-Period" headers of the passed response.  Responses without the headers are ignored.
+	 * @param response Response from the EnsEMBL service
+	 */
+	public void update(HttpResponse response)
+	{
+		Long responseRemaining =
+			EnsemblQuotaTracker.getLongHeaderValue(response, EnsemblQuotaTracker.REMAINING_HEADER);
+		Long responseReset = EnsemblQuotaTracker.getLongHeaderValue(response, EnsemblQuotaTracker.RESET_HEADER);
+		if (responseRemaining == null || responseReset == null)
+		{
+			return;
+		}
+
+		Long responsePeriod = EnsemblQuotaTracker.getLongHeaderValue(response, EnsemblQuotaTracker.PERIOD_HEADER);
+		if (responsePeriod != null && responsePeriod > 0)
+		{
+			synchronized (this)
+			{
+				this.windowLengthNanos = TimeUnit.SECONDS.toNanos(responsePeriod);
+			}
+		}
+
+		Long responseLimit = EnsemblQuotaTracker.getLongHeaderValue(response, EnsemblQuotaTracker.LIMIT_HEADER);
+		update(responseLimit != null ? responseLimit : getLimit(responseRemaining), responseRemaining, responseReset);
+	}
+
+	/**
+	 * Updates the quota
+	 * @param limit Number of requests permitted per quota window
+	 * @param remaining Number of requests remaining in the current quota window
+	 * @param secondsToReset Number of seconds until the current quota window ends
+	 */
+	public synchronized void update(long limit, long remaining, long secondsToReset)
+	{
+		long now = this.nanoClock.getAsLong();
+		refill(now);
+
+		long windowResetNanos = now + TimeUnit.SECONDS.toNanos(secondsToReset);
+		// Responses to requests sent before others arrive in any order, so the lowest remaining count of a window is
+		// the most recent one.  A later reset (by more than the rounding of the header) starts a new window.
+		if (!this.quotaKnown || windowResetNanos > this.windowResetNanos + NANOS_PER_SECOND)
+		{
+			this.remaining = remaining;
+		}
+		else
+		{
+			this.remaining = Math.min(this.remaining, remaining);
+		}
+		this.quotaKnown = true;
+		this.limit = limit;
+		this.windowResetNanos = windowResetNanos;
+
+		updateTokensPerSecond(now);
+	}
+
+	/**
+	 * Returns the gate pausing all requests scheduled by this rate limiter after a "Retry-After" response
+	 * @return EnsemblBackoffGate of this rate limiter
+	 */
+	public EnsemblBackoffGate getBackoffGate()
+	{
+		return this.backoffGate;
+	}
+
+	/**
+	 * Returns the number of requests which may still be sent in the current quota window, as last reported by the
+	 * service less the requests sent since
+	 * @return Number of requests remaining (or -1 if no response has reported the quota yet)
+	 */
+	public synchronized long getRemaining()
+	{
+		return this.quotaKnown ? this.remaining : -1L;
+	}
+
+	/**
+	 * Returns the current rate at which requests are permitted
+	 * @return Requests permitted per second
+	 */
+	public synchronized double getRequestsPerSecond()
+	{
+		return this.tokensPerSecond;
+	}
+
+	/**
+	 * Takes a token for a request and returns how long the caller must wait before sending it.  Tokens may be taken
+	 * ahead of time (making the bucket negative), so concurrent callers are given successive slots, starting when the
+	 * back-off gate opens if it is paused.
+	 * @return Nanoseconds to wait before sending the request
+	 */
+	synchronized long reserve()
+	{
+		long now = this.nanoClock.getAsLong();
+
+		if (this.quotaKnown && now >= this.windowResetNanos)
+		{
+			startNewWindow(now);
+		}
+
+		if (this.quotaKnown && this.remaining <= 0)
+		{
+			// No request may be sent until the quota window ends and the full limit is available again
+			long windowStartNanos = this.windowResetNanos;
+			startNewWindow(windowStartNanos);
+			this.tokens = Math.min(this.tokens, MAX_TOKENS);
+			this.lastRefillNanos = windowStartNanos;
+		}
+		else
+		{
+			refill(now);
+		}
+
+		// Slots reserved in a quota window which has not started yet, or during a pause, are counted from its end
+		long slotBaseNanos = Math.max(now + this.backoffGate.getRemainingPauseNanos(), this.lastRefillNanos);
+		this.tokens -= 1.0;
+		if (this.quotaKnown)
+		{
+			this.remaining--;
+			updateTokensPerSecond(slotBaseNanos);
+		}
+
+		long tokenWaitNanos = this.tokens >= 0 ?
+			0L :
+			(long) (-this.tokens / this.tokensPerSecond * NANOS_PER_SECOND);
+		return (slotBaseNanos - now) + tokenWaitNanos;
+	}
+
+	private void refill(long now)
+	{
+		if (now > this.lastRefillNanos)
+		{
+			double elapsedSeconds = (double) (now - this.lastRefillNanos) / NANOS_PER_SECOND;
+			this.tokens = Math.min(MAX_TOKENS, this.tokens + elapsedSeconds * this.tokensPerSecond);
+			this.lastRefillNanos = now;
+		}
+	}
+
+	private void updateTokensPerSecond(long now)
+	{
+		double secondsToReset = Math.max(1.0, (double) (this.windowResetNanos - now) / NANOS_PER_SECOND);
+		this.tokensPerSecond = Math.min(
+			this.maxRequestsPerSecond, Math.max(this.remaining, 1L) / secondsToReset
+		);
+	}
+
+	private void startNewWindow(long startNanos)
+	{
+		this.remaining = this.limit;
+		this.windowResetNanos = startNanos + this.windowLengthNanos;
+		// Without a known limit, requests are paced at the maximum rate until a response reports the quota again
+		this.quotaKnown = this.limit > 0;
+		if (!this.quotaKnown)
+		{
+			this.tokensPerSecond = this.maxRequestsPerSecond;
+		}
+	}
+
+	/**
+	 * Returns the limit last reported, or the passed number of requests remaining if it is higher (for responses
+	 * without an "X-RateLimit-Limit" header)
+	 */
+	private synchronized long getLimit(long remaining)
+	{
+		return Math.max(this.limit, remaining);
+	}
+}
@@ -0,0 +1,167 @@
+package org.reactome.util.ensembl;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Record of a single attempt to send a request to an EnsEMBL REST service, published by the EnsemblRestClient to its
+ * {@link EnsemblMetricsListener} once the attempt's response has been processed (or the attempt has failed).  A
+ * request which is retried publishes an event for each attempt.
+ */
+public class EnsemblRequestEvent
+{
+	/** Status of an attempt which failed without a response */
+	public static final int NO_RESPONSE_STATUS = -1;
+
+	private final Instant startTime;
+	private final String method;
+	private final String endpoint;
+	private final String uri;
+	private final int attempt;
+	private final int status;
+	private final Duration waitTime;
+	private final Duration latency;
+	private final long bytesReceived;
+	private final Duration retryAfter;
+	private final boolean retrying;
+	private final long quotaRemaining;
+	private final String error;
+
+	EnsemblRequestEvent(
+		Instant startTime, String method, String endpoint, String uri, int attempt, int status, Duration waitTime,
+		Duration latency, long bytesReceived, Duration retryAfter, boolean retrying, long quotaRemaining, String error
+	)
+	{
+		this.startTime = startTime;
+		this.method = method;
+		this.endpoint = endpoint;
+		this.uri = uri;
+		this.attempt = attempt;
+		this.status = status;
+		this.waitTime = waitTime;
+		this.latency = latency;
+		this.bytesReceived = bytesReceived;
+		this.retryAfter = retryAfter;
+		this.retrying = retrying;
+		this.quotaRemaining = quotaRemaining;
+		this.error = error;
+	}
+
+	/**
+	 * Returns the time at which the attempt was sent
+	 * @return Time the attempt was sent
+	 */
+	public Instant getStartTime()
+	{
+		return this.startTime;
+	}
+
+	/**
+	 * Returns the HTTP method of the request
+	 * @return HTTP method (e.g. "GET")
+	 */
+	public String getMethod()
+	{
+		return this.method;
+	}
+
+	/**
+	 * Returns the endpoint of the request (see {@link EnsemblCircuitBreaker#getEndpoint(String)})
+	 * @return Endpoint (e.g. "lookup/id")
+	 */
+	public String getEndpoint()
+	{
+		return this.endpoint;
+	}
+
+	/**
+	 * Returns the URI of the request
+	 * @return URI of the request, with its query parameters
+	 */
+	public String getUri()
+	{
+		return this.uri;
+	}
+
+	/**
+	 * Returns the number of the attempt
+	 * @return Number of the attempt (from 1 for the first time the request is sent)
+	 */
+	public int getAttempt()
+	{
+		return this.attempt;
+	}
+
+	/**
+	 * Returns the HTTP status code of the response
+	 * @return Status of the response (or {@link #NO_RESPONSE_STATUS} if the attempt failed without one)
+	 */
+	public int getStatus()
+	{
+		return this.status;
+	}
+
+	/**
+	 * Returns the time the attempt waited before being sent (for the concurrency limiter, the rate limiter and any
+	 * pause after a "Retry-After" response)
+	 * @return Time waited before the attempt was sent
+	 */
+	public Duration getWaitTime()
+	{
+		return this.waitTime;
+	}
+
+	/**
+	 * Returns the time from sending the attempt to processing its response
+	 * @return Latency of the attempt
+	 */
+	public Duration getLatency()
+	{
+		return this.latency;
+	}
+
+	/**
+	 * Returns the number of bytes of response content read
+	 * @return Bytes of content received
+	 */
+	public long getBytesReceived()
+	{
+		return this.bytesReceived;
+	}
+
+	/**
+	 * Returns the time the service asked to wait before retrying (its "Retry-After" header)
+	 * @return Time the service asked to wait ({@link Duration#ZERO} if it did not)
+	 */
+	public Duration getRetryAfter()
+	{
+		return this.retryAfter;
+	}
+
+	/**
+	 * Returns <code>true</code> if the request will be sent again after this attempt; <code>false</code> otherwise
+	 * @return <code>true</code> if the request is retried; <code>false</code> otherwise
+	 */
+	public boolean isRetrying()
+	{
+		return this.retrying;
+	}
+
+	/**
+	 * Returns the number of requests remaining in the service's quota after the attempt
+	 * @return Requests remaining (or -1 if the service has not reported its quota)
+	 */
+	public long getQuotaRemaining()
+	{
+		return this.quotaRemaining;
+	}
+
+	/**
+	 * Returns the error with which the attempt failed without a response
+	 * @return Message of the error (or <code>null</code> if the attempt had a response)
+	 */
+	public String getError()
+	{
+		return this.error;
+	}
+}
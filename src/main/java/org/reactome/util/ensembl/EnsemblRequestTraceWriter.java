@@ -0,0 +1,120 @@
+package org.reactome.util.ensembl;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * An EnsemblMetricsListener which writes each {@link EnsemblRequestEvent} as a line of JSON (JSONL) to a Writer (e.g.
+ * an, optionally gzip-compressed, file), for offline analysis of how an EnsEMBL service's quota was spent, e.g.:
+ *
+<pre>
+	{"time":"2024-01-01T00:00:00.123Z","method":"POST","endpoint":"lookup/id","uri":"https://rest.ensembl.org/lookup/id",
+	"attempt":1,"status":200,"waitMillis":12,"latencyMillis":840,"bytes":523118,"retryAfterMillis":0,"retrying":false,
+	"quotaRemaining":54321}
+</pre>
+ * (on one line).  Attempts which failed without a response also have an "error".  If the trace can not be written,
+ * the failure is logged once and the remaining events are not written, so tracing never fails requests.
+ */
+public class EnsemblRequestTraceWriter implements EnsemblMetricsListener, Closeable
+{
+	private static final Logger logger = LogManager.getLogger();
+
+	// Guarded by "this"
+	private final Writer writer;
+	private boolean failed = false;
+
+	/**
+	 * Constructs a new EnsemblRequestTraceWriter writing to the passed Writer
+	 * @param writer Writer of the trace (closed when this trace writer is closed)
+	 */
+	public EnsemblRequestTraceWriter(Writer writer)
+	{
+		this.writer = writer;
+	}
+
+	/**
+	 * Creates an EnsemblRequestTraceWriter writing to the passed file (replacing it if it exists)
+	 * @param traceFilePath Path of the trace file
+	 * @param gzipCompressed <code>true</code> to gzip-compress the file; <code>false</code> otherwise
+	 * @return EnsemblRequestTraceWriter of the file
+	 * @throws IOException Thrown if the file can not be created
+	 */
+	public static EnsemblRequestTraceWriter toFile(Path traceFilePath, boolean gzipCompressed) throws IOException
+	{
+		OutputStream outputStream = Files.newOutputStream(traceFilePath);
+		if (gzipCompressed)
+		{
+			outputStream = new GZIPOutputStream(outputStream);
+		}
+
+		return new EnsemblRequestTraceWriter(
+			new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))
+		);
+	}
+
+	@Override
+	public void requestCompleted(EnsemblRequestEvent event)
+	{
+		JsonObjectBuilder line = Json.createObjectBuilder()
+			.add("time", event.getStartTime().toString())
+			.add("method", event.getMethod())
+			.add("endpoint", event.getEndpoint())
+			.add("uri", event.getUri())
+			.add("attempt", event.getAttempt())
+			.add("status", event.getStatus())
+			.add("waitMillis", event.getWaitTime().toMillis())
+			.add("latencyMillis", event.getLatency().toMillis())
+			.add("bytes", event.getBytesReceived())
+			.add("retryAfterMillis", event.getRetryAfter().toMillis())
+			.add("retrying", event.isRetrying())
+			.add("quotaRemaining", event.getQuotaRemaining());
+		if (event.getError() != null)
+		{
+			line.add("error", event.getError());
+		}
+		String lineText = line.build().toString();
+
+		synchronized (this)
+		{
+			if (this.failed)
+			{
+				return;
+			}
+
+			try
+			{
+				this.writer.write(lineText);
+				this.writer.write('\n');
+			}
+			catch (IOException e)
+			{
+				this.failed = true;
+				logger.warn("Unable to write the EnsEMBL request trace, so no more requests will be traced", e);
+			}
+		}
+	}
+
+	/**
+	 * Writes out any buffered events and closes the Writer
+	 * @throws IOException Thrown if the Writer can not be closed
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		this.writer.close();
+	}
+}
@@ -0,0 +1,374 @@
+package org.reactome.util.ensembl;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Stores the content of successful responses from an EnsEMBL REST service on disk, keyed by endpoint path, query
+ * parameters and request body, so later runs can re-use them rather than spending the service's quota.  EnsEMBL data
+ * only changes between EnsEMBL releases, so a cache holds the responses of a single release: opening it for a
+ * different release (see {@link EnsemblRestClient#getRelease()}) empties it.
+ *
+ * The cache is kept in two files in its directory:
+ *
+ * - responses.data: the responses, appended as (key length, content length, key, content) records
+ * - responses.index: the EnsEMBL release, followed by a (key hash, record offset) entry for each record, which is
+ * memory-mapped when the cache is opened to find the records without reading them
+ *
+ * A response stored again for the same key supersedes the earlier one, which stays in the data file until the cache is
+ * emptied.  Records are written before their index entries, so a record whose write was interrupted is never found.
+ *
+ * A cache directory can only be open in one cache at a time: the index file is locked while the cache is open, so
+ * another process (or another cache of this process) opening it fails rather than interleaving its writes with this
+ * one's.  Threads of a process should share one open cache.
+ */
+public class EnsemblResponseCache implements Closeable
+{
+	static final String DATA_FILE_NAME = "responses.data";
+	static final String INDEX_FILE_NAME = "responses.index";
+
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final int DATA_FILE_MAGIC_NUMBER = 0x52454e44; // "REND"
+	private static final int INDEX_FILE_MAGIC_NUMBER = 0x52454e49; // "RENI"
+	private static final int FILE_FORMAT_VERSION = 1;
+	private static final int DATA_HEADER_LENGTH = 2 * Integer.BYTES;
+	private static final int INDEX_HEADER_LENGTH = 3 * Integer.BYTES;
+	private static final int INDEX_ENTRY_LENGTH = 2 * Long.BYTES;
+	private static final int RECORD_HEADER_LENGTH = 2 * Integer.BYTES;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final int release;
+	private final FileChannel dataChannel;
+	private final FileChannel indexChannel;
+
+	// All of the following are guarded by "this"
+	private final Map<Long, Long> keyHashToRecordOffset = new HashMap<>();
+	private long dataLength;
+	private long indexLength;
+
+	private EnsemblResponseCache(int release, FileChannel dataChannel, FileChannel indexChannel) throws IOException
+	{
+		this.release = release;
+		this.dataChannel = dataChannel;
+		this.indexChannel = indexChannel;
+		this.dataLength = dataChannel.size();
+		this.indexLength = indexChannel.size();
+	}
+
+	/**
+	 * Opens the cache in the passed directory (creating it if needed) for the passed EnsEMBL release.  Responses cached
+	 * for any other release are removed.
+	 * @param directory Directory of the cache files
+	 * @param release Number of the EnsEMBL release the service currently serves
+	 * @return EnsemblResponseCache of the directory
+	 * @throws IOException Thrown if the cache files can not be read or written, or the cache directory is already open
+	 * (in this or another process)
+	 */
+	public static EnsemblResponseCache open(Path directory, int release) throws IOException
+	{
+		Files.createDirectories(directory);
+		FileChannel dataChannel = FileChannel.open(directory.resolve(DATA_FILE_NAME),
+			StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+		);
+		FileChannel indexChannel = FileChannel.open(directory.resolve(INDEX_FILE_NAME),
+			StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+		);
+
+		try
+		{
+			lock(indexChannel, directory);
+			EnsemblResponseCache cache = new EnsemblResponseCache(release, dataChannel, indexChannel);
+			if (!cache.loadIndex())
+			{
+				cache.clear();
+			}
+
+			return cache;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			dataChannel.close();
+			indexChannel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Locks the passed index file channel of the passed cache directory until the channel is closed
+	 * @throws IOException Thrown if the file can not be locked, or is already locked
+	 */
+	private static void lock(FileChannel indexChannel, Path directory) throws IOException
+	{
+		FileLock lock;
+		try
+		{
+			lock = indexChannel.tryLock();
+		}
+		catch (OverlappingFileLockException e)
+		{
+			lock = null;
+		}
+
+		if (lock == null)
+		{
+			throw new IOException(
+				"The response cache in " + directory + " is already open (in this or another process)"
+			);
+		}
+	}
+
+	/**
+	 * Returns the key of a request to the passed endpoint path with the passed query parameters and body
+	 * @param path Path of the endpoint (e.g. "lookup/id/ENSG00000157764")
+	 * @param queryParameters Query parameters of the request (in any order)
+	 * @param body Body of the request (<code>null</code> for GET requests)
+	 * @return Key of the request in the cache
+	 */
+	public static String createKey(String path, Map<String, String> queryParameters, String body)
+	{
+		StringBuilder key = new StringBuilder(path.startsWith("/") ? path.substring(1) : path);
+		String separator = "?";
+		for (Map.Entry<String, String> queryParameter : new TreeMap<>(queryParameters).entrySet())
+		{
+			key.append(separator).append(queryParameter.getKey()).append('=').append(queryParameter.getValue());
+			separator = "&";
+		}
+		if (body != null)
+		{
+			key.append('\n').append(body);
+		}
+
+		return key.toString();
+	}
+
+	/**
+	 * Returns the EnsEMBL release of the responses in this cache
+	 * @return Number of the EnsEMBL release
+	 */
+	public int getRelease()
+	{
+		return this.release;
+	}
+
+	/**
+	 * Returns the number of responses in this cache
+	 * @return Number of cached responses
+	 */
+	public synchronized int size()
+	{
+		return this.keyHashToRecordOffset.size();
+	}
+
+	/**
+	 * Retrieves the content of the response cached for the passed key
+	 * @param key Key of the request (see {@link #createKey(String, Map, String)})
+	 * @return Content of the response, or <code>null</code> if no response is cached for the key
+	 * @throws IOException Thrown if the data file can not be read
+	 */
+	public String get(String key) throws IOException
+	{
+		Long recordOffset;
+		synchronized (this)
+		{
+			recordOffset = this.keyHashToRecordOffset.get(hash(key));
+		}
+		if (recordOffset == null)
+		{
+			return null;
+		}
+
+		ByteBuffer recordHeader = read(recordOffset, RECORD_HEADER_LENGTH);
+		int keyLength = recordHeader.getInt();
+		int contentLength = recordHeader.getInt();
+		ByteBuffer record = read(recordOffset + RECORD_HEADER_LENGTH, keyLength + contentLength);
+
+		// Keys with the same hash replace each other in the index, so the record may be for another key
+		String recordKey = decode(record, keyLength);
+		if (!recordKey.equals(key))
+		{
+			return null;
+		}
+
+		return decode(record, contentLength);
+	}
+
+	/**
+	 * Stores the content of the response for the passed key
+	 * @param key Key of the request (see {@link #createKey(String, Map, String)})
+	 * @param content Content of the response
+	 * @throws IOException Thrown if the cache files can not be written
+	 */
+	public synchronized void put(String key, String content) throws IOException
+	{
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
+
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + keyBytes.length + contentBytes.length);
+		record.putInt(keyBytes.length).putInt(contentBytes.length).put(keyBytes).put(contentBytes);
+		record.flip();
+		long recordOffset = this.dataLength;
+		writeFully(this.dataChannel, record, recordOffset);
+		this.dataLength += record.capacity();
+
+		long keyHash = hash(key);
+		ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_LENGTH);
+		indexEntry.putLong(keyHash).putLong(recordOffset);
+		indexEntry.flip();
+		writeFully(this.indexChannel, indexEntry, this.indexLength);
+		this.indexLength += INDEX_ENTRY_LENGTH;
+
+		this.keyHashToRecordOffset.put(keyHash, recordOffset);
+	}
+
+	/**
+	 * Removes all responses from this cache
+	 * @throws IOException Thrown if the cache files can not be written
+	 */
+	public synchronized void clear() throws IOException
+	{
+		this.keyHashToRecordOffset.clear();
+
+		this.dataChannel.truncate(0L);
+		ByteBuffer dataHeader = ByteBuffer.allocate(DATA_HEADER_LENGTH);
+		dataHeader.putInt(DATA_FILE_MAGIC_NUMBER).putInt(FILE_FORMAT_VERSION);
+		dataHeader.flip();
+		writeFully(this.dataChannel, dataHeader, 0L);
+		this.dataLength = DATA_HEADER_LENGTH;
+
+		this.indexChannel.truncate(0L);
+		ByteBuffer indexHeader = ByteBuffer.allocate(INDEX_HEADER_LENGTH);
+		indexHeader.putInt(INDEX_FILE_MAGIC_NUMBER).putInt(FILE_FORMAT_VERSION).putInt(this.release);
+		indexHeader.flip();
+		writeFully(this.indexChannel, indexHeader, 0L);
+		this.indexLength = INDEX_HEADER_LENGTH;
+	}
+
+	/**
+	 * Closes the cache files
+	 * @throws IOException Thrown if a cache file can not be closed
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		try
+		{
+			this.dataChannel.close();
+		}
+		finally
+		{
+			this.indexChannel.close();
+		}
+	}
+
+	/**
+	 * Reads the index entries of the files if they are cache files of this cache's release, and returns
+	 * <code>true</code> if they are; <code>false</code> otherwise
+	 */
+	private synchronized boolean loadIndex() throws IOException
+	{
+		if (this.indexLength < INDEX_HEADER_LENGTH || this.dataLength < DATA_HEADER_LENGTH)
+		{
+			return false;
+		}
+
+		ByteBuffer dataHeader = read(0L, DATA_HEADER_LENGTH);
+		if (dataHeader.getInt() != DATA_FILE_MAGIC_NUMBER || dataHeader.getInt() != FILE_FORMAT_VERSION)
+		{
+			return false;
+		}
+
+		MappedByteBuffer index = this.indexChannel.map(FileChannel.MapMode.READ_ONLY, 0L, this.indexLength);
+		if (index.getInt() != INDEX_FILE_MAGIC_NUMBER || index.getInt() != FILE_FORMAT_VERSION)
+		{
+			return false;
+		}
+
+		int cachedRelease = index.getInt();
+		if (cachedRelease != this.release)
+		{
+			logger.info("Emptying the cache of responses from EnsEMBL release {} for release {}",
+				cachedRelease, this.release
+			);
+			return false;
+		}
+
+		while (index.remaining() >= INDEX_ENTRY_LENGTH)
+		{
+			long keyHash = index.getLong();
+			long recordOffset = index.getLong();
+			if (recordOffset >= DATA_HEADER_LENGTH && recordOffset < this.dataLength)
+			{
+				this.keyHashToRecordOffset.put(keyHash, recordOffset);
+			}
+		}
+		// Ignores an index entry whose write was interrupted, so the next entry is appended at a whole entry
+		this.indexLength -= index.remaining();
+
+		return true;
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining())
+		{
+			if (this.dataChannel.read(buffer, position + buffer.position()) < 0)
+			{
+				throw new EOFException("Record at " + position + " of the response cache is incomplete");
+			}
+		}
+		buffer.flip();
+
+		return buffer;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+	private static String decode(ByteBuffer buffer, int length)
+	{
+		String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+
+		return value;
+	}
+
+	/**
+	 * Returns the 64-bit FNV-1a hash of the UTF-8 bytes of the passed key
+	 */
+	private static long hash(String key)
+	{
+		long hash = FNV_OFFSET_BASIS;
+		for (byte keyByte : key.getBytes(StandardCharsets.UTF_8))
+		{
+			hash ^= keyByte & 0xff;
+			hash *= FNV_PRIME;
+		}
+
+		return hash;
+	}
+}
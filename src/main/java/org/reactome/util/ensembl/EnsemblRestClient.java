@@ -0,0 +1,1017 @@
+package org.reactome.util.ensembl;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonReader;
+import javax.json.stream.JsonParser;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.reactome.util.ensembl.EnsemblCircuitBreaker.CircuitOpenException;
+import org.reactome.util.ensembl.EnsemblServiceResponseProcessor.EnsemblServiceResult;
+
+/**
+ * Sends requests to an EnsEMBL REST service (e.g. rest.ensembl.org) over a pool of HTTP connections which can be
+ * shared by any number of threads.  Requests are scheduled by an {@link EnsemblRateLimiter}, so the service's quota
+ * is used in full without requests being refused, and responses are classified by an
+ * {@link EnsemblServiceResponseProcessor}, whose retry decisions (after "Retry-After" or gateway timeout responses)
+ * the client follows before returning the final result.
+ *
+ * When the service responds with "Retry-After", the rate limiter's {@link EnsemblBackoffGate} pauses all requests of
+ * the client (and of any other client sharing the rate limiter), which then resume together.  Requests sent with the
+ * asynchronous methods (e.g. {@link #getAsync(String, Map)}) wait for the gate and the rate limiter by being
+ * scheduled for later, rather than by holding a thread, so threads are only used while requests are in progress.
+ *
+ * If the client has an {@link EnsemblConcurrencyLimiter}, it also limits the requests in progress at once to a number
+ * it adapts to the service's responses.
+ *
+ * If the client has an {@link EnsemblCircuitBreaker}, requests to an endpoint which is failing fail fast, without
+ * being sent, until the endpoint recovers.
+ *
+ * If the client has an {@link EnsemblResponseCache}, requests are answered from it when it has their response, without
+ * spending the service's quota, and successful responses are added to it.
+ */
+public class EnsemblRestClient implements Closeable
+{
+	public static final URI DEFAULT_BASE_URI = URI.create("https://rest.ensembl.org");
+	public static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+	private static final Logger logger = LogManager.getLogger();
+	private static final String RELEASE_PATH = "info/data";
+
+	private final URI baseUri;
+	private final CloseableHttpClient httpClient;
+	private final EnsemblRateLimiter rateLimiter;
+	private final EnsemblQuotaTracker quotaTracker;
+	private final ScheduledExecutorService scheduler;
+	private volatile EnsemblResponseCache responseCache;
+	private volatile EnsemblConcurrencyLimiter concurrencyLimiter;
+	private volatile EnsemblCircuitBreaker circuitBreaker;
+	private volatile EnsemblMetricsListener metricsListener;
+
+	/**
+	 * Constructs a new EnsemblRestClient for rest.ensembl.org
+	 */
+	public EnsemblRestClient()
+	{
+		this(DEFAULT_BASE_URI);
+	}
+
+	/**
+	 * Constructs a new EnsemblRestClient for the EnsEMBL REST service at the passed URI, scheduling its requests with
+	 * the rate limiter shared by all clients of the service (see {@link EnsemblQuotaTracker#getRateLimiter()})
+	 * @param baseUri URI of the service (e.g. https://grch37.rest.ensembl.org)
+	 */
+	public EnsemblRestClient(URI baseUri)
+	{
+		this(baseUri, DEFAULT_MAX_CONNECTIONS, Duration.ofSeconds(30),
+			EnsemblQuotaTracker.forService(getServiceHost(baseUri)).getRateLimiter()
+		);
+	}
+
+	/**
+	 * Constructs a new EnsemblRestClient for the EnsEMBL REST service at the passed URI
+	 * @param baseUri URI of the service (e.g. https://grch37.rest.ensembl.org)
+	 * @param maxConnections Maximum number of connections to the service (i.e. of requests in progress at once)
+	 * @param timeout Timeout for connecting to the service and for waiting on its responses
+	 * @param rateLimiter Rate limiter scheduling the requests, which should be shared by all clients of the service
+	 */
+	public EnsemblRestClient(URI baseUri, int maxConnections, Duration timeout, EnsemblRateLimiter rateLimiter)
+	{
+		this(baseUri, createPooledHttpClient(maxConnections, timeout), rateLimiter, maxConnections);
+	}
+
+	/**
+	 * Constructs a new EnsemblRestClient sending requests with the passed HTTP client
+	 * @param baseUri URI of the service
+	 * @param httpClient HTTP client sending the requests (closed when this client is closed)
+	 * @param rateLimiter Rate limiter scheduling the requests
+	 */
+	EnsemblRestClient(URI baseUri, CloseableHttpClient httpClient, EnsemblRateLimiter rateLimiter)
+	{
+		this(baseUri, httpClient, rateLimiter, DEFAULT_MAX_CONNECTIONS);
+	}
+
+	private EnsemblRestClient(
+		URI baseUri, CloseableHttpClient httpClient, EnsemblRateLimiter rateLimiter, int maxConnections
+	)
+	{
+		this.baseUri = baseUri;
+		this.httpClient = httpClient;
+		this.rateLimiter = rateLimiter;
+		this.quotaTracker = EnsemblQuotaTracker.forService(getServiceHost(baseUri));
+		// Asynchronous requests only hold a thread while in progress, so there need not be more than connections
+		this.scheduler = Executors.newScheduledThreadPool(maxConnections, createDaemonThreadFactory());
+	}
+
+	/**
+	 * Returns the URI of the EnsEMBL REST service
+	 * @return URI of the service
+	 */
+	public URI getBaseUri()
+	{
+		return this.baseUri;
+	}
+
+	/**
+	 * Returns the rate limiter scheduling the requests of this client
+	 * @return EnsemblRateLimiter of this client
+	 */
+	public EnsemblRateLimiter getRateLimiter()
+	{
+		return this.rateLimiter;
+	}
+
+	/**
+	 * Returns the tracker of the quota of the service, shared by all clients of the service's host
+	 * @return EnsemblQuotaTracker of the service
+	 */
+	public EnsemblQuotaTracker getQuotaTracker()
+	{
+		return this.quotaTracker;
+	}
+
+	/**
+	 * Returns the cache of responses consulted before sending requests
+	 * @return EnsemblResponseCache of this client (<code>null</code> if responses are not cached)
+	 */
+	public EnsemblResponseCache getResponseCache()
+	{
+		return this.responseCache;
+	}
+
+	/**
+	 * Sets the cache of responses consulted before sending requests.  The cache should be opened for the EnsEMBL
+	 * release the service currently serves (see {@link #getRelease()}).
+	 * @param responseCache EnsemblResponseCache of this client (<code>null</code> to not cache responses)
+	 */
+	public void setResponseCache(EnsemblResponseCache responseCache)
+	{
+		this.responseCache = responseCache;
+	}
+
+	/**
+	 * Returns the limiter of the number of requests of this client in progress at once
+	 * @return EnsemblConcurrencyLimiter of this client (<code>null</code> if only the connection pool limits them)
+	 */
+	public EnsemblConcurrencyLimiter getConcurrencyLimiter()
+	{
+		return this.concurrencyLimiter;
+	}
+
+	/**
+	 * Sets the limiter of the number of requests of this client in progress at once, which adapts the number to the
+	 * service's responses so the threads (or asynchronous requests) using the client need not be tuned.  It should
+	 * be created for this client's rate limiter, with a maximum of at most this client's maximum connections.
+	 * @param concurrencyLimiter EnsemblConcurrencyLimiter of this client (<code>null</code> to only limit requests by
+	 * the connection pool)
+	 */
+	public void setConcurrencyLimiter(EnsemblConcurrencyLimiter concurrencyLimiter)
+	{
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+
+	/**
+	 * Returns the circuit breaker stopping requests to endpoints which are failing
+	 * @return EnsemblCircuitBreaker of this client (<code>null</code> if requests are always sent)
+	 */
+	public EnsemblCircuitBreaker getCircuitBreaker()
+	{
+		return this.circuitBreaker;
+	}
+
+	/**
+	 * Sets the circuit breaker stopping requests to endpoints which are failing.  While the circuit of an endpoint is
+	 * open, requests to it (including retries of requests already sent) fail with a
+	 * {@link CircuitOpenException} rather than being sent.
+	 * @param circuitBreaker EnsemblCircuitBreaker of this client (<code>null</code> to always send requests)
+	 */
+	public void setCircuitBreaker(EnsemblCircuitBreaker circuitBreaker)
+	{
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * Returns the listener to which the record of each attempt to send a request is published
+	 * @return EnsemblMetricsListener of this client (<code>null</code> if attempts are not published)
+	 */
+	public EnsemblMetricsListener getMetricsListener()
+	{
+		return this.metricsListener;
+	}
+
+	/**
+	 * Sets the listener to which the record of each attempt to send a request (its endpoint, status, latency, time
+	 * waited, bytes received and so on) is published, e.g. an {@link EnsemblMetricsRegistry}, an
+	 * {@link EnsemblRequestTraceWriter} or both (see {@link EnsemblMetricsListener#allOf(EnsemblMetricsListener...)})
+	 * @param metricsListener EnsemblMetricsListener of this client (<code>null</code> to not publish attempts)
+	 */
+	public void setMetricsListener(EnsemblMetricsListener metricsListener)
+	{
+		this.metricsListener = metricsListener;
+	}
+
+	/**
+	 * Retrieves the number of the EnsEMBL release the service currently serves (from the "info/data" endpoint, which
+	 * is never cached)
+	 * @return Number of the EnsEMBL release
+	 * @throws IOException Thrown if the request fails or its response does not give the release
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting to send or retry the request
+	 */
+	public int getRelease() throws IOException, InterruptedException
+	{
+		EnsemblServiceResult result = execute(createGetRequest(RELEASE_PATH, Collections.emptyMap()));
+		if (result.getStatus() != HttpStatus.SC_OK)
+		{
+			throw new IOException(
+				"Request for the EnsEMBL release failed with status " + result.getStatus() + ": " + result.getResult()
+			);
+		}
+
+		try (JsonReader reader = Json.createReader(new StringReader(result.getResult())))
+		{
+			// The service lists the release it serves, e.g. {"releases":[113]}
+			JsonArray releases = reader.readObject().getJsonArray("releases");
+			int release = 0;
+			for (JsonNumber releaseNumber : releases.getValuesAs(JsonNumber.class))
+			{
+				release = Math.max(release, releaseNumber.intValue());
+			}
+
+			if (release == 0)
+			{
+				throw new IOException("No EnsEMBL release in response: " + result.getResult());
+			}
+			return release;
+		}
+		catch (JsonException | ClassCastException | NullPointerException e)
+		{
+			throw new IOException("Unable to parse the EnsEMBL release from response: " + result.getResult(), e);
+		}
+	}
+
+	/**
+	 * Sends a GET request for the passed endpoint path (e.g. "lookup/id/ENSG00000157764") and returns its result
+	 * @param path Path of the endpoint, relative to the base URI
+	 * @return EnsemblServiceResult of the last response (after any retries the processor permitted)
+	 * @throws IOException Thrown if the request can not be sent or its response can not be read
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting to send or retry the request
+	 */
+	public EnsemblServiceResult get(String path) throws IOException, InterruptedException
+	{
+		return get(path, Collections.emptyMap());
+	}
+
+	/**
+	 * Sends a GET request for the passed endpoint path with the passed query parameters (e.g. "species" to "human")
+	 * and returns its result
+	 * @param path Path of the endpoint, relative to the base URI
+	 * @param queryParameters Query parameters of the request
+	 * @return EnsemblServiceResult of the last response (after any retries the processor permitted)
+	 * @throws IOException Thrown if the request can not be sent or its response can not be read
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting to send or retry the request
+	 */
+	public EnsemblServiceResult get(String path, Map<String, String> queryParameters)
+		throws IOException, InterruptedException
+	{
+		String cacheKey = EnsemblResponseCache.createKey(path, queryParameters, null);
+		EnsemblServiceResult cachedResult = getCachedResult(cacheKey);
+		if (cachedResult != null)
+		{
+			return cachedResult;
+		}
+
+		return cacheResult(cacheKey, execute(createGetRequest(path, queryParameters)));
+	}
+
+	/**
+	 * Sends a GET request for the passed endpoint path with the passed query parameters and passes the content of a
+	 * successful response to the passed content handler as it is read, rather than storing it in the result.  A
+	 * response in the response cache is passed to the content handler without sending the request, but responses
+	 * handled as they are read are not added to the cache.
+	 * @param path Path of the endpoint, relative to the base URI
+	 * @param queryParameters Query parameters of the request
+	 * @param contentHandler Handler of the content of a successful response
+	 * @return EnsemblServiceResult of the last response (after any retries the processor permitted), whose
+	 * {@link EnsemblServiceResult#isContentHandled()} is true if the content handler handled the whole content
+	 * @throws IOException Thrown if the request can not be sent or its response can not be read
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting to send or retry the request
+	 */
+	public EnsemblServiceResult get(
+		String path, Map<String, String> queryParameters, EnsemblContentHandler contentHandler
+	) throws IOException, InterruptedException
+	{
+		String cacheKey = EnsemblResponseCache.createKey(path, queryParameters, null);
+		EnsemblServiceResult cachedResult = getCachedResult(cacheKey);
+		if (cachedResult != null)
+		{
+			return handleCachedContent(cachedResult, contentHandler);
+		}
+
+		return execute(createGetRequest(path, queryParameters), contentHandler);
+	}
+
+	/**
+	 * Schedules a GET request for the passed endpoint path with the passed query parameters and returns its result
+	 * when complete.  No thread is held while the request waits to be sent or retried.
+	 * @param path Path of the endpoint, relative to the base URI
+	 * @param queryParameters Query parameters of the request
+	 * @return CompletableFuture of the EnsemblServiceResult of the last response (after any retries the processor
+	 * permitted), which completes exceptionally if the request can not be sent or its response can not be read
+	 */
+	public CompletableFuture<EnsemblServiceResult> getAsync(String path, Map<String, String> queryParameters)
+	{
+		String cacheKey = EnsemblResponseCache.createKey(path, queryParameters, null);
+		EnsemblServiceResult cachedResult = getCachedResult(cacheKey);
+		if (cachedResult != null)
+		{
+			return CompletableFuture.completedFuture(cachedResult);
+		}
+
+		return executeAsync(createGetRequest(path, queryParameters)).thenApply(result -> cacheResult(cacheKey, result));
+	}
+
+	/**
+	 * Sends a POST request with the passed JSON body (e.g. {"ids": [...]}) for the passed endpoint path (e.g.
+	 * "lookup/id") with the passed query parameters and returns its result
+	 * @param path Path of the endpoint, relative to the base URI
+	 * @param queryParameters Query parameters of the request
+	 * @param jsonBody Body of the request as JSON
+	 * @return EnsemblServiceResult of the last response (after any retries the processor permitted)
+	 * @throws IOException Thrown if the request can not be sent or its response can not be read
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting to send or retry the request
+	 */
+	public EnsemblServiceResult post(String path, Map<String, String> queryParameters, String jsonBody)
+		throws IOException, InterruptedException
+	{
+		String cacheKey = EnsemblResponseCache.createKey(path, queryParameters, jsonBody);
+		EnsemblServiceResult cachedResult = getCachedResult(cacheKey);
+		if (cachedResult != null)
+		{
+			return cachedResult;
+		}
+
+		return cacheResult(cacheKey, execute(createPostRequest(path, queryParameters, jsonBody)));
+	}
+
+	/**
+	 * Sends a POST request with the passed JSON body for the passed endpoint path with the passed query parameters and
+	 * passes the content of a successful response to the passed content handler as it is read, rather than storing it
+	 * in the result (see {@link #get(String, Map, EnsemblContentHandler)})
+	 * @param path Path of the endpoint, relative to the base URI
+	 * @param queryParameters Query parameters of the request
+	 * @param jsonBody Body of the request as JSON
+	 * @param contentHandler Handler of the content of a successful response
+	 * @return EnsemblServiceResult of the last response (after any retries the processor permitted), whose
+	 * {@link EnsemblServiceResult#isContentHandled()} is true if the content handler handled the whole content
+	 * @throws IOException Thrown if the request can not be sent or its response can not be read
+	 * @throws InterruptedException Thrown if the thread is interrupted while waiting to send or retry the request
+	 */
+	public EnsemblServiceResult post(
+		String path, Map<String, String> queryParameters, String jsonBody, EnsemblContentHandler contentHandler
+	) throws IOException, InterruptedException
+	{
+		String cacheKey = EnsemblResponseCache.createKey(path, queryParameters, jsonBody);
+		EnsemblServiceResult cachedResult = getCachedResult(cacheKey);
+		if (cachedResult != null)
+		{
+			return handleCachedContent(cachedResult, contentHandler);
+		}
+
+		return execute(createPostRequest(path, queryParameters, jsonBody), contentHandler);
+	}
+
+	/**
+	 * Schedules a POST request with the passed JSON body for the passed endpoint path with the passed query parameters
+	 * and returns its result when complete.  No thread is held while the request waits to be sent or retried.
+	 * @param path Path of the endpoint, relative to the base URI
+	 * @param queryParameters Query parameters of the request
+	 * @param jsonBody Body of the request as JSON
+	 * @return CompletableFuture of the EnsemblServiceResult of the last response (after any retries the processor
+	 * permitted), which completes exceptionally if the request can not be sent or its response can not be read
+	 */
+	public CompletableFuture<EnsemblServiceResult> postAsync(
+		String path, Map<String, String> queryParameters, String jsonBody
+	)
+	{
+		String cacheKey = EnsemblResponseCache.createKey(path, queryParameters, jsonBody);
+		EnsemblServiceResult cachedResult = getCachedResult(cacheKey);
+		if (cachedResult != null)
+		{
+			return CompletableFuture.completedFuture(cachedResult);
+		}
+
+		return executeAsync(createPostRequest(path, queryParameters, jsonBody))
+			.thenApply(result -> cacheResult(cacheKey, result));
+	}
+
+	/**
+	 * Closes the pool of connections to the service.  Asynchronous requests still waiting to be sent are cancelled.
+	 * @throws IOException Thrown if a connection can not be closed
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		this.scheduler.shutdownNow();
+		this.httpClient.close();
+	}
+
+	/**
+	 * Sends the passed request, re-sending it for as long as the response processor permits retries, and returns the
+	 * result of the last response
+	 */
+	EnsemblServiceResult execute(HttpUriRequest request) throws IOException, InterruptedException
+	{
+		return execute(request, null);
+	}
+
+	/**
+	 * Sends the passed request as {@link #execute(HttpUriRequest)} does, passing the content of a successful response
+	 * to the passed content handler (if not <code>null</code>)
+	 */
+	EnsemblServiceResult execute(HttpUriRequest request, EnsemblContentHandler contentHandler)
+		throws IOException, InterruptedException
+	{
+		Exchange exchange = new Exchange(request, contentHandler);
+		while (true)
+		{
+			exchange.startWaiting();
+
+			EnsemblConcurrencyLimiter concurrencyLimiter = this.concurrencyLimiter;
+			acquireSlot(request, concurrencyLimiter);
+
+			EnsemblServiceResult result = send(exchange, concurrencyLimiter);
+			if (!result.isOkToRetry())
+			{
+				return result;
+			}
+		}
+	}
+
+	/**
+	 * Waits for a permit from the passed concurrency limiter (if not <code>null</code>) and a slot from the rate
+	 * limiter to send the passed request.  If the back-off gate was paused by another request while waiting for the
+	 * slot, the permit is released and both are taken again once the gate opens, as for asynchronous requests.
+	 */
+	private void acquireSlot(HttpUriRequest request, EnsemblConcurrencyLimiter concurrencyLimiter)
+		throws IOException, InterruptedException
+	{
+		EnsemblBackoffGate backoffGate = this.rateLimiter.getBackoffGate();
+		while (true)
+		{
+			checkCircuit(request);
+
+			if (concurrencyLimiter != null)
+			{
+				concurrencyLimiter.acquire();
+			}
+			try
+			{
+				this.rateLimiter.acquire();
+			}
+			catch (InterruptedException e)
+			{
+				if (concurrencyLimiter != null)
+				{
+					concurrencyLimiter.releaseUnused();
+				}
+				throw e;
+			}
+
+			if (backoffGate.getRemainingPauseNanos() <= 0)
+			{
+				return;
+			}
+
+			if (concurrencyLimiter != null)
+			{
+				concurrencyLimiter.releaseUnused();
+			}
+			backoffGate.awaitOpen();
+		}
+	}
+
+	/**
+	 * Schedules the passed request to be sent, and re-sent for as long as the response processor permits retries, and
+	 * returns the result of the last response when complete
+	 */
+	CompletableFuture<EnsemblServiceResult> executeAsync(HttpUriRequest request)
+	{
+		CompletableFuture<EnsemblServiceResult> futureResult = new CompletableFuture<>();
+		Exchange exchange = new Exchange(request, null);
+		exchange.startWaiting();
+		scheduleAttempt(exchange, futureResult, 0L);
+
+		return futureResult;
+	}
+
+	/**
+	 * Schedules an attempt to send the request after the passed delay.  The attempt takes a permit from the
+	 * concurrency limiter, if there is one, once it is free, then takes a slot from the rate limiter (which starts
+	 * once the back-off gate is open) and is scheduled again for that slot if it is not immediate.
+	 */
+	private void scheduleAttempt(
+		Exchange exchange, CompletableFuture<EnsemblServiceResult> futureResult, long delayNanos
+	)
+	{
+		Runnable attempt = () -> {
+			try
+			{
+				checkCircuit(exchange.request);
+			}
+			catch (CircuitOpenException e)
+			{
+				futureResult.completeExceptionally(e);
+				return;
+			}
+
+			EnsemblConcurrencyLimiter concurrencyLimiter = this.concurrencyLimiter;
+			CompletableFuture<Void> permit = concurrencyLimiter != null ?
+				concurrencyLimiter.acquireAsync() :
+				CompletableFuture.completedFuture(null);
+
+			permit.thenRun(() -> {
+				long waitNanos = this.rateLimiter.reserve();
+				try
+				{
+					this.scheduler.schedule(
+						() -> sendAsync(exchange, futureResult, concurrencyLimiter), waitNanos, TimeUnit.NANOSECONDS
+					);
+				}
+				catch (RuntimeException e)
+				{
+					// The client has been closed
+					if (concurrencyLimiter != null)
+					{
+						concurrencyLimiter.releaseUnused();
+					}
+					futureResult.completeExceptionally(e);
+				}
+			});
+		};
+
+		try
+		{
+			this.scheduler.schedule(attempt, delayNanos, TimeUnit.NANOSECONDS);
+		}
+		catch (RuntimeException e)
+		{
+			// The client has been closed
+			futureResult.completeExceptionally(e);
+		}
+	}
+
+	private void sendAsync(
+		Exchange exchange, CompletableFuture<EnsemblServiceResult> futureResult,
+		EnsemblConcurrencyLimiter concurrencyLimiter
+	)
+	{
+		// The gate may have been paused by another request since the slot was taken
+		long pauseNanos = this.rateLimiter.getBackoffGate().getRemainingPauseNanos();
+		if (pauseNanos > 0)
+		{
+			if (concurrencyLimiter != null)
+			{
+				concurrencyLimiter.releaseUnused();
+			}
+			scheduleAttempt(exchange, futureResult, pauseNanos);
+			return;
+		}
+
+		try
+		{
+			EnsemblServiceResult result = send(exchange, concurrencyLimiter);
+			if (result.isOkToRetry())
+			{
+				exchange.startWaiting();
+				scheduleAttempt(exchange, futureResult, 0L);
+			}
+			else
+			{
+				futureResult.complete(result);
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			futureResult.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Sends the request of the passed exchange once, updates the rate limiter from the response and, if the service
+	 * asked to wait, pauses its back-off gate, and returns the result of the response.  The permit of the passed
+	 * concurrency limiter (if not <code>null</code>), taken for the request, is released with the outcome, which is
+	 * also recorded by the circuit breaker and published to the metrics listener, if there are any.
+	 */
+	private EnsemblServiceResult send(Exchange exchange, EnsemblConcurrencyLimiter concurrencyLimiter)
+		throws IOException
+	{
+		HttpUriRequest request = exchange.request;
+		exchange.attempts++;
+		Instant startTime = Instant.now();
+		long startNanos = System.nanoTime();
+		long waitNanos = startNanos - exchange.waitStartNanos;
+
+		EnsemblServiceResult result;
+		boolean serverAskedToWait;
+		CountingHttpEntity countingEntity = null;
+		try (CloseableHttpResponse response = this.httpClient.execute(request))
+		{
+			if (response.getEntity() != null)
+			{
+				countingEntity = new CountingHttpEntity(response.getEntity());
+				response.setEntity(countingEntity);
+			}
+
+			this.rateLimiter.update(response);
+			result = exchange.responseProcessor.processStreamedResponse(response, exchange.contentHandler);
+			serverAskedToWait = response.containsHeader("Retry-After");
+		}
+		catch (IOException e)
+		{
+			if (concurrencyLimiter != null)
+			{
+				concurrencyLimiter.releaseAfterFailure();
+			}
+			EnsemblCircuitBreaker circuitBreaker = this.circuitBreaker;
+			if (circuitBreaker != null)
+			{
+				circuitBreaker.recordFailure(exchange.endpoint);
+			}
+			publishEvent(new EnsemblRequestEvent(
+				startTime, request.getMethod(), exchange.endpoint, request.getURI().toString(), exchange.attempts,
+				EnsemblRequestEvent.NO_RESPONSE_STATUS, Duration.ofNanos(waitNanos),
+				Duration.ofNanos(System.nanoTime() - startNanos), countingEntity != null ? countingEntity.getCount() : 0L,
+				Duration.ZERO, false, this.quotaTracker.getRemaining(), e.toString()
+			));
+			throw e;
+		}
+		catch (RuntimeException e)
+		{
+			if (concurrencyLimiter != null)
+			{
+				concurrencyLimiter.releaseUnused();
+			}
+			throw e;
+		}
+		Duration latency = Duration.ofNanos(System.nanoTime() - startNanos);
+
+		if (concurrencyLimiter != null)
+		{
+			concurrencyLimiter.release(result, latency);
+		}
+		EnsemblCircuitBreaker circuitBreaker = this.circuitBreaker;
+		if (circuitBreaker != null)
+		{
+			circuitBreaker.recordResult(exchange.endpoint, result);
+		}
+
+		EnsemblBackoffGate backoffGate = this.rateLimiter.getBackoffGate();
+		if (result.isOkToRetry() && serverAskedToWait)
+		{
+			Duration pause = backoffGate.pause(result.getRetryAfter());
+			logger.debug("Retrying {} in {}", request.getURI(), pause);
+		}
+		else if (result.getStatus() == HttpStatus.SC_OK)
+		{
+			backoffGate.recordSuccess();
+		}
+
+		publishEvent(new EnsemblRequestEvent(
+			startTime, request.getMethod(), exchange.endpoint, request.getURI().toString(), exchange.attempts,
+			result.getStatus(), Duration.ofNanos(waitNanos), latency,
+			countingEntity != null ? countingEntity.getCount() : 0L, result.getRetryAfter(), result.isOkToRetry(),
+			this.quotaTracker.getRemaining(), null
+		));
+
+		return result;
+	}
+
+	/**
+	 * Passes the passed event to the metrics listener, if there is one.  A failing listener is logged rather than
+	 * failing the request.
+	 */
+	private void publishEvent(EnsemblRequestEvent event)
+	{
+		EnsemblMetricsListener metricsListener = this.metricsListener;
+		if (metricsListener == null)
+		{
+			return;
+		}
+
+		try
+		{
+			metricsListener.requestCompleted(event);
+		}
+		catch (RuntimeException e)
+		{
+			logger.warn("Metrics listener failed on the event of {}", event.getUri(), e);
+		}
+	}
+
+	/**
+	 * Checks that the circuit breaker, if there is one, permits requests to the endpoint of the passed request
+	 */
+	private void checkCircuit(HttpUriRequest request) throws CircuitOpenException
+	{
+		EnsemblCircuitBreaker circuitBreaker = this.circuitBreaker;
+		if (circuitBreaker != null)
+		{
+			circuitBreaker.checkRequestPermitted(getEndpoint(request));
+		}
+	}
+
+	/**
+	 * Returns the endpoint (see {@link EnsemblCircuitBreaker#getEndpoint(String)}) of the passed request
+	 */
+	private String getEndpoint(HttpUriRequest request)
+	{
+		String requestPath = request.getURI().getPath();
+		String basePath = this.baseUri.getPath() == null ? "" : this.baseUri.getPath();
+		if (requestPath.startsWith(basePath))
+		{
+			requestPath = requestPath.substring(basePath.length());
+		}
+
+		return EnsemblCircuitBreaker.getEndpoint(requestPath);
+	}
+
+	/**
+	 * Returns a successful result with the response cached for the passed key, or <code>null</code> if there is none.
+	 * The cache only saves requests, so a cache which can not be read is logged and treated as empty.
+	 */
+	private EnsemblServiceResult getCachedResult(String cacheKey)
+	{
+		EnsemblResponseCache responseCache = this.responseCache;
+		if (responseCache == null)
+		{
+			return null;
+		}
+
+		String cachedContent;
+		try
+		{
+			cachedContent = responseCache.get(cacheKey);
+		}
+		catch (IOException e)
+		{
+			logger.warn("Unable to read the cached response for {}", cacheKey, e);
+			return null;
+		}
+		if (cachedContent == null)
+		{
+			return null;
+		}
+
+		EnsemblServiceResult cachedResult = new EnsemblServiceResponseProcessor(logger).new EnsemblServiceResult();
+		cachedResult.setStatus(HttpStatus.SC_OK);
+		cachedResult.setResult(cachedContent);
+
+		return cachedResult;
+	}
+
+	/**
+	 * Passes the content of the passed cached result to the passed content handler, and returns the result without
+	 * the content
+	 */
+	private EnsemblServiceResult handleCachedContent(
+		EnsemblServiceResult cachedResult, EnsemblContentHandler contentHandler
+	)
+	{
+		try (JsonParser parser = Json.createParser(new StringReader(cachedResult.getResult())))
+		{
+			contentHandler.handleContent(parser);
+			cachedResult.setContentHandled(true);
+		}
+		catch (IOException | JsonException | IllegalStateException | NoSuchElementException e)
+		{
+			logger.error("Unable to handle the cached content of the response", e);
+		}
+		cachedResult.setResult(null);
+
+		return cachedResult;
+	}
+
+	/**
+	 * Adds the content of the passed result to the cache under the passed key if the result is successful, and
+	 * returns the result
+	 */
+	private EnsemblServiceResult cacheResult(String cacheKey, EnsemblServiceResult result)
+	{
+		EnsemblResponseCache responseCache = this.responseCache;
+		if (responseCache != null && result.getStatus() == HttpStatus.SC_OK && !result.isContentHandled())
+		{
+			try
+			{
+				responseCache.put(cacheKey, result.getResult());
+			}
+			catch (IOException e)
+			{
+				logger.warn("Unable to cache the response for {}", cacheKey, e);
+			}
+		}
+
+		return result;
+	}
+
+	private HttpGet createGetRequest(String path, Map<String, String> queryParameters)
+	{
+		HttpGet request = new HttpGet(getRequestUri(path, queryParameters));
+		request.setHeader(HttpHeaders.ACCEPT, "application/json");
+
+		return request;
+	}
+
+	private HttpPost createPostRequest(String path, Map<String, String> queryParameters, String jsonBody)
+	{
+		HttpPost request = new HttpPost(getRequestUri(path, queryParameters));
+		request.setHeader(HttpHeaders.ACCEPT, "application/json");
+		request.setEntity(new StringEntity(jsonBody, ContentType.APPLICATION_JSON));
+
+		return request;
+	}
+
+	/**
+	 * Returns the URI of the passed endpoint path, relative to the base URI, with the passed query parameters
+	 */
+	URI getRequestUri(String path, Map<String, String> queryParameters)
+	{
+		String basePath = this.baseUri.getPath() != null ? this.baseUri.getPath() : "";
+		String requestPath = basePath.replaceAll("/+$", "") + "/" + path.replaceAll("^/+", "");
+
+		try
+		{
+			URIBuilder uriBuilder = new URIBuilder(this.baseUri).setPath(requestPath);
+			queryParameters.forEach(uriBuilder::addParameter);
+
+			return uriBuilder.build();
+		}
+		catch (URISyntaxException e)
+		{
+			throw new IllegalArgumentException("Invalid EnsEMBL REST path: " + path, e);
+		}
+	}
+
+	/**
+	 * A request being sent, and re-sent for as long as its response processor permits retries
+	 */
+	private class Exchange
+	{
+		private final HttpUriRequest request;
+		private final String endpoint;
+		private final EnsemblContentHandler contentHandler;
+		// Each request has its own processor, as the processor counts the retries of a request
+		private final EnsemblServiceResponseProcessor responseProcessor =
+			new EnsemblServiceResponseProcessor(logger, EnsemblRestClient.this.quotaTracker);
+		private int attempts = 0;
+		private long waitStartNanos;
+
+		Exchange(HttpUriRequest request, EnsemblContentHandler contentHandler)
+		{
+			this.request = request;
+			this.endpoint = getEndpoint(request);
+			this.contentHandler = contentHandler;
+		}
+
+		/**
+		 * Marks the time from which the next attempt waits to be sent
+		 */
+		void startWaiting()
+		{
+			this.waitStartNanos = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Counts the bytes of content read from a response entity
+	 */
+	private static class CountingHttpEntity extends HttpEntityWrapper
+	{
+		private final AtomicLong count = new AtomicLong();
+
+		CountingHttpEntity(HttpEntity wrappedEntity)
+		{
+			super(wrappedEntity);
+		}
+
+		long getCount()
+		{
+			return this.count.get();
+		}
+
+		@Override
+		public InputStream getContent() throws IOException
+		{
+			return new FilterInputStream(super.getContent())
+			{
+				@Override
+				public int read() throws IOException
+				{
+					int readByte = super.read();
+					if (readByte >= 0)
+					{
+						count.incrementAndGet();
+					}
+					return readByte;
+				}
+
+				@Override
+				public int read(byte[] buffer, int offset, int length) throws IOException
+				{
+					int readCount = super.read(buffer, offset, length);
+					if (readCount > 0)
+					{
+						count.addAndGet(readCount);
+					}
+					return readCount;
+				}
+			};
+		}
+
+		@Override
+		public void writeTo(OutputStream outputStream) throws IOException
+		{
+			try (InputStream content = getContent())
+			{
+				byte[] buffer = new byte[8192];
+				int readCount;
+				while ((readCount = content.read(buffer)) >= 0)
+				{
+					outputStream.write(buffer, 0, readCount);
+				}
+			}
+		}
+	}
+
+	private static String getServiceHost(URI baseUri)
+	{
+		return baseUri.getHost() != null ? baseUri.getHost() : baseUri.toString();
+	}
+
+	private static ThreadFactory createDaemonThreadFactory()
+	{
+		AtomicInteger threadCount = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, "ensembl-rest-client-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	private static CloseableHttpClient createPooledHttpClient(int maxConnections, Duration timeout)
+	{
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+		int timeoutMillis = (int) timeout.toMillis();
+		RequestConfig requestConfig = RequestConfig.copy(RequestConfig.DEFAULT)
+			.setConnectTimeout(timeoutMillis)
+			.setSocketTimeout(timeoutMillis)
+			.setConnectionRequestTimeout(timeoutMillis)
+			.build();
+
+		return HttpClients.custom()
+			.setConnectionManager(connectionManager)
+			.setDefaultRequestConfig(requestConfig)
+			.build();
+	}
+}
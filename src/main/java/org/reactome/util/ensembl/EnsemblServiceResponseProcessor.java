@@ -1,14 +1,21 @@
 package org.reactome.util.ensembl;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
@@ -26,9 +33,11 @@ public final class EnsemblServiceResponseProcessor
 {
 	public static final int MAX_TIMES_TO_WAIT = 5;
 	// Assume a quota of 10 to start. This will get set properly with every response from the service.
+	// Shared by all services; kept for getNumRequestsRemaining() (see EnsemblQuotaTracker for per-service quotas).
 	private static final AtomicInteger numRequestsRemaining = new AtomicInteger(10);
 
 	private Logger logger;
+	private final EnsemblQuotaTracker quotaTracker;
 	private int waitMultiplier = 1;
 	// This can't be static because each request could have a different timeoutRetries counter.
 	private int timeoutRetriesRemaining;
@@ -39,11 +48,25 @@ public final class EnsemblServiceResponseProcessor
 	 * @param logger Logger object to record information about processed responses
 	 */
 	public EnsemblServiceResponseProcessor(Logger logger)
+	{
+		this(logger, null);
+	}
+
+	/**
+	 * Constructs a new EnsemblServiceResponseProcessor object with the specified logger to record information about
+	 * HttpResponse objects from the EnsEMBL service, and the specified tracker of the service's quota to update from
+	 * them
+	 * @param logger Logger object to record information about processed responses
+	 * @param quotaTracker Tracker of the quota of the service which sends the responses (e.g.
+	 * <code>EnsemblQuotaTracker.forService("rest.ensembl.org")</code>), or <code>null</code> to not track it
+	 */
+	public EnsemblServiceResponseProcessor(Logger logger, EnsemblQuotaTracker quotaTracker)
 	{
 		this.logger =
 			logger != null ?
 			logger :
 			LogManager.getLogger();
+		this.quotaTracker = quotaTracker;
 
 		initializeTimeoutRetriesRemaining();
 	}
@@ -78,10 +101,27 @@ public final class EnsemblServiceResponseProcessor
 	 * @return EnsemblServiceResult object containing the relevant information from the response
 	 */
 	public EnsemblServiceResult processResponse(HttpResponse response)
+	{
+		return processStreamedResponse(response, null);
+	}
+
+	/**
+	 * Processes the HttpResponse from the queried EnsEMBL service as {@link #processResponse(HttpResponse)} does,
+	 * except that the content of a successful response is passed, as it is read, to the passed content handler rather
+	 * than stored as the result value.  The content of other responses is processed as usual.
+	 * @param response HttpResponse from the EnsEMBL service
+	 * @param contentHandler Handler of the content of a successful response (<code>null</code> to store the content as
+	 * the result value)
+	 * @return EnsemblServiceResult object containing the relevant information from the response, without a result
+	 * value if the content was handled by the content handler (see {@link EnsemblServiceResult#isContentHandled()})
+	 */
+	public EnsemblServiceResult processStreamedResponse(
+		HttpResponse response, EnsemblContentHandler contentHandler
+	)
 	{
 		EnsemblServiceResult result = response.containsHeader("Retry-After") ?
 			processResponseWithRetryAfter(response) :
-			processResponseWhenNotOverQueryQuota(response);
+			processResponseWhenNotOverQueryQuota(response, contentHandler);
 
 		processXRateLimitRemaining(response);
 
@@ -91,12 +131,24 @@ public final class EnsemblServiceResponseProcessor
 	/**
 	 * Returns the number of requests that may still be made to the EnsEMBL service in the current time window
 	 * @return Number of requests that can still be made until the the time window is refreshed
+	 * @deprecated The value is the last reported by any service, so it mixes the quotas of different services; use
+	 * the {@link EnsemblQuotaTracker} of the service instead (see {@link #getQuotaTracker()})
 	 */
+	@Deprecated
 	public static int getNumRequestsRemaining()
 	{
 		return EnsemblServiceResponseProcessor.numRequestsRemaining.get();
 	}
 
+	/**
+	 * Returns the tracker of the quota of the service updated from the processed responses
+	 * @return EnsemblQuotaTracker of the service (<code>null</code> if the quota is not tracked)
+	 */
+	public EnsemblQuotaTracker getQuotaTracker()
+	{
+		return this.quotaTracker;
+	}
+
 	/**
 	 * Returns the factor by which the response's recommended wait time is multiplied.  The value starts at 1 and
 	 * is incremented each time the response to the request is to wait.  This gives the server some buffer time before
@@ -158,6 +210,7 @@ public final class EnsemblServiceResponseProcessor
 
 		EnsemblServiceResult result = this.new EnsemblServiceResult();
 		result.setStatus(response.getStatusLine().getStatusCode());
+		result.setRetryAfter(parseRetryAfter(response));
 		result.setWaitTime(processWaitTime(response));
 		result.setOkToRetry(timesWaitedThresholdNotMet());
 
@@ -179,6 +232,23 @@ public final class EnsemblServiceResponseProcessor
 	 * @return EnsemblServiceResult object with the content set as its result value if the content was obtained
 	 */
 	EnsemblServiceResult processResponseWhenNotOverQueryQuota(HttpResponse response)
+	{
+		return processResponseWhenNotOverQueryQuota(response, null);
+	}
+
+	/**
+	 * Processes the query's response object as {@link #processResponseWhenNotOverQueryQuota(HttpResponse)} does,
+	 * except that the content of a successful response is passed to the content handler, if there is one, rather than
+	 * set as the result value
+	 * @param response Response object to process
+	 * @param contentHandler Handler of the content of a successful response (<code>null</code> to set the content as
+	 * the result value)
+	 * @return EnsemblServiceResult object with the content set as its result value, or handled, if the content was
+	 * obtained
+	 */
+	EnsemblServiceResult processResponseWhenNotOverQueryQuota(
+		HttpResponse response, EnsemblContentHandler contentHandler
+	)
 	{
 		EnsemblServiceResult result = this.new EnsemblServiceResult();
 		result.setStatus(response.getStatusLine().getStatusCode());
@@ -199,7 +269,14 @@ public final class EnsemblServiceResponseProcessor
 				}
 				break;
 			case HttpStatus.SC_OK:
-				result.setResult(parseContent(response));
+				if (contentHandler != null)
+				{
+					result.setContentHandled(handleContent(response, contentHandler));
+				}
+				else
+				{
+					result.setResult(parseContent(response));
+				}
 				break;
 			case HttpStatus.SC_NOT_FOUND:
 				logger.error("Response code 404 ('Not found') received: {}",
@@ -231,7 +308,8 @@ public final class EnsemblServiceResponseProcessor
 	 * Sets the number of requests remaining the server will permit based on the response header
 	 * "X-RateLimit-Remaining".
 	 *
-	 * The number of requests remaining will be logged for debugging if it is a multiple of 1000.  If no
+	 * The quota tracker, if there is one, is updated from all of the "X-RateLimit" headers, and logs the number of
+	 * requests remaining for debugging each time it passes a multiple of 1000.  If no
 	 * "X-RateLimit-Remaining" header is found in the response object, its absence will be logged along with
 	 * the HTTP response code received, the response headers received, and the last known number of requests
 	 * remaining.
@@ -239,15 +317,16 @@ public final class EnsemblServiceResponseProcessor
 	 */
 	void processXRateLimitRemaining(HttpResponse response)
 	{
+		if (this.quotaTracker != null)
+		{
+			this.quotaTracker.update(response);
+		}
+
 		if (response.containsHeader("X-RateLimit-Remaining"))
 		{
 			EnsemblServiceResponseProcessor.numRequestsRemaining.set(
 				parseIntegerHeaderValue(response, "X-RateLimit-Remaining")
 			);
-			if (EnsemblServiceResponseProcessor.numRequestsRemaining.get() % 1000 == 0)
-			{
-				logger.debug("{} requests remaining", numRequestsRemaining.get());
-			}
 		}
 		else
 		{
@@ -258,7 +337,9 @@ public final class EnsemblServiceResponseProcessor
 
 				response.getStatusLine().toString(),
 				getHeaders(response),
-				EnsemblServiceResponseProcessor.numRequestsRemaining
+				this.quotaTracker != null ?
+					this.quotaTracker.getRemaining() :
+					EnsemblServiceResponseProcessor.numRequestsRemaining.get()
 			);
 		}
 	}
@@ -273,7 +354,7 @@ public final class EnsemblServiceResponseProcessor
 	 */
 	private Duration processWaitTime(HttpResponse response)
 	{
-		Duration waitTime = Duration.ofSeconds(parseIntegerHeaderValue(response,"Retry-After"));
+		Duration waitTime = parseRetryAfter(response);
 
 		logger.warn("The server told us to wait, so we will wait for {} * {} before trying again.",
 			waitTime, getWaitMultiplier()
@@ -326,6 +407,49 @@ public final class EnsemblServiceResponseProcessor
 		}
 	}
 
+	/**
+	 * Passes the content of the response object passed, parsed as UTF-8 JSON as it is read, to the content handler
+	 * passed.  Returns <code>true</code> if the content handler handled all of the content; <code>false</code> if the
+	 * content could not be read or parsed, which is logged.
+	 * @param response Response object to query for content
+	 * @param contentHandler Handler of the content
+	 * @return <code>true</code> if the content was handled; <code>false</code> otherwise
+	 */
+	private boolean handleContent(HttpResponse response, EnsemblContentHandler contentHandler)
+	{
+		if (response.getEntity() == null)
+		{
+			logger.error("Response has no content to handle");
+			return false;
+		}
+
+		try (
+			InputStream content = response.getEntity().getContent();
+			JsonParser parser = Json.createParser(new InputStreamReader(content, StandardCharsets.UTF_8))
+		)
+		{
+			contentHandler.handleContent(parser);
+			return true;
+		}
+		catch (IOException | JsonException | IllegalStateException | NoSuchElementException e)
+		{
+			logger.error("Unable to handle the content of the response", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the value of the "Retry-After" header, which is a number of seconds (possibly with a fraction), as a
+	 * Duration
+	 * @param response Response object to query for the header
+	 * @return Time the service asked to wait before retrying
+	 */
+	private static Duration parseRetryAfter(HttpResponse response) throws NumberFormatException
+	{
+		double seconds = Double.parseDouble(response.getHeaders("Retry-After")[0].getValue().trim());
+		return Duration.ofMillis((long) Math.ceil(seconds * 1000));
+	}
+
 	/**
 	 * Returns the value of a header, which is an integer, as an integer.
 	 * @param response Response object to query for headers
@@ -354,8 +478,10 @@ public final class EnsemblServiceResponseProcessor
 	public class EnsemblServiceResult
 	{
 		private Duration waitTime;
+		private Duration retryAfter;
 		private String result;
 		private boolean okToRetry = false;
+		private boolean contentHandled = false;
 		private int status;
 
 		/**
@@ -383,6 +509,31 @@ public final class EnsemblServiceResponseProcessor
 			this.waitTime = waitTime;
 		}
 
+		/**
+		 * Retrieves the time the EnsEMBL service asked to wait before retrying the request (i.e. the "Retry-After"
+		 * header, without the processor's wait multiplier).  Clients coordinating the back-off of all their requests
+		 * (e.g. with an {@link EnsemblBackoffGate}) should use this rather than {@link #getWaitTime()}.
+		 * @return Time to wait before retrying request (as a Duration object)
+		 */
+		public Duration getRetryAfter()
+		{
+			if (this.retryAfter == null)
+			{
+				return Duration.ZERO;
+			}
+
+			return this.retryAfter;
+		}
+
+		/**
+		 * Sets the time the EnsEMBL service asked to wait before retrying the request
+		 * @param retryAfter Time to wait as Duration object
+		 */
+		public void setRetryAfter(Duration retryAfter)
+		{
+			this.retryAfter = retryAfter;
+		}
+
 		/**
 		 * Retrieves the content of the response from the EnsEMBL service
 		 * @return Content of the response as a String (empty String if no content)
@@ -406,6 +557,25 @@ public final class EnsemblServiceResponseProcessor
 			this.result = result;
 		}
 
+		/**
+		 * Retrieves if the content of the response from the EnsEMBL service was passed in full to a content handler
+		 * (in which case it is not available as the result value)
+		 * @return true if the content was handled by an EnsemblContentHandler; false otherwise
+		 */
+		public boolean isContentHandled()
+		{
+			return this.contentHandled;
+		}
+
+		/**
+		 * Sets if the content of the response from the EnsEMBL service was passed in full to a content handler
+		 * @param contentHandled true if the content was handled by an EnsemblContentHandler; false otherwise
+		 */
+		public void setContentHandled(boolean contentHandled)
+		{
+			this.contentHandled = contentHandled;
+		}
+
 		/**
 		 * Retrieves if it is permitted to retry the request to the EnsEMBL service
 		 * @return true if okay to retry the request; false otherwise
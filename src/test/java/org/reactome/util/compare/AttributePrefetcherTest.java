@@ -0,0 +1,140 @@
+package org.reactome.util.compare;
+
+import static org.gk.model.ReactomeJavaConstants.hasComponent;
+import static org.gk.model.ReactomeJavaConstants.name;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.gk.model.GKInstance;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+public class AttributePrefetcherTest {
+	@Mock
+	private MySQLAdaptor adaptor;
+	@Mock
+	private SchemaClass parentSchemaClass;
+	@Mock
+	private SchemaClass childSchemaClass;
+
+	// Created once, as AttributeProcessor caches the attributes of each schema class
+	private static final SchemaAttribute hasComponentAttribute =
+		MockAttribute.createMockAttribute(hasComponent, GKInstance.class);
+	private static final SchemaAttribute nameAttribute = MockAttribute.createMockAttribute(name, String.class);
+
+	@BeforeEach
+	public void initMocks() {
+		MockitoAnnotations.initMocks(this);
+
+		mockSchemaClass(parentSchemaClass, "PrefetchTestParent", hasComponentAttribute);
+		mockSchemaClass(childSchemaClass, "PrefetchTestChild", nameAttribute);
+	}
+
+	@Test
+	public void instancesAtEachLevelAreLoadedInOneBatchPerAttribute() throws Exception {
+		GKInstance child1 = createMockInstance(childSchemaClass);
+		GKInstance child2 = createMockInstance(childSchemaClass);
+		GKInstance parent1 = createMockInstance(parentSchemaClass);
+		GKInstance parent2 = createMockInstance(parentSchemaClass);
+		Mockito.when(parent1.getAttributeValuesList(hasComponent)).thenReturn(Collections.singletonList(child1));
+		Mockito.when(parent2.getAttributeValuesList(hasComponent)).thenReturn(Collections.singletonList(child2));
+
+		AttributePrefetcher.prefetch(Arrays.asList(parent1, parent2), new ComparisonConfiguration());
+
+		Mockito.verify(adaptor).loadInstanceAttributeValues(
+			Mockito.argThat((Collection<?> instances) -> instances.containsAll(Arrays.asList(parent1, parent2))),
+			Mockito.eq(hasComponentAttribute)
+		);
+		Mockito.verify(adaptor).loadInstanceAttributeValues(
+			Mockito.argThat((Collection<?> instances) -> instances.containsAll(Arrays.asList(child1, child2))),
+			Mockito.eq(nameAttribute)
+		);
+	}
+
+	@Test
+	public void instancesBeyondMaximumRecursionDepthAreNotLoaded() throws Exception {
+		GKInstance child = createMockInstance(childSchemaClass);
+		GKInstance parent = createMockInstance(parentSchemaClass);
+		Mockito.when(parent.getAttributeValuesList(hasComponent)).thenReturn(Collections.singletonList(child));
+
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+		configuration.setMaxRecursionDepth(0);
+		AttributePrefetcher.prefetch(Collections.singletonList(parent), configuration);
+
+		Mockito.verify(adaptor, Mockito.never()).loadInstanceAttributeValues(
+			Mockito.anyCollection(), Mockito.eq(nameAttribute)
+		);
+	}
+
+	@Test
+	public void instanceValuesAreOnlyLoadedDownToTheTraversalPolicyDepth() throws Exception {
+		// Each parent contains the next, five levels deep
+		List<GKInstance> parents = new ArrayList<>();
+		for (int level = 0; level < 5; level++) {
+			parents.add(createMockInstance(parentSchemaClass));
+		}
+		for (int level = 0; level < 4; level++) {
+			Mockito.when(parents.get(level).getAttributeValuesList(hasComponent))
+				.thenReturn(Collections.singletonList(parents.get(level + 1)));
+		}
+
+		TraversalPolicy traversalPolicy = new TraversalPolicy();
+		traversalPolicy.setMaxDepth(hasComponent, 1);
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+		configuration.setMaxRecursionDepth(5);
+		configuration.setTraversalPolicy(traversalPolicy);
+		AttributePrefetcher.prefetch(Collections.singletonList(parents.get(0)), configuration);
+
+		// The top-level parent and the parent it contains are compared, but the contained parent's values are not
+		Mockito.verify(adaptor).loadInstanceAttributeValues(
+			Mockito.argThat((Collection<?> instances) -> instances.contains(parents.get(1))),
+			Mockito.eq(hasComponentAttribute)
+		);
+		Mockito.verify(adaptor, Mockito.never()).loadInstanceAttributeValues(
+			Mockito.argThat((Collection<?> instances) -> instances.contains(parents.get(2))),
+			Mockito.eq(hasComponentAttribute)
+		);
+	}
+
+	@Test
+	public void identityOnlyAttributeValuesAreNotLoaded() throws Exception {
+		GKInstance child = createMockInstance(childSchemaClass);
+		GKInstance parent = createMockInstance(parentSchemaClass);
+		Mockito.when(parent.getAttributeValuesList(hasComponent)).thenReturn(Collections.singletonList(child));
+
+		TraversalPolicy traversalPolicy = new TraversalPolicy();
+		traversalPolicy.addIdentityOnlyAttribute(hasComponent);
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+		configuration.setTraversalPolicy(traversalPolicy);
+		AttributePrefetcher.prefetch(Collections.singletonList(parent), configuration);
+
+		Mockito.verify(adaptor, Mockito.never()).loadInstanceAttributeValues(
+			Mockito.anyCollection(), Mockito.eq(nameAttribute)
+		);
+	}
+
+	private void mockSchemaClass(SchemaClass schemaClass, String schemaClassName, SchemaAttribute attribute) {
+		List<SchemaAttribute> attributes = new ArrayList<>(Collections.singletonList(attribute));
+
+		Mockito.when(schemaClass.getName()).thenReturn(schemaClassName);
+		Mockito.when(schemaClass.getAttributes()).thenReturn(attributes);
+		Mockito.when(schemaClass.getReferers()).thenReturn(new ArrayList<>());
+	}
+
+	private GKInstance createMockInstance(SchemaClass schemaClass) {
+		GKInstance instance = Mockito.mock(GKInstance.class);
+		Mockito.when(instance.getSchemClass()).thenReturn(schemaClass);
+		Mockito.when(instance.getDbAdaptor()).thenReturn(adaptor);
+
+		return instance;
+	}
+}
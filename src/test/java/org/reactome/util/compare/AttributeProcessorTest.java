@@ -0,0 +1,100 @@
+package org.reactome.util.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.gk.model.ReactomeJavaConstants.hasComponent;
+import static org.gk.model.ReactomeJavaConstants.name;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.gk.model.GKInstance;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.reactome.util.compare.AttributeProcessor.AttributeRelationshipType;
+
+public class AttributeProcessorTest {
+	@Test
+	public void schemaClassWithNoReferrersIsOnlyQueriedOnce() {
+		SchemaClass schemaClass = createMockSchemaClass(
+			"AttributeProcessorTestNoReferrers", MockAttribute.createMockAttribute(name, String.class)
+		);
+
+		for (int i = 0; i < 3; i++) {
+			assertThat(
+				AttributeProcessor.getAttributes(schemaClass, AttributeRelationshipType.REVERSE_ATTRIBUTE), is(empty())
+			);
+		}
+
+		Mockito.verify(schemaClass, Mockito.times(1)).getReferers();
+	}
+
+	@Test
+	public void schemaClassesWithTheSameNameAreCachedSeparately() {
+		final String sharedName = "AttributeProcessorTestSharedName";
+		SchemaClass schemaClass1 = createMockSchemaClass(
+			sharedName, MockAttribute.createMockAttribute(name, String.class)
+		);
+		SchemaClass schemaClass2 = createMockSchemaClass(
+			sharedName, MockAttribute.createMockAttribute(hasComponent, GKInstance.class)
+		);
+
+		assertThat(getAttributeNames(schemaClass1), contains(name));
+		assertThat(getAttributeNames(schemaClass2), contains(hasComponent));
+	}
+
+	@Test
+	public void concurrentCallersComputeAttributesOnce() throws Exception {
+		final int threadCount = 8;
+		SchemaClass schemaClass = createMockSchemaClass(
+			"AttributeProcessorTestConcurrent", MockAttribute.createMockAttribute(name, String.class)
+		);
+
+		ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+		try {
+			CountDownLatch startSignal = new CountDownLatch(1);
+			List<Future<List<SchemaAttribute>>> results = new ArrayList<>();
+			for (int i = 0; i < threadCount; i++) {
+				results.add(executorService.submit(() -> {
+					startSignal.await();
+					return AttributeProcessor.getAttributes(schemaClass, AttributeRelationshipType.REGULAR_ATTRIBUTE);
+				}));
+			}
+			startSignal.countDown();
+
+			for (Future<List<SchemaAttribute>> result : results) {
+				assertThat(result.get(10, TimeUnit.SECONDS).size(), is(1));
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+
+		Mockito.verify(schemaClass, Mockito.times(1)).getAttributes();
+	}
+
+	private SchemaClass createMockSchemaClass(String schemaClassName, SchemaAttribute attribute) {
+		SchemaClass schemaClass = Mockito.mock(SchemaClass.class);
+		Mockito.when(schemaClass.getName()).thenReturn(schemaClassName);
+		Mockito.when(schemaClass.getAttributes()).thenReturn(Collections.singletonList(attribute));
+		Mockito.when(schemaClass.getReferers()).thenReturn(Collections.emptyList());
+
+		return schemaClass;
+	}
+
+	private List<String> getAttributeNames(SchemaClass schemaClass) {
+		return AttributeProcessor.getAttributes(schemaClass, AttributeRelationshipType.REGULAR_ATTRIBUTE)
+			.stream()
+			.map(SchemaAttribute::getName)
+			.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,131 @@
+package org.reactome.util.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.gk.model.ReactomeJavaConstants.DB_ID;
+import static org.gk.model.ReactomeJavaConstants.hasComponent;
+import static org.gk.model.ReactomeJavaConstants.name;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.gk.model.GKInstance;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.reactome.util.compare.AttributeProcessor.AttributeRelationshipType;
+import org.reactome.util.compare.ComparisonConfiguration.StringNormalization;
+import org.reactome.util.compare.ComparisonPlan.AttributeDescriptor;
+import org.reactome.util.compare.ComparisonPlan.ValueType;
+
+public class ComparisonPlanTest {
+	@Test
+	public void defaultPlanDescribesFilteredAttributesInOrder() {
+		SchemaClass schemaClass = createMockSchemaClass("ComparisonPlanTestDefault");
+
+		ComparisonPlan comparisonPlan = AttributeProcessor.getComparisonPlans(null).get(
+			schemaClass, AttributeRelationshipType.REGULAR_ATTRIBUTE
+		);
+
+		assertThat(getNames(comparisonPlan), contains(name, hasComponent));
+		assertThat(comparisonPlan.getAttributeDescriptors()[0].isContainingInstances(), is(false));
+		assertThat(comparisonPlan.getAttributeDescriptors()[1].isContainingInstances(), is(true));
+		assertThat(comparisonPlan.getAttributeDescriptors()[1].getDescription(), is(equalTo("hasComponent attribute")));
+	}
+
+	@Test
+	public void planIsCompiledOncePerSchemaClassAndFilter() {
+		SchemaClass schemaClass = createMockSchemaClass("ComparisonPlanTestCached");
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+
+		ComparisonPlan defaultPlan = configuration.getComparisonPlan(
+			schemaClass, AttributeRelationshipType.REGULAR_ATTRIBUTE
+		);
+		assertThat(
+			AttributeProcessor.getComparisonPlans(null).get(schemaClass, AttributeRelationshipType.REGULAR_ATTRIBUTE),
+			is(sameInstance(defaultPlan))
+		);
+
+		// Plans of a custom filter are held by the configuration which owns the filter
+		configuration.setAttributeNameFilter(attribute -> attribute.getName().equals(DB_ID));
+		ComparisonPlan customPlan = configuration.getComparisonPlan(
+			schemaClass, AttributeRelationshipType.REGULAR_ATTRIBUTE
+		);
+		assertThat(
+			configuration.getComparisonPlan(schemaClass, AttributeRelationshipType.REGULAR_ATTRIBUTE),
+			is(sameInstance(customPlan))
+		);
+		assertThat(customPlan, is(not(sameInstance(defaultPlan))));
+		assertThat(getNames(customPlan), contains(DB_ID));
+	}
+
+	@Test
+	public void descriptorsCompareValuesByDeclaredType() {
+		SchemaClass schemaClass = createMockSchemaClass("ComparisonPlanTestValueTypes");
+
+		AttributeDescriptor[] attributeDescriptors = AttributeProcessor.getComparisonPlans(attribute -> true).get(
+			schemaClass, AttributeRelationshipType.REGULAR_ATTRIBUTE
+		).getAttributeDescriptors();
+		AttributeDescriptor dbIdDescriptor = attributeDescriptors[0];
+
+		assertThat(dbIdDescriptor.getValueType(), is(equalTo(ValueType.LONG)));
+		assertThat(attributeDescriptors[1].getValueType(), is(equalTo(ValueType.STRING)));
+		assertThat(attributeDescriptors[2].getValueType(), is(equalTo(ValueType.OTHER)));
+		assertThat(dbIdDescriptor.valuesEqual(1000L, 1000L, StringNormalization.NONE), is(true));
+		assertThat(dbIdDescriptor.valuesEqual(1000L, 1001L, StringNormalization.NONE), is(false));
+		// Values not of the declared type fall back to equals
+		assertThat(dbIdDescriptor.valuesEqual(1000L, 1000, StringNormalization.NONE), is(false));
+		assertThat(dbIdDescriptor.valuesEqual(null, 1000L, StringNormalization.NONE), is(false));
+	}
+
+	@Test
+	public void stringValuesAreComparedWithConfiguredNormalization() {
+		SchemaClass schemaClass = createMockSchemaClass("ComparisonPlanTestNormalization");
+
+		AttributeDescriptor nameDescriptor = AttributeProcessor.getComparisonPlans(null).get(
+			schemaClass, AttributeRelationshipType.REGULAR_ATTRIBUTE
+		).getAttributeDescriptors()[0];
+
+		String name1 = "  Glucose\t transport ";
+		String name2 = "GLUCOSE transport";
+		assertThat(nameDescriptor.valuesEqual(name1, name2, StringNormalization.NONE), is(false));
+		assertThat(nameDescriptor.valuesEqual(name1, name2, StringNormalization.WHITESPACE), is(false));
+		assertThat(nameDescriptor.valuesEqual(name1, name2, StringNormalization.CASE), is(false));
+		assertThat(nameDescriptor.valuesEqual(name1, name2, StringNormalization.WHITESPACE_AND_CASE), is(true));
+		assertThat(nameDescriptor.valuesEqual("Glucose transport", "Glucosetransport",
+			StringNormalization.WHITESPACE_AND_CASE), is(false));
+
+		for (StringNormalization stringNormalization : StringNormalization.values()) {
+			assertThat(
+				nameDescriptor.getComparisonKey(name1, stringNormalization)
+					.equals(nameDescriptor.getComparisonKey(name2, stringNormalization)),
+				is(equalTo(nameDescriptor.valuesEqual(name1, name2, stringNormalization)))
+			);
+		}
+	}
+
+	private SchemaClass createMockSchemaClass(String schemaClassName) {
+		List<SchemaAttribute> attributes = Arrays.asList(
+			MockAttribute.createMockAttribute(DB_ID, Long.class),
+			MockAttribute.createMockAttribute(name, String.class),
+			MockAttribute.createMockAttribute(hasComponent, GKInstance.class)
+		);
+
+		SchemaClass schemaClass = Mockito.mock(SchemaClass.class);
+		Mockito.when(schemaClass.getName()).thenReturn(schemaClassName);
+		Mockito.when(schemaClass.getAttributes()).thenReturn(attributes);
+
+		return schemaClass;
+	}
+
+	private List<String> getNames(ComparisonPlan comparisonPlan) {
+		return Arrays.stream(comparisonPlan.getAttributeDescriptors())
+			.map(AttributeDescriptor::getName)
+			.collect(Collectors.toList());
+	}
+}
@@ -2,8 +2,10 @@ package org.reactome.util.compare;
 
 import static org.gk.model.ReactomeJavaConstants.accession;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import static org.gk.model.ReactomeJavaConstants.*;
 
@@ -15,6 +17,7 @@ import org.gk.model.GKInstance;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
 public class DBObjectComparerTest {
@@ -54,6 +57,25 @@ public class DBObjectComparerTest {
 		assertThat(differenceCount, is(equalTo(0)));
 	}
 
+	@Test
+	public void eachPairOfABatchIsCompared() throws Exception {
+		GKInstance instance1 = createMockGOBiologicalProcess(DUMMY_ACCESSION_1, DUMMY_INSTANCE_OF_ACCESSION_LIST_1);
+		GKInstance instance2 = createMockGOBiologicalProcess(DUMMY_ACCESSION_2, DUMMY_INSTANCE_OF_ACCESSION_LIST_1);
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+		configuration.setPrefetchAttributes(true);
+
+		int[] differenceCounts = DBObjectComparer.compareInstances(
+			Arrays.asList(instance1, instance1), Arrays.asList(instance1, instance2), stringBuilder::append,
+			configuration
+		);
+
+		assertThat(differenceCounts[0], is(equalTo(0)));
+		assertThat(differenceCounts[1], is(equalTo(1)));
+		assertThrows(IllegalArgumentException.class, () -> DBObjectComparer.compareInstances(
+			Collections.singletonList(instance1), Collections.emptyList(), stringBuilder::append, configuration
+		));
+	}
+
 	@Test
 	public void differenceCountIsOneWhenInstancesAreDifferentTypes() {
 		MockInstance instance1 = MockInstance.createMockInstance(GO_MolecularFunction);
@@ -143,6 +165,126 @@ public class DBObjectComparerTest {
 		assertThat(differenceCount, is(equalTo(1)));
 	}
 
+	@Test
+	public void differenceCountStopsAtDifferenceBudget() throws Exception {
+		GKInstance instance1 = createMockGOBiologicalProcess(
+			DUMMY_ACCESSION_1, DUMMY_INSTANCE_OF_ACCESSION_LIST_1
+		);
+		GKInstance instance2 = createMockGOBiologicalProcess(
+			DUMMY_ACCESSION_2, DUMMY_INSTANCE_OF_ACCESSION_LIST_2
+		);
+
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+		configuration.setDifferenceBudget(1);
+		int differenceCount = DBObjectComparer.compareInstances(
+			instance1, instance2, new StringBuilderDiffReportSink(stringBuilder), configuration
+		);
+
+		assertThat(differenceCount, is(equalTo(1)));
+	}
+
+	@Test
+	public void instancesWithTheSameAttributeValuesAreIdentical() throws Exception {
+		GKInstance instance1 = createMockGOBiologicalProcess(DUMMY_ACCESSION_1);
+		GKInstance instance2 = createMockGOBiologicalProcess(DUMMY_ACCESSION_1);
+
+		assertThat(DBObjectComparer.isIdentical(instance1, instance2), is(true));
+	}
+
+	@Test
+	public void instancesWithADifferentAttributeValueAreNotIdentical() throws Exception {
+		GKInstance instance1 = createMockGOBiologicalProcess(DUMMY_ACCESSION_1);
+		GKInstance instance2 = createMockGOBiologicalProcess(DUMMY_ACCESSION_2);
+
+		assertThat(DBObjectComparer.isIdentical(instance1, instance2), is(false));
+	}
+
+	@Test
+	public void differenceThresholdIsOnlyExceededByMoreDifferences() throws Exception {
+		GKInstance instance1 = createMockGOBiologicalProcess(
+			DUMMY_ACCESSION_1, DUMMY_INSTANCE_OF_ACCESSION_LIST_1
+		);
+		GKInstance instance2 = createMockGOBiologicalProcess(
+			DUMMY_ACCESSION_2, DUMMY_INSTANCE_OF_ACCESSION_LIST_2
+		);
+
+		assertThat(DBObjectComparer.exceedsDifferenceThreshold(instance1, instance2, 1), is(true));
+		assertThat(DBObjectComparer.exceedsDifferenceThreshold(instance1, instance2, 2), is(false));
+	}
+
+	@Test
+	public void negativeDifferenceThresholdIsAlwaysExceeded() throws Exception {
+		GKInstance instance1 = createMockGOBiologicalProcess(DUMMY_ACCESSION_1);
+		GKInstance instance2 = createMockGOBiologicalProcess(DUMMY_ACCESSION_1);
+
+		assertThat(DBObjectComparer.exceedsDifferenceThreshold(instance1, instance2, -1), is(true));
+		assertThat(DBObjectComparer.exceedsDifferenceThreshold(instance1, instance2, Integer.MIN_VALUE), is(true));
+	}
+
+	@Test
+	public void largestDifferenceThresholdIsNeverExceeded() throws Exception {
+		GKInstance instance1 = createMockGOBiologicalProcess(
+			DUMMY_ACCESSION_1, DUMMY_INSTANCE_OF_ACCESSION_LIST_1
+		);
+		GKInstance instance2 = createMockGOBiologicalProcess(
+			DUMMY_ACCESSION_2, DUMMY_INSTANCE_OF_ACCESSION_LIST_2
+		);
+
+		assertThat(DBObjectComparer.exceedsDifferenceThreshold(instance1, instance2, Integer.MAX_VALUE), is(false));
+	}
+
+	@Test
+	public void multisetMatchingCountsOnlyUnpairedValuesRegardlessOfOrder() throws Exception {
+		GKInstance instance1 = createMockMultisetTestInstance(1L, Arrays.asList("a", "b"));
+		GKInstance instance2 = createMockMultisetTestInstance(1L, Arrays.asList("b", "a", "c"));
+
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+		configuration.setValueMatching(ComparisonConfiguration.ValueMatching.MULTISET);
+		int differenceCount = DBObjectComparer.compareInstances(
+			instance1, instance2, new StringBuilderDiffReportSink(stringBuilder), configuration
+		);
+
+		assertThat(differenceCount, is(equalTo(1)));
+		assertThat(stringBuilder.toString(), containsString("Added (only in Instance 2"));
+	}
+
+	@Test
+	public void multisetMatchingPairsInstanceValuesByDbIdAndReportsAddedAndRemovedValues() throws Exception {
+		GKInstance instance1 = createMockMultisetTestInstance(10L, Collections.emptyList(),
+			createMockMultisetTestInstance(1L, Collections.singletonList("unchanged")),
+			createMockMultisetTestInstance(2L, Collections.singletonList("before"))
+		);
+		GKInstance instance2 = createMockMultisetTestInstance(10L, Collections.emptyList(),
+			createMockMultisetTestInstance(2L, Collections.singletonList("after")),
+			createMockMultisetTestInstance(3L, Collections.singletonList("new"))
+		);
+
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+		configuration.setValueMatching(ComparisonConfiguration.ValueMatching.MULTISET);
+		int differenceCount = DBObjectComparer.compareInstances(
+			instance1, instance2, new StringBuilderDiffReportSink(stringBuilder), configuration
+		);
+
+		// DB_ID 2 changed, DB_ID 1 was removed and DB_ID 3 was added
+		assertThat(differenceCount, is(equalTo(3)));
+		assertThat(stringBuilder.toString(), containsString("Removed (only in Instance 1"));
+		assertThat(stringBuilder.toString(), containsString("Added (only in Instance 2"));
+	}
+
+	private GKInstance createMockMultisetTestInstance(long dbId, List<String> names, GKInstance... components)
+		throws Exception {
+		// All instances of this class have the same attributes, as AttributeProcessor caches them by class name
+		MockInstance mockInstance = MockInstance.createMockInstance("MultisetTestEntity");
+		mockInstance.addMockAttribute(name, String.class, names);
+		mockInstance.addMockAttribute(hasComponent, GKInstance.class, Arrays.asList(components));
+
+		GKInstance instance = mockInstance.getGKInstance();
+		Mockito.when(instance.getDBID()).thenReturn(dbId);
+		Mockito.when(instance.getDisplayName()).thenReturn(String.valueOf(dbId));
+
+		return instance;
+	}
+
 	private GKInstance createMockGOBiologicalProcess(String accessionValue) throws Exception {
 		return createMockGOBiologicalProcess(accessionValue, Collections.emptyList());
 	}
@@ -0,0 +1,88 @@
+package org.reactome.util.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.gk.model.ReactomeJavaConstants.name;
+
+import java.util.Collections;
+import java.util.stream.Collectors;
+import org.gk.model.GKInstance;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class DiffStatisticsTest {
+	@Test
+	public void comparerDifferencesAreAggregatedAlongsideTheReportText() throws Exception {
+		GKInstance instance1 = createMockInstance(1L, "First name");
+		GKInstance instance2 = createMockInstance(1L, "Second name");
+		DiffStatistics diffStatistics = new DiffStatistics();
+		StringBuilder report = new StringBuilder();
+
+		int differenceCount = DBObjectComparer.compareInstances(
+			instance1, instance2, DiffReportSink.combine(report::append, diffStatistics),
+			new ComparisonConfiguration()
+		);
+
+		assertThat(differenceCount, is(equalTo(1)));
+		assertThat(report.toString(), containsString("Second name"));
+		assertThat(diffStatistics.getComparedInstanceCount(), is(equalTo(1L)));
+		assertThat(diffStatistics.getDifferingInstanceCount(), is(equalTo(1L)));
+		assertThat(diffStatistics.getDifferenceCountsBySchemaClass(), hasEntry("DiffStatisticsTestEntity", 1L));
+		assertThat(diffStatistics.getDifferenceCountsByAttribute(), hasEntry(name, 1L));
+		assertThat(diffStatistics.getDifferenceCountsByRelationshipType(), hasEntry("attribute", 1L));
+		assertThat(diffStatistics.getDepthPercentile(50), is(equalTo(0)));
+	}
+
+	@Test
+	public void mergedStatisticsEqualStatisticsAggregatedInOneObject() {
+		GKInstance instance1 = createMockInstance(1L, "One");
+		GKInstance instance2 = createMockInstance(2L, "Two");
+		GKInstance instance3 = createMockInstance(3L, "Three");
+
+		DiffStatistics workerStatistics1 = new DiffStatistics(2);
+		workerStatistics1.recordDifference(instance1, instance1, name, false, 0, 1);
+		workerStatistics1.endInstanceComparison(instance1, instance1, 1);
+		workerStatistics1.recordDifference(instance2, instance2, name, true, 2, 5);
+		workerStatistics1.endInstanceComparison(instance2, instance2, 5);
+		DiffStatistics workerStatistics2 = new DiffStatistics(2);
+		workerStatistics2.recordDifference(instance3, instance3, null, false, 1, 3);
+		workerStatistics2.endInstanceComparison(instance3, instance3, 3);
+
+		DiffStatistics diffStatistics = new DiffStatistics(2);
+		diffStatistics.merge(workerStatistics1);
+		diffStatistics.merge(workerStatistics2);
+
+		assertThat(diffStatistics.getComparedInstanceCount(), is(equalTo(3L)));
+		assertThat(diffStatistics.getDifferenceCount(), is(equalTo(9L)));
+		assertThat(diffStatistics.getDifferenceCountsByAttribute().keySet(), contains(name, "schema class"));
+		assertThat(diffStatistics.getDifferenceCountsByRelationshipType(), hasEntry("reverse attribute", 5L));
+		assertThat(
+			diffStatistics.getTopInstances().stream()
+				.map(DiffStatistics.InstanceDifferenceCount::getDbId)
+				.collect(Collectors.toList()),
+			contains(2L, 3L)
+		);
+		// Depths 0 (1 difference), 1 (3 differences) and 2 (5 differences)
+		assertThat(diffStatistics.getDepthPercentile(10), is(equalTo(0)));
+		assertThat(diffStatistics.getDepthPercentile(40), is(equalTo(1)));
+		assertThat(diffStatistics.getDepthPercentile(90), is(equalTo(2)));
+		assertThat(diffStatistics.getSummary(10), containsString("[DiffStatisticsTestEntity:2] Two: 5 differences"));
+	}
+
+	private GKInstance createMockInstance(long dbId, String nameValue) {
+		MockInstance mockInstance = MockInstance.createMockInstance("DiffStatisticsTestEntity");
+		try {
+			mockInstance.addMockAttribute(name, String.class, Collections.singletonList(nameValue));
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+		Mockito.when(mockInstance.getGKInstance().getDBID()).thenReturn(dbId);
+		Mockito.when(mockInstance.getGKInstance().getDisplayName()).thenReturn(nameValue);
+
+		return mockInstance.getGKInstance();
+	}
+}
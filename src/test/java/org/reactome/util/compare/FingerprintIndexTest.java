@@ -0,0 +1,68 @@
+package org.reactome.util.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.gk.model.ReactomeJavaConstants.accession;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.gk.model.GKInstance;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class FingerprintIndexTest {
+	private static final String FINGERPRINT_INDEX_TEST_CLASS = "FingerprintIndexTestEntity";
+
+	@Test
+	public void indexIsReadBackFromItsFile() throws Exception {
+		FingerprintIndex index = FingerprintIndex.compute(
+			Arrays.asList(createMockInstance(1L, "0000001"), createMockInstance(2L, "0000002")),
+			new InstanceFingerprinter(), 2
+		);
+
+		Path indexFile = Files.createTempFile("fingerprints", ".idx");
+		try {
+			index.write(indexFile);
+			FingerprintIndex readIndex = FingerprintIndex.read(indexFile);
+
+			assertThat(readIndex.getDepth(), is(equalTo(2)));
+			assertThat(readIndex.size(), is(equalTo(2)));
+			assertThat(readIndex.getFingerprint(1L), is(equalTo(index.getFingerprint(1L))));
+			assertThat(readIndex.getFingerprint(2L), is(equalTo(index.getFingerprint(2L))));
+		} finally {
+			Files.delete(indexFile);
+		}
+	}
+
+	@Test
+	public void onlyInstancesWithChangedFingerprintsAreReported() throws Exception {
+		InstanceFingerprinter fingerprinter = new InstanceFingerprinter();
+		FingerprintIndex oldIndex = FingerprintIndex.compute(
+			Arrays.asList(
+				createMockInstance(1L, "0000001"), createMockInstance(2L, "0000002"), createMockInstance(3L, "0000003")
+			),
+			fingerprinter, 0
+		);
+		FingerprintIndex newIndex = FingerprintIndex.compute(
+			Arrays.asList(
+				createMockInstance(1L, "0000001"), createMockInstance(2L, "0000009"), createMockInstance(4L, "0000004")
+			),
+			fingerprinter, 0
+		);
+
+		assertThat(oldIndex.getDbIdsWithDifferentFingerprints(newIndex), contains(2L));
+		assertThat(newIndex.contains(3L), is(false));
+	}
+
+	private GKInstance createMockInstance(long dbId, String accessionValue) throws Exception {
+		MockInstance mockInstance = MockInstance.createMockInstance(FINGERPRINT_INDEX_TEST_CLASS);
+		mockInstance.addMockAttribute(accession, String.class, Collections.singletonList(accessionValue));
+		Mockito.when(mockInstance.getGKInstance().getDBID()).thenReturn(dbId);
+
+		return mockInstance.getGKInstance();
+	}
+}
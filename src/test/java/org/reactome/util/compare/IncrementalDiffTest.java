@@ -0,0 +1,169 @@
+package org.reactome.util.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.gk.model.ReactomeJavaConstants.created;
+import static org.gk.model.ReactomeJavaConstants.hasComponent;
+import static org.gk.model.ReactomeJavaConstants.modified;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import org.gk.model.GKInstance;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.Schema;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class IncrementalDiffTest {
+	private static final String CREATED_QUERY =
+		"SELECT DISTINCT t.DB_ID FROM DatabaseObject t JOIN InstanceEdit e ON e.DB_ID = t.created WHERE e.dateTime >= ?";
+	private static final String MODIFIED_QUERY = "SELECT DISTINCT t.DB_ID FROM DatabaseObject_2_modified t" +
+		" JOIN InstanceEdit e ON e.DB_ID = t.modified WHERE e.dateTime >= ?";
+
+	@Test
+	public void changedInstancesAreSelectedByCreatedAndModifiedInstanceEdits() throws Exception {
+		SchemaClass databaseObjectClass = Mockito.mock(SchemaClass.class);
+		Mockito.when(databaseObjectClass.getName()).thenReturn("DatabaseObject");
+		SchemaAttribute createdAttribute = MockAttribute.createMockAttribute(created, GKInstance.class);
+		Mockito.when(createdAttribute.getOrigin()).thenReturn(databaseObjectClass);
+		SchemaAttribute modifiedAttribute = MockAttribute.createMockAttribute(modified, GKInstance.class);
+		Mockito.when(modifiedAttribute.getOrigin()).thenReturn(databaseObjectClass);
+		Mockito.when(modifiedAttribute.isMultiple()).thenReturn(true);
+		Mockito.when(databaseObjectClass.getAttribute(created)).thenReturn(createdAttribute);
+		Mockito.when(databaseObjectClass.getAttribute(modified)).thenReturn(modifiedAttribute);
+		Schema schema = Mockito.mock(Schema.class);
+		Mockito.when(schema.getClassByName("DatabaseObject")).thenReturn(databaseObjectClass);
+
+		PreparedStatement createdStatement = createMockStatement(10L, 20L);
+		PreparedStatement modifiedStatement = createMockStatement(20L, 30L);
+		Connection connection = Mockito.mock(Connection.class);
+		Mockito.when(connection.prepareStatement(Mockito.eq(CREATED_QUERY), Mockito.anyInt(), Mockito.anyInt()))
+			.thenReturn(createdStatement);
+		Mockito.when(connection.prepareStatement(Mockito.eq(MODIFIED_QUERY), Mockito.anyInt(), Mockito.anyInt()))
+			.thenReturn(modifiedStatement);
+
+		MySQLAdaptor newerDatabase = Mockito.mock(MySQLAdaptor.class);
+		Mockito.when(newerDatabase.getSchema()).thenReturn(schema);
+		Mockito.when(newerDatabase.getConnection()).thenReturn(connection);
+
+		Timestamp cutoff = Timestamp.valueOf("2021-03-01 00:00:00");
+		IncrementalDiff incrementalDiff = new IncrementalDiff(
+			Mockito.mock(MySQLAdaptor.class), newerDatabase, new ComparisonConfiguration()
+		);
+
+		assertThat(incrementalDiff.selectChangedDbIds(cutoff), contains(10L, 20L, 30L));
+		Mockito.verify(createdStatement).setTimestamp(1, cutoff);
+		Mockito.verify(modifiedStatement).setTimestamp(1, cutoff);
+	}
+
+	@Test
+	public void referrersAreAddedUpToTheMaximumRecursionDepth() throws Exception {
+		MySQLAdaptor newerDatabase = Mockito.mock(MySQLAdaptor.class);
+		SchemaClass schemaClass = Mockito.mock(SchemaClass.class);
+		Mockito.when(schemaClass.getName()).thenReturn("IncrementalDiffTestComplex");
+		Mockito.when(schemaClass.getAttributes()).thenReturn(Collections.emptyList());
+		SchemaAttribute hasComponentAttribute = MockAttribute.createMockAttribute(hasComponent, GKInstance.class);
+		Mockito.when(schemaClass.getReferers()).thenReturn(Collections.singletonList(hasComponentAttribute));
+		for (long dbId = 1L; dbId <= 4L; dbId++) {
+			GKInstance instance = Mockito.mock(GKInstance.class);
+			Mockito.when(instance.getDBID()).thenReturn(dbId);
+			Mockito.when(instance.getSchemClass()).thenReturn(schemaClass);
+			Mockito.when(instance.getDbAdaptor()).thenReturn(newerDatabase);
+			Mockito.when(newerDatabase.fetchInstance(dbId)).thenReturn(instance);
+		}
+
+		// 4 contains 3, which contains 2, which contains 1
+		ReferrerIndex.Builder builder = new ReferrerIndex.Builder(newerDatabase);
+		builder.addReference(hasComponent, 2L, 1L);
+		builder.addReference(hasComponent, 3L, 2L);
+		builder.addReference(hasComponent, 4L, 3L);
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+		configuration.setMaxRecursionDepth(2);
+		configuration.addReferrerIndex(builder.build());
+
+		IncrementalDiff incrementalDiff = new IncrementalDiff(
+			Mockito.mock(MySQLAdaptor.class), newerDatabase, configuration
+		);
+
+		assertThat(incrementalDiff.addReferrers(new LinkedHashSet<>(Arrays.asList(1L))), contains(1L, 2L, 3L));
+	}
+
+	@Test
+	public void instancesOnlyInTheNewerDatabaseAreReported() throws Exception {
+		MockInstance mockInstance = MockInstance.createMockInstance("IncrementalDiffTestNewInstance");
+		MySQLAdaptor newerDatabase = mockInstance.adaptor;
+		Mockito.when(newerDatabase.fetchInstance(5L)).thenReturn(mockInstance.getGKInstance());
+		Mockito.when(mockInstance.getGKInstance().toString()).thenReturn("New instance");
+
+		IncrementalDiff incrementalDiff = new IncrementalDiff(
+			Mockito.mock(MySQLAdaptor.class), newerDatabase, new ComparisonConfiguration()
+		);
+		StringBuilder report = new StringBuilder();
+
+		assertThat(incrementalDiff.compare(Collections.singletonList(5L), report::append), is(equalTo(1)));
+		assertThat(report.toString(), containsString("'New instance' (DB_ID 5) is only in mock database"));
+	}
+
+	@Test
+	public void instancesOnlyInTheOlderDatabaseAreSelectedAndReported() throws Exception {
+		MySQLAdaptor olderDatabase = createMockDatabase(createMockStatement(1L, 2L, 3L, 5L, 6L));
+		MySQLAdaptor newerDatabase = createMockDatabase(createMockStatement(1L, 3L, 4L, 6L));
+		MockInstance mockInstance = MockInstance.createMockInstance("IncrementalDiffTestDeletedInstance");
+		Mockito.when(olderDatabase.getDBName()).thenReturn("older database");
+		Mockito.when(olderDatabase.fetchInstance(2L)).thenReturn(mockInstance.getGKInstance());
+		Mockito.when(mockInstance.getGKInstance().toString()).thenReturn("Deleted instance");
+
+		IncrementalDiff incrementalDiff = new IncrementalDiff(
+			olderDatabase, newerDatabase, new ComparisonConfiguration()
+		);
+		assertThat(incrementalDiff.selectDeletedDbIds(), contains(2L, 5L));
+
+		StringBuilder report = new StringBuilder();
+		DiffStatistics diffStatistics = new DiffStatistics();
+		assertThat(
+			incrementalDiff.compare(
+				Collections.singletonList(2L), DiffReportSink.combine(report::append, diffStatistics)
+			),
+			is(equalTo(1))
+		);
+		assertThat(report.toString(), containsString("'Deleted instance' (DB_ID 2) is only in older database"));
+		assertThat(diffStatistics.getDifferenceCountsByAttribute(), hasEntry("unpaired instance", 1L));
+	}
+
+	private MySQLAdaptor createMockDatabase(PreparedStatement dbIdStatement) throws Exception {
+		Connection connection = Mockito.mock(Connection.class);
+		Mockito.when(connection.prepareStatement(
+			Mockito.eq("SELECT DB_ID FROM DatabaseObject ORDER BY DB_ID"), Mockito.anyInt(), Mockito.anyInt()
+		)).thenReturn(dbIdStatement);
+
+		MySQLAdaptor database = Mockito.mock(MySQLAdaptor.class);
+		Mockito.when(database.getConnection()).thenReturn(connection);
+
+		return database;
+	}
+
+	private PreparedStatement createMockStatement(Long... dbIds) throws Exception {
+		ResultSet resultSet = Mockito.mock(ResultSet.class);
+		Boolean[] remainingRows = new Boolean[dbIds.length];
+		Arrays.fill(remainingRows, true);
+		remainingRows[dbIds.length - 1] = false;
+		Mockito.when(resultSet.next()).thenReturn(true, remainingRows);
+		Mockito.when(resultSet.getLong(1)).thenReturn(dbIds[0], Arrays.copyOfRange(dbIds, 1, dbIds.length));
+
+		PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+		Mockito.when(statement.executeQuery()).thenReturn(resultSet);
+
+		return statement;
+	}
+}
@@ -0,0 +1,80 @@
+package org.reactome.util.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.gk.model.ReactomeJavaConstants.DB_ID;
+import static org.gk.model.ReactomeJavaConstants.accession;
+import static org.gk.model.ReactomeJavaConstants.instanceOf;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.gk.model.GKInstance;
+import org.junit.jupiter.api.Test;
+
+public class InstanceFingerprinterTest {
+	// Every instance of this class has the same attributes, as AttributeProcessor caches them by class name
+	private static final String FINGERPRINT_TEST_CLASS = "FingerprintTestEvent";
+
+	@Test
+	public void instancesWithTheSameValuesHaveEqualFingerprintsRegardlessOfDbId() throws Exception {
+		InstanceFingerprinter fingerprinter = new InstanceFingerprinter();
+
+		long fingerprint1 = fingerprinter.getFingerprint(createMockInstance("0000001", 1L), 0);
+		long fingerprint2 = fingerprinter.getFingerprint(createMockInstance("0000001", 2L), 0);
+
+		assertThat(fingerprint1, is(equalTo(fingerprint2)));
+	}
+
+	@Test
+	public void instancesWithDifferentValuesHaveDifferentFingerprints() throws Exception {
+		InstanceFingerprinter fingerprinter = new InstanceFingerprinter();
+
+		long fingerprint1 = fingerprinter.getFingerprint(createMockInstance("0000001", 1L), 0);
+		long fingerprint2 = fingerprinter.getFingerprint(createMockInstance("0000002", 1L), 0);
+
+		assertThat(fingerprint1, is(not(equalTo(fingerprint2))));
+	}
+
+	@Test
+	public void instanceValuesOnlyContributeDownToTheFingerprintDepth() throws Exception {
+		InstanceFingerprinter fingerprinter = new InstanceFingerprinter();
+		GKInstance parent1 = createMockInstance("0000001", 1L, createMockInstance("0000003", 3L));
+		GKInstance parent2 = createMockInstance("0000001", 2L, createMockInstance("0000004", 4L));
+
+		assertThat(fingerprinter.getFingerprint(parent1, 0), is(equalTo(fingerprinter.getFingerprint(parent2, 0))));
+		assertThat(
+			fingerprinter.getFingerprint(parent1, 1), is(not(equalTo(fingerprinter.getFingerprint(parent2, 1))))
+		);
+	}
+
+	@Test
+	public void comparerSkipsInstancesWithEqualFingerprints() throws Exception {
+		GKInstance parent1 = createMockInstance("0000001", 1L, createMockInstance("0000003", 3L));
+		GKInstance parent2 = createMockInstance("0000001", 2L, createMockInstance("0000003", 4L));
+		GKInstance changedParent = createMockInstance("0000001", 5L, createMockInstance("0000004", 6L));
+
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+		configuration.setFingerprinting(true);
+		StringBuilder report = new StringBuilder();
+
+		assertThat(DBObjectComparer.compareInstances(parent1, parent2, report::append, configuration), is(equalTo(0)));
+		assertThat(report.toString(), is(equalTo("")));
+		assertThat(
+			DBObjectComparer.compareInstances(parent1, changedParent, report::append, configuration), is(equalTo(1))
+		);
+	}
+
+	private GKInstance createMockInstance(String accessionValue, long dbId, GKInstance... instanceOfValues)
+		throws Exception {
+		MockInstance mockInstance = MockInstance.createMockInstance(FINGERPRINT_TEST_CLASS);
+		mockInstance.addMockAttribute(accession, String.class, Collections.singletonList(accessionValue));
+		mockInstance.addMockAttribute(DB_ID, Long.class, Collections.singletonList(dbId));
+		List<GKInstance> instanceOfList = Arrays.asList(instanceOfValues);
+		mockInstance.addMockAttribute(instanceOf, GKInstance.class, instanceOfList);
+
+		return mockInstance.getGKInstance();
+	}
+}
@@ -0,0 +1,159 @@
+package org.reactome.util.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.gk.model.ReactomeJavaConstants.identifier;
+import static org.gk.model.ReactomeJavaConstants.name;
+import static org.gk.model.ReactomeJavaConstants.referenceDatabase;
+import static org.gk.model.ReactomeJavaConstants.stableIdentifier;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Collectors;
+import org.gk.model.GKInstance;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.Schema;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class InstanceMatcherTest {
+	@Test
+	public void instancesArePairedByKeyAndUnmatchedInstancesReported() throws Exception {
+		InstanceMatcher.KeyIndex keyIndex1 = new InstanceMatcher.KeyIndex();
+		keyIndex1.add("R-HSA-1", 100L);
+		keyIndex1.add("R-HSA-2", 200L);
+		keyIndex1.add("R-HSA-3", 300L);
+		keyIndex1.add("R-HSA-4", 400L);
+		InstanceMatcher.KeyIndex keyIndex2 = new InstanceMatcher.KeyIndex();
+		keyIndex2.add("R-HSA-1", 1100L);
+		keyIndex2.add("R-HSA-3", 1300L);
+		keyIndex2.add("R-HSA-4", 1400L);
+		keyIndex2.add("R-HSA-4", 1401L);
+		keyIndex2.add("R-HSA-5", 1500L);
+
+		MySQLAdaptor database1 = createMockDatabase("database1");
+		MySQLAdaptor database2 = createMockDatabase("database2");
+		InstanceMatcher instanceMatcher = new InstanceMatcher(
+			database1, database2, NaturalKey.STABLE_IDENTIFIER, keyIndex1, keyIndex2
+		);
+
+		assertThat(
+			instanceMatcher.getMatches().stream()
+				.map(match -> match.getDbId1() + "=" + match.getDbId2())
+				.collect(Collectors.toList()),
+			contains("100=1100", "300=1300")
+		);
+		assertThat(instanceMatcher.getUnmatchedInDatabase1().size(), is(equalTo(1)));
+		assertThat(instanceMatcher.getUnmatchedInDatabase1(), hasEntry("R-HSA-2", 200L));
+		assertThat(instanceMatcher.getUnmatchedInDatabase2().size(), is(equalTo(1)));
+		assertThat(instanceMatcher.getUnmatchedInDatabase2(), hasEntry("R-HSA-5", 1500L));
+		assertThat(instanceMatcher.getAmbiguousKeys(), contains("R-HSA-4"));
+
+		StringBuilder report = new StringBuilder();
+		DiffStatistics diffStatistics = new DiffStatistics();
+		instanceMatcher.reportUnmatchedInstances(DiffReportSink.combine(report::append, diffStatistics));
+		assertThat(report.toString(), containsString("'R-HSA-2' (DB_ID 200) is only in database1"));
+		assertThat(report.toString(), containsString("'R-HSA-5' (DB_ID 1500) is only in database2"));
+		assertThat(report.toString(), containsString(
+			"'R-HSA-4' (DB_ID 1401) in database2 was not matched: the key is shared by more than one instance"
+		));
+		// The unmatched instances of each database and every instance with the ambiguous key
+		assertThat(diffStatistics.getDifferingInstanceCount(), is(equalTo(5L)));
+		assertThat(diffStatistics.getDifferenceCountsByAttribute(), hasEntry("unpaired instance", 5L));
+		assertThat(
+			diffStatistics.getTopInstances().stream()
+				.map(DiffStatistics.InstanceDifferenceCount::getDbId)
+				.collect(Collectors.toList()),
+			containsInAnyOrder(200L, 1500L, 400L, 1400L, 1401L)
+		);
+	}
+
+	@Test
+	public void keyQueryFollowsAttributePathsThroughOriginTables() {
+		SchemaClass referenceDatabaseClass = createMockSchemaClass("ReferenceDatabase");
+		SchemaAttribute nameAttribute = createMockAttribute(name, String.class, referenceDatabaseClass, true);
+		addAttributes(referenceDatabaseClass, nameAttribute);
+
+		SchemaClass referenceEntityClass = createMockSchemaClass("ReferenceEntity");
+		SchemaAttribute referenceDatabaseAttribute = createMockAttribute(
+			referenceDatabase, GKInstance.class, referenceEntityClass, false
+		);
+		Mockito.when(referenceDatabaseAttribute.getAllowedClasses())
+			.thenReturn(Collections.singletonList(referenceDatabaseClass));
+		SchemaAttribute identifierAttribute = createMockAttribute(identifier, String.class, referenceEntityClass, false);
+		addAttributes(referenceEntityClass, referenceDatabaseAttribute, identifierAttribute);
+
+		Schema schema = Mockito.mock(Schema.class);
+		Mockito.when(schema.getClassByName("ReferenceEntity")).thenReturn(referenceEntityClass);
+
+		assertThat(
+			NaturalKey.REFERENCE_DATABASE_IDENTIFIER.getQuery(schema),
+			is(equalTo("SELECT t0.DB_ID, t1.name, t0.identifier FROM ReferenceEntity t0" +
+				" JOIN ReferenceDatabase_2_name t1 ON t1.DB_ID = t0.referenceDatabase AND t1.name_rank = 0" +
+				" WHERE t1.name IS NOT NULL AND t0.identifier IS NOT NULL"))
+		);
+	}
+
+	@Test
+	public void keyIsReadThroughLoadedAttributeValues() throws Exception {
+		GKInstance stableIdentifierInstance = Mockito.mock(GKInstance.class);
+		Mockito.when(stableIdentifierInstance.getAttributeValue(identifier)).thenReturn("R-HSA-1");
+		GKInstance instance = Mockito.mock(GKInstance.class);
+		Mockito.when(instance.getAttributeValue(stableIdentifier)).thenReturn(stableIdentifierInstance);
+
+		assertThat(NaturalKey.STABLE_IDENTIFIER.getKey(instance), is(equalTo("R-HSA-1")));
+		assertThat(NaturalKey.STABLE_IDENTIFIER.getKey(Mockito.mock(GKInstance.class)), is(nullValue()));
+	}
+
+	private MySQLAdaptor createMockDatabase(String databaseName) throws Exception {
+		SchemaClass schemaClass = createMockSchemaClass("Pathway");
+		MySQLAdaptor database = Mockito.mock(MySQLAdaptor.class);
+		Mockito.when(database.getDBName()).thenReturn(databaseName);
+		Mockito.when(database.fetchInstance(Mockito.anyLong())).thenAnswer(invocation -> {
+			GKInstance instance = Mockito.mock(GKInstance.class);
+			Mockito.when(instance.getDBID()).thenReturn(invocation.getArgument(0));
+			Mockito.when(instance.getSchemClass()).thenReturn(schemaClass);
+
+			return instance;
+		});
+
+		return database;
+	}
+
+	private SchemaClass createMockSchemaClass(String schemaClassName) {
+		SchemaClass schemaClass = Mockito.mock(SchemaClass.class);
+		Mockito.when(schemaClass.getName()).thenReturn(schemaClassName);
+
+		return schemaClass;
+	}
+
+	private SchemaAttribute createMockAttribute(
+		String attributeName, Class<?> attributeType, SchemaClass origin, boolean multiple
+	) {
+		SchemaAttribute attribute = MockAttribute.createMockAttribute(attributeName, attributeType);
+		Mockito.when(attribute.getOrigin()).thenReturn(origin);
+		Mockito.when(attribute.isMultiple()).thenReturn(multiple);
+		Mockito.when(attribute.isInstanceTypeAttribute()).thenReturn(attributeType.equals(GKInstance.class));
+
+		return attribute;
+	}
+
+	private void addAttributes(SchemaClass schemaClass, SchemaAttribute... attributes) {
+		for (SchemaAttribute attribute : Arrays.asList(attributes)) {
+			try {
+				Mockito.when(schemaClass.isValidAttribute(attribute.getName())).thenReturn(true);
+				Mockito.when(schemaClass.getAttribute(attribute.getName())).thenReturn(attribute);
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package org.reactome.util.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.gk.model.ReactomeJavaConstants.hasComponent;
+import static org.gk.model.ReactomeJavaConstants.hasEvent;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.gk.model.GKInstance;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.Schema;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class ReferrerIndexTest {
+	private static final long REFERRED_DB_ID = 1L;
+
+	@Test
+	public void referrersAreLookedUpByAttributeAndReferredDbId() {
+		ReferrerIndex.Builder builder = new ReferrerIndex.Builder(Mockito.mock(MySQLAdaptor.class));
+		builder.addReference(hasComponent, 30L, REFERRED_DB_ID);
+		builder.addReference(hasComponent, 10L, REFERRED_DB_ID);
+		builder.addReference(hasComponent, 10L, REFERRED_DB_ID);
+		builder.addReference(hasComponent, 20L, 2L);
+		builder.addReference(hasEvent, 40L, REFERRED_DB_ID);
+		ReferrerIndex referrerIndex = builder.build();
+
+		assertThat(toList(referrerIndex.getReferrerDbIds(REFERRED_DB_ID, hasComponent)), contains(30L, 10L));
+		assertThat(toList(referrerIndex.getReferrerDbIds(2L, hasComponent)), contains(20L));
+		assertThat(toList(referrerIndex.getReferrerDbIds(REFERRED_DB_ID, hasEvent)), contains(40L));
+		assertThat(referrerIndex.getReferrerDbIds(3L, hasComponent).length, is(equalTo(0)));
+		assertThat(referrerIndex.getReferrerDbIds(REFERRED_DB_ID, "unknownAttribute").length, is(equalTo(0)));
+		assertThat(referrerIndex.getReferenceCount(), is(equalTo(5L)));
+	}
+
+	@Test
+	public void multiValuedAttributeReferencesAreReadFromItsOriginTable() throws Exception {
+		SchemaClass complexClass = Mockito.mock(SchemaClass.class);
+		Mockito.when(complexClass.getName()).thenReturn("Complex");
+		SchemaAttribute hasComponentAttribute = MockAttribute.createMockAttribute(hasComponent, GKInstance.class);
+		Mockito.when(hasComponentAttribute.isInstanceTypeAttribute()).thenReturn(true);
+		Mockito.when(hasComponentAttribute.isMultiple()).thenReturn(true);
+		Mockito.when(hasComponentAttribute.getOrigin()).thenReturn(complexClass);
+		Mockito.when(complexClass.getAttributes()).thenReturn(Collections.singletonList(hasComponentAttribute));
+
+		Schema schema = Mockito.mock(Schema.class);
+		Mockito.when(schema.getClasses()).thenReturn(Collections.singletonList(complexClass));
+
+		ResultSet resultSet = Mockito.mock(ResultSet.class);
+		Mockito.when(resultSet.next()).thenReturn(true, false);
+		Mockito.when(resultSet.getLong(1)).thenReturn(10L);
+		Mockito.when(resultSet.getLong(2)).thenReturn(REFERRED_DB_ID);
+		Statement statement = Mockito.mock(Statement.class);
+		Mockito.when(statement.executeQuery(Mockito.anyString())).thenReturn(resultSet);
+		Connection connection = Mockito.mock(Connection.class);
+		Mockito.when(connection.createStatement(Mockito.anyInt(), Mockito.anyInt())).thenReturn(statement);
+
+		MySQLAdaptor database = Mockito.mock(MySQLAdaptor.class);
+		Mockito.when(database.getSchema()).thenReturn(schema);
+		Mockito.when(database.getConnection()).thenReturn(connection);
+
+		ReferrerIndex referrerIndex = ReferrerIndex.build(database);
+
+		Mockito.verify(statement).executeQuery(
+			"SELECT DB_ID, hasComponent FROM Complex_2_hasComponent WHERE hasComponent IS NOT NULL"
+		);
+		assertThat(toList(referrerIndex.getReferrerDbIds(REFERRED_DB_ID, hasComponent)), contains(10L));
+	}
+
+	@Test
+	public void comparerUsesRegisteredReferrerIndexInsteadOfQueryingReferrers() throws Exception {
+		MockInstance mockInstance1 = createMockInstanceWithReverseAttribute();
+		MockInstance mockInstance2 = createMockInstanceWithReverseAttribute();
+		GKInstance referrer = MockInstance.createMockInstance("ReferrerIndexTestComplex").getGKInstance();
+		Mockito.when(mockInstance1.adaptor.fetchInstance(10L)).thenReturn(referrer);
+
+		ReferrerIndex.Builder builder1 = new ReferrerIndex.Builder(mockInstance1.adaptor);
+		builder1.addReference(hasComponent, 10L, REFERRED_DB_ID);
+		ReferrerIndex.Builder builder2 = new ReferrerIndex.Builder(mockInstance2.adaptor);
+
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+		configuration.setCheckReferrers(true);
+		configuration.addReferrerIndex(builder1.build());
+		configuration.addReferrerIndex(builder2.build());
+
+		int differenceCount = DBObjectComparer.compareInstances(
+			mockInstance1.getGKInstance(), mockInstance2.getGKInstance(), new StringBuilder()::append, configuration
+		);
+
+		assertThat(differenceCount, is(equalTo(1)));
+		Mockito.verify(mockInstance1.getGKInstance(), Mockito.never()).getReferers(hasComponent);
+		Mockito.verify(mockInstance2.getGKInstance(), Mockito.never()).getReferers(hasComponent);
+	}
+
+	private MockInstance createMockInstanceWithReverseAttribute() throws Exception {
+		MockInstance mockInstance = MockInstance.createMockInstance("ReferrerIndexTestComponent");
+		mockInstance.addMockReverseAttribute(hasComponent, GKInstance.class, Collections.emptyList());
+		Mockito.when(mockInstance.getGKInstance().getDBID()).thenReturn(REFERRED_DB_ID);
+
+		return mockInstance;
+	}
+
+	private static List<Long> toList(long[] values) {
+		return Arrays.stream(values).boxed().collect(Collectors.toList());
+	}
+}
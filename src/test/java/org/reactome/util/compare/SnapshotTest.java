@@ -0,0 +1,197 @@
+package org.reactome.util.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.gk.model.ReactomeJavaConstants.hasComponent;
+import static org.gk.model.ReactomeJavaConstants.name;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.gk.model.GKInstance;
+import org.gk.schema.GKSchemaAttribute;
+import org.gk.schema.GKSchemaClass;
+import org.gk.schema.SchemaAttribute;
+import org.junit.jupiter.api.Test;
+
+public class SnapshotTest {
+	private static final String DISPLAY_NAME = "_displayName";
+
+	@Test
+	public void writtenInstancesAreReadBackWithTheirAttributeValues() throws Exception {
+		GKSchemaClass schemaClass = createSchemaClass("SnapshotTestComplex");
+		GKInstance component = createInstance(schemaClass, 1L, "Component");
+		GKInstance complex = createInstance(schemaClass, 2L, "Complex", component);
+
+		Path snapshotFile = Files.createTempFile("snapshot", ".snapshot");
+		try {
+			try (SnapshotWriter snapshotWriter = new SnapshotWriter(snapshotFile, null)) {
+				snapshotWriter.write(component);
+				snapshotWriter.write(complex);
+			}
+
+			try (Snapshot snapshot = Snapshot.open(snapshotFile)) {
+				assertThat(snapshot.size(), is(equalTo(2)));
+				assertThat(snapshot.getInstance(3L), is(nullValue()));
+
+				GKInstance snapshotComplex = snapshot.getInstance(2L);
+				assertThat(snapshotComplex, is(sameInstance(snapshot.getInstance(2L))));
+				assertThat(snapshotComplex.getDisplayName(), is(equalTo("Complex")));
+				assertThat(snapshotComplex.getSchemClass().getName(), is(equalTo("SnapshotTestComplex")));
+				@SuppressWarnings("unchecked")
+				List<Object> names = snapshotComplex.getAttributeValuesList(name);
+				assertThat(names, contains("Complex", "Complex alias"));
+				assertThat(snapshotComplex.getAttributeValue(hasComponent), is(sameInstance(snapshot.getInstance(1L))));
+			}
+		} finally {
+			Files.delete(snapshotFile);
+		}
+	}
+
+	@Test
+	public void snapshotInstancesCanBeComparedWithLiveInstances() throws Exception {
+		GKSchemaClass schemaClass = createSchemaClass("SnapshotTestEntity");
+		GKInstance component = createInstance(schemaClass, 1L, "Component");
+		GKInstance complex = createInstance(schemaClass, 2L, "Complex", component);
+
+		Path snapshotFile = Files.createTempFile("snapshot", ".snapshot");
+		try {
+			try (SnapshotWriter snapshotWriter = new SnapshotWriter(snapshotFile, null)) {
+				snapshotWriter.write(component);
+				snapshotWriter.write(complex);
+			}
+
+			try (Snapshot snapshot = Snapshot.open(snapshotFile)) {
+				assertThat(DBObjectComparer.compareInstances(snapshot.getInstance(2L), complex, new StringBuilder()),
+					is(equalTo(0)));
+
+				component.addAttributeValueNoCheck(name, "Renamed component");
+				StringBuilder report = new StringBuilder();
+				assertThat(DBObjectComparer.compareInstances(snapshot.getInstance(2L), complex, report),
+					is(equalTo(1)));
+				assertThat(report.toString(), containsString(snapshotFile.getFileName().toString()));
+			}
+		} finally {
+			Files.delete(snapshotFile);
+		}
+	}
+
+	@Test
+	public void comparisonsCheckingReferrersOfSnapshotInstancesAreRejected() throws Exception {
+		GKSchemaClass schemaClass = createSchemaClass("SnapshotTestReferredEntity");
+		GKInstance instance = createInstance(schemaClass, 1L, "Entity");
+
+		Path snapshotFile = Files.createTempFile("snapshot", ".snapshot");
+		try {
+			try (SnapshotWriter snapshotWriter = new SnapshotWriter(snapshotFile, null)) {
+				snapshotWriter.write(instance);
+			}
+
+			try (Snapshot snapshot = Snapshot.open(snapshotFile)) {
+				ComparisonConfiguration configuration = new ComparisonConfiguration();
+				configuration.setCheckReferrers(true);
+				StringBuilder report = new StringBuilder();
+
+				IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+					() -> DBObjectComparer.compareInstances(
+						instance, snapshot.getInstance(1L), report::append, configuration
+					)
+				);
+				assertThat(exception.getMessage(), containsString("holds no referrers"));
+				assertThat(report.toString(), is(equalTo("")));
+			}
+		} finally {
+			Files.delete(snapshotFile);
+		}
+	}
+
+	@Test
+	public void referencesToInstancesNotInTheSnapshotAreComparedByIdentity() throws Exception {
+		GKSchemaClass complexClass = createSchemaClass("SnapshotTestUnexportedComplex");
+		GKSchemaClass componentClass = createSchemaClass("SnapshotTestUnexportedComponent");
+		GKInstance component1 = createInstance(componentClass, 1L, "Component 1");
+		GKInstance component2 = createInstance(componentClass, 2L, "Component 2");
+		GKInstance complex = createInstance(complexClass, 3L, "Complex", component1, component2);
+
+		Path snapshotFile = Files.createTempFile("snapshot", ".snapshot");
+		try {
+			// Only the complex is exported, not its components
+			try (SnapshotWriter snapshotWriter = new SnapshotWriter(snapshotFile, null)) {
+				snapshotWriter.write(complex);
+			}
+
+			try (Snapshot snapshot = Snapshot.open(snapshotFile)) {
+				assertThat(snapshot.getInstance(1L), is(nullValue()));
+
+				GKInstance snapshotComplex = snapshot.getInstance(3L);
+				@SuppressWarnings("unchecked")
+				List<GKInstance> components = snapshotComplex.getAttributeValuesList(hasComponent);
+				assertThat(components.size(), is(equalTo(2)));
+				GKInstance placeholder = components.get(0);
+				assertThat(placeholder.getDBID(), is(equalTo(1L)));
+				assertThat(placeholder.getSchemClass().getName(), is(equalTo("SnapshotTestUnexportedComponent")));
+				assertThat(placeholder.getDisplayName(), is(equalTo("Component 1")));
+				assertThat(placeholder.getAttributeValuesList(name).isEmpty(), is(true));
+
+				assertThat(DBObjectComparer.compareInstances(snapshotComplex, complex, new StringBuilder()),
+					is(equalTo(0)));
+
+				// A renamed component is the same instance, but a different one is a difference
+				component1.setAttributeValueNoCheck(name, "Renamed component");
+				assertThat(DBObjectComparer.compareInstances(snapshotComplex, complex, new StringBuilder()),
+					is(equalTo(0)));
+				GKInstance changedComplex = createInstance(complexClass, 3L, "Complex",
+					createInstance(componentClass, 4L, "Component 1"), component2);
+				assertThat(DBObjectComparer.compareInstances(snapshotComplex, changedComplex, new StringBuilder()),
+					is(equalTo(1)));
+			}
+		} finally {
+			Files.delete(snapshotFile);
+		}
+	}
+
+	private GKSchemaClass createSchemaClass(String schemaClassName) {
+		GKSchemaClass schemaClass = new GKSchemaClass(schemaClassName);
+		schemaClass.setName(schemaClassName);
+		schemaClass.addAttribute(createAttribute(schemaClass, DISPLAY_NAME, String.class, false));
+		schemaClass.addAttribute(createAttribute(schemaClass, name, String.class, true));
+		schemaClass.addAttribute(createAttribute(schemaClass, hasComponent, GKInstance.class, true));
+
+		return schemaClass;
+	}
+
+	private SchemaAttribute createAttribute(
+		GKSchemaClass schemaClass, String attributeName, Class<?> attributeType, boolean multiple
+	) {
+		GKSchemaAttribute attribute = new GKSchemaAttribute(attributeName);
+		attribute.setName(attributeName);
+		attribute.setType(attributeType);
+		attribute.setMultiple(multiple);
+		attribute.setOrigin(schemaClass);
+		attribute.addSchemaClass(schemaClass);
+
+		return attribute;
+	}
+
+	private GKInstance createInstance(
+		GKSchemaClass schemaClass, long dbId, String displayName, GKInstance... components
+	) {
+		GKInstance instance = new GKInstance(schemaClass, dbId, null);
+		instance.setIsInflated(true);
+		instance.setAttributeValueNoCheck(DISPLAY_NAME, displayName);
+		instance.addAttributeValueNoCheck(name, displayName);
+		instance.addAttributeValueNoCheck(name, displayName + " alias");
+		for (GKInstance component : Arrays.asList(components)) {
+			instance.addAttributeValueNoCheck(hasComponent, component);
+		}
+
+		return instance;
+	}
+}
@@ -0,0 +1,138 @@
+package org.reactome.util.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.gk.model.ReactomeJavaConstants.GO_CellularComponent;
+import static org.gk.model.ReactomeJavaConstants.accession;
+
+import java.io.IOException;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import org.gk.model.GKInstance;
+import org.junit.jupiter.api.Test;
+
+public class StreamingDiffReportWriterTest {
+	private static final String DETAIL_LINE = "Mismatch" + System.lineSeparator();
+
+	@Test
+	public void reportWithDifferencesIsWritten() throws IOException {
+		StringWriter stringWriter = new StringWriter();
+
+		try (StreamingDiffReportWriter reportWriter = new StreamingDiffReportWriter(stringWriter)) {
+			reportWriter.beginInstanceComparison(null, null);
+			reportWriter.append(DETAIL_LINE);
+			reportWriter.endInstanceComparison(null, null, 1);
+		}
+
+		assertThat(stringWriter.toString(), containsString("1 difference(s)"));
+		assertThat(stringWriter.toString(), containsString(DETAIL_LINE));
+	}
+
+	@Test
+	public void reportWithoutDifferencesIsDiscarded() throws IOException {
+		StringWriter stringWriter = new StringWriter();
+
+		try (StreamingDiffReportWriter reportWriter = new StreamingDiffReportWriter(stringWriter)) {
+			reportWriter.beginInstanceComparison(null, null);
+			reportWriter.append("Recursing on instanceOf attribute..." + System.lineSeparator());
+			reportWriter.endInstanceComparison(null, null, 0);
+		}
+
+		assertThat(stringWriter.toString(), is(equalTo("")));
+	}
+
+	@Test
+	public void differencesBeyondMaximumPerInstanceAreOmitted() throws IOException {
+		final int maxDetailsPerInstance = 2;
+		final int detailCount = 5;
+		StringWriter stringWriter = new StringWriter();
+
+		try (StreamingDiffReportWriter reportWriter =
+				new StreamingDiffReportWriter(stringWriter, maxDetailsPerInstance, 1)) {
+			reportWriter.beginInstanceComparison(null, null);
+			for (int i = 0; i < detailCount; i++) {
+				// Breadcrumbs leading up to a difference do not count towards the maximum
+				reportWriter.append("Recursing on hasEvent attribute..." + System.lineSeparator());
+				reportWriter.append("Recursing on input attribute..." + System.lineSeparator());
+				reportWriter.append("Detail " + i + System.lineSeparator());
+				reportWriter.recordDifference(null, null, "name", false, 2, 1);
+			}
+			reportWriter.endInstanceComparison(null, null, detailCount);
+		}
+
+		String report = stringWriter.toString();
+		assertThat(report, containsString("Detail 0"));
+		assertThat(report, containsString("Detail 1"));
+		assertThat(report, not(containsString("Detail 2")));
+		assertThat(report, containsString("3 further difference(s) omitted"));
+	}
+
+	@Test
+	public void comparisonsAfterAFailedComparisonAreReported() throws Exception {
+		StringWriter stringWriter = new StringWriter();
+		AtomicBoolean failNextAppend = new AtomicBoolean(true);
+		DiffReportSink failingReportSink = reportText -> {
+			if (failNextAppend.getAndSet(false)) {
+				throw new IllegalStateException("Report sink failure");
+			}
+		};
+
+		try (StreamingDiffReportWriter reportWriter = new StreamingDiffReportWriter(stringWriter)) {
+			DiffReportSink reportSink = DiffReportSink.combine(reportWriter, failingReportSink);
+			assertThrows(IllegalStateException.class, () -> DBObjectComparer.compareInstances(
+				createMockGOCellularComponent("0000001"), createMockGOCellularComponent("0000002"), reportSink,
+				new ComparisonConfiguration()
+			));
+
+			DBObjectComparer.compareInstances(
+				createMockGOCellularComponent("0000003"), createMockGOCellularComponent("0000004"), reportSink,
+				new ComparisonConfiguration()
+			);
+		}
+
+		assertThat(stringWriter.toString(), containsString("Mismatch on attribute 'accession'"));
+	}
+
+	@Test
+	public void comparerReportIsWrittenToGzipFile() throws Exception {
+		Path reportFile = Files.createTempFile("diff_report", ".txt.gz");
+		try {
+			int differenceCount;
+			try (StreamingDiffReportWriter reportWriter = StreamingDiffReportWriter.toFile(reportFile, true, 10)) {
+				differenceCount = DBObjectComparer.compareInstances(
+					createMockGOCellularComponent("0000001"), createMockGOCellularComponent("0000002"), reportWriter
+				);
+			}
+
+			String report;
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(Files.newInputStream(reportFile)), StandardCharsets.UTF_8))) {
+				report = reader.lines().collect(Collectors.joining(System.lineSeparator()));
+			}
+
+			assertThat(differenceCount, is(equalTo(1)));
+			assertThat(report, containsString("Mismatch on attribute 'accession'"));
+		} finally {
+			Files.delete(reportFile);
+		}
+	}
+
+	private GKInstance createMockGOCellularComponent(String accessionValue) throws Exception {
+		MockInstance mockInstance = MockInstance.createMockInstance(GO_CellularComponent);
+		mockInstance.addMockAttribute(accession, String.class, Collections.singletonList(accessionValue));
+
+		return mockInstance.getGKInstance();
+	}
+}
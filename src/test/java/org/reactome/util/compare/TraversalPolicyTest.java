@@ -0,0 +1,125 @@
+package org.reactome.util.compare;
+
+import static org.gk.model.ReactomeJavaConstants.hasComponent;
+import static org.gk.model.ReactomeJavaConstants.name;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.gk.model.GKInstance;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class TraversalPolicyTest {
+	private static final String TEST_CLASS_NAME = "TraversalPolicyTestEntity";
+
+	@Test
+	public void identityOnlyAttributesAreComparedByDbIdWithoutRecursing() throws Exception {
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+		TraversalPolicy traversalPolicy = new TraversalPolicy();
+		traversalPolicy.addIdentityOnlyAttribute(hasComponent);
+		configuration.setTraversalPolicy(traversalPolicy);
+
+		// Same component with a changed name is not recursed into
+		GKInstance instance1 = createMockInstance(10L, "complex", createMockInstance(1L, "before"));
+		GKInstance instance2 = createMockInstance(10L, "complex", createMockInstance(1L, "after"));
+		assertThat(compare(instance1, instance2, configuration, new StringBuilder()), is(equalTo(0)));
+
+		// A different component with the same name is a difference
+		GKInstance instance3 = createMockInstance(10L, "complex", createMockInstance(2L, "before"));
+		StringBuilder report = new StringBuilder();
+		assertThat(compare(instance1, instance3, configuration, report), is(equalTo(1)));
+		assertThat(report.toString(), containsString("Mismatch on attribute 'hasComponent'"));
+	}
+
+	@Test
+	public void attributeAndSchemaClassDepthLimitsStopRecursion() throws Exception {
+		GKInstance instance1 = createMockInstance(10L, "complex", createMockInstance(1L, "before"));
+		GKInstance instance2 = createMockInstance(10L, "complex", createMockInstance(1L, "after"));
+
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+		assertThat(compare(instance1, instance2, configuration, new StringBuilder()), is(equalTo(1)));
+
+		TraversalPolicy attributePolicy = new TraversalPolicy();
+		attributePolicy.setMaxDepth(hasComponent, 0);
+		configuration.setTraversalPolicy(attributePolicy);
+		assertThat(compare(instance1, instance2, configuration, new StringBuilder()), is(equalTo(0)));
+
+		TraversalPolicy schemaClassPolicy = new TraversalPolicy();
+		schemaClassPolicy.setMaxDepthForSchemaClass(TEST_CLASS_NAME, 0);
+		configuration.setTraversalPolicy(schemaClassPolicy);
+		assertThat(compare(instance1, instance2, configuration, new StringBuilder()), is(equalTo(0)));
+	}
+
+	@Test
+	public void instanceValuesAreComparedByIdentityOnceTheWorkBudgetIsUsedUp() throws Exception {
+		GKInstance instance1 = createMockInstance(10L, "complex",
+			createMockInstance(1L, "first before"), createMockInstance(2L, "second before")
+		);
+		GKInstance instance2 = createMockInstance(10L, "complex",
+			createMockInstance(1L, "first after"), createMockInstance(2L, "second after")
+		);
+
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+		TraversalPolicy traversalPolicy = new TraversalPolicy();
+		traversalPolicy.setWorkBudget(1L);
+		configuration.setTraversalPolicy(traversalPolicy);
+
+		// Only the first component is recursed into; the second has the same DB_ID in both instances
+		assertThat(compare(instance1, instance2, configuration, new StringBuilder()), is(equalTo(1)));
+		assertThat(traversalPolicy.getInstanceComparisonCount(), is(equalTo(1L)));
+
+		traversalPolicy.resetInstanceComparisonCount();
+		traversalPolicy.setWorkBudget(TraversalPolicy.UNLIMITED_WORK_BUDGET);
+		assertThat(compare(instance1, instance2, configuration, new StringBuilder()), is(equalTo(2)));
+	}
+
+	@Test
+	public void fingerprintsDoNotChangeResultsOnceTheWorkBudgetIsUsedUp() throws Exception {
+		// The components are equal in content, so the instances' fingerprints are equal, but their DB_IDs differ
+		GKInstance instance1 = createMockInstance(10L, "complex",
+			createMockInstance(1L, "first"), createMockInstance(2L, "second")
+		);
+		GKInstance instance2 = createMockInstance(10L, "complex",
+			createMockInstance(1L, "first"), createMockInstance(3L, "second")
+		);
+
+		ComparisonConfiguration configuration = new ComparisonConfiguration();
+		TraversalPolicy traversalPolicy = new TraversalPolicy();
+		traversalPolicy.setWorkBudget(1L);
+		configuration.setTraversalPolicy(traversalPolicy);
+
+		int differenceCount = compare(instance1, instance2, configuration, new StringBuilder());
+		assertThat(differenceCount, is(equalTo(1)));
+
+		traversalPolicy.resetInstanceComparisonCount();
+		configuration.setFingerprinting(true);
+		assertThat(compare(instance1, instance2, configuration, new StringBuilder()), is(equalTo(differenceCount)));
+	}
+
+	private int compare(
+		GKInstance instance1, GKInstance instance2, ComparisonConfiguration configuration, StringBuilder report
+	) {
+		return DBObjectComparer.compareInstances(
+			instance1, instance2, new StringBuilderDiffReportSink(report), configuration
+		);
+	}
+
+	private GKInstance createMockInstance(long dbId, String nameValue, GKInstance... components) throws Exception {
+		// All instances of this class have the same attributes, as AttributeProcessor caches them by class name
+		MockInstance mockInstance = MockInstance.createMockInstance(TEST_CLASS_NAME);
+		mockInstance.addMockAttribute(name, String.class, Collections.singletonList(nameValue));
+		mockInstance.addMockAttribute(hasComponent, GKInstance.class, Arrays.asList(components));
+		Mockito.when(mockInstance.schemaClass.isa(TEST_CLASS_NAME)).thenReturn(true);
+
+		GKInstance instance = mockInstance.getGKInstance();
+		Mockito.when(instance.getDBID()).thenReturn(dbId);
+		Mockito.when(instance.getDisplayName()).thenReturn(String.valueOf(dbId));
+		Mockito.when(instance.toString()).thenReturn(String.valueOf(dbId));
+
+		return instance;
+	}
+}
@@ -0,0 +1,43 @@
+package org.reactome.util.ensembl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+public class EnsemblBackoffGateTest {
+
+	@Test
+	public void retryAfterWhilePausedOnlyExtendsThePause() {
+		AtomicLong clock = new AtomicLong(0L);
+		EnsemblBackoffGate gate = new EnsemblBackoffGate(clock::get);
+
+		assertThat(gate.pause(Duration.ofSeconds(2)), is(equalTo(Duration.ofSeconds(2))));
+		// Other workers' responses to requests sent before the pause do not multiply it
+		clock.addAndGet(Duration.ofSeconds(1).toNanos());
+		assertThat(gate.pause(Duration.ofSeconds(2)), is(equalTo(Duration.ofSeconds(2))));
+		assertThat(gate.getMultiplier(), is(equalTo(1)));
+
+		clock.addAndGet(Duration.ofSeconds(2).toNanos());
+		assertThat(gate.getRemainingPause(), is(equalTo(Duration.ZERO)));
+	}
+
+	@Test
+	public void successivePausesGrowUntilASuccessfulResponse() {
+		AtomicLong clock = new AtomicLong(0L);
+		EnsemblBackoffGate gate = new EnsemblBackoffGate(clock::get);
+
+		gate.pause(Duration.ofSeconds(1));
+		clock.addAndGet(Duration.ofSeconds(1).toNanos());
+		assertThat(gate.pause(Duration.ofSeconds(1)), is(equalTo(Duration.ofSeconds(2))));
+		clock.addAndGet(Duration.ofSeconds(2).toNanos());
+
+		gate.recordSuccess();
+		assertThat(gate.pause(Duration.ofSeconds(1)), is(equalTo(Duration.ofSeconds(1))));
+		assertThat(gate.getMultiplier(), is(equalTo(1)));
+	}
+}
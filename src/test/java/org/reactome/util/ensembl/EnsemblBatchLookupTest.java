@@ -0,0 +1,143 @@
+package org.reactome.util.ensembl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class EnsemblBatchLookupTest {
+	private static final URI BASE_URI = URI.create("http://localhost");
+
+	@Test
+	public void rejectedBatchesAreSplitAndOnlyTheirIdentifiersAreRetried() throws Exception {
+		CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
+		Mockito.when(httpClient.execute(Mockito.any(HttpUriRequest.class))).thenReturn(
+			MockHttpResponse.createMockHttpResponse(HttpStatus.SC_BAD_REQUEST, "{\"error\":\"Invalid ID\"}"),
+			MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK, "{\"ENSG1\":{\"id\":\"ENSG1\"},\"ENSG2\":null}"),
+			MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK, "{\"ENSG3\":{\"id\":\"ENSG3\"}}")
+		);
+
+		EnsemblBatchLookup batchLookup = new EnsemblBatchLookup(
+			new EnsemblRestClient(BASE_URI, httpClient, new EnsemblRateLimiter()), "lookup/id",
+			Collections.emptyMap()
+		);
+		Map<String, JsonValue> idToResult = batchLookup.lookup(Arrays.asList("ENSG1", "ENSG2", "ENSG3", "ENSG1"));
+
+		assertThat(idToResult.keySet(), contains("ENSG1", "ENSG2", "ENSG3"));
+		assertThat(((JsonObject) idToResult.get("ENSG3")).getString("id"), is(equalTo("ENSG3")));
+		assertThat(idToResult.get("ENSG2"), is(equalTo(JsonValue.NULL)));
+		assertThat(getRequestBodies(httpClient, 3), contains(
+			"{\"ids\":[\"ENSG1\",\"ENSG2\",\"ENSG3\"]}", "{\"ids\":[\"ENSG1\"]}", "{\"ids\":[\"ENSG2\",\"ENSG3\"]}"
+		));
+	}
+
+	@Test
+	public void batchesFailingOnTheServiceAreNotSplit() throws Exception {
+		CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
+		Mockito.when(httpClient.execute(Mockito.any(HttpUriRequest.class))).thenReturn(
+			MockHttpResponse.createMockHttpResponse(HttpStatus.SC_INTERNAL_SERVER_ERROR, null),
+			MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK, "{\"ENSG3\":{\"id\":\"ENSG3\"}}")
+		);
+
+		EnsemblBatchLookup batchLookup = new EnsemblBatchLookup(
+			new EnsemblRestClient(BASE_URI, httpClient, new EnsemblRateLimiter()), "lookup/id",
+			Collections.emptyMap()
+		);
+		batchLookup.setBatchSize(2);
+		Map<String, JsonValue> idToResult = batchLookup.lookup(Arrays.asList("ENSG1", "ENSG2", "ENSG3"));
+
+		assertThat(idToResult.keySet(), contains("ENSG3"));
+		assertThat(getRequestBodies(httpClient, 2), contains("{\"ids\":[\"ENSG1\",\"ENSG2\"]}", "{\"ids\":[\"ENSG3\"]}"));
+	}
+
+	@Test
+	public void submittedIdentifiersAreCoalescedIntoBatches() throws Exception {
+		CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
+		Mockito.when(httpClient.execute(Mockito.any(HttpUriRequest.class))).thenReturn(
+			MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK, "{\"ENSG1\":{},\"ENSG2\":{}}"),
+			MockHttpResponse.createMockHttpResponse(HttpStatus.SC_BAD_REQUEST, "{\"error\":\"Invalid ID\"}")
+		);
+
+		EnsemblBatchLookup batchLookup = new EnsemblBatchLookup(
+			new EnsemblRestClient(BASE_URI, httpClient, new EnsemblRateLimiter()), "lookup/id",
+			Collections.emptyMap()
+		);
+		batchLookup.setBatchSize(2);
+
+		CompletableFuture<JsonValue> result1 = batchLookup.submit("ENSG1");
+		assertThat(result1.isDone(), is(false));
+		CompletableFuture<JsonValue> result2 = batchLookup.submit("ENSG2");
+		assertThat(result1.isDone() && result2.isDone(), is(true));
+
+		CompletableFuture<JsonValue> result3 = batchLookup.submit("BAD");
+		batchLookup.flush();
+		assertThat(result3.isCompletedExceptionally(), is(true));
+		assertThat(getRequestBodies(httpClient, 2), contains("{\"ids\":[\"ENSG1\",\"ENSG2\"]}", "{\"ids\":[\"BAD\"]}"));
+	}
+
+	@Test
+	public void cachedRecordsAreNotSentAgain() throws Exception {
+		Path cacheDirectory = Files.createTempDirectory("ensembl_cache");
+		CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
+		Mockito.when(httpClient.execute(Mockito.any(HttpUriRequest.class))).thenReturn(
+			MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK, "{\"ENSG1\":{\"id\":\"ENSG1\"}}"),
+			MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK, "{\"ENSG3\":{\"id\":\"ENSG3\"}}")
+		);
+
+		try (
+			EnsemblResponseCache cache = EnsemblResponseCache.open(cacheDirectory, 113);
+			EnsemblRestClient client = new EnsemblRestClient(BASE_URI, httpClient, new EnsemblRateLimiter())
+		) {
+			client.setResponseCache(cache);
+			EnsemblBatchLookup batchLookup = new EnsemblBatchLookup(client, "lookup/id", Collections.emptyMap());
+
+			batchLookup.lookup(Arrays.asList("ENSG1", "ENSG2"));
+			Map<String, JsonValue> idToResult = batchLookup.lookup(Arrays.asList("ENSG2", "ENSG3", "ENSG1"));
+
+			assertThat(idToResult.keySet(), contains("ENSG2", "ENSG3", "ENSG1"));
+			assertThat(((JsonObject) idToResult.get("ENSG1")).getString("id"), is(equalTo("ENSG1")));
+			assertThat(idToResult.get("ENSG2"), is(equalTo(JsonValue.NULL)));
+			assertThat(batchLookup.submit("ENSG3").get(), is(equalTo(idToResult.get("ENSG3"))));
+			assertThat(getRequestBodies(httpClient, 2), contains(
+				"{\"ids\":[\"ENSG1\",\"ENSG2\"]}", "{\"ids\":[\"ENSG3\"]}"
+			));
+		} finally {
+			Files.deleteIfExists(cacheDirectory.resolve(EnsemblResponseCache.DATA_FILE_NAME));
+			Files.deleteIfExists(cacheDirectory.resolve(EnsemblResponseCache.INDEX_FILE_NAME));
+			Files.deleteIfExists(cacheDirectory);
+		}
+	}
+
+	private List<String> getRequestBodies(CloseableHttpClient httpClient, int requestCount) throws Exception {
+		ArgumentCaptor<HttpUriRequest> requestCaptor = ArgumentCaptor.forClass(HttpUriRequest.class);
+		Mockito.verify(httpClient, Mockito.times(requestCount)).execute(requestCaptor.capture());
+
+		return requestCaptor.getAllValues().stream().map(request -> {
+			try {
+				return EntityUtils.toString(((HttpPost) request).getEntity());
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}).collect(Collectors.toList());
+	}
+}
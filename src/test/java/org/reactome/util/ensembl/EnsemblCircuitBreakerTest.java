@@ -0,0 +1,93 @@
+package org.reactome.util.ensembl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.reactome.util.ensembl.EnsemblCircuitBreaker.CircuitOpenException;
+import org.reactome.util.ensembl.EnsemblCircuitBreaker.State;
+import org.reactome.util.ensembl.EnsemblServiceResponseProcessor.EnsemblServiceResult;
+
+public class EnsemblCircuitBreakerTest {
+	private static final String LOOKUP_ENDPOINT = "lookup/id";
+	private static final Duration OPEN_DURATION = Duration.ofSeconds(30);
+
+	@Test
+	public void circuitOpensOnFailuresAndClosesAfterASuccessfulProbe() throws Exception {
+		AtomicLong clock = new AtomicLong(0L);
+		EnsemblCircuitBreaker circuitBreaker = new EnsemblCircuitBreaker(4, 4, 0.5, OPEN_DURATION, clock::get);
+
+		circuitBreaker.recordResult(LOOKUP_ENDPOINT, createResult(HttpStatus.SC_OK));
+		circuitBreaker.recordResult(LOOKUP_ENDPOINT, createResult(HttpStatus.SC_NOT_FOUND));
+		circuitBreaker.recordResult(LOOKUP_ENDPOINT, createResult(HttpStatus.SC_GATEWAY_TIMEOUT));
+		assertThat(circuitBreaker.getState(LOOKUP_ENDPOINT), is(equalTo(State.CLOSED)));
+		circuitBreaker.recordFailure(LOOKUP_ENDPOINT);
+		assertThat(circuitBreaker.getState(LOOKUP_ENDPOINT), is(equalTo(State.OPEN)));
+
+		// Other endpoints have their own circuits
+		circuitBreaker.checkRequestPermitted("xrefs/id");
+		assertThrows(CircuitOpenException.class, () -> circuitBreaker.checkRequestPermitted(LOOKUP_ENDPOINT));
+
+		clock.addAndGet(OPEN_DURATION.toNanos());
+		assertThat(circuitBreaker.getState(LOOKUP_ENDPOINT), is(equalTo(State.HALF_OPEN)));
+		circuitBreaker.checkRequestPermitted(LOOKUP_ENDPOINT);
+		assertThrows(CircuitOpenException.class, () -> circuitBreaker.checkRequestPermitted(LOOKUP_ENDPOINT));
+
+		circuitBreaker.recordResult(LOOKUP_ENDPOINT, createResult(HttpStatus.SC_OK));
+		assertThat(circuitBreaker.getState(LOOKUP_ENDPOINT), is(equalTo(State.CLOSED)));
+		circuitBreaker.checkRequestPermitted(LOOKUP_ENDPOINT);
+	}
+
+	@Test
+	public void failedProbeReopensTheCircuit() throws Exception {
+		AtomicLong clock = new AtomicLong(0L);
+		EnsemblCircuitBreaker circuitBreaker = new EnsemblCircuitBreaker(2, 1, 1.0, OPEN_DURATION, clock::get);
+
+		circuitBreaker.recordResult(LOOKUP_ENDPOINT, createResult(HttpStatus.SC_SERVICE_UNAVAILABLE));
+		clock.addAndGet(OPEN_DURATION.toNanos());
+		circuitBreaker.checkRequestPermitted(LOOKUP_ENDPOINT);
+		circuitBreaker.recordResult(LOOKUP_ENDPOINT, createResult(HttpStatus.SC_INTERNAL_SERVER_ERROR));
+
+		assertThat(circuitBreaker.getState(LOOKUP_ENDPOINT), is(equalTo(State.OPEN)));
+	}
+
+	@Test
+	public void clientFailsFastWhileTheCircuitIsOpen() throws Exception {
+		CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
+		MockHttpResponse serverErrorResponse = MockHttpResponse.createMockHttpResponse(
+			HttpStatus.SC_INTERNAL_SERVER_ERROR, "{\"error\":\"Internal Server Error\"}"
+		);
+		Mockito.when(httpClient.execute(Mockito.any(HttpUriRequest.class))).thenReturn(serverErrorResponse);
+
+		try (EnsemblRestClient client = new EnsemblRestClient(
+			URI.create("http://localhost/ensembl"), httpClient, new EnsemblRateLimiter()
+		)) {
+			client.setCircuitBreaker(new EnsemblCircuitBreaker(1, 1, 1.0, OPEN_DURATION));
+
+			client.get("lookup/id/ENSG1", Collections.emptyMap());
+			CircuitOpenException exception = assertThrows(CircuitOpenException.class,
+				() -> client.get("lookup/id/ENSG2", Collections.emptyMap())
+			);
+
+			assertThat(exception.getEndpoint(), is(equalTo(LOOKUP_ENDPOINT)));
+			Mockito.verify(httpClient, Mockito.times(1)).execute(Mockito.any(HttpUriRequest.class));
+		}
+	}
+
+	private EnsemblServiceResult createResult(int status) {
+		EnsemblServiceResult result = new EnsemblServiceResponseProcessor().new EnsemblServiceResult();
+		result.setStatus(status);
+		return result;
+	}
+}
@@ -0,0 +1,72 @@
+package org.reactome.util.ensembl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.Test;
+import org.reactome.util.ensembl.EnsemblServiceResponseProcessor.EnsemblServiceResult;
+
+public class EnsemblConcurrencyLimiterTest {
+	private static final Duration LATENCY = Duration.ofMillis(500);
+
+	@Test
+	public void limitGrowsWhileInFullUseAndHalvesOnceAfterCongestion() throws Exception {
+		AtomicLong clock = new AtomicLong(0L);
+		EnsemblConcurrencyLimiter limiter = new EnsemblConcurrencyLimiter(new EnsemblRateLimiter(), 2, 1, 10, clock::get);
+
+		// Each round of requests at the limit adds about one to it (5.2 after four rounds from 2)
+		for (int round = 0; round < 4; round++) {
+			int limit = limiter.getLimit();
+			for (int i = 0; i < limit; i++) {
+				limiter.acquire();
+			}
+			for (int i = 0; i < limit; i++) {
+				limiter.release(createResult(HttpStatus.SC_OK), LATENCY);
+			}
+		}
+		assertThat(limiter.getLimit(), is(equalTo(5)));
+
+		clock.addAndGet(LATENCY.toNanos());
+		for (int i = 0; i < 3; i++) {
+			limiter.acquire();
+		}
+		limiter.release(createResult(429), LATENCY);
+		// Responses to requests sent before the decrease do not decrease the limit again
+		limiter.release(createResult(HttpStatus.SC_SERVICE_UNAVAILABLE), LATENCY);
+		assertThat(limiter.getLimit(), is(equalTo(2)));
+
+		clock.addAndGet(LATENCY.toNanos());
+		limiter.releaseAfterFailure();
+		assertThat(limiter.getLimit(), is(equalTo(1)));
+		assertThat(limiter.getInFlight(), is(equalTo(0)));
+	}
+
+	@Test
+	public void waitingAcquirersTakeReleasedPermitsInTurn() {
+		EnsemblConcurrencyLimiter limiter = new EnsemblConcurrencyLimiter(new EnsemblRateLimiter(), 1, 1, 1);
+
+		CompletableFuture<Void> firstPermit = limiter.acquireAsync();
+		CompletableFuture<Void> secondPermit = limiter.acquireAsync();
+		CompletableFuture<Void> thirdPermit = limiter.acquireAsync();
+		assertThat(firstPermit.isDone(), is(true));
+		assertThat(secondPermit.isDone() || thirdPermit.isDone(), is(false));
+
+		// A cancelled acquirer is skipped
+		secondPermit.cancel(false);
+		limiter.releaseUnused();
+		assertThat(thirdPermit.isDone(), is(true));
+		assertThat(limiter.getInFlight(), is(equalTo(1)));
+	}
+
+	private EnsemblServiceResult createResult(int status) {
+		EnsemblServiceResult result = new EnsemblServiceResponseProcessor().new EnsemblServiceResult();
+		result.setStatus(status);
+		return result;
+	}
+}
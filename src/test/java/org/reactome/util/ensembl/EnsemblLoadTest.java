@@ -0,0 +1,173 @@
+package org.reactome.util.ensembl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.json.JsonValue;
+
+import org.apache.http.HttpStatus;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.reactome.util.ensembl.EnsemblServiceResponseProcessor.EnsemblServiceResult;
+
+/**
+ * Measures the end-to-end throughput and quota efficiency of the client stack (rate limiter, concurrency limiter,
+ * circuit breaker and retries) against an {@link EnsemblStubServer} with a small quota, latency and occasional 504s.
+ * It is tagged "load" and so excluded from the default build; it is run with
+ * mvn test -DexcludedTestGroups= -Dtest=EnsemblLoadTest
+ * and can be scaled up with the system properties "ensembl.loadTest.requests" and "ensembl.loadTest.quota" (requests
+ * per second), e.g. -Densembl.loadTest.requests=5000 -Densembl.loadTest.quota=15
+ */
+@Tag("load")
+public class EnsemblLoadTest {
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final int REQUEST_COUNT = Integer.getInteger("ensembl.loadTest.requests", 100);
+	private static final int QUOTA_PER_SECOND = Integer.getInteger("ensembl.loadTest.quota", 50);
+	private static final Duration QUOTA_PERIOD = Duration.ofSeconds(2);
+	private static final Duration LATENCY = Duration.ofMillis(20);
+	private static final int GATEWAY_TIMEOUT_INTERVAL = 50;
+	private static final int MAX_CONNECTIONS = 8;
+	private static final int BATCH_SIZE = 20;
+
+	@Test
+	public void asynchronousLookupsUseTheQuotaEfficiently() throws Exception {
+		LoadReport report = runLoad(client -> {
+			List<CompletableFuture<EnsemblServiceResult>> results = new ArrayList<>();
+			for (int i = 0; i < REQUEST_COUNT; i++) {
+				results.add(client.getAsync("/lookup/id/ENSG" + i, Collections.emptyMap()));
+			}
+
+			int recordCount = 0;
+			for (CompletableFuture<EnsemblServiceResult> result : results) {
+				if (result.get().getStatus() == HttpStatus.SC_OK) {
+					recordCount++;
+				}
+			}
+			return recordCount;
+		});
+
+		assertThat(report.recordCount, is(equalTo((long) REQUEST_COUNT)));
+		assertThat(report.getQuotaEfficiency(), is(greaterThanOrEqualTo(0.9)));
+		assertThat(report.tooManyRequestsResponses, is(equalTo(0L)));
+		assertThat(report.getQuotaUtilization(), is(greaterThanOrEqualTo(0.5)));
+	}
+
+	@Test
+	public void batchLookupsUseTheQuotaEfficiently() throws Exception {
+		LoadReport report = runLoad(client -> {
+			List<String> ids = new ArrayList<>();
+			for (int i = 0; i < REQUEST_COUNT * BATCH_SIZE; i++) {
+				ids.add("ENSG" + i);
+			}
+
+			EnsemblBatchLookup batchLookup = new EnsemblBatchLookup(client, "lookup/id", Collections.emptyMap());
+			batchLookup.setBatchSize(BATCH_SIZE);
+			Map<String, JsonValue> idToRecord = batchLookup.lookup(ids);
+			return idToRecord.values().stream().filter(record -> record != JsonValue.NULL).count();
+		});
+
+		assertThat(report.recordCount, is(equalTo((long) REQUEST_COUNT * BATCH_SIZE)));
+		assertThat(report.getQuotaEfficiency(), is(greaterThanOrEqualTo(0.9)));
+		assertThat(report.tooManyRequestsResponses, is(equalTo(0L)));
+		// Batches are sent one at a time, so the latency of each, not the quota, bounds their rate
+		assertThat(report.getQuotaUtilization(), is(greaterThanOrEqualTo(0.2)));
+	}
+
+	/**
+	 * Runs the passed load with a new client against a new stub server, and logs and returns its measures
+	 */
+	private LoadReport runLoad(Load load) throws Exception {
+		try (EnsemblStubServer server = new EnsemblStubServer()) {
+			server.setQuota(QUOTA_PER_SECOND * QUOTA_PERIOD.getSeconds(), QUOTA_PERIOD);
+			server.setLatency(LATENCY);
+			server.setGatewayTimeoutInterval(GATEWAY_TIMEOUT_INTERVAL);
+
+			EnsemblRateLimiter rateLimiter = new EnsemblRateLimiter(QUOTA_PER_SECOND * 2);
+			EnsemblMetricsRegistry metricsRegistry = new EnsemblMetricsRegistry();
+			try (EnsemblRestClient client =
+					new EnsemblRestClient(server.getBaseUri(), MAX_CONNECTIONS, Duration.ofSeconds(10), rateLimiter)) {
+				client.setConcurrencyLimiter(new EnsemblConcurrencyLimiter(rateLimiter, MAX_CONNECTIONS));
+				client.setCircuitBreaker(new EnsemblCircuitBreaker());
+				client.setMetricsListener(metricsRegistry);
+
+				long startNanos = System.nanoTime();
+				long recordCount = load.run(client);
+				Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+
+				LoadReport report = new LoadReport(recordCount, elapsed, server.getRequestCount(),
+					server.getResponseCount(HttpStatus.SC_OK), server.getResponseCount(429),
+					server.getResponseCount(HttpStatus.SC_GATEWAY_TIMEOUT)
+				);
+				logger.info("{}", report);
+				metricsRegistry.getMetrics().values().forEach(metrics -> logger.info("{}", metrics));
+				return report;
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface Load {
+		/**
+		 * Sends the requests of the load and returns the number of records obtained
+		 */
+		long run(EnsemblRestClient client) throws Exception;
+	}
+
+	private static class LoadReport {
+		private final long recordCount;
+		private final Duration elapsed;
+		private final long requestsSent;
+		private final long okResponses;
+		private final long tooManyRequestsResponses;
+		private final long gatewayTimeoutResponses;
+
+		LoadReport(long recordCount, Duration elapsed, long requestsSent, long okResponses,
+			long tooManyRequestsResponses, long gatewayTimeoutResponses) {
+			this.recordCount = recordCount;
+			this.elapsed = elapsed;
+			this.requestsSent = requestsSent;
+			this.okResponses = okResponses;
+			this.tooManyRequestsResponses = tooManyRequestsResponses;
+			this.gatewayTimeoutResponses = gatewayTimeoutResponses;
+		}
+
+		/**
+		 * Returns the fraction of the requests sent which were answered successfully
+		 */
+		double getQuotaEfficiency() {
+			return this.requestsSent > 0 ? (double) this.okResponses / this.requestsSent : 0.0;
+		}
+
+		/**
+		 * Returns the fraction of the quota's rate used by successful requests
+		 */
+		double getQuotaUtilization() {
+			double seconds = this.elapsed.toNanos() / 1e9;
+			return seconds > 0 ? this.okResponses / seconds / QUOTA_PER_SECOND : 0.0;
+		}
+
+		@Override
+		public String toString() {
+			double seconds = this.elapsed.toNanos() / 1e9;
+			return String.format(
+				"%d records in %.2f s (%.1f records/s, %.1f requests/s); %d requests sent: %d OK, %d 429, %d 504; " +
+					"quota efficiency %.3f, quota utilization %.3f",
+				this.recordCount, seconds, this.recordCount / seconds, this.okResponses / seconds, this.requestsSent,
+				this.okResponses, this.tooManyRequestsResponses, this.gatewayTimeoutResponses, getQuotaEfficiency(),
+				getQuotaUtilization()
+			);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package org.reactome.util.ensembl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.io.StringWriter;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.reactome.util.ensembl.EnsemblMetricsRegistry.RequestMetrics;
+
+public class EnsemblMetricsRegistryTest {
+	private static final URI BASE_URI = URI.create("http://localhost/ensembl/");
+	private static final String CONTENT = "{\"id\":\"ENSG1\"}";
+
+	@Test
+	public void eachAttemptIsRecordedAndTraced() throws Exception {
+		MockHttpResponse tooManyRequestsResponse = MockHttpResponse.createMockHttpResponse(429, null,
+			"Retry-After", "0", "X-RateLimit-Remaining", "0", "X-RateLimit-Reset", "0"
+		);
+		MockHttpResponse okResponse = MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK, CONTENT,
+			"X-RateLimit-Limit", "55000", "X-RateLimit-Remaining", "54000", "X-RateLimit-Reset", "1800"
+		);
+		CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
+		Mockito.when(httpClient.execute(Mockito.any(HttpUriRequest.class)))
+			.thenReturn(tooManyRequestsResponse, okResponse);
+
+		EnsemblMetricsRegistry registry = new EnsemblMetricsRegistry();
+		StringWriter trace = new StringWriter();
+		try (EnsemblRestClient client = new EnsemblRestClient(BASE_URI, httpClient, new EnsemblRateLimiter());
+			EnsemblRequestTraceWriter traceWriter = new EnsemblRequestTraceWriter(trace)) {
+			client.setMetricsListener(EnsemblMetricsListener.allOf(registry, traceWriter));
+
+			client.get("/lookup/id/ENSG1", Collections.singletonMap("expand", "1"));
+		}
+
+		Map<String, RequestMetrics> metrics = registry.getMetrics();
+		assertThat(metrics.keySet().toString(), is(equalTo("[lookup/id 200, lookup/id 429]")));
+		RequestMetrics tooManyRequestsMetrics = metrics.get("lookup/id 429");
+		assertThat(tooManyRequestsMetrics.getCount(), is(equalTo(1L)));
+		assertThat(tooManyRequestsMetrics.getRetryCount(), is(equalTo(1L)));
+		RequestMetrics okMetrics = metrics.get("lookup/id 200");
+		assertThat(okMetrics.getCount(), is(equalTo(1L)));
+		assertThat(okMetrics.getRetryCount(), is(equalTo(0L)));
+		assertThat(okMetrics.getBytesReceived(), is(equalTo((long) CONTENT.length())));
+		assertThat(okMetrics.getLatencyPercentile(50), is(lessThanOrEqualTo(Duration.ofSeconds(1))));
+		assertThat(registry.getQuotaRemaining(), is(equalTo(54000L)));
+
+		String[] lines = trace.toString().split("\n");
+		assertThat(lines.length, is(equalTo(2)));
+		assertThat(lines[0], containsString("\"attempt\":1,\"status\":429"));
+		assertThat(lines[0], containsString("\"retrying\":true"));
+		assertThat(lines[1], containsString("\"endpoint\":\"lookup/id\""));
+		assertThat(lines[1], containsString("\"attempt\":2,\"status\":200"));
+		assertThat(lines[1], containsString("\"bytes\":" + CONTENT.length()));
+	}
+
+	@Test
+	public void failingListenersDoNotFailRequests() throws Exception {
+		CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
+		Mockito.when(httpClient.execute(Mockito.any(HttpUriRequest.class)))
+			.thenReturn(MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK, CONTENT));
+
+		try (EnsemblRestClient client = new EnsemblRestClient(BASE_URI, httpClient, new EnsemblRateLimiter())) {
+			client.setMetricsListener(event -> { throw new IllegalStateException("Listener failure"); });
+
+			assertThat(client.get("/lookup/id/ENSG1", Collections.emptyMap()).getResult(), is(equalTo(CONTENT)));
+		}
+	}
+}
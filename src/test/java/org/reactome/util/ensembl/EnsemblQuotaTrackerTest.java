@@ -0,0 +1,49 @@
+package org.reactome.util.ensembl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.Test;
+
+public class EnsemblQuotaTrackerTest {
+
+	@Test
+	public void quotaIsUpdatedFromTheHeadersOfEachResponse() {
+		Instant now = Instant.parse("2024-01-01T00:00:00Z");
+		EnsemblQuotaTracker quotaTracker = new EnsemblQuotaTracker("rest.ensembl.org", Clock.fixed(now, ZoneOffset.UTC));
+		assertThat(quotaTracker.getRemaining(), is(equalTo(-1L)));
+
+		quotaTracker.update(MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK, "{}",
+			"X-RateLimit-Limit", "55000", "X-RateLimit-Remaining", "54999", "X-RateLimit-Reset", "3600",
+			"X-RateLimit-Period", "3600"
+		));
+		// Headers a response does not have leave their values unchanged
+		quotaTracker.update(MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK, "{}",
+			"X-RateLimit-Remaining", "54998"
+		));
+
+		assertThat(quotaTracker.getLimit(), is(equalTo(55000L)));
+		assertThat(quotaTracker.getRemaining(), is(equalTo(54998L)));
+		assertThat(quotaTracker.getResetTime(), is(equalTo(now.plusSeconds(3600))));
+		assertThat(quotaTracker.getQuota().getPeriodSeconds(), is(equalTo(3600L)));
+	}
+
+	@Test
+	public void servicesAndApiKeysHaveSeparateTrackers() {
+		EnsemblQuotaTracker mainTracker = EnsemblQuotaTracker.forService("rest.ensembl.org");
+
+		assertThat(EnsemblQuotaTracker.forService("REST.ensembl.org"), is(sameInstance(mainTracker)));
+		assertThat(EnsemblQuotaTracker.forService("grch37.rest.ensembl.org"), is(not(sameInstance(mainTracker))));
+		assertThat(EnsemblQuotaTracker.forService("rest.ensembl.org", "key"), is(not(sameInstance(mainTracker))));
+		assertThat(EnsemblQuotaTracker.getTrackers().get("rest.ensembl.org#key").getKey(),
+			is(equalTo("rest.ensembl.org#key")));
+	}
+}
@@ -0,0 +1,84 @@
+package org.reactome.util.ensembl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.Test;
+
+public class EnsemblRateLimiterTest {
+	private final AtomicLong nanoTime = new AtomicLong(0L);
+
+	@Test
+	public void requestsArePacedAtTheMaximumRate() {
+		EnsemblRateLimiter rateLimiter = new EnsemblRateLimiter(2, nanoTime::get);
+
+		assertThat(rateLimiter.reserve(), is(equalTo(0L)));
+		assertThat(rateLimiter.reserve(), is(equalTo(TimeUnit.MILLISECONDS.toNanos(500))));
+		assertThat(rateLimiter.reserve(), is(equalTo(TimeUnit.SECONDS.toNanos(1))));
+
+		nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(2));
+		assertThat(rateLimiter.reserve(), is(equalTo(0L)));
+		assertThat(rateLimiter.reserve(), is(equalTo(TimeUnit.MILLISECONDS.toNanos(500))));
+	}
+
+	@Test
+	public void noOneSecondWindowExceedsTheMaximumRate() {
+		final int maxRequestsPerSecond = 5;
+		EnsemblRateLimiter rateLimiter = new EnsemblRateLimiter(maxRequestsPerSecond, nanoTime::get);
+
+		// Bursts of requests after idle periods of various lengths, each request sent at its reserved slot
+		List<Long> sendTimes = new ArrayList<>();
+		for (long idleMillis : new long[] {0, 3000, 200, 1000, 50, 5000}) {
+			nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(idleMillis));
+			long burstStart = nanoTime.get();
+			for (int i = 0; i < maxRequestsPerSecond * 3; i++) {
+				sendTimes.add(burstStart + rateLimiter.reserve());
+			}
+			nanoTime.set(Collections.max(sendTimes));
+		}
+
+		Collections.sort(sendTimes);
+		for (int i = 0; i + maxRequestsPerSecond < sendTimes.size(); i++) {
+			long windowNanos = sendTimes.get(i + maxRequestsPerSecond) - sendTimes.get(i);
+			assertThat(windowNanos, is(greaterThanOrEqualTo(TimeUnit.SECONDS.toNanos(1))));
+		}
+	}
+
+	@Test
+	public void remainingQuotaIsSpreadOverTheTimeToReset() {
+		EnsemblRateLimiter rateLimiter = new EnsemblRateLimiter(10, nanoTime::get);
+		rateLimiter.update(MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK, null,
+			"X-RateLimit-Limit", "1000", "X-RateLimit-Remaining", "100", "X-RateLimit-Reset", "100"
+		));
+
+		// 100 requests remaining over 100 seconds allows 1 request per second rather than 10
+		assertThat(rateLimiter.getRequestsPerSecond(), is(equalTo(1.0)));
+		assertThat(rateLimiter.getRemaining(), is(equalTo(100L)));
+
+		nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		rateLimiter.update(1000, 120, 99);
+		// A later response with more requests remaining in the same window is out of date
+		assertThat(rateLimiter.getRemaining(), is(equalTo(100L)));
+	}
+
+	@Test
+	public void noRequestIsPermittedUntilAnExhaustedQuotaResets() {
+		EnsemblRateLimiter rateLimiter = new EnsemblRateLimiter(10, nanoTime::get);
+		rateLimiter.update(1000, 0, 30);
+
+		assertThat(rateLimiter.reserve(), is(equalTo(TimeUnit.SECONDS.toNanos(30))));
+		assertThat(rateLimiter.getRemaining(), is(equalTo(999L)));
+
+		// Later requests are scheduled after the start of the new window as well
+		nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(10));
+		assertThat(rateLimiter.reserve() >= TimeUnit.SECONDS.toNanos(20), is(true));
+	}
+}
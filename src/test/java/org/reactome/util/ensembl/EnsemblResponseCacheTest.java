@@ -0,0 +1,107 @@
+package org.reactome.util.ensembl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.reactome.util.ensembl.EnsemblServiceResponseProcessor.EnsemblServiceResult;
+
+public class EnsemblResponseCacheTest {
+
+	@Test
+	public void responsesAreKeptUntilTheReleaseChanges() throws Exception {
+		Path cacheDirectory = Files.createTempDirectory("ensembl_cache");
+		try {
+			Map<String, String> queryParameters = new LinkedHashMap<>();
+			queryParameters.put("species", "human");
+			queryParameters.put("expand", "1");
+			String key = EnsemblResponseCache.createKey("/lookup/id/ENSG1", queryParameters, null);
+			assertThat(key, is(equalTo("lookup/id/ENSG1?expand=1&species=human")));
+
+			try (EnsemblResponseCache cache = EnsemblResponseCache.open(cacheDirectory, 113)) {
+				cache.put(key, "{\"id\":\"ENSG1\"}");
+				cache.put(key, "{\"id\":\"ENSG1\",\"version\":2}");
+			}
+
+			try (EnsemblResponseCache cache = EnsemblResponseCache.open(cacheDirectory, 113)) {
+				assertThat(cache.size(), is(equalTo(1)));
+				assertThat(cache.get(key), is(equalTo("{\"id\":\"ENSG1\",\"version\":2}")));
+				assertThat(cache.get(EnsemblResponseCache.createKey("lookup/id/ENSG2", queryParameters, null)),
+					is(nullValue()));
+			}
+
+			try (EnsemblResponseCache cache = EnsemblResponseCache.open(cacheDirectory, 114)) {
+				assertThat(cache.size(), is(equalTo(0)));
+				assertThat(cache.get(key), is(nullValue()));
+			}
+		} finally {
+			Files.deleteIfExists(cacheDirectory.resolve(EnsemblResponseCache.DATA_FILE_NAME));
+			Files.deleteIfExists(cacheDirectory.resolve(EnsemblResponseCache.INDEX_FILE_NAME));
+			Files.deleteIfExists(cacheDirectory);
+		}
+	}
+
+	@Test
+	public void aCacheDirectoryCanOnlyBeOpenOnce() throws Exception {
+		Path cacheDirectory = Files.createTempDirectory("ensembl_cache");
+		try {
+			try (EnsemblResponseCache cache = EnsemblResponseCache.open(cacheDirectory, 113)) {
+				cache.put("lookup/id/ENSG1", "{\"id\":\"ENSG1\"}");
+
+				assertThrows(IOException.class, () -> EnsemblResponseCache.open(cacheDirectory, 114));
+				assertThat(cache.get("lookup/id/ENSG1"), is(equalTo("{\"id\":\"ENSG1\"}")));
+			}
+
+			try (EnsemblResponseCache cache = EnsemblResponseCache.open(cacheDirectory, 113)) {
+				assertThat(cache.size(), is(equalTo(1)));
+			}
+		} finally {
+			Files.deleteIfExists(cacheDirectory.resolve(EnsemblResponseCache.DATA_FILE_NAME));
+			Files.deleteIfExists(cacheDirectory.resolve(EnsemblResponseCache.INDEX_FILE_NAME));
+			Files.deleteIfExists(cacheDirectory);
+		}
+	}
+
+	@Test
+	public void clientAnswersCachedRequestsWithoutSendingThem() throws Exception {
+		Path cacheDirectory = Files.createTempDirectory("ensembl_cache");
+		MockHttpResponse okResponse = MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK, "{\"id\":\"ENSG1\"}");
+		CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
+		Mockito.when(httpClient.execute(Mockito.any(HttpUriRequest.class))).thenReturn(okResponse);
+
+		try (
+			EnsemblResponseCache cache = EnsemblResponseCache.open(cacheDirectory, 113);
+			EnsemblRestClient client = new EnsemblRestClient(
+				URI.create("http://localhost/"), httpClient, new EnsemblRateLimiter()
+			)
+		) {
+			client.setResponseCache(cache);
+
+			client.get("lookup/id/ENSG1", Collections.emptyMap());
+			EnsemblServiceResult cachedResult = client.get("lookup/id/ENSG1", Collections.emptyMap());
+
+			assertThat(cachedResult.getStatus(), is(equalTo(HttpStatus.SC_OK)));
+			assertThat(cachedResult.getResult(), is(equalTo("{\"id\":\"ENSG1\"}")));
+			Mockito.verify(httpClient, Mockito.times(1)).execute(Mockito.any(HttpUriRequest.class));
+		} finally {
+			Files.deleteIfExists(cacheDirectory.resolve(EnsemblResponseCache.DATA_FILE_NAME));
+			Files.deleteIfExists(cacheDirectory.resolve(EnsemblResponseCache.INDEX_FILE_NAME));
+			Files.deleteIfExists(cacheDirectory);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package org.reactome.util.ensembl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.reactome.util.ensembl.EnsemblServiceResponseProcessor.EnsemblServiceResult;
+
+public class EnsemblRestClientTest {
+	private static final URI BASE_URI = URI.create("http://localhost/ensembl/");
+
+	@Test
+	public void requestsAreRetriedWhenTheServiceSaysToWait() throws Exception {
+		MockHttpResponse tooManyRequestsResponse = MockHttpResponse.createMockHttpResponse(429, null,
+			"Retry-After", "0", "X-RateLimit-Remaining", "0", "X-RateLimit-Reset", "0"
+		);
+		MockHttpResponse okResponse = MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK, "{\"id\":\"ENSG1\"}",
+			"X-RateLimit-Limit", "55000", "X-RateLimit-Remaining", "54000", "X-RateLimit-Reset", "1800"
+		);
+		CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
+		Mockito.when(httpClient.execute(Mockito.any(HttpUriRequest.class)))
+			.thenReturn(tooManyRequestsResponse, okResponse);
+
+		try (EnsemblRestClient client = new EnsemblRestClient(BASE_URI, httpClient, new EnsemblRateLimiter())) {
+			EnsemblServiceResult result = client.get("/lookup/id/ENSG1", Collections.singletonMap("expand", "1"));
+
+			assertThat(result.getStatus(), is(equalTo(HttpStatus.SC_OK)));
+			assertThat(result.getResult(), is(equalTo("{\"id\":\"ENSG1\"}")));
+			assertThat(client.getRateLimiter().getRemaining(), is(equalTo(54000L)));
+		}
+
+		ArgumentCaptor<HttpUriRequest> requestCaptor = ArgumentCaptor.forClass(HttpUriRequest.class);
+		Mockito.verify(httpClient, Mockito.times(2)).execute(requestCaptor.capture());
+		assertThat(requestCaptor.getValue().getURI().toString(),
+			is(equalTo("http://localhost/ensembl/lookup/id/ENSG1?expand=1")));
+		assertThat(tooManyRequestsResponse.isClosed(), is(true));
+		assertThat(okResponse.isClosed(), is(true));
+	}
+
+	@Test
+	public void clientsOfTheSameServiceShareARateLimiter() throws Exception {
+		try (
+			EnsemblRestClient client1 = new EnsemblRestClient(URI.create("http://localhost/ensembl/"));
+			EnsemblRestClient client2 = new EnsemblRestClient(URI.create("http://LOCALHOST:8080/"));
+			EnsemblRestClient otherServiceClient = new EnsemblRestClient(URI.create("http://127.0.0.1/"))
+		) {
+			assertThat(client1.getRateLimiter(), is(sameInstance(client2.getRateLimiter())));
+			assertThat(client1.getRateLimiter(), is(sameInstance(client1.getQuotaTracker().getRateLimiter())));
+			assertThat(otherServiceClient.getRateLimiter(), is(not(sameInstance(client1.getRateLimiter()))));
+		}
+	}
+
+	@Test
+	public void asynchronousRequestsAreRetriedAfterTheBackoffGateOpens() throws Exception {
+		MockHttpResponse tooManyRequestsResponse = MockHttpResponse.createMockHttpResponse(429, null,
+			"Retry-After", "0.05"
+		);
+		MockHttpResponse okResponse = MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK, "{\"id\":\"ENSG1\"}");
+		CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
+		Mockito.when(httpClient.execute(Mockito.any(HttpUriRequest.class)))
+			.thenReturn(tooManyRequestsResponse, okResponse);
+
+		try (EnsemblRestClient client = new EnsemblRestClient(BASE_URI, httpClient, new EnsemblRateLimiter())) {
+			EnsemblServiceResult result = client.getAsync("lookup/id/ENSG1", Collections.emptyMap())
+				.get(10, TimeUnit.SECONDS);
+
+			assertThat(result.getStatus(), is(equalTo(HttpStatus.SC_OK)));
+			assertThat(result.getResult(), is(equalTo("{\"id\":\"ENSG1\"}")));
+			// The successful retry resets the back-off for the next "Retry-After"
+			assertThat(client.getRateLimiter().getBackoffGate().getMultiplier(), is(equalTo(0)));
+		}
+
+		Mockito.verify(httpClient, Mockito.times(2)).execute(Mockito.any(HttpUriRequest.class));
+	}
+
+	@Test
+	public void requestsWaitForABackoffGatePausedWhileTakingTheirSlot() throws Exception {
+		EnsemblRateLimiter rateLimiter = Mockito.spy(new EnsemblRateLimiter());
+		EnsemblBackoffGate backoffGate = rateLimiter.getBackoffGate();
+		AtomicBoolean paused = new AtomicBoolean();
+		// Another request is told to wait just after this request has taken its first slot
+		Mockito.doAnswer(invocation -> {
+			Object slot = invocation.callRealMethod();
+			if (paused.compareAndSet(false, true)) {
+				backoffGate.pause(Duration.ofMillis(50));
+			}
+			return slot;
+		}).when(rateLimiter).acquire();
+
+		List<Long> pauseNanosWhenSent = new ArrayList<>();
+		CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
+		Mockito.when(httpClient.execute(Mockito.any(HttpUriRequest.class))).thenAnswer(invocation -> {
+			pauseNanosWhenSent.add(backoffGate.getRemainingPauseNanos());
+			return MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK, "{\"id\":\"ENSG1\"}");
+		});
+
+		try (EnsemblRestClient client = new EnsemblRestClient(BASE_URI, httpClient, rateLimiter)) {
+			EnsemblServiceResult result = client.get("lookup/id/ENSG1", Collections.emptyMap());
+
+			assertThat(result.getStatus(), is(equalTo(HttpStatus.SC_OK)));
+		}
+
+		assertThat(pauseNanosWhenSent, contains(0L));
+		Mockito.verify(rateLimiter, Mockito.times(2)).acquire();
+	}
+
+	@Test
+	public void releaseIsTheOneTheServiceServes() throws Exception {
+		CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
+		MockHttpResponse releaseResponse = MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK,
+			"{\"releases\":[113]}"
+		);
+		Mockito.when(httpClient.execute(Mockito.any(HttpUriRequest.class))).thenReturn(releaseResponse);
+
+		try (EnsemblRestClient client = new EnsemblRestClient(BASE_URI, httpClient, new EnsemblRateLimiter())) {
+			assertThat(client.getRelease(), is(equalTo(113)));
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package org.reactome.util.ensembl;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.reactome.util.ensembl.EnsemblServiceResponseProcessor.MAX_TIMES_TO_WAIT;
@@ -8,6 +9,10 @@ import static org.reactome.util.ensembl.EnsemblServiceResponseProcessor.MAX_TIME
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
@@ -216,6 +221,38 @@ public class EnsemblServiceResponseProcessorTest {
 		);
 	}
 
+	@Test
+	public void contentIsPassedToTheContentHandlerRecordByRecord() {
+		MockHttpResponse okResponse = MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK,
+			"{\"ENSG1\":{\"id\":\"ENSG1\"},\"ENSG2\":null}"
+		);
+		Map<String, JsonValue> idToRecord = new LinkedHashMap<>();
+
+		EnsemblServiceResult result = ensemblServiceResponseProcessor.processStreamedResponse(
+			okResponse, EnsemblContentHandler.forRecords(idToRecord::put)
+		);
+
+		assertThat(result.isContentHandled(), is(true));
+		assertThat(result.getResult(), is(equalTo(StringUtils.EMPTY)));
+		assertThat(idToRecord.keySet(), contains("ENSG1", "ENSG2"));
+		assertThat(((JsonObject) idToRecord.get("ENSG1")).getString("id"), is(equalTo("ENSG1")));
+		assertThat(idToRecord.get("ENSG2"), is(equalTo(JsonValue.NULL)));
+	}
+
+	@Test
+	public void truncatedContentIsNotHandled() {
+		MockHttpResponse okResponse = MockHttpResponse.createMockHttpResponse(HttpStatus.SC_OK,
+			"{\"ENSG1\":{\"id\":\"ENSG1\"},\"ENSG2\":{\"id\""
+		);
+
+		EnsemblServiceResult result = ensemblServiceResponseProcessor.processStreamedResponse(
+			okResponse, EnsemblContentHandler.forRecords((id, record) -> {})
+		);
+
+		assertThat(result.getStatus(), is(equalTo(HttpStatus.SC_OK)));
+		assertThat(result.isContentHandled(), is(false));
+	}
+
 	private void mockResponseWithRetryHeader(int statusCode, String reasonPhrase) {
 		mockResponse(statusCode, reasonPhrase);
 		mockRetryHeader();
@@ -0,0 +1,259 @@
+package org.reactome.util.ensembl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local stand-in for an EnsEMBL REST service, on the JDK's HttpServer, for testing the client against real HTTP.
+ * It serves "info/data", "lookup/id/{id}" (GET) and "lookup/id" (batch POST of up to 1000 "ids"), and emulates the
+ * service's fixed-window quota: every response has the "X-RateLimit-*" headers, and requests over the quota are
+ * answered with 429 and a "Retry-After" of the time until the window ends.  Each response can be delayed by a
+ * latency, and every nth request can be answered with a 504 (gateway timeout).
+ */
+public class EnsemblStubServer implements Closeable {
+	public static final int RELEASE = 110;
+	public static final int MAX_BATCH_SIZE = 1000;
+
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private final AtomicLong requestCount = new AtomicLong();
+	private final Map<Integer, LongAdder> statusToCount = new ConcurrentHashMap<>();
+
+	private volatile Duration latency = Duration.ZERO;
+	private volatile int gatewayTimeoutInterval = 0;
+
+	// Guarded by "this"
+	private long quotaLimit = 55000;
+	private long quotaPeriodNanos = TimeUnit.HOURS.toNanos(1);
+	private long quotaRemaining;
+	private long windowEndNanos = Long.MIN_VALUE;
+
+	/**
+	 * Starts a stub server on a free port of the loopback address
+	 * @throws IOException Thrown if the server can not be started
+	 */
+	public EnsemblStubServer() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.server.createContext("/", this::handle);
+		this.server.setExecutor(this.executor);
+		this.server.start();
+	}
+
+	public URI getBaseUri() {
+		return URI.create("http://localhost:" + this.server.getAddress().getPort());
+	}
+
+	/**
+	 * Sets the time each request takes to be answered
+	 */
+	public void setLatency(Duration latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * Sets every nth request to be answered with a 504 (0 for none)
+	 */
+	public void setGatewayTimeoutInterval(int gatewayTimeoutInterval) {
+		this.gatewayTimeoutInterval = gatewayTimeoutInterval;
+	}
+
+	/**
+	 * Sets the number of requests permitted per quota window and the length of a window, starting a new window
+	 */
+	public synchronized void setQuota(long limit, Duration period) {
+		this.quotaLimit = limit;
+		this.quotaPeriodNanos = period.toNanos();
+		this.windowEndNanos = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Returns the number of requests received
+	 */
+	public long getRequestCount() {
+		return this.requestCount.get();
+	}
+
+	/**
+	 * Returns the number of responses sent with the passed status
+	 */
+	public long getResponseCount(int status) {
+		LongAdder count = this.statusToCount.get(status);
+		return count != null ? count.sum() : 0L;
+	}
+
+	@Override
+	public void close() {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			long requestNumber = this.requestCount.incrementAndGet();
+			String requestBody = readBody(exchange.getRequestBody());
+
+			Quota quota = takeQuota();
+			exchange.getResponseHeaders().add("X-RateLimit-Limit", Long.toString(quota.limit));
+			exchange.getResponseHeaders().add("X-RateLimit-Remaining", Long.toString(quota.remaining));
+			exchange.getResponseHeaders().add("X-RateLimit-Reset", Long.toString(
+				(long) Math.ceil((double) quota.nanosToReset / TimeUnit.SECONDS.toNanos(1))
+			));
+			exchange.getResponseHeaders().add("X-RateLimit-Period", Long.toString(
+				TimeUnit.NANOSECONDS.toSeconds(quota.periodNanos)
+			));
+			if (!quota.permitted) {
+				exchange.getResponseHeaders().add("Retry-After", String.format(
+					Locale.ROOT, "%.3f", (double) quota.nanosToReset / TimeUnit.SECONDS.toNanos(1)
+				));
+				respond(exchange, 429, error("You have exceeded the limit of " + quota.limit + " requests"));
+				return;
+			}
+
+			Thread.sleep(this.latency.toMillis());
+
+			int gatewayTimeoutInterval = this.gatewayTimeoutInterval;
+			if (gatewayTimeoutInterval > 0 && requestNumber % gatewayTimeoutInterval == 0) {
+				respond(exchange, 504, error("Gateway timeout"));
+				return;
+			}
+
+			route(exchange, requestBody);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void route(HttpExchange exchange, String requestBody) throws IOException {
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getPath();
+		if (method.equals("GET") && path.equals("/info/data")) {
+			respond(exchange, 200, Json.createObjectBuilder()
+				.add("releases", Json.createArrayBuilder().add(RELEASE))
+				.build()
+			);
+		} else if (method.equals("GET") && path.startsWith("/lookup/id/")) {
+			respond(exchange, 200, createRecord(path.substring("/lookup/id/".length())));
+		} else if (method.equals("POST") && path.equals("/lookup/id")) {
+			lookupBatch(exchange, requestBody);
+		} else {
+			respond(exchange, 404, error("page not found"));
+		}
+	}
+
+	private void lookupBatch(HttpExchange exchange, String requestBody) throws IOException {
+		JsonArray ids;
+		try (JsonReader reader = Json.createReader(new StringReader(requestBody))) {
+			ids = reader.readObject().getJsonArray("ids");
+		} catch (JsonException | ClassCastException e) {
+			respond(exchange, 400, error("Invalid request body"));
+			return;
+		}
+		if (ids == null || ids.size() > MAX_BATCH_SIZE) {
+			respond(exchange, 400, error("Expected up to " + MAX_BATCH_SIZE + " ids"));
+			return;
+		}
+
+		JsonObjectBuilder records = Json.createObjectBuilder();
+		for (JsonValue id : ids) {
+			String idString = ((JsonString) id).getString();
+			records.add(idString, createRecord(idString));
+		}
+		respond(exchange, 200, records.build());
+	}
+
+	private synchronized Quota takeQuota() {
+		long now = System.nanoTime();
+		if (now >= this.windowEndNanos) {
+			this.windowEndNanos = now + this.quotaPeriodNanos;
+			this.quotaRemaining = this.quotaLimit;
+		}
+
+		boolean permitted = this.quotaRemaining > 0;
+		if (permitted) {
+			this.quotaRemaining--;
+		}
+		return new Quota(permitted, this.quotaLimit, this.quotaRemaining, this.windowEndNanos - now,
+			this.quotaPeriodNanos
+		);
+	}
+
+	private void respond(HttpExchange exchange, int status, JsonObject content) throws IOException {
+		this.statusToCount.computeIfAbsent(status, k -> new LongAdder()).increment();
+
+		byte[] contentBytes = content.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, contentBytes.length);
+		try (OutputStream responseBody = exchange.getResponseBody()) {
+			responseBody.write(contentBytes);
+		}
+	}
+
+	private static JsonObject createRecord(String id) {
+		return Json.createObjectBuilder()
+			.add("id", id)
+			.add("object_type", "Gene")
+			.add("species", "homo_sapiens")
+			.build();
+	}
+
+	private static JsonObject error(String message) {
+		return Json.createObjectBuilder().add("error", message).build();
+	}
+
+	private static String readBody(InputStream requestBody) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int readCount;
+		while ((readCount = requestBody.read(buffer)) >= 0) {
+			bytes.write(buffer, 0, readCount);
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static class Quota {
+		private final boolean permitted;
+		private final long limit;
+		private final long remaining;
+		private final long nanosToReset;
+		private final long periodNanos;
+
+		Quota(boolean permitted, long limit, long remaining, long nanosToReset, long periodNanos) {
+			this.permitted = permitted;
+			this.limit = limit;
+			this.remaining = remaining;
+			this.nanosToReset = nanosToReset;
+			this.periodNanos = periodNanos;
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package org.reactome.util.ensembl;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+
+public class MockHttpResponse extends BasicHttpResponse implements CloseableHttpResponse {
+	private boolean closed = false;
+
+	public static MockHttpResponse createMockHttpResponse(
+		int statusCode, String content, String... headerNamesAndValues
+	) {
+		MockHttpResponse response = new MockHttpResponse(statusCode);
+		if (content != null) {
+			response.setEntity(
+				new StringEntity(content, ContentType.create("application/json", StandardCharsets.UTF_8))
+			);
+		}
+		for (int i = 0; i < headerNamesAndValues.length; i += 2) {
+			response.addHeader(headerNamesAndValues[i], headerNamesAndValues[i + 1]);
+		}
+
+		return response;
+	}
+
+	private MockHttpResponse(int statusCode) {
+		super(HttpVersion.HTTP_1_1, statusCode, "Status " + statusCode);
+	}
+
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	@Override
+	public void close() {
+		this.closed = true;
+	}
+}